@@ -27,7 +27,6 @@ import java.util.Vector;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.ContingencyTables;
-import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
@@ -59,6 +58,13 @@ import weka.filters.unsupervised.attribute.NumericToBinary;
  *  of properly discretizing them.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for counting blocks
+ *  of attributes in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -78,6 +84,9 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
   /** Just binarize numeric attributes */
   private boolean m_Binarize;
 
+  /** The number of threads used to count the values */
+  private int m_numExecutionSlots = 1;
+
   /** The chi-squared value for each attribute */
   private double[] m_ChiSquareds;
 
@@ -106,12 +115,17 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(2);
+    Vector<Option> newVector = new Vector<Option>(3);
     newVector.addElement(new Option("\ttreat missing values as a seperate "
       + "value.", "M", 0, "-M"));
     newVector.addElement(new Option(
       "\tjust binarize numeric attributes instead \n"
         + "\tof properly discretizing them.", "B", 0, "-B"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for counting blocks\n"
+        + "\tof attributes in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
     return newVector.elements();
   }
 
@@ -133,6 +147,13 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
    *  of properly discretizing them.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for counting blocks
+   *  of attributes in parallel.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -145,6 +166,11 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     setMissingMerge(!(Utils.getFlag('M', options)));
     setBinarizeNumericAttributes(Utils.getFlag('B', options));
 
+    String optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
     Utils.checkForRemainingOptions(options);
   }
 
@@ -164,6 +190,8 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     if (getBinarizeNumericAttributes()) {
       options.add("-B");
     }
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
 
     return options.toArray(new String[0]);
   }
@@ -196,6 +224,35 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     return m_Binarize;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for counting blocks of attributes "
+      + "in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use.
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -264,7 +321,6 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     getCapabilities().testWithFail(data);
 
     int classIndex = data.classIndex();
-    int numInstances = data.numInstances();
 
     if (!m_Binarize) {
       Discretize disTransform = new Discretize();
@@ -278,59 +334,13 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     }
     int numClasses = data.attribute(classIndex).numValues();
 
-    // Reserve space and initialize counters
+    // Get counts
+    ContingencyCounts contingencyCounts = new ContingencyCounts(data, true);
+    contingencyCounts.add(data, m_numExecutionSlots);
     double[][][] counts = new double[data.numAttributes()][][];
     for (int k = 0; k < data.numAttributes(); k++) {
       if (k != classIndex) {
-        int numValues = data.attribute(k).numValues();
-        counts[k] = new double[numValues + 1][numClasses + 1];
-      }
-    }
-
-    // Initialize counters
-    double[] temp = new double[numClasses + 1];
-    for (int k = 0; k < numInstances; k++) {
-      Instance inst = data.instance(k);
-      if (inst.classIsMissing()) {
-        temp[numClasses] += inst.weight();
-      } else {
-        temp[(int) inst.classValue()] += inst.weight();
-      }
-    }
-    for (int k = 0; k < counts.length; k++) {
-      if (k != classIndex) {
-        for (int i = 0; i < temp.length; i++) {
-          counts[k][0][i] = temp[i];
-        }
-      }
-    }
-
-    // Get counts
-    for (int k = 0; k < numInstances; k++) {
-      Instance inst = data.instance(k);
-      for (int i = 0; i < inst.numValues(); i++) {
-        if (inst.index(i) != classIndex) {
-          if (inst.isMissingSparse(i) || inst.classIsMissing()) {
-            if (!inst.isMissingSparse(i)) {
-              counts[inst.index(i)][(int) inst.valueSparse(i)][numClasses] += inst
-                .weight();
-              counts[inst.index(i)][0][numClasses] -= inst.weight();
-            } else if (!inst.classIsMissing()) {
-              counts[inst.index(i)][data.attribute(inst.index(i)).numValues()][(int) inst
-                .classValue()] += inst.weight();
-              counts[inst.index(i)][0][(int) inst.classValue()] -= inst
-                .weight();
-            } else {
-              counts[inst.index(i)][data.attribute(inst.index(i)).numValues()][numClasses] += inst
-                .weight();
-              counts[inst.index(i)][0][numClasses] -= inst.weight();
-            }
-          } else {
-            counts[inst.index(i)][(int) inst.valueSparse(i)][(int) inst
-              .classValue()] += inst.weight();
-            counts[inst.index(i)][0][(int) inst.classValue()] -= inst.weight();
-          }
-        }
+        counts[k] = contingencyCounts.getCounts(k);
       }
     }
 
@@ -409,6 +419,7 @@ public class ChiSquaredAttributeEval extends ASEvaluation implements
     m_ChiSquareds = null;
     m_missing_merge = true;
     m_Binarize = false;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -247,6 +247,14 @@ import weka.filters.unsupervised.instance.Resample;
  * </pre>
  * 
  * <pre>
+ * -successive-halving &lt;num&gt;
+ *  The number of successive halving rounds. In each round, the points
+ *  of a grid are evaluated on half as many folds as in the next
+ *  and only the better half of them is kept.
+ *  (default: 0 - i.e. all points are evaluated on all folds)
+ * </pre>
+ * 
+ * <pre>
  * -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)
@@ -1544,15 +1552,21 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     /** the cache for points in the grid that got calculated. */
     protected Hashtable<String, Performance> m_Cache = new Hashtable<String, Performance>();
 
+    /** the evaluations that were stopped early, for resuming them. */
+    protected transient Hashtable<String, EvaluationTask> m_Partial;
+
     /**
-     * returns the ID string for a cache item.
+     * returns the ID string for a cache item. The values are rounded, since
+     * the same point can differ in the last digits when it is computed from
+     * an extended grid or a subgrid.
      * 
      * @param cv the number of folds in the cross-validation
      * @param values the point in the grid
      * @return the ID string
      */
     protected String getID(int cv, PointDouble values) {
-      return cv + "\t" + values.getX() + "\t" + values.getY();
+      return cv + "\t" + Utils.roundDouble(values.getX(), 10) + "\t"
+        + Utils.roundDouble(values.getY(), 10);
     }
 
     /**
@@ -1585,6 +1599,44 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
      */
     public void add(int cv, Performance p) {
       m_Cache.put(getID(cv, p.getValues()), p);
+      if (m_Partial != null) {
+        m_Partial.remove(getID(cv, p.getValues()));
+      }
+    }
+
+    /**
+     * returns the evaluation of the point that was stopped early, null if
+     * there is none.
+     * 
+     * @param cv the number of folds in the cross-validation
+     * @param values the point in the grid
+     * @return the evaluation, null if not available
+     */
+    public EvaluationTask getPartial(int cv, PointDouble values) {
+      if (m_Partial == null) {
+        return null;
+      }
+      return m_Partial.get(getID(cv, values));
+    }
+
+    /**
+     * stores an evaluation that is not complete yet.
+     * 
+     * @param cv the number of folds in the cross-validation
+     * @param task the evaluation
+     */
+    public void addPartial(int cv, EvaluationTask task) {
+      if (m_Partial == null) {
+        m_Partial = new Hashtable<String, EvaluationTask>();
+      }
+      m_Partial.put(getID(cv, task.getValues()), task);
+    }
+
+    /**
+     * removes all evaluations that are not complete.
+     */
+    public void clearPartial() {
+      m_Partial = null;
     }
 
     /**
@@ -1825,7 +1877,9 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
   }
 
   /**
-   * Helper class for evaluating a setup.
+   * Helper class for evaluating a setup. The cross-validation can be performed
+   * in several steps (see setFoldsTarget), the state of the evaluation is kept
+   * in between.
    */
   protected static class EvaluationTask implements Runnable, RevisionHandler {
 
@@ -1853,6 +1907,27 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     /** the type of evaluation. */
     protected int m_Evaluation;
 
+    /** the number of folds to evaluate up to. */
+    protected int m_FoldsTarget;
+
+    /** the number of folds evaluated so far. */
+    protected int m_FoldsDone;
+
+    /** the configured classifier, null if not set up yet. */
+    protected Classifier m_Setup;
+
+    /** the randomized (and stratified) data for the cross-validation. */
+    protected Instances m_CVData;
+
+    /** the random number generator of the cross-validation. */
+    protected Random m_Random;
+
+    /** the evaluation of the folds done so far. */
+    protected Evaluation m_Eval;
+
+    /** the performance of the folds done so far. */
+    protected Performance m_Performance;
+
     /**
      * Initializes the task.
      * 
@@ -1876,75 +1951,144 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
       m_Values = values;
       m_Folds = folds;
       m_Evaluation = eval;
+      m_FoldsTarget = folds;
     }
 
     /**
-     * Performs the evaluation.
+     * returns the values in the grid.
+     * 
+     * @return the values
      */
-    @Override
-    public void run() {
-      Evaluation eval;
-      Classifier classifier;
+    public PointDouble getValues() {
+      return m_Values;
+    }
+
+    /**
+     * sets the number of folds to evaluate up to in the next run. Folds that
+     * were already evaluated are not evaluated again.
+     * 
+     * @param value the number of folds
+     */
+    public void setFoldsTarget(int value) {
+      m_FoldsTarget = Math.min(value, m_Folds);
+    }
+
+    /**
+     * returns the number of folds evaluated so far.
+     * 
+     * @return the number of folds
+     */
+    public int getFoldsDone() {
+      return m_FoldsDone;
+    }
+
+    /**
+     * returns the performance of the folds evaluated so far.
+     * 
+     * @return the performance, null if not evaluated yet
+     */
+    public Performance getPerformance() {
+      return m_Performance;
+    }
+
+    /**
+     * Sets up the data and the classifier for the cross-validation.
+     * 
+     * @throws Exception if the setup fails
+     */
+    protected void setup() throws Exception {
       Filter filter;
-      Performance performance;
+      Instances data;
       double x;
       double y;
-      Instances data;
 
-      classifier = null;
-      filter = null;
       x = m_Generator.evaluate(m_Values.getX(), true);
       y = m_Generator.evaluate(m_Values.getY(), false);
-      try {
 
-        // data pass through filter
-        if (!m_Filter.getClass().equals(AllFilter.class)) {
-          filter = (Filter) m_Generator.setup(m_Filter, x, y);
-          filter.setInputFormat(m_Data);
-          data = Filter.useFilter(m_Data, filter);
-          // make sure that the numbers don't get too small - otherwise NaNs!
-          Filter cleaner = new NumericCleaner();
-          cleaner.setInputFormat(data);
-          data = Filter.useFilter(data, cleaner);
-        } else {
-          data = m_Data;
-        }
+      // data pass through filter
+      if (!m_Filter.getClass().equals(AllFilter.class)) {
+        filter = (Filter) m_Generator.setup(m_Filter, x, y);
+        filter.setInputFormat(m_Data);
+        data = Filter.useFilter(m_Data, filter);
+        // make sure that the numbers don't get too small - otherwise NaNs!
+        Filter cleaner = new NumericCleaner();
+        cleaner.setInputFormat(data);
+        data = Filter.useFilter(data, cleaner);
+      } else {
+        data = m_Data;
+      }
 
-        // setup classifier
-        classifier = (Classifier) m_Generator.setup(m_Classifier, x, y);
+      // setup classifier
+      m_Setup = (Classifier) m_Generator.setup(m_Classifier, x, y);
+
+      // same as Evaluation.crossValidateModel, but one fold at a time
+      m_Eval = new Evaluation(data);
+      m_Random = new Random(m_Owner.getSeed());
+      m_CVData = new Instances(data);
+      m_CVData.randomize(m_Random);
+      if (m_CVData.classAttribute().isNominal()) {
+        m_CVData.stratify(m_Folds);
+      }
+    }
+
+    /**
+     * Performs the evaluation.
+     */
+    @Override
+    public void run() {
+      Classifier classifier;
+      Instances train;
+      Instances test;
+
+      try {
+        if (m_Setup == null) {
+          setup();
+        }
 
         // evaluate
-        eval = new Evaluation(data);
-        eval.crossValidateModel(classifier, data, m_Folds,
-          new Random(m_Owner.getSeed()));
+        for (; m_FoldsDone < m_FoldsTarget; m_FoldsDone++) {
+          train = m_CVData.trainCV(m_Folds, m_FoldsDone, m_Random);
+          m_Eval.setPriors(train);
+          classifier = AbstractClassifier.makeCopy(m_Setup);
+          classifier.buildClassifier(train);
+          test = m_CVData.testCV(m_Folds, m_FoldsDone);
+          m_Eval.evaluateModel(classifier, test);
+        }
+        m_Performance = new Performance(m_Values, m_Eval);
 
-        // store performance
-        performance = new Performance(m_Values, eval);
-        m_Owner.addPerformance(performance, m_Folds);
+        if (m_FoldsDone == m_Folds) {
+          // store performance
+          m_Owner.addPerformance(m_Performance, m_Folds);
 
-        // log
-        m_Owner.log(performance + ": cached=false");
+          // log
+          m_Owner.log(m_Performance + ": cached=false");
+        } else {
+          m_Owner.log(m_Performance + ": folds=" + m_FoldsDone + "/"
+            + m_Folds);
+        }
 
         // release slot
-        m_Owner.completedEvaluation(classifier, null);
+        m_Owner.completedEvaluation(m_Setup, null);
       } catch (Exception e) {
         if (m_Owner.getDebug()) {
           System.err
             .println("Encountered exception while evaluating classifier, skipping!");
           System.err.println("- Values....: " + m_Values);
-          System.err.println("- Filter....: "
-            + ((filter != null) ? Utils.toCommandLine(filter) : "-no setup-"));
           System.err.println("- Classifier: "
-            + ((classifier != null) ? Utils.toCommandLine(classifier)
-              : "-no setup-"));
+            + ((m_Setup != null) ? Utils.toCommandLine(m_Setup) : "-no setup-"));
           e.printStackTrace();
         }
+        m_FoldsDone = m_Folds;
         m_Owner.completedEvaluation(m_Values, e);
       }
 
       // clean up
-      m_Owner = null;
-      m_Data = null;
+      if (m_FoldsDone == m_Folds) {
+        m_Owner = null;
+        m_Data = null;
+        m_CVData = null;
+        m_Eval = null;
+      }
     }
 
     /**
@@ -2123,6 +2267,9 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
   /** The number of threads to have executing at any one time. */
   protected int m_NumExecutionSlots = 1;
 
+  /** the number of successive halving rounds (0 = off). */
+  protected int m_SuccessiveHalving = 0;
+
   /** Pool of threads to train models with. */
   protected transient ThreadPoolExecutor m_ExecutorPool;
 
@@ -2322,6 +2469,13 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
       + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
       "-num-slots <num>"));
 
+    result.addElement(new Option(
+      "\tThe number of successive halving rounds. In each round, the points\n"
+        + "\tof a grid are evaluated on half as many folds as in the next\n"
+        + "\tand only the better half of them is kept.\n"
+        + "\t(default: 0 - i.e. all points are evaluated on all folds)",
+      "successive-halving", 1, "-successive-halving <num>"));
+
     result.addAll(Collections.list(super.listOptions()));
 
     if (getFilter() instanceof OptionHandler) {
@@ -2405,6 +2559,9 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     result.add("-num-slots");
     result.add("" + getNumExecutionSlots());
 
+    result.add("-successive-halving");
+    result.add("" + getSuccessiveHalving());
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -2562,6 +2719,14 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
    * </pre>
    * 
    * <pre>
+   * -successive-halving &lt;num&gt;
+   *  The number of successive halving rounds. In each round, the points
+   *  of a grid are evaluated on half as many folds as in the next
+   *  and only the better half of them is kept.
+   *  (default: 0 - i.e. all points are evaluated on all folds)
+   * </pre>
+   * 
+   * <pre>
    * -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)
@@ -2791,6 +2956,13 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
       setNumExecutionSlots(1);
     }
 
+    tmpStr = Utils.getOption("successive-halving", options);
+    if (tmpStr.length() != 0) {
+      setSuccessiveHalving(Integer.parseInt(tmpStr));
+    } else {
+      setSuccessiveHalving(0);
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -3414,6 +3586,39 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     return m_NumExecutionSlots;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String successiveHalvingTipText() {
+    return "The number of successive halving rounds: the points of a grid "
+      + "are first evaluated on a subset of the folds and only the better half "
+      + "of them is evaluated further in each round (0 evaluates all points on "
+      + "all folds).";
+  }
+
+  /**
+   * Sets the number of successive halving rounds.
+   * 
+   * @param value the number of rounds (0 = off)
+   */
+  public void setSuccessiveHalving(int value) {
+    if (value >= 0) {
+      m_SuccessiveHalving = value;
+    }
+  }
+
+  /**
+   * Returns the number of successive halving rounds.
+   * 
+   * @return the number of rounds (0 = off)
+   */
+  public int getSuccessiveHalving() {
+    return m_SuccessiveHalving;
+  }
+
   /**
    * Adds the performance to the cache and the current list of performances.
    * Does nothing if at least one setup failed.
@@ -3716,9 +3921,77 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     m_Exception = exception;
   }
 
+  /**
+   * returns the number of folds after each round of the evaluation of a grid:
+   * with successive halving, the number of folds is halved for every round
+   * before the last one (which uses all folds).
+   * 
+   * @param cv the number of folds for the cross-validation
+   * @return the number of folds for each round
+   */
+  protected int[] determineRounds(int cv) {
+    Vector<Integer> folds;
+    int[] result;
+    int i;
+
+    folds = new Vector<Integer>();
+    folds.add(cv);
+    for (i = 0; i < m_SuccessiveHalving && folds.get(0) > 1; i++) {
+      folds.add(0, (folds.get(0) + 1) / 2);
+    }
+
+    result = new int[folds.size()];
+    for (i = 0; i < result.length; i++) {
+      result[i] = folds.get(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * runs the given evaluations in the thread pool and waits for them to
+   * finish.
+   * 
+   * @param tasks the evaluations to run
+   * @throws Exception if an evaluation fails
+   */
+  protected void evaluate(Vector<EvaluationTask> tasks) throws Exception {
+    int i;
+
+    startExecutorPool();
+
+    m_Failed = 0;
+    m_Completed = 0;
+    m_NumSetups = tasks.size();
+
+    for (i = 0; i < tasks.size(); i++) {
+      // executor pool gets shut down and m_ExcecutorPool set to null as soon
+      // as a task fails, so only launch if there are no errors at this point.
+      synchronized (this) {
+        if (m_Failed > 0) {
+          break;
+        }
+        m_ExecutorPool.execute(tasks.get(i));
+      }
+    }
+
+    // wait for execution to finish
+    block(true);
+
+    if (m_Failed > 0) {
+      if (m_Exception != null) {
+        throw m_Exception;
+      } else {
+        throw new WekaException("Searched stopped due to failed setup!");
+      }
+    }
+  }
+
   /**
    * determines the best values-pair for the given grid, using CV with specified
-   * number of folds.
+   * number of folds. With successive halving, the points are first evaluated
+   * on a subset of the folds and only the better half of them is evaluated
+   * further in each round.
    * 
    * @param grid the grid to work on
    * @param inst the data to work with
@@ -3737,8 +4010,11 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     Performance p1;
     Performance p2;
     EvaluationTask newTask;
+    Vector<EvaluationTask> tasks;
+    int[] rounds;
+    int round;
+    int keep;
 
-    startExecutorPool();
     m_Performances.clear();
 
     log("Determining best pair with " + cv + "-fold CV in Grid:\n" + grid
@@ -3751,9 +4027,7 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
     }
 
     allCached = true;
-    m_Failed = 0;
-    m_Completed = 0;
-    m_NumSetups = grid.width() * grid.height();
+    tasks = new Vector<EvaluationTask>();
 
     for (i = 0; i < size; i++) {
       if (m_Traversal == TRAVERSAL_BY_COLUMN) {
@@ -3768,46 +4042,55 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
         // already calculated?
         if (m_Cache.isCached(cv, values)) {
           m_Performances.add(m_Cache.get(cv, values));
-          m_Completed++;
           log("" + m_Performances.get(m_Performances.size() - 1)
             + ": cached=true");
         } else {
           allCached = false;
-          newTask = new EvaluationTask(this, m_Generator, inst, values, cv,
-            m_Evaluation);
-
-          // executor pool gets shut down and m_ExcecutorPool set to null as
-          // soon
-          // as a task fails, so only launch if there are no errors at this
-          // point.
-          if (m_Failed == 0) {
-            m_ExecutorPool.execute(newTask);
+          // resume evaluation that was stopped early in a previous grid
+          newTask = m_Cache.getPartial(cv, values);
+          if (newTask == null) {
+            newTask = new EvaluationTask(this, m_Generator, inst, values, cv,
+              m_Evaluation);
+            m_Cache.addPartial(cv, newTask);
           }
-        }
-
-        // error encountered?
-        if (m_Failed > 0) {
-          break;
+          tasks.add(newTask);
         }
       }
     }
 
-    // wait for execution to finish
-    // if (m_Completed + m_Failed < m_NumSetups && m_Failed == 0) {
-    block(true);
-    // }
-
     if (allCached) {
       log("All points were already cached - abnormal state!");
       throw new IllegalStateException(
         "All points were already cached - abnormal state!");
     }
 
-    if (m_Failed > 0) {
-      if (m_Exception != null) {
-        throw m_Exception;
-      } else {
-        throw new WekaException("Searched stopped due to failed setup!");
+    rounds = determineRounds(cv);
+    for (round = 0; round < rounds.length; round++) {
+      for (i = 0; i < tasks.size(); i++) {
+        tasks.get(i).setFoldsTarget(rounds[round]);
+      }
+      evaluate(tasks);
+
+      // drop the worse half, but keep points that tie with the last one kept
+      if ((round < rounds.length - 1) && (tasks.size() > 1)) {
+        Collections.sort(tasks, new Comparator<EvaluationTask>() {
+          @Override
+          public int compare(EvaluationTask o1, EvaluationTask o2) {
+            return new PerformanceComparator(m_Evaluation).compare(
+              o2.getPerformance(), o1.getPerformance());
+          }
+        });
+        keep = (tasks.size() + 1) / 2;
+        while ((keep < tasks.size())
+          && Utils.eq(
+            tasks.get(keep).getPerformance().getPerformance(m_Evaluation),
+            tasks.get(keep - 1).getPerformance().getPerformance(m_Evaluation))) {
+          keep++;
+        }
+        while (tasks.size() > keep) {
+          log("" + tasks.remove(tasks.size() - 1).getPerformance()
+            + ": dropped after " + rounds[round] + "/" + cv + " folds");
+        }
       }
     }
 
@@ -3927,6 +4210,8 @@ public class GridSearch extends RandomizableSingleClassifierEnhancer implements
       } while (!finished);
     }
 
+    m_Cache.clearPartial();
+
     log("\nFinal result: " + result);
 
     return result;
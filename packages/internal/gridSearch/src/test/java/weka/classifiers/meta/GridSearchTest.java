@@ -22,7 +22,11 @@ package weka.classifiers.meta;
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.CheckClassifier;
 import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
 import weka.core.SelectedTag;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -89,6 +93,60 @@ public class GridSearchTest
     return result;
   }
 
+  /**
+   * Tests that successive halving selects the same point as the full
+   * cross-validation if no points are dropped. The properties of the grid
+   * have no effect on the nominal data, so all points tie and are kept.
+   */
+  public void testSuccessiveHalvingWithoutDropping() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(4);
+    test.setNumNumeric(0);
+    test.setNumInstances(60);
+    Instances data = test.generate();
+
+    GridSearch full = (GridSearch) getClassifier();
+    full.setYProperty("classifier.seed");
+    full.setYMin(1);
+    full.setYMax(4);
+    full.setYStep(1);
+    full.buildClassifier(data);
+
+    GridSearch halving = (GridSearch) getClassifier();
+    halving.setYProperty("classifier.seed");
+    halving.setYMin(1);
+    halving.setYMax(4);
+    halving.setYStep(1);
+    halving.setSuccessiveHalving(2);
+    halving.buildClassifier(data);
+
+    assertEquals(full.getValues().toString(), halving.getValues().toString());
+    for (int i = 0; i < data.numInstances(); i++) {
+      assertTrue(Utils.eq(full.classifyInstance(data.instance(i)),
+        halving.classifyInstance(data.instance(i))));
+    }
+  }
+
+  /**
+   * Tests that the same point, computed from different minimums, hits the
+   * same cache entry.
+   */
+  public void testCacheKeyRounding() throws Exception {
+    TestInstances test = new TestInstances();
+    Instances data = test.generate();
+
+    GridSearch.PerformanceCache cache = new GridSearch.PerformanceCache();
+    cache.add(5, new GridSearch.Performance(new GridSearch.PointDouble(0.8,
+      2.0), new Evaluation(data)));
+
+    assertTrue(cache.isCached(5, new GridSearch.PointDouble(0.7999999999999999,
+      2.0)));
+    assertNotNull(cache.get(5, new GridSearch.PointDouble(0.8000000000000002,
+      2.0)));
+    assertFalse(cache.isCached(10, new GridSearch.PointDouble(0.8, 2.0)));
+    assertFalse(cache.isCached(5, new GridSearch.PointDouble(0.7, 2.0)));
+  }
+
   public static Test suite() {
     return new TestSuite(GridSearchTest.class);
   }
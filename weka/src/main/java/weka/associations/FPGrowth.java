@@ -21,19 +21,28 @@
 
 package weka.associations;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -147,6 +156,19 @@ import weka.core.Utils;
  *  with -transactions and/or -rules
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -output-rules &lt;file&gt;
+ *  Write all rules that meet the lower bound on minimum
+ *  support and the minimum metric to this file as they are found,
+ *  rather than keeping them in memory. (default = no file)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
@@ -424,9 +446,349 @@ public class FPGrowth extends AbstractAssociator implements
     }
   }
 
+  /**
+   * A frequent pattern tree stored in parallel int arrays rather than as
+   * linked node objects. Items are represented by their rank in the global
+   * item order (descending frequency, ties broken by name); the items of a
+   * conditional tree are numbered consecutively in the same order and
+   * mapped back to the global ranks. Node 0 is the root.
+   */
+  protected static class FPTree implements Serializable {
+
+    /** For serialization */
+    private static final long serialVersionUID = -3468271519374693113L;
+
+    /** The number of (local) items in this tree */
+    protected int m_numItems;
+
+    /** The global rank of each (local) item */
+    protected int[] m_globalItem;
+
+    /** The total count of each item in this tree */
+    protected int[] m_support;
+
+    /** The first node in the list of nodes of each item */
+    protected int[] m_headerFirst;
+
+    /** The child of the root for each item (-1 if none) */
+    protected int[] m_rootChild;
+
+    /** The number of nodes in the tree (including the root) */
+    protected int m_numNodes;
+
+    /** The item at each node */
+    protected int[] m_item;
+
+    /** The count at each node */
+    protected int[] m_count;
+
+    /** The parent of each node */
+    protected int[] m_parent;
+
+    /** The first child of each node (not used for the root) */
+    protected int[] m_firstChild;
+
+    /** The next sibling of each node */
+    protected int[] m_nextSibling;
+
+    /** The next node with the same item */
+    protected int[] m_nodeLink;
+
+    /**
+     * Construct a new (empty) tree.
+     * 
+     * @param globalItem the global ranks of the items in this tree, in
+     *          ascending order
+     */
+    public FPTree(int[] globalItem) {
+      m_numItems = globalItem.length;
+      m_globalItem = globalItem;
+      m_support = new int[m_numItems];
+      m_headerFirst = new int[m_numItems];
+      m_rootChild = new int[m_numItems];
+      Arrays.fill(m_headerFirst, -1);
+      Arrays.fill(m_rootChild, -1);
+
+      int capacity = 64;
+      m_item = new int[capacity];
+      m_count = new int[capacity];
+      m_parent = new int[capacity];
+      m_firstChild = new int[capacity];
+      m_nextSibling = new int[capacity];
+      m_nodeLink = new int[capacity];
+
+      // the root
+      m_item[0] = -1;
+      m_parent[0] = -1;
+      m_firstChild[0] = -1;
+      m_nextSibling[0] = -1;
+      m_nodeLink[0] = -1;
+      m_numNodes = 1;
+    }
+
+    /**
+     * Adds a new node to the tree.
+     * 
+     * @param item the item at the new node
+     * @param parent the parent of the new node
+     * @return the index of the new node
+     */
+    protected int newNode(int item, int parent) {
+      if (m_numNodes == m_item.length) {
+        int capacity = m_item.length * 2;
+        m_item = Arrays.copyOf(m_item, capacity);
+        m_count = Arrays.copyOf(m_count, capacity);
+        m_parent = Arrays.copyOf(m_parent, capacity);
+        m_firstChild = Arrays.copyOf(m_firstChild, capacity);
+        m_nextSibling = Arrays.copyOf(m_nextSibling, capacity);
+        m_nodeLink = Arrays.copyOf(m_nodeLink, capacity);
+      }
+
+      int node = m_numNodes++;
+      m_item[node] = item;
+      m_count[node] = 0;
+      m_parent[node] = parent;
+      m_firstChild[node] = -1;
+      m_nextSibling[node] = -1;
+      m_nodeLink[node] = m_headerFirst[item];
+      m_headerFirst[item] = node;
+
+      return node;
+    }
+
+    /**
+     * Insert a transaction into the tree.
+     * 
+     * @param items the (local) items of the transaction in ascending order
+     * @param length the number of items in the transaction
+     * @param incr the amount by which to increase the counts
+     */
+    public void addTransaction(int[] items, int length, int incr) {
+      int node = 0;
+      for (int i = 0; i < length; i++) {
+        int item = items[i];
+        int child;
+        if (node == 0) {
+          child = m_rootChild[item];
+          if (child < 0) {
+            child = newNode(item, 0);
+            m_rootChild[item] = child;
+          }
+        } else {
+          child = m_firstChild[node];
+          while (child >= 0 && m_item[child] != item) {
+            child = m_nextSibling[child];
+          }
+          if (child < 0) {
+            child = newNode(item, node);
+            m_nextSibling[child] = m_firstChild[node];
+            m_firstChild[node] = child;
+          }
+        }
+        m_count[child] += incr;
+        m_support[item] += incr;
+        node = child;
+      }
+    }
+
+    /**
+     * Get the number of (local) items in this tree.
+     * 
+     * @return the number of items
+     */
+    public int numItems() {
+      return m_numItems;
+    }
+
+    /**
+     * Get the support of an item in this tree.
+     * 
+     * @param item the (local) item
+     * @return the support
+     */
+    public int getSupport(int item) {
+      return m_support[item];
+    }
+
+    /**
+     * Get the global rank of an item.
+     * 
+     * @param item the (local) item
+     * @return the global rank of the item
+     */
+    public int getGlobalItem(int item) {
+      return m_globalItem[item];
+    }
+
+    /**
+     * Get the support of an item set in this tree, by following the node
+     * list of its last item and checking the paths to the root.
+     * 
+     * @param items the (local) items in ascending order
+     * @param length the number of items
+     * @return the support of the item set
+     */
+    public int getSupport(int[] items, int length) {
+      if (length == 1) {
+        return m_support[items[0]];
+      }
+
+      int result = 0;
+      for (int n = m_headerFirst[items[length - 1]]; n >= 0; n = m_nodeLink[n]) {
+        int k = length - 2;
+        for (int p = m_parent[n]; p > 0 && k >= 0; p = m_parent[p]) {
+          int item = m_item[p];
+          if (item == items[k]) {
+            k--;
+          } else if (item < items[k]) {
+            // the items on the path are in descending order
+            break;
+          }
+        }
+        if (k < 0) {
+          result += m_count[n];
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Builds the conditional tree of an item from its conditional pattern
+     * base (the paths from the item's nodes to the root), only keeping the
+     * items that are frequent in the pattern base.
+     * 
+     * @param item the (local) item
+     * @param minSupport the minimum support
+     * @param counts scratch space with at least numItems() zero entries;
+     *          returned with all entries zero
+     * @param touched scratch space for at least numItems() items
+     * @return the conditional tree, or null if it is empty
+     */
+    public FPTree conditionalTree(int item, int minSupport, int[] counts,
+      int[] touched) {
+
+      // count the items in the conditional pattern base
+      int numTouched = 0;
+      for (int n = m_headerFirst[item]; n >= 0; n = m_nodeLink[n]) {
+        int count = m_count[n];
+        for (int p = m_parent[n]; p > 0; p = m_parent[p]) {
+          int pItem = m_item[p];
+          if (counts[pItem] == 0) {
+            touched[numTouched++] = pItem;
+          }
+          counts[pItem] += count;
+        }
+      }
+
+      // number the frequent items in ascending order (counts is used for
+      // the mapping from now on: local index + 1, or 0)
+      Arrays.sort(touched, 0, numTouched);
+      int numFrequent = 0;
+      for (int i = 0; i < numTouched; i++) {
+        if (counts[touched[i]] >= minSupport) {
+          touched[numFrequent++] = touched[i];
+          counts[touched[i]] = -numFrequent;
+        } else {
+          counts[touched[i]] = 0;
+        }
+      }
+
+      FPTree result = null;
+      if (numFrequent > 0) {
+        int[] globalItem = new int[numFrequent];
+        for (int i = 0; i < numFrequent; i++) {
+          globalItem[i] = m_globalItem[touched[i]];
+        }
+        result = new FPTree(globalItem);
+
+        int[] path = new int[numFrequent];
+        for (int n = m_headerFirst[item]; n >= 0; n = m_nodeLink[n]) {
+          int length = 0;
+          for (int p = m_parent[n]; p > 0; p = m_parent[p]) {
+            int local = -counts[m_item[p]] - 1;
+            if (local >= 0) {
+              path[length++] = local;
+            }
+          }
+          // the path was collected from the bottom up
+          for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int t = path[i];
+            path[i] = path[j];
+            path[j] = t;
+          }
+          result.addTransaction(path, length, m_count[n]);
+        }
+      }
+
+      // reset the scratch space
+      for (int i = 0; i < numFrequent; i++) {
+        counts[touched[i]] = 0;
+      }
+
+      return result;
+    }
+
+    /**
+     * Get a textual description of the tree.
+     * 
+     * @param items the items corresponding to the global ranks
+     * @return the textual description of the tree
+     */
+    public String toString(BinaryItem[] items) {
+      StringBuffer result = new StringBuffer();
+      result.append("+ ROOT\n");
+      for (int i = 0; i < m_numItems; i++) {
+        if (m_rootChild[i] >= 0) {
+          toString(result, m_rootChild[i], "|  ", items);
+        }
+      }
+      return result.toString();
+    }
+
+    /**
+     * Generate a dot graph description string for the tree.
+     * 
+     * @param text a StringBuffer to store the graph description in.
+     * @param items the items corresponding to the global ranks
+     */
+    public void graphFPTree(StringBuffer text, BinaryItem[] items) {
+      for (int n = 1; n < m_numNodes; n++) {
+        text.append("N" + n);
+        text.append(" [label=\"");
+        text.append(items[m_globalItem[m_item[n]]].toString() + " ("
+          + m_count[n] + ")\\n");
+        text.append("\"]\n");
+        text.append("N" + m_parent[n] + "->" + "N" + n + "\n");
+      }
+    }
+
+    /**
+     * Appends a textual description of a subtree.
+     * 
+     * @param buffer the buffer to append to
+     * @param node the root of the subtree
+     * @param prefix the string to use as a prefix for indenting nodes
+     * @param items the items corresponding to the global ranks
+     */
+    protected void toString(StringBuffer buffer, int node, String prefix,
+      BinaryItem[] items) {
+      buffer.append(prefix).append("|  ")
+        .append(items[m_globalItem[m_item[node]]].toString()).append(" (")
+        .append(m_count[node]).append(")\n");
+      for (int n = m_firstChild[node]; n >= 0; n = m_nextSibling[n]) {
+        toString(buffer, n, prefix + "|  ", items);
+      }
+    }
+  }
+
   /**
    * This class holds the counts for projected tree nodes and header lists.
+   * 
+   * @deprecated only kept for {@link FPGrowth#graph(FPTreeRoot)}; the
+   *             FP-tree is now an {@link FPTree}
    */
+  @Deprecated
   protected static class ShadowCounts implements Serializable {
 
     /** For serialization */
@@ -484,7 +846,11 @@ public class FPGrowth extends AbstractAssociator implements
 
   /**
    * A node in the FP-tree.
+   * 
+   * @deprecated only kept for {@link FPGrowth#graph(FPTreeRoot)}; the
+   *             FP-tree is now an {@link FPTree}
    */
+  @Deprecated
   protected static class FPTreeNode implements Serializable {
 
     /** For serialization */
@@ -680,8 +1046,12 @@ public class FPGrowth extends AbstractAssociator implements
 
   /**
    * Root of the FPTree
+   * 
+   * @deprecated only kept for {@link FPGrowth#graph(FPTreeRoot)}; the
+   *             FP-tree is now an {@link FPTree}
    */
-  private static class FPTreeRoot extends FPTreeNode {
+  @Deprecated
+  protected static class FPTreeRoot extends FPTreeNode {
 
     /** For serialization */
     private static final long serialVersionUID = 632150939785333297L;
@@ -969,6 +1339,18 @@ public class FPGrowth extends AbstractAssociator implements
   /** If set, then only output rules containing these itmes */
   protected String m_rulesMustContain = "";
 
+  /** The number of threads to use for mining the FP-tree */
+  protected int m_numExecutionSlots = 1;
+
+  /**
+   * If not a directory, rules are written to this file as they are found
+   * rather than kept in memory
+   */
+  protected File m_ruleOutputFile = new File(System.getProperty("user.dir"));
+
+  /** The number of rules written to the output file (-1 if not streamed) */
+  protected int m_numRulesWritten = -1;
+
   /**
    * Returns default capabilities of the classifier.
    * 
@@ -1197,36 +1579,56 @@ public class FPGrowth extends AbstractAssociator implements
    * Inserts a single instance into the FPTree.
    * 
    * @param current the instance to insert
-   * @param singletons the singleton item sets
+   * @param ranks the rank of each attribute's item in the tree (-1 if the
+   *          item is not frequent)
    * @param tree the tree to insert into
-   * @param minSupport the minimum support threshold
+   * @param transaction scratch space for the transaction
    */
-  private void insertInstance(Instance current,
-    ArrayList<BinaryItem> singletons, FPTreeRoot tree, int minSupport) {
-    ArrayList<BinaryItem> transaction = new ArrayList<BinaryItem>();
+  private void insertInstance(Instance current, int[] ranks, FPTree tree,
+    int[] transaction) {
+    int length = 0;
     if (current instanceof SparseInstance) {
       for (int j = 0; j < current.numValues(); j++) {
-        int attIndex = current.index(j);
-        if (singletons.get(attIndex).getFrequency() >= minSupport) {
-          transaction.add(singletons.get(attIndex));
+        int rank = ranks[current.index(j)];
+        if (rank >= 0) {
+          transaction[length++] = rank;
         }
       }
-      Collections.sort(transaction);
-      tree.addItemSet(transaction, 1);
     } else {
       for (int j = 0; j < current.numAttributes(); j++) {
         if (!current.isMissing(j)) {
           if (current.attribute(j).numValues() == 1
             || current.value(j) == m_positiveIndex - 1) {
-            if (singletons.get(j).getFrequency() >= minSupport) {
-              transaction.add(singletons.get(j));
+            if (ranks[j] >= 0) {
+              transaction[length++] = ranks[j];
             }
           }
         }
       }
-      Collections.sort(transaction);
-      tree.addItemSet(transaction, 1);
     }
+    Arrays.sort(transaction, 0, length);
+    tree.addTransaction(transaction, length, 1);
+  }
+
+  /**
+   * Get the items that meet the minimum support threshold, in the order used
+   * by the FP-tree (descending frequency).
+   * 
+   * @param singletons the singleton item sets
+   * @param minSupport the minimum support
+   * @return the frequent items
+   */
+  protected BinaryItem[] getFrequentItems(ArrayList<BinaryItem> singletons,
+    int minSupport) {
+    ArrayList<BinaryItem> frequent = new ArrayList<BinaryItem>();
+    for (BinaryItem b : singletons) {
+      if (b.getFrequency() >= minSupport) {
+        frequent.add(b);
+      }
+    }
+    Collections.sort(frequent);
+
+    return frequent.toArray(new BinaryItem[frequent.size()]);
   }
 
   /**
@@ -1235,14 +1637,25 @@ public class FPGrowth extends AbstractAssociator implements
    * minimum support threshold are inserted.
    * 
    * @param singletons the singleton item sets
-   * @param data the Instances containing the transactions
-   * @param minSupport the minimum support
-   * @return the root of the tree
+   * @param frequentItems the items that meet the minimum support, in the
+   *          order returned by getFrequentItems()
+   * @param dataSource the Instances or ArffLoader providing the transactions
+   * @return the tree
+   * @throws Exception if the data can't be read
    */
-  protected FPTreeRoot buildFPTree(ArrayList<BinaryItem> singletons,
-    Object dataSource, int minSupport) throws Exception {
+  protected FPTree buildFPTree(ArrayList<BinaryItem> singletons,
+    BinaryItem[] frequentItems, Object dataSource) throws Exception {
 
-    FPTreeRoot tree = new FPTreeRoot();
+    int[] ranks = new int[singletons.size()];
+    Arrays.fill(ranks, -1);
+    int[] globalItem = new int[frequentItems.length];
+    for (int i = 0; i < frequentItems.length; i++) {
+      ranks[frequentItems[i].getAttribute().index()] = i;
+      globalItem[i] = i;
+    }
+
+    FPTree tree = new FPTree(globalItem);
+    int[] transaction = new int[frequentItems.length];
     Instances data = null;
     if (dataSource instanceof Instances) {
       data = (Instances) dataSource;
@@ -1252,14 +1665,14 @@ public class FPGrowth extends AbstractAssociator implements
 
     if (dataSource instanceof Instances) {
       for (int i = 0; i < data.numInstances(); i++) {
-        insertInstance(data.instance(i), singletons, tree, minSupport);
+        insertInstance(data.instance(i), ranks, tree, transaction);
       }
     } else if (dataSource instanceof weka.core.converters.ArffLoader) {
       weka.core.converters.ArffLoader loader = (weka.core.converters.ArffLoader) dataSource;
       Instance current = null;
       int count = 0;
       while ((current = loader.getNextInstance(data)) != null) {
-        insertInstance(current, singletons, tree, minSupport);
+        insertInstance(current, ranks, tree, transaction);
         count++;
         if (count % m_offDiskReportingFrequency == 0) {
           System.err.println("build tree done: " + count);
@@ -1271,118 +1684,300 @@ public class FPGrowth extends AbstractAssociator implements
   }
 
   /**
-   * Construct the frequent pattern tree by inserting each transaction in the
-   * data into the tree. Only those items from each transaction that meet the
-   * minimum support threshold are inserted.
-   * 
-   * @param singletons the singleton item sets
-   * @param data the Instances containing the transactions
-   * @param minSupport the minimum support
-   * @return the root of the tree
-   */
-  /*
-   * protected FPTreeRoot buildFPTree(ArrayList<BinaryItem> singletons,
-   * Instances data, int minSupport) {
-   * 
-   * FPTreeRoot tree = new FPTreeRoot();
-   * 
-   * for (int i = 0; i < data.numInstances(); i++) { Instance current =
-   * data.instance(i); ArrayList<BinaryItem> transaction = new
-   * ArrayList<BinaryItem>(); if (current instanceof SparseInstance) { for (int
-   * j = 0; j < current.numValues(); j++) { int attIndex = current.index(j); if
-   * (singletons.get(attIndex).getFrequency() >= minSupport) {
-   * transaction.add(singletons.get(attIndex)); } }
-   * Collections.sort(transaction); tree.addItemSet(transaction, 1); } else {
-   * for (int j = 0; j < data.numAttributes(); j++) { if (!current.isMissing(j))
-   * { if (current.attribute(j).numValues() == 1 || current.value(j) ==
-   * m_positiveIndex - 1) { if (singletons.get(j).getFrequency() >= minSupport)
-   * { transaction.add(singletons.get(j)); } } } }
-   * Collections.sort(transaction); tree.addItemSet(transaction, 1); } }
-   * 
-   * return tree; }
+   * Writes association rules to a file as soon as their item sets are found,
+   * so that neither the item sets nor the rules need to be kept in memory.
+   * The supports of the premise and consequence are looked up in the FP-tree,
+   * with a bounded cache of the most recently used supports.
    */
+  protected class RuleWriter {
 
-  /**
-   * Find large item sets in the FP-tree.
-   * 
-   * @param tree the root of the tree to mine
-   * @param largeItemSets holds the large item sets found
-   * @param recursionLevel the recursion level for the current projected counts
-   * @param conditionalItems the current set of items that the current
-   *          (projected) tree is conditional on
-   * @param minSupport the minimum acceptable support
-   */
-  protected void mineTree(FPTreeRoot tree, FrequentItemSets largeItemSets,
-    int recursionLevel, FrequentBinaryItemSet conditionalItems, int minSupport) {
+    /** The maximum number of supports to cache */
+    protected static final int CACHE_SIZE = 100000;
+
+    /** The writer to write to */
+    protected PrintWriter m_writer;
+
+    /** The FP-tree of the data */
+    protected FPTree m_tree;
+
+    /** The items corresponding to the global ranks */
+    protected BinaryItem[] m_items;
+
+    /** The upper bound on the support of a rule */
+    protected int m_upperBoundSupport;
+
+    /** The lower bound on the support of a rule */
+    protected int m_lowerBoundSupport;
+
+    /** If not null, only rules containing these items are written */
+    protected ArrayList<Item> m_mustContain;
 
-    if (!tree.isEmpty(recursionLevel)) {
-      if (m_maxItems > 0 && recursionLevel >= m_maxItems) {
-        // don't mine any further
+    /** The number of rules written */
+    protected int m_count;
+
+    /** The most recently used supports, keyed by the item sets */
+    protected Map<List<Integer>, Integer> m_supportCache = new LinkedHashMap<List<Integer>, Integer>(
+      16, 0.75f, true) {
+
+      /** For serialization */
+      private static final long serialVersionUID = -1924530212538123451L;
+
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<List<Integer>, Integer> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+
+    /**
+     * Constructor.
+     * 
+     * @param writer the writer to write to
+     * @param tree the FP-tree of the data
+     * @param items the items corresponding to the global ranks
+     * @param upperBoundSupport the upper bound on the support of a rule
+     * @param lowerBoundSupport the lower bound on the support of a rule
+     * @param mustContain only write rules containing these items (may be
+     *          null)
+     */
+    public RuleWriter(PrintWriter writer, FPTree tree, BinaryItem[] items,
+      int upperBoundSupport, int lowerBoundSupport, ArrayList<Item> mustContain) {
+      m_writer = writer;
+      m_tree = tree;
+      m_items = items;
+      m_upperBoundSupport = upperBoundSupport;
+      m_lowerBoundSupport = lowerBoundSupport;
+      m_mustContain = mustContain;
+    }
+
+    /**
+     * Generates the rules for a frequent item set (in the same way as
+     * generateRulesBruteForce()) and writes those that meet the constraints.
+     * 
+     * @param itemSet the global ranks of the items in ascending order
+     * @param length the number of items
+     * @param support the support of the item set
+     */
+    public void itemSetFound(int[] itemSet, int length, int support) {
+      if (length < 2 || support < m_lowerBoundSupport
+        || support > m_upperBoundSupport) {
         return;
       }
 
-      Map<BinaryItem, FPTreeRoot.Header> headerTable = tree.getHeaderTable();
-      Set<BinaryItem> keys = headerTable.keySet();
-      // System.err.println("Number of freq item sets collected " +
-      // largeItemSets.size());
-      Iterator<BinaryItem> i = keys.iterator();
-      while (i.hasNext()) {
-        BinaryItem item = i.next();
-        FPTreeRoot.Header itemHeader = headerTable.get(item);
-
-        // check for minimum support at this level
-        int support = itemHeader.getProjectedCounts().getCount(recursionLevel);
-        if (support >= minSupport) {
-          // process header list at this recursion level
-          for (FPTreeNode n : itemHeader.getHeaderList()) {
-            // push count up path to root
-            int currentCount = n.getProjectedCount(recursionLevel);
-            if (currentCount > 0) {
-              FPTreeNode temp = n.getParent();
-              while (temp != tree) {
-                // set/increase for the node
-                temp.increaseProjectedCount(recursionLevel + 1, currentCount);
-
-                // set/increase for the header table
-                headerTable.get(temp.getItem()).getProjectedCounts()
-                  .increaseCount(recursionLevel + 1, currentCount);
-
-                temp = temp.getParent();
-              }
-            }
+      int[] premise = new int[length];
+      int[] consequence = new int[length];
+      long all = (1L << length) - 1;
+      for (long subset = 1; subset < all; subset++) {
+        int numPremise = 0;
+        int numConsequence = 0;
+        for (int i = 0; i < length; i++) {
+          if ((subset & (1L << i)) != 0) {
+            premise[numPremise++] = itemSet[i];
+          } else {
+            consequence[numConsequence++] = itemSet[i];
           }
+        }
 
-          FrequentBinaryItemSet newConditional = (FrequentBinaryItemSet) conditionalItems
-            .clone();
+        DefaultAssociationRule candidate = new DefaultAssociationRule(
+          toItems(premise, numPremise), toItems(consequence, numConsequence),
+          m_metric, getSupport(premise, numPremise), getSupport(consequence,
+            numConsequence), support, m_numInstances);
+        if (candidate.getPrimaryMetricValue() > m_metricThreshold
+          && (m_mustContain == null || candidate.containsItems(m_mustContain,
+            m_mustContainOR))) {
+          synchronized (this) {
+            m_writer.println(candidate.toString());
+            m_count++;
+          }
+        }
+      }
+    }
 
-          // this item gets added to the conditional items
-          newConditional.addItem(item);
-          newConditional.setSupport(support);
+    /**
+     * Get the support of an item set from the cache or the FP-tree.
+     * 
+     * @param itemSet the global ranks of the items in ascending order
+     * @param length the number of items
+     * @return the support of the item set
+     */
+    protected int getSupport(int[] itemSet, int length) {
+      List<Integer> key = new ArrayList<Integer>(length);
+      for (int i = 0; i < length; i++) {
+        key.add(itemSet[i]);
+      }
 
-          // now add this conditional item set to the list of large item sets
-          largeItemSets.addItemSet(newConditional);
+      Integer support;
+      synchronized (m_supportCache) {
+        support = m_supportCache.get(key);
+      }
+      if (support == null) {
+        support = m_tree.getSupport(itemSet, length);
+        synchronized (m_supportCache) {
+          m_supportCache.put(key, support);
+        }
+      }
 
-          // now recursively process the new tree
-          mineTree(tree, largeItemSets, recursionLevel + 1, newConditional,
-            minSupport);
+      return support.intValue();
+    }
 
-          // reverse the propagated counts
-          for (FPTreeNode n : itemHeader.getHeaderList()) {
-            FPTreeNode temp = n.getParent();
-            while (temp != tree) {
-              temp.removeProjectedCount(recursionLevel + 1);
-              temp = temp.getParent();
-            }
-          }
+    /**
+     * Converts global ranks to items.
+     * 
+     * @param ranks the global ranks
+     * @param length the number of ranks
+     * @return the items
+     */
+    protected Collection<Item> toItems(int[] ranks, int length) {
+      List<Item> result = new ArrayList<Item>(length);
+      for (int i = 0; i < length; i++) {
+        result.add(m_items[ranks[i]]);
+      }
+      return result;
+    }
 
-          // reverse the propagated counts in the header list
-          // at this recursion level
-          for (FPTreeRoot.Header h : headerTable.values()) {
-            h.getProjectedCounts().removeCount(recursionLevel + 1);
+    /**
+     * Get the number of rules written.
+     * 
+     * @return the number of rules written
+     */
+    public synchronized int getCount() {
+      return m_count;
+    }
+  }
+
+  /**
+   * Find large item sets in a (conditional) FP-tree.
+   * 
+   * @param tree the tree to mine
+   * @param suffix the global ranks of the items the tree is conditional on
+   * @param suffixLength the number of items the tree is conditional on
+   * @param minSupport the minimum acceptable support
+   * @param counts scratch space for building conditional trees
+   * @param touched scratch space for building conditional trees
+   * @param items the items corresponding to the global ranks
+   * @param largeItemSets collects the large item sets if rules are not
+   *          streamed
+   * @param ruleWriter writes the rules if they are streamed (null otherwise)
+   */
+  protected void mineTree(FPTree tree, int[] suffix, int suffixLength,
+    int minSupport, int[] counts, int[] touched, BinaryItem[] items,
+    List<FrequentBinaryItemSet> largeItemSets, RuleWriter ruleWriter) {
+
+    for (int i = tree.numItems() - 1; i >= 0; i--) {
+      mineItem(tree, i, suffix, suffixLength, minSupport, counts, touched,
+        items, largeItemSets, ruleWriter);
+    }
+  }
+
+  /**
+   * Adds an item of a (conditional) FP-tree to the items the tree is
+   * conditional on, records the resulting large item set and mines the
+   * item's conditional tree.
+   * 
+   * @param tree the tree to mine
+   * @param item the (local) item in the tree
+   * @param suffix the global ranks of the items the tree is conditional on
+   * @param suffixLength the number of items the tree is conditional on
+   * @param minSupport the minimum acceptable support
+   * @param counts scratch space for building conditional trees
+   * @param touched scratch space for building conditional trees
+   * @param items the items corresponding to the global ranks
+   * @param largeItemSets collects the large item sets if rules are not
+   *          streamed
+   * @param ruleWriter writes the rules if they are streamed (null otherwise)
+   */
+  protected void mineItem(FPTree tree, int item, int[] suffix,
+    int suffixLength, int minSupport, int[] counts, int[] touched,
+    BinaryItem[] items, List<FrequentBinaryItemSet> largeItemSets,
+    RuleWriter ruleWriter) {
+
+    // the suffix is in descending order of rank
+    suffix[suffixLength] = tree.getGlobalItem(item);
+    int length = suffixLength + 1;
+    int support = tree.getSupport(item);
+
+    if (ruleWriter != null) {
+      int[] itemSet = new int[length];
+      for (int i = 0; i < length; i++) {
+        itemSet[i] = suffix[length - 1 - i];
+      }
+      ruleWriter.itemSetFound(itemSet, length, support);
+    } else {
+      ArrayList<BinaryItem> itemSet = new ArrayList<BinaryItem>(length);
+      for (int i = length - 1; i >= 0; i--) {
+        itemSet.add(items[suffix[i]]);
+      }
+      largeItemSets.add(new FrequentBinaryItemSet(itemSet, support));
+    }
+
+    if (m_maxItems > 0 && length >= m_maxItems) {
+      // don't mine any further
+      return;
+    }
+
+    FPTree conditional = tree.conditionalTree(item, minSupport, counts,
+      touched);
+    if (conditional != null) {
+      mineTree(conditional, suffix, length, minSupport, counts, touched,
+        items, largeItemSets, ruleWriter);
+    }
+  }
+
+  /**
+   * Find all large item sets in the FP-tree. The conditional trees of the
+   * items in the tree's header table are mined in parallel if more than one
+   * execution slot is available.
+   * 
+   * @param tree the tree to mine
+   * @param minSupport the minimum acceptable support
+   * @param items the items corresponding to the global ranks
+   * @param ruleWriter writes the rules if they are streamed (null otherwise)
+   * @return the large item sets (empty if the rules are streamed)
+   * @throws Exception if mining fails
+   */
+  protected FrequentItemSets mineTree(final FPTree tree, final int minSupport,
+    final BinaryItem[] items, final RuleWriter ruleWriter) throws Exception {
+
+    FrequentItemSets largeItemSets = new FrequentItemSets(m_numInstances);
+    final int numItems = tree.numItems();
+    if (m_numExecutionSlots <= 1 || numItems < 2) {
+      List<FrequentBinaryItemSet> sets = new ArrayList<FrequentBinaryItemSet>();
+      mineTree(tree, new int[numItems], 0, minSupport, new int[numItems],
+        new int[numItems], items, sets, ruleWriter);
+      for (FrequentBinaryItemSet set : sets) {
+        largeItemSets.addItemSet(set);
+      }
+      return largeItemSets;
+    }
+
+    // the least frequent items have the largest conditional pattern bases,
+    // so these are submitted first
+    ExecutorService pool = Executors.newFixedThreadPool(m_numExecutionSlots);
+    try {
+      List<Future<List<FrequentBinaryItemSet>>> results = new ArrayList<Future<List<FrequentBinaryItemSet>>>();
+      for (int i = numItems - 1; i >= 0; i--) {
+        final int item = i;
+        results.add(pool.submit(new Callable<List<FrequentBinaryItemSet>>() {
+          @Override
+          public List<FrequentBinaryItemSet> call() throws Exception {
+            List<FrequentBinaryItemSet> sets = new ArrayList<FrequentBinaryItemSet>();
+            mineItem(tree, item, new int[numItems], 0, minSupport,
+              new int[numItems], new int[numItems], items, sets, ruleWriter);
+            return sets;
           }
+        }));
+      }
+
+      for (Future<List<FrequentBinaryItemSet>> result : results) {
+        for (FrequentBinaryItemSet set : result.get()) {
+          largeItemSets.addItemSet(set);
         }
       }
+    } finally {
+      pool.shutdown();
     }
+
+    return largeItemSets;
   }
 
   /**
@@ -1406,6 +2001,8 @@ public class FPGrowth extends AbstractAssociator implements
     m_transactionsMustContain = "";
     m_rulesMustContain = "";
     m_mustContainOR = false;
+    m_numExecutionSlots = 1;
+    m_ruleOutputFile = new File(System.getProperty("user.dir"));
   }
 
   /**
@@ -1801,6 +2398,70 @@ public class FPGrowth extends AbstractAssociator implements
     return m_findAllRulesForSupportLevel;
   }
 
+  /**
+   * Tip text for this property suitable for displaying in the GUI.
+   * 
+   * @return the tip text for this property.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for mining the FP-tree. The "
+      + "conditional trees of the frequent items are mined in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for mining the tree.
+   * 
+   * @param slots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for mining the tree.
+   * 
+   * @return the number of slots to use.
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Tip text for this property suitable for displaying in the GUI.
+   * 
+   * @return the tip text for this property.
+   */
+  public String ruleOutputFileTipText() {
+    return "If set to a file (rather than a directory), all rules that meet "
+      + "the lower bound on minimum support and the minimum metric are "
+      + "written to this file as they are found, instead of being kept in "
+      + "memory. The iterative support reduction is not performed in this "
+      + "mode and the rules are not sorted.";
+  }
+
+  /**
+   * Set the file to write the rules to. Null or a directory turns off
+   * writing the rules to a file.
+   * 
+   * @param file the file to write the rules to.
+   */
+  public void setRuleOutputFile(File file) {
+    if (file == null || file.getPath().length() == 0) {
+      file = new File(System.getProperty("user.dir"));
+    }
+    m_ruleOutputFile = file;
+  }
+
+  /**
+   * Get the file to write the rules to. Rules are only written to a file if
+   * it does not represent a directory.
+   * 
+   * @return the file to write the rules to.
+   */
+  public File getRuleOutputFile() {
+    return m_ruleOutputFile;
+  }
+
   /**
    * Set how often to report some progress when the data is being read
    * incrementally off of the disk rather than loaded into memory.
@@ -1910,6 +2571,11 @@ public class FPGrowth extends AbstractAssociator implements
     String string9 = "\tOnly print rules that contain these items. (default = no restriction)";
     String string10 = "\tUse OR instead of AND for must contain list(s). Use in conjunction"
       + "\n\twith -transactions and/or -rules";
+    String string11 = "\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)";
+    String string12 = "\tWrite all rules that meet the lower bound on minimum\n\t"
+      + "support and the minimum metric to this file as they are found,\n\t"
+      + "rather than keeping them in memory. (default = no file)";
 
     newVector.add(new Option(string00, "P", 1,
       "-P <attribute index of positive value>"));
@@ -1931,6 +2597,9 @@ public class FPGrowth extends AbstractAssociator implements
     newVector.add(new Option(string9, "rules", 1,
       "-rules <comma separated list " + "of attribute names>"));
     newVector.add(new Option(string10, "use-or", 0, "-use-or"));
+    newVector.add(new Option(string11, "num-slots", 1, "-num-slots <num>"));
+    newVector.add(new Option(string12, "output-rules", 1,
+      "-output-rules <file>"));
 
     return newVector.elements();
   }
@@ -2010,6 +2679,19 @@ public class FPGrowth extends AbstractAssociator implements
    *  with -transactions and/or -rules
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -output-rules &lt;file&gt;
+   *  Write all rules that meet the lower bound on minimum
+   *  support and the minimum metric to this file as they are found,
+   *  rather than keeping them in memory. (default = no file)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -2028,6 +2710,8 @@ public class FPGrowth extends AbstractAssociator implements
     String deltaString = Utils.getOption("D", options);
     String transactionsString = Utils.getOption("transactions", options);
     String rulesString = Utils.getOption("rules", options);
+    String numSlotsString = Utils.getOption("num-slots", options);
+    String outputRulesString = Utils.getOption("output-rules", options);
 
     if (positiveIndexString.length() != 0) {
       setPositiveIndex(Integer.parseInt(positiveIndexString));
@@ -2070,6 +2754,14 @@ public class FPGrowth extends AbstractAssociator implements
       setRulesMustContain(rulesString);
     }
 
+    if (numSlotsString.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(numSlotsString));
+    }
+
+    if (outputRulesString.length() > 0) {
+      setRuleOutputFile(new File(outputRulesString));
+    }
+
     setUseORForMustContainList(Utils.getFlag("use-or", options));
 
     setFindAllRulesForSupportLevel(Utils.getFlag('S', options));
@@ -2118,6 +2810,14 @@ public class FPGrowth extends AbstractAssociator implements
       options.add("-use-or");
     }
 
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+
+    if (!getRuleOutputFile().isDirectory()) {
+      options.add("-output-rules");
+      options.add(getRuleOutputFile().toString());
+    }
+
     return options.toArray(new String[1]);
   }
 
@@ -2233,6 +2933,37 @@ public class FPGrowth extends AbstractAssociator implements
 
     double deltaAsFraction = (m_delta > 1) ? m_delta / m_numInstances : m_delta;
 
+    m_numRulesWritten = -1;
+    if (!m_ruleOutputFile.isDirectory()) {
+      // stream all the rules for the lower bound on support to the file
+      int minSupport = (int) Math
+        .ceil(lowerBoundMinSuppAsFraction * m_numInstances);
+      BinaryItem[] frequentItems = getFrequentItems(singletons, minSupport);
+      FPTree tree = buildFPTree(singletons, frequentItems, source);
+
+      if (arffLoader) {
+        System.err.println("Mining tree for min supp "
+          + lowerBoundMinSuppAsFraction);
+      }
+
+      PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(
+        m_ruleOutputFile)));
+      try {
+        RuleWriter ruleWriter = new RuleWriter(writer, tree, frequentItems,
+          upperBoundMinSuppAsInstances, lowerBoundMinSuppAsInstances,
+          (rulesMustContain != null && rulesMustContain.size() > 0) ?
+            rulesMustContain : null);
+        mineTree(tree, minSupport, frequentItems, ruleWriter);
+        m_numRulesWritten = ruleWriter.getCount();
+      } finally {
+        writer.close();
+      }
+
+      m_largeItemSets = null;
+      m_rules = new ArrayList<AssociationRule>();
+      return;
+    }
+
     // double currentSupport = upperBoundMinSuppAsFraction;
     double currentSupport = 1.0;
 
@@ -2252,22 +2983,17 @@ public class FPGrowth extends AbstractAssociator implements
       if (arffLoader) {
         System.err.println("Building FP-tree...");
       }
-      FPTreeRoot tree = buildFPTree(singletons, source,
+      BinaryItem[] frequentItems = getFrequentItems(singletons,
         currentSupportAsInstances);
-
-      FrequentItemSets largeItemSets = new FrequentItemSets(m_numInstances);
+      FPTree tree = buildFPTree(singletons, frequentItems, source);
 
       if (arffLoader) {
         System.err.println("Mining tree for min supp " + currentSupport);
       }
 
       // mine the tree
-      FrequentBinaryItemSet conditionalItems = new FrequentBinaryItemSet(
-        new ArrayList<BinaryItem>(), 0);
-      mineTree(tree, largeItemSets, 0, conditionalItems,
-        currentSupportAsInstances);
-
-      m_largeItemSets = largeItemSets;
+      m_largeItemSets = mineTree(tree, currentSupportAsInstances,
+        frequentItems, null);
 
       if (arffLoader) {
         System.err.println("Number of large item sets: "
@@ -2342,6 +3068,11 @@ public class FPGrowth extends AbstractAssociator implements
       return "FPGrowth hasn't been trained yet!";
     }
 
+    if (m_numRulesWritten >= 0) {
+      return "FPGrowth wrote " + m_numRulesWritten + " rules to "
+        + m_ruleOutputFile;
+    }
+
     StringBuffer result = new StringBuffer();
     int numRules = (m_rules.size() < m_numRulesToFind) ? m_rules.size()
       : m_numRulesToFind;
@@ -2388,22 +3119,87 @@ public class FPGrowth extends AbstractAssociator implements
    * Assemble a dot graph representation of the FP-tree.
    * 
    * @param tree the root of the FP-tree
+   * @param items the items corresponding to the global ranks
    * @return a graph representation as a String in dot format.
    */
-  public String graph(FPTreeRoot tree) {
-    // int maxID = tree.assignIDs(-1);
-
+  public String graph(FPTree tree, BinaryItem[] items) {
     StringBuffer text = new StringBuffer();
     text.append("digraph FPTree {\n");
     text.append("N0 [label=\"ROOT\"]\n");
-    tree.graphFPTree(text);
+    tree.graphFPTree(text, items);
 
-    // tree.graphHeaderTable(text, maxID+1);
     text.append("}\n");
 
     return text.toString();
   }
 
+  /**
+   * Assemble a dot graph representation of an FP-tree made of linked nodes.
+   * The tree is copied into an {@link FPTree} first.
+   * 
+   * @param tree the root of the FP-tree
+   * @return a graph representation as a String in dot format.
+   * @deprecated use {@link #graph(FPTree, BinaryItem[])} instead
+   */
+  @Deprecated
+  public String graph(FPTreeRoot tree) {
+    Map<BinaryItem, Integer> ranks = new HashMap<BinaryItem, Integer>();
+    ArrayList<BinaryItem> items = new ArrayList<BinaryItem>();
+    rankItems(tree, ranks, items);
+
+    int[] globalItem = new int[items.size()];
+    for (int i = 0; i < globalItem.length; i++) {
+      globalItem[i] = i;
+    }
+    FPTree copy = new FPTree(globalItem);
+    copyPaths(tree, copy, ranks, new int[items.size()], 0);
+
+    return graph(copy, items.toArray(new BinaryItem[items.size()]));
+  }
+
+  /**
+   * Numbers the items in a tree of linked nodes in the order they are found.
+   * 
+   * @param node the root of the (sub)tree
+   * @param ranks the numbers of the items found so far
+   * @param items the items found so far, in order
+   */
+  private static void rankItems(FPTreeNode node, Map<BinaryItem, Integer> ranks,
+    ArrayList<BinaryItem> items) {
+    for (FPTreeNode child : node.m_children.values()) {
+      if (!ranks.containsKey(child.getItem())) {
+        ranks.put(child.getItem(), items.size());
+        items.add(child.getItem());
+      }
+      rankItems(child, ranks, items);
+    }
+  }
+
+  /**
+   * Copies the paths below a node of linked nodes into an FP-tree. Each node
+   * adds the path to it with its own count less the counts of its children,
+   * so the copied nodes end up with the original counts.
+   * 
+   * @param node the node to copy the subtree of
+   * @param copy the tree to copy to
+   * @param ranks the numbers of the items
+   * @param path the items on the path to the node
+   * @param length the length of the path to the node
+   */
+  private static void copyPaths(FPTreeNode node, FPTree copy,
+    Map<BinaryItem, Integer> ranks, int[] path, int length) {
+    int childCounts = 0;
+    for (FPTreeNode child : node.m_children.values()) {
+      path[length] = ranks.get(child.getItem());
+      copyPaths(child, copy, ranks, path, length + 1);
+      childCounts += child.getProjectedCount(0);
+    }
+    if (length > 0) {
+      copy.addTransaction(path, length, node.getProjectedCount(0)
+        - childCounts);
+    }
+  }
+
   /**
    * Returns the revision string.
    * 
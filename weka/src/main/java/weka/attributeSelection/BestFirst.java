@@ -26,7 +26,12 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Instances;
 import weka.core.Option;
@@ -79,6 +84,11 @@ import weka.core.Utils;
  *  attributes in the data set. (default = 1)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;int&gt;
+ *  The number of execution slots, for example, the number of cores in the CPU. (default 1)
+ * </pre>
+ * 
  <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz) Martin Guetlein (cashing merit of
@@ -301,6 +311,12 @@ public class BestFirst extends ASSearch implements OptionHandler,
   /** holds the maximum size of the lookup cache for evaluated subsets */
   protected int m_cacheSize;
 
+  /** number of threads to use for evaluating the children of a node */
+  protected int m_poolSize = 1;
+
+  /** thread pool */
+  protected transient ExecutorService m_pool = null;
+
   /**
    * Returns a string describing this search method
    * 
@@ -334,7 +350,7 @@ public class BestFirst extends ASSearch implements OptionHandler,
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(4);
+    Vector<Option> newVector = new Vector<Option>(5);
 
     newVector.addElement(new Option("\tSpecify a starting set of attributes."
       + "\n\tEg. 1,3,5-7.", "P", 1, "-P <start set>"));
@@ -346,6 +362,8 @@ public class BestFirst extends ASSearch implements OptionHandler,
       "\tSize of lookup cache for evaluated subsets."
         + "\n\tExpressed as a multiple of the number of"
         + "\n\tattributes in the data set. (default = 1)", "S", 1, "-S <num>"));
+    newVector.addElement(new Option("\t" + numExecutionSlotsTipText()
+      + " (default 1)\n", "num-slots", 1, "-num-slots <int>"));
 
     return newVector.elements();
   }
@@ -382,6 +400,11 @@ public class BestFirst extends ASSearch implements OptionHandler,
    *  attributes in the data set. (default = 1)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;int&gt;
+   *  The number of execution slots, for example, the number of cores in the CPU. (default 1)
+   * </pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -418,6 +441,11 @@ public class BestFirst extends ASSearch implements OptionHandler,
       setLookupCacheSize(Integer.parseInt(optionString));
     }
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
     m_debug = Utils.getFlag('Z', options);
   }
 
@@ -456,6 +484,30 @@ public class BestFirst extends ASSearch implements OptionHandler,
       + "(default = 1).";
   }
 
+  /**
+   * @return a string to describe the option
+   */
+  public String numExecutionSlotsTipText() {
+
+    return "The number of execution slots, for example, the number of cores in the CPU.";
+  }
+
+  /**
+   * Gets the number of threads.
+   */
+  public int getNumExecutionSlots() {
+
+    return m_poolSize;
+  }
+
+  /**
+   * Sets the number of threads
+   */
+  public void setNumExecutionSlots(int nT) {
+
+    m_poolSize = nT;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -576,6 +628,8 @@ public class BestFirst extends ASSearch implements OptionHandler,
     options.add("" + m_searchDirection);
     options.add("-N");
     options.add("" + m_maxStale);
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
 
     return options.toArray(new String[0]);
   }
@@ -666,7 +720,10 @@ public class BestFirst extends ASSearch implements OptionHandler,
   }
 
   /**
-   * Searches the attribute subset space by best first search
+   * Searches the attribute subset space by best first search. If more than
+   * one execution slot is available, the children of a node that are not in
+   * the lookup cache are evaluated in parallel before they are inserted into
+   * the list in the usual order.
    * 
    * @param ASEval the attribute evaluator to guide the search
    * @param data the training instances.
@@ -675,6 +732,31 @@ public class BestFirst extends ASSearch implements OptionHandler,
    */
   @Override
   public int[] search(ASEvaluation ASEval, Instances data) throws Exception {
+    boolean parallel = (m_poolSize > 1);
+    if (parallel) {
+      m_pool = Executors.newFixedThreadPool(m_poolSize);
+    }
+    try {
+      return search(ASEval, data, parallel);
+    } finally {
+      if (parallel) {
+        m_pool.shutdown();
+        m_pool = null;
+      }
+    }
+  }
+
+  /**
+   * Searches the attribute subset space by best first search
+   * 
+   * @param ASEval the attribute evaluator to guide the search
+   * @param data the training instances.
+   * @param parallel true if children are to be evaluated in m_pool
+   * @return an array (not necessarily ordered) of selected attribute indexes
+   * @throws Exception if the search can't be completed
+   */
+  protected int[] search(ASEvaluation ASEval, Instances data, boolean parallel)
+    throws Exception {
     m_totalEvals = 0;
     if (!(ASEval instanceof SubsetEvaluator)) {
       throw new Exception(ASEval.getClass().getName() + " is not a "
@@ -785,6 +867,42 @@ public class BestFirst extends ASSearch implements OptionHandler,
       }
 
       do {
+        List<Future<Double>> evaluations = null;
+        if (parallel) {
+          // evaluate the children that haven't been seen before
+          evaluations = new ArrayList<Future<Double>>(m_numAttribs);
+          for (i = 0; i < m_numAttribs; i++) {
+            evaluations.add(null);
+            if (sd == SELECTION_FORWARD) {
+              z = ((i != m_classIndex) && (!temp_group.get(i)));
+            } else {
+              z = ((i != m_classIndex) && (temp_group.get(i)));
+            }
+
+            if (z) {
+              final BitSet child = (BitSet) temp_group.clone();
+              if (sd == SELECTION_FORWARD) {
+                child.set(i);
+              } else {
+                child.clear(i);
+              }
+
+              if (lookup.containsKey(child.toString()) == false) {
+                // make a copy if the evaluator is not thread safe
+                final SubsetEvaluator theEvaluator = (ASEvaluator instanceof weka.core.ThreadSafe) ? ASEvaluator
+                  : (SubsetEvaluator) ASEvaluation.makeCopies(ASEval, 1)[0];
+
+                evaluations.set(i, m_pool.submit(new Callable<Double>() {
+                  @Override
+                  public Double call() throws Exception {
+                    return theEvaluator.evaluateSubset(child);
+                  }
+                }));
+              }
+            }
+          }
+        }
+
         for (i = 0; i < m_numAttribs; i++) {
           if (sd == SELECTION_FORWARD) {
             z = ((i != m_classIndex) && (!temp_group.get(i)));
@@ -810,7 +928,11 @@ public class BestFirst extends ASSearch implements OptionHandler,
             hashC = tt.toString();
 
             if (lookup.containsKey(hashC) == false) {
-              merit = ASEvaluator.evaluateSubset(temp_group);
+              if (evaluations != null && evaluations.get(i) != null) {
+                merit = evaluations.get(i).get().doubleValue();
+              } else {
+                merit = ASEvaluator.evaluateSubset(temp_group);
+              }
               m_totalEvals++;
 
               // insert this one in the hashtable
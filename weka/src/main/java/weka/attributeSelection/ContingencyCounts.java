@@ -0,0 +1,324 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ContingencyCounts.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.attributeSelection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.core.Aggregateable;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+/**
+ * Collects the attribute-vs-class contingency tables of all nominal attributes
+ * of a dataset in a single pass over the data. Each table has a row for every
+ * value of the attribute plus one for missing values, and a column for every
+ * class value plus one for a missing class. <br/>
+ * <br/>
+ * Only the values that are actually stored in an instance are counted: the
+ * row of the first value of each attribute (zero, which is not stored by
+ * sparse instances) is derived from the class totals when a table is
+ * requested. The counts can be collected in parallel over blocks of
+ * attributes, updated one instance at a time, and counts collected on
+ * separate chunks of the data can be aggregated.
+ *
+ * @version $Revision$
+ */
+public class ContingencyCounts implements Serializable, RevisionHandler,
+  Aggregateable<ContingencyCounts> {
+
+  /** for serialization */
+  private static final long serialVersionUID = 6045380424627813925L;
+
+  /** the header of the data */
+  protected Instances m_header;
+
+  /** the class index */
+  protected int m_classIndex;
+
+  /** the number of class values */
+  protected int m_numClasses;
+
+  /** whether to count instance weights or just instances */
+  protected boolean m_useWeights;
+
+  /** the total count for each class (missing class last) */
+  protected double[] m_classCounts;
+
+  /**
+   * the counts for each attribute, value and class (null for the class and
+   * non-nominal attributes); the row for value 0 is not used
+   */
+  protected double[][][] m_counts;
+
+  /**
+   * Initializes the counts.
+   *
+   * @param header the format of the data, must have a nominal class
+   * @param useWeights true if instance weights are to be counted, false if
+   *          each instance counts as one
+   * @throws IllegalArgumentException if the class is not nominal
+   */
+  public ContingencyCounts(Instances header, boolean useWeights) {
+    if (header.classIndex() < 0 || !header.classAttribute().isNominal()) {
+      throw new IllegalArgumentException("Nominal class required!");
+    }
+
+    m_header = new Instances(header, 0);
+    m_classIndex = header.classIndex();
+    m_numClasses = header.numClasses();
+    m_useWeights = useWeights;
+    m_classCounts = new double[m_numClasses + 1];
+    m_counts = new double[header.numAttributes()][][];
+    for (int k = 0; k < header.numAttributes(); k++) {
+      if (k != m_classIndex && header.attribute(k).isNominal()) {
+        int numValues = header.attribute(k).numValues();
+        m_counts[k] = new double[numValues + 1][m_numClasses + 1];
+      }
+    }
+  }
+
+  /**
+   * Returns the format of the data.
+   *
+   * @return the header
+   */
+  public Instances getHeader() {
+    return m_header;
+  }
+
+  /**
+   * Returns the column of the contingency tables an instance is counted in.
+   *
+   * @param inst the instance
+   * @return the class value, or the number of classes if the class is missing
+   */
+  protected int classColumn(Instance inst) {
+    return inst.classIsMissing() ? m_numClasses : (int) inst.classValue();
+  }
+
+  /**
+   * Returns how much an instance counts.
+   *
+   * @param inst the instance
+   * @return the weight of the instance, or one if weights are not used
+   */
+  protected double count(Instance inst) {
+    return m_useWeights ? inst.weight() : 1;
+  }
+
+  /**
+   * Counts the stored values of an instance for a block of attributes.
+   *
+   * @param inst the instance
+   * @param from the first attribute of the block
+   * @param to the attribute after the last one of the block
+   */
+  protected void addValues(Instance inst, int from, int to) {
+    int column = classColumn(inst);
+    double weight = count(inst);
+
+    // a dense instance stores all values at their own index
+    int start = 0;
+    int end = inst.numValues();
+    if (!(inst instanceof SparseInstance)) {
+      start = from;
+      end = to;
+    }
+
+    for (int p = start; p < end; p++) {
+      int k = inst.index(p);
+      if (k < from) {
+        continue;
+      }
+      if (k >= to) {
+        break;
+      }
+      double[][] counts = m_counts[k];
+      if (counts == null) {
+        continue;
+      }
+      double value = inst.valueSparse(p);
+      if (Utils.isMissingValue(value)) {
+        counts[counts.length - 1][column] += weight;
+      } else if (value != 0) {
+        counts[(int) value][column] += weight;
+      }
+    }
+  }
+
+  /**
+   * Updates the counts with an instance.
+   *
+   * @param inst the instance
+   */
+  public void add(Instance inst) {
+    m_classCounts[classColumn(inst)] += count(inst);
+    addValues(inst, 0, m_counts.length);
+  }
+
+  /**
+   * Updates the counts with a set of instances. The attributes are split into
+   * blocks that are counted in parallel.
+   *
+   * @param data the instances
+   * @param numThreads the number of threads to use
+   * @throws Exception if counting fails
+   */
+  public void add(final Instances data, int numThreads) throws Exception {
+    int numAttributes = m_counts.length;
+    if (numThreads <= 1 || numAttributes < 2) {
+      for (int i = 0; i < data.numInstances(); i++) {
+        add(data.instance(i));
+      }
+      return;
+    }
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      m_classCounts[classColumn(inst)] += count(inst);
+    }
+
+    int numBlocks = Math.min(numThreads, numAttributes);
+    ExecutorService pool = Executors.newFixedThreadPool(numBlocks);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int b = 0; b < numBlocks; b++) {
+        final int from = (int) ((long) numAttributes * b / numBlocks);
+        final int to = (int) ((long) numAttributes * (b + 1) / numBlocks);
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < data.numInstances(); i++) {
+              addValues(data.instance(i), from, to);
+            }
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> f : results) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Adds the counts collected on another chunk of the data to these counts.
+   *
+   * @param toAggregate the counts to add
+   * @return these counts
+   * @throws Exception if the counts were collected on different data formats
+   */
+  @Override
+  public ContingencyCounts aggregate(ContingencyCounts toAggregate)
+    throws Exception {
+    if (!m_header.equalHeaders(toAggregate.m_header)) {
+      throw new Exception("Can't aggregate - data headers don't match: "
+        + m_header.equalHeadersMsg(toAggregate.m_header));
+    }
+    if (m_useWeights != toAggregate.m_useWeights) {
+      throw new Exception("Can't aggregate weighted and unweighted counts!");
+    }
+
+    for (int j = 0; j < m_classCounts.length; j++) {
+      m_classCounts[j] += toAggregate.m_classCounts[j];
+    }
+    for (int k = 0; k < m_counts.length; k++) {
+      if (m_counts[k] != null) {
+        for (int i = 0; i < m_counts[k].length; i++) {
+          for (int j = 0; j < m_counts[k][i].length; j++) {
+            m_counts[k][i][j] += toAggregate.m_counts[k][i][j];
+          }
+        }
+      }
+    }
+
+    return this;
+  }
+
+  /**
+   * Nothing to do, the counts are complete after aggregation.
+   */
+  @Override
+  public void finalizeAggregation() {
+  }
+
+  /**
+   * Returns the total counts for the class values.
+   *
+   * @return the counts, the count for a missing class is last
+   */
+  public double[] getClassCounts() {
+    return m_classCounts.clone();
+  }
+
+  /**
+   * Returns the contingency table of an attribute and the class. The last row
+   * holds the counts for a missing attribute value, the last column the counts
+   * for a missing class.
+   *
+   * @param attribute the index of a nominal attribute
+   * @return a new array with the counts
+   * @throws IllegalArgumentException if the attribute is the class or is not
+   *           nominal
+   */
+  public double[][] getCounts(int attribute) {
+    double[][] counts = m_counts[attribute];
+    if (counts == null) {
+      throw new IllegalArgumentException("No counts for attribute "
+        + m_header.attribute(attribute).name() + "!");
+    }
+
+    double[][] result = new double[counts.length][];
+    result[0] = m_classCounts.clone();
+    for (int i = 1; i < counts.length; i++) {
+      result[i] = counts[i].clone();
+      for (int j = 0; j < result[i].length; j++) {
+        result[0][j] -= counts[i][j];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
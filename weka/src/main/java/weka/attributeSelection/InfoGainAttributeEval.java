@@ -27,7 +27,6 @@ import java.util.Vector;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.ContingencyTables;
-import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
@@ -61,6 +60,13 @@ import weka.filters.unsupervised.attribute.NumericToBinary;
  *  of properly discretizing them.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for counting blocks
+ *  of attributes in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -80,6 +86,9 @@ public class InfoGainAttributeEval extends ASEvaluation implements
   /** Just binarize numeric attributes */
   private boolean m_Binarize;
 
+  /** The number of threads used to count the values */
+  private int m_numExecutionSlots = 1;
+
   /** The info gain for each attribute */
   private double[] m_InfoGains;
 
@@ -109,12 +118,17 @@ public class InfoGainAttributeEval extends ASEvaluation implements
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(2);
+    Vector<Option> newVector = new Vector<Option>(3);
     newVector.addElement(new Option("\ttreat missing values as a seperate "
       + "value.", "M", 0, "-M"));
     newVector.addElement(new Option(
       "\tjust binarize numeric attributes instead \n"
         + "\tof properly discretizing them.", "B", 0, "-B"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for counting blocks\n"
+        + "\tof attributes in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
     return newVector.elements();
   }
 
@@ -136,6 +150,13 @@ public class InfoGainAttributeEval extends ASEvaluation implements
    *  of properly discretizing them.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for counting blocks
+   *  of attributes in parallel.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -147,6 +168,11 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     resetOptions();
     setMissingMerge(!(Utils.getFlag('M', options)));
     setBinarizeNumericAttributes(Utils.getFlag('B', options));
+
+    String optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -156,7 +182,7 @@ public class InfoGainAttributeEval extends ASEvaluation implements
    */
   @Override
   public String[] getOptions() {
-    String[] options = new String[2];
+    String[] options = new String[4];
     int current = 0;
 
     if (!getMissingMerge()) {
@@ -165,6 +191,8 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     if (getBinarizeNumericAttributes()) {
       options[current++] = "-B";
     }
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
 
     while (current < options.length) {
       options[current++] = "";
@@ -201,6 +229,35 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     return m_Binarize;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for counting blocks of attributes "
+      + "in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use.
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -269,7 +326,6 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     getCapabilities().testWithFail(data);
 
     int classIndex = data.classIndex();
-    int numInstances = data.numInstances();
 
     if (!m_Binarize) {
       Discretize disTransform = new Discretize();
@@ -283,59 +339,13 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     }
     int numClasses = data.attribute(classIndex).numValues();
 
-    // Reserve space and initialize counters
+    // Get counts
+    ContingencyCounts contingencyCounts = new ContingencyCounts(data, true);
+    contingencyCounts.add(data, m_numExecutionSlots);
     double[][][] counts = new double[data.numAttributes()][][];
     for (int k = 0; k < data.numAttributes(); k++) {
       if (k != classIndex) {
-        int numValues = data.attribute(k).numValues();
-        counts[k] = new double[numValues + 1][numClasses + 1];
-      }
-    }
-
-    // Initialize counters
-    double[] temp = new double[numClasses + 1];
-    for (int k = 0; k < numInstances; k++) {
-      Instance inst = data.instance(k);
-      if (inst.classIsMissing()) {
-        temp[numClasses] += inst.weight();
-      } else {
-        temp[(int) inst.classValue()] += inst.weight();
-      }
-    }
-    for (int k = 0; k < counts.length; k++) {
-      if (k != classIndex) {
-        for (int i = 0; i < temp.length; i++) {
-          counts[k][0][i] = temp[i];
-        }
-      }
-    }
-
-    // Get counts
-    for (int k = 0; k < numInstances; k++) {
-      Instance inst = data.instance(k);
-      for (int i = 0; i < inst.numValues(); i++) {
-        if (inst.index(i) != classIndex) {
-          if (inst.isMissingSparse(i) || inst.classIsMissing()) {
-            if (!inst.isMissingSparse(i)) {
-              counts[inst.index(i)][(int) inst.valueSparse(i)][numClasses] += inst
-                .weight();
-              counts[inst.index(i)][0][numClasses] -= inst.weight();
-            } else if (!inst.classIsMissing()) {
-              counts[inst.index(i)][data.attribute(inst.index(i)).numValues()][(int) inst
-                .classValue()] += inst.weight();
-              counts[inst.index(i)][0][(int) inst.classValue()] -= inst
-                .weight();
-            } else {
-              counts[inst.index(i)][data.attribute(inst.index(i)).numValues()][numClasses] += inst
-                .weight();
-              counts[inst.index(i)][0][numClasses] -= inst.weight();
-            }
-          } else {
-            counts[inst.index(i)][(int) inst.valueSparse(i)][(int) inst
-              .classValue()] += inst.weight();
-            counts[inst.index(i)][0][(int) inst.classValue()] -= inst.weight();
-          }
-        }
+        counts[k] = contingencyCounts.getCounts(k);
       }
     }
 
@@ -414,6 +424,7 @@ public class InfoGainAttributeEval extends ASEvaluation implements
     m_InfoGains = null;
     m_missing_merge = true;
     m_Binarize = false;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -23,6 +23,7 @@ package weka.attributeSelection;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Vector;
 
 import weka.core.Attribute;
@@ -36,8 +37,10 @@ import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.core.matrix.CovarianceAccumulator;
 import weka.core.matrix.EigenvalueDecomposition;
 import weka.core.matrix.Matrix;
+import weka.core.matrix.TruncatedEigenvalueDecomposition;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Center;
 import weka.filters.unsupervised.attribute.NominalToBinary;
@@ -53,7 +56,9 @@ import weka.filters.unsupervised.attribute.Standardize;
  * account for some percentage of the variance in the original data---default
  * 0.95 (95%). Attribute noise can be filtered by transforming to the PC space,
  * eliminating some of the worst eigenvectors, and then transforming back to the
- * original space.
+ * original space. For data with many attributes, only a given number of
+ * principal components can be computed with a randomized method, which avoids
+ * the full (cubic) eigenvalue decomposition.
  * <p/>
  <!-- globalinfo-end -->
  * 
@@ -87,6 +92,18 @@ import weka.filters.unsupervised.attribute.Standardize;
  *  transformed attribute names. (-1 = include all)
  * </pre>
  * 
+ * <pre>
+ * -num-components &lt;num&gt;
+ *  Number of principal components to compute with a
+ *  randomized method (default -1 = compute all exactly).
+ * </pre>
+ * 
+ * <pre>
+ * -S &lt;num&gt;
+ *  Random number seed for the randomized method.
+ *  (default 1)
+ * </pre>
+ * 
  <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -179,6 +196,15 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
    */
   private double[][] m_eTranspose;
 
+  /**
+   * the number of principal components to compute with the randomized method
+   * (-1 = compute all exactly)
+   */
+  private int m_numComponents = -1;
+
+  /** the seed for the randomized method */
+  private int m_seed = 1;
+
   /**
    * Returns a string describing this attribute transformer
    * 
@@ -192,7 +218,10 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
       + "account for some percentage of the variance in the original data---"
       + "default 0.95 (95%). Attribute noise can be filtered by transforming "
       + "to the PC space, eliminating some of the worst eigenvectors, and "
-      + "then transforming back to the original space.";
+      + "then transforming back to the original space. For data with many "
+      + "attributes, only a given number of principal components can be "
+      + "computed with a randomized method, which avoids the full (cubic) "
+      + "eigenvalue decomposition.";
   }
 
   /**
@@ -203,7 +232,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(4);
+    Vector<Option> newVector = new Vector<Option>(6);
 
     newVector.addElement(new Option("\tCenter (rather than standardize) the"
       + "\n\tdata and compute PCA using the covariance (rather"
@@ -219,6 +248,16 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     newVector.addElement(new Option(
       "\tMaximum number of attributes to include in "
         + "\n\ttransformed attribute names. (-1 = include all)", "A", 1, "-A"));
+
+    newVector.addElement(new Option(
+      "\tNumber of principal components to compute with a"
+        + "\n\trandomized method (default -1 = compute all exactly).",
+      "num-components", 1, "-num-components <num>"));
+
+    newVector.addElement(new Option(
+      "\tRandom number seed for the randomized method.\n\t(default 1)", "S",
+      1, "-S <num>"));
+
     return newVector.elements();
   }
 
@@ -256,6 +295,18 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
    *  transformed attribute names. (-1 = include all)
    * </pre>
    * 
+   * <pre>
+   * -num-components &lt;num&gt;
+   *  Number of principal components to compute with a
+   *  randomized method (default -1 = compute all exactly).
+   * </pre>
+   * 
+   * <pre>
+   * -S &lt;num&gt;
+   *  Random number seed for the randomized method.
+   *  (default 1)
+   * </pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -276,6 +327,14 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     if (optionString.length() != 0) {
       setMaximumAttributeNames(Integer.parseInt(optionString));
     }
+    optionString = Utils.getOption("num-components", options);
+    if (optionString.length() != 0) {
+      setNumComponents(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('S', options);
+    if (optionString.length() != 0) {
+      setSeed(Integer.parseInt(optionString));
+    }
 
     setTransformBackToOriginal(Utils.getFlag('O', options));
     setCenterData(Utils.getFlag('C', options));
@@ -288,6 +347,8 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     m_coverVariance = 0.95;
     m_sumOfEigenValues = 0.0;
     m_transBackToOriginal = false;
+    m_numComponents = -1;
+    m_seed = 1;
   }
 
   /**
@@ -413,6 +474,67 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     return m_transBackToOriginal;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numComponentsTipText() {
+    return "The number of principal components to compute with a randomized "
+      + "method that avoids the full eigenvalue decomposition (-1 = compute "
+      + "all components exactly). The proportion of variance is still "
+      + "measured against the total variance of the data.";
+  }
+
+  /**
+   * Sets the number of principal components to compute with the randomized
+   * method.
+   * 
+   * @param num the number of components (-1 = compute all exactly)
+   */
+  public void setNumComponents(int num) {
+    m_numComponents = num;
+  }
+
+  /**
+   * Gets the number of principal components to compute with the randomized
+   * method.
+   * 
+   * @return the number of components (-1 = compute all exactly)
+   */
+  public int getNumComponents() {
+    return m_numComponents;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The random number seed for the randomized method.";
+  }
+
+  /**
+   * Sets the seed for the randomized method.
+   * 
+   * @param seed the seed
+   */
+  public void setSeed(int seed) {
+    m_seed = seed;
+  }
+
+  /**
+   * Gets the seed for the randomized method.
+   * 
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_seed;
+  }
+
   /**
    * Gets the current settings of PrincipalComponents
    * 
@@ -437,6 +559,14 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
       options.add("-O");
     }
 
+    if (getNumComponents() > 0) {
+      options.add("-num-components");
+      options.add("" + getNumComponents());
+
+      options.add("-S");
+      options.add("" + getSeed());
+    }
+
     return options.toArray(new String[0]);
   }
 
@@ -545,9 +675,18 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     // fillCorrelation();
     fillCovariance();
 
-    EigenvalueDecomposition eig = new Matrix(m_correlation).eig();
-    m_eigenvectors = eig.getV().copy().getArray();
-    m_eigenvalues = eig.getRealEigenvalues().clone();
+    if (m_numComponents > 0 && m_numComponents < m_numAttribs) {
+      // only the leading components, with a randomized method; the
+      // proportions of variance still refer to the total variance
+      TruncatedEigenvalueDecomposition eig = new TruncatedEigenvalueDecomposition(
+        new Matrix(m_correlation), m_numComponents, new Random(m_seed));
+      m_eigenvectors = eig.getV().getArray();
+      m_eigenvalues = eig.getRealEigenvalues().clone();
+    } else {
+      EigenvalueDecomposition eig = new Matrix(m_correlation).eig();
+      m_eigenvectors = eig.getV().copy().getArray();
+      m_eigenvalues = eig.getRealEigenvalues().clone();
+    }
 
     /*
      * for (int i = 0; i < m_numAttribs; i++) { for (int j = 0; j <
@@ -562,7 +701,15 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
       }
     }
     m_sortedEigens = Utils.sort(m_eigenvalues);
-    m_sumOfEigenValues = Utils.sum(m_eigenvalues);
+    if (m_eigenvalues.length == m_numAttribs) {
+      m_sumOfEigenValues = Utils.sum(m_eigenvalues);
+    } else {
+      // the total variance is the trace of the matrix
+      m_sumOfEigenValues = 0;
+      for (int i = 0; i < m_numAttribs; i++) {
+        m_sumOfEigenValues += m_correlation[i][i];
+      }
+    }
 
     m_transformedFormat = setOutputFormat();
     if (m_transBackToOriginal) {
@@ -575,9 +722,10 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
       double[][] orderedVectors = new double[m_eigenvectors.length][numVectors + 1];
 
       // try converting back to the original space
-      for (int i = m_numAttribs - 1; i > (m_numAttribs - numVectors - 1); i--) {
+      int numComponents = m_eigenvalues.length;
+      for (int i = numComponents - 1; i > (numComponents - numVectors - 1); i--) {
         for (int j = 0; j < m_numAttribs; j++) {
-          orderedVectors[j][m_numAttribs - i] = m_eigenvectors[j][m_sortedEigens[i]];
+          orderedVectors[j][numComponents - i] = m_eigenvectors[j][m_sortedEigens[i]];
         }
       }
 
@@ -700,7 +848,8 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
 
     // return 1-cumulative variance explained for this transformed att
     double cumulative = 0.0;
-    for (int i = m_numAttribs - 1; i >= m_numAttribs - att - 1; i--) {
+    int numComponents = m_eigenvalues.length;
+    for (int i = numComponents - 1; i >= numComponents - att - 1; i--) {
       cumulative += m_eigenvalues[m_sortedEigens[i]];
     }
 
@@ -708,15 +857,16 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
   }
 
   private void fillCovariance() throws Exception {
-    // first store the means
-    m_means = new double[m_trainInstances.numAttributes()];
-    m_stdDevs = new double[m_trainInstances.numAttributes()];
-    for (int i = 0; i < m_trainInstances.numAttributes(); i++) {
-      m_means[i] = m_trainInstances.meanOrMode(i);
+    // one pass over the data for the means and the covariance matrix
+    CovarianceAccumulator accumulator = new CovarianceAccumulator(m_numAttribs);
+    for (int i = 0; i < m_numInstances; i++) {
+      accumulator.add(m_trainInstances.instance(i).toDoubleArray());
     }
+    m_means = accumulator.getMeans();
+    m_stdDevs = accumulator.getStandardDeviations();
 
     if (!m_center) {
-      fillCorrelation();
+      fillCorrelation(accumulator);
       return;
     }
 
@@ -725,57 +875,17 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     m_centerFilter.setInputFormat(m_trainInstances);
     m_trainInstances = Filter.useFilter(m_trainInstances, m_centerFilter);
 
-    // now compute the covariance matrix
-    m_correlation = new double[m_numAttribs][m_numAttribs];
-
-    for (int i = 0; i < m_numAttribs; i++) {
-      for (int j = 0; j < m_numAttribs; j++) {
-
-        double cov = 0;
-        for (int k = 0; k < m_numInstances; k++) {
-
-          if (i == j) {
-            cov += (m_trainInstances.instance(k).value(i) * m_trainInstances
-              .instance(k).value(i));
-          } else {
-            cov += (m_trainInstances.instance(k).value(i) * m_trainInstances
-              .instance(k).value(j));
-          }
-        }
-
-        cov /= m_trainInstances.numInstances() - 1;
-        m_correlation[i][j] = cov;
-        m_correlation[j][i] = cov;
-      }
-    }
+    m_correlation = accumulator.getCovariance();
   }
 
   /**
    * Fill the correlation matrix
+   * 
+   * @param accumulator the statistics of the data
    */
-  private void fillCorrelation() throws Exception {
-    m_correlation = new double[m_numAttribs][m_numAttribs];
-    double[] att1 = new double[m_numInstances];
-    double[] att2 = new double[m_numInstances];
-    double corr;
-
-    for (int i = 0; i < m_numAttribs; i++) {
-      for (int j = 0; j < m_numAttribs; j++) {
-        for (int k = 0; k < m_numInstances; k++) {
-          att1[k] = m_trainInstances.instance(k).value(i);
-          att2[k] = m_trainInstances.instance(k).value(j);
-        }
-        if (i == j) {
-          m_correlation[i][j] = 1.0;
-          // store the standard deviation
-          m_stdDevs[i] = Math.sqrt(Utils.variance(att1));
-        } else {
-          corr = Utils.correlation(att1, att2, m_numInstances);
-          m_correlation[i][j] = corr;
-          m_correlation[j][i] = corr;
-        }
-      }
-    }
+  private void fillCorrelation(CovarianceAccumulator accumulator)
+    throws Exception {
+    m_correlation = accumulator.getCorrelation();
 
     // now standardize the input data
     m_standardizeFilter = new Standardize();
@@ -805,7 +915,8 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     result
       .append(corrCov + "matrix\n" + matrixToString(m_correlation) + "\n\n");
     result.append("eigenvalue\tproportion\tcumulative\n");
-    for (int i = m_numAttribs - 1; i > (m_numAttribs - numVectors - 1); i--) {
+    int numComponents = m_eigenvalues.length;
+    for (int i = numComponents - 1; i > (numComponents - numVectors - 1); i--) {
       cumulative += m_eigenvalues[m_sortedEigens[i]];
       result.append(Utils
         .doubleToString(m_eigenvalues[m_sortedEigens[i]], 9, 5)
@@ -815,7 +926,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
         + "\t"
         + Utils.doubleToString((cumulative / m_sumOfEigenValues), 9, 5)
         + "\t"
-        + output.attribute(m_numAttribs - i - 1).name() + "\n");
+        + output.attribute(numComponents - i - 1).name() + "\n");
     }
 
     result.append("\nEigenvectors\n");
@@ -825,7 +936,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     result.append("\n");
     for (int j = 0; j < m_numAttribs; j++) {
 
-      for (int i = m_numAttribs - 1; i > (m_numAttribs - numVectors - 1); i--) {
+      for (int i = numComponents - 1; i > (numComponents - numVectors - 1); i--) {
         result.append(Utils.doubleToString(
           m_eigenvectors[j][m_sortedEigens[i]], 7, 4) + "\t");
       }
@@ -974,12 +1085,13 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     }
 
     double cumulative = 0;
-    for (int i = m_numAttribs - 1; i >= 0; i--) {
+    int numComponents = m_eigenvalues.length;
+    for (int i = numComponents - 1; i >= 0; i--) {
       double tempval = 0.0;
       for (int j = 0; j < m_numAttribs; j++) {
         tempval += (m_eigenvectors[j][m_sortedEigens[i]] * tempInst.value(j));
       }
-      newVals[m_numAttribs - i - 1] = tempval;
+      newVals[numComponents - i - 1] = tempval;
       cumulative += m_eigenvalues[m_sortedEigens[i]];
       if ((cumulative / m_sumOfEigenValues) >= m_coverVariance) {
         break;
@@ -1045,7 +1157,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
 
     double cumulative = 0.0;
     ArrayList<Attribute> attributes = new ArrayList<Attribute>();
-    for (int i = m_numAttribs - 1; i >= 0; i--) {
+    for (int i = m_eigenvalues.length - 1; i >= 0; i--) {
       StringBuffer attName = new StringBuffer();
       // build array of coefficients
       double[] coeff_mags = new double[m_numAttribs];
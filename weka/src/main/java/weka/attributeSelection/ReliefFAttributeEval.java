@@ -21,23 +21,32 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.NormalizableDistance;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.LinearNNSearch;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 
 /**
  * <!-- globalinfo-start --> ReliefFAttributeEval :<br/>
@@ -137,6 +146,28 @@ import weka.core.Utils;
  *  (Default = 2)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for processing the
+ *  sampled instances in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -use-nns
+ *  Find the nearest hits and misses with a
+ *  neighbour search index instead of scanning
+ *  all the instances.
+ * </pre>
+ * 
+ * <pre>
+ * -nns &lt;spec&gt;
+ *  The neighbour search to use with -use-nns.
+ *  A KDTree is replaced by a LinearNNSearch
+ *  if the data has missing values.
+ *  (default: weka.core.neighboursearch.KDTree)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -233,6 +264,21 @@ public class ReliefFAttributeEval extends ASEvaluation implements
   /** Weight by distance rather than equal weights */
   private boolean m_weightByDistance;
 
+  /** The number of threads used to process the sampled instances */
+  private int m_numExecutionSlots = 1;
+
+  /** Use a neighbour search index instead of scanning the data */
+  private boolean m_useNNSearch;
+
+  /** The neighbour search used to find the nearest hits and misses */
+  private NearestNeighbourSearch m_nnSearch = new KDTree();
+
+  /**
+   * The neighbour search for each class while the weights are computed (null
+   * for a linear scan)
+   */
+  private NearestNeighbourSearch[] m_searches;
+
   /**
    * Constructor
    */
@@ -309,7 +355,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(4);
+    Vector<Option> newVector = new Vector<Option>(8);
     newVector.addElement(new Option("\tSpecify the number of instances to\n"
       + "\tsample when estimating attributes.\n"
       + "\tIf not specified, then all instances\n" + "\twill be used.", "M", 1,
@@ -328,6 +374,21 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       + "\tSensible value=1/5 to 1/10 of the\n"
       + "\tnumber of nearest neighbours.\n" + "\t(Default = 2)", "A", 1,
       "-A <num>"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for processing the\n"
+        + "\tsampled instances in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+    newVector.addElement(new Option(
+      "\tFind the nearest hits and misses with a\n"
+        + "\tneighbour search index instead of scanning\n"
+        + "\tall the instances.", "use-nns", 0, "-use-nns"));
+    newVector.addElement(new Option(
+      "\tThe neighbour search to use with -use-nns.\n"
+        + "\tA KDTree is replaced by a LinearNNSearch\n"
+        + "\tif the data has missing values.\n"
+        + "\t(default: weka.core.neighboursearch.KDTree)", "nns", 1,
+      "-nns <spec>"));
     return newVector.elements();
   }
 
@@ -375,6 +436,28 @@ public class ReliefFAttributeEval extends ASEvaluation implements
    *  (Default = 2)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for processing the
+   *  sampled instances in parallel.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -use-nns
+   *  Find the nearest hits and misses with a
+   *  neighbour search index instead of scanning
+   *  all the instances.
+   * </pre>
+   * 
+   * <pre>
+   * -nns &lt;spec&gt;
+   *  The neighbour search to use with -use-nns.
+   *  A KDTree is replaced by a LinearNNSearch
+   *  if the data has missing values.
+   *  (default: weka.core.neighboursearch.KDTree)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -409,6 +492,29 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       setWeightByDistance(true); // turn on weighting by distance
       setSigma(Integer.parseInt(optionString));
     }
+
+    optionString = Utils.getOption("num-slots", options);
+
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
+    setUseNearestNeighbourSearch(Utils.getFlag("use-nns", options));
+    optionString = Utils.getOption("nns", options);
+
+    if (optionString.length() != 0) {
+      String[] nnsSpec = Utils.splitOptions(optionString);
+
+      if (nnsSpec.length == 0) {
+        throw new Exception("Invalid NearestNeighbourSearch specification "
+          + "string.");
+      }
+
+      String className = nnsSpec[0];
+      nnsSpec[0] = "";
+      setNearestNeighbourSearch((NearestNeighbourSearch) Utils.forName(
+        NearestNeighbourSearch.class, className, nnsSpec));
+    }
   }
 
   /**
@@ -560,6 +666,98 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     return m_weightByDistance;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for processing the sampled "
+      + "instances in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use.
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useNearestNeighbourSearchTipText() {
+    return "Find the nearest hits and misses with a neighbour search index "
+      + "(one per class) instead of scanning all the instances. The "
+      + "neighbours are then found with the distance function of the "
+      + "search, and instances with a missing class are not used as "
+      + "neighbours.";
+  }
+
+  /**
+   * Set whether to use a neighbour search index.
+   * 
+   * @param b true if the neighbour search is to be used
+   */
+  public void setUseNearestNeighbourSearch(boolean b) {
+    m_useNNSearch = b;
+  }
+
+  /**
+   * Get whether a neighbour search index is used.
+   * 
+   * @return true if the neighbour search is used
+   */
+  public boolean getUseNearestNeighbourSearch() {
+    return m_useNNSearch;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String nearestNeighbourSearchTipText() {
+    return "The neighbour search to use if useNearestNeighbourSearch is "
+      + "set. As the KDTree can't deal with missing values, a LinearNNSearch "
+      + "with the same distance function is used instead if the data has "
+      + "any.";
+  }
+
+  /**
+   * Set the neighbour search to use.
+   * 
+   * @param nnSearch the neighbour search
+   */
+  public void setNearestNeighbourSearch(NearestNeighbourSearch nnSearch) {
+    m_nnSearch = nnSearch;
+  }
+
+  /**
+   * Get the neighbour search to use.
+   * 
+   * @return the neighbour search
+   */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return m_nnSearch;
+  }
+
   /**
    * Gets the current settings of ReliefFAttributeEval.
    * 
@@ -586,6 +784,17 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       options.add("" + getSigma());
     }
 
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+
+    if (getUseNearestNeighbourSearch()) {
+      options.add("-use-nns");
+    }
+
+    options.add("-nns");
+    options.add(m_nnSearch.getClass().getName() + " "
+      + Utils.joinOptions(m_nnSearch.getOptions()));
+
     return options.toArray(new String[0]);
   }
 
@@ -619,6 +828,11 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       } else {
         text.append("\tEqual influence nearest neighbours\n");
       }
+
+      if (m_useNNSearch) {
+        text.append("\tNeighbour search: " + m_nnSearch.getClass().getName()
+          + " " + Utils.joinOptions(m_nnSearch.getOptions()) + "\n");
+      }
     }
 
     return text.toString();
@@ -733,7 +947,9 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       totalInstances = m_sampleM;
     }
 
-    // process each instance, updating attribute weights
+    // draw the sample up front, so that the result does not depend on the
+    // number of threads
+    final int[] sample = new int[totalInstances];
     for (int i = 0; i < totalInstances; i++) {
       if (totalInstances == m_numInstances) {
         z = i;
@@ -745,25 +961,53 @@ public class ReliefFAttributeEval extends ASEvaluation implements
         z *= -1;
       }
 
-      if (!(m_trainInstances.instance(z).isMissing(m_classIndex))) {
-        // first clear the knn and worst index stuff for the classes
-        for (int j = 0; j < m_numClasses; j++) {
-          m_index[j] = m_stored[j] = 0;
-
-          for (int k = 0; k < m_Knn; k++) {
-            m_karray[j][k][0] = m_karray[j][k][1] = 0;
-          }
-        }
+      sample[i] = z;
+    }
 
-        findKHitMiss(z);
+    Instances[] classInstances = null;
+    NearestNeighbourSearch search = null;
+    if (m_useNNSearch) {
+      classInstances = splitByClass();
+      search = getSearchTemplate();
+      m_searches = buildSearches(search, classInstances);
+    }
 
-        if (m_numericClass) {
-          updateWeightsNumericClass(z);
-        } else {
-          updateWeightsDiscreteClass(z);
-        }
+    // process each instance, updating attribute weights
+    int numWorkers = Math.max(1, Math.min(m_numExecutionSlots, totalInstances));
+    if (numWorkers == 1) {
+      processSample(sample, 0, totalInstances);
+    } else {
+      // this evaluator processes the first share of the sample, copies with
+      // their own buffers and accumulators the others; searches that can be
+      // queried concurrently are shared, the others are built per worker over
+      // the shared instances of each class
+      ReliefFAttributeEval[] workers = new ReliefFAttributeEval[numWorkers];
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < numWorkers; i++) {
+        final ReliefFAttributeEval worker = (i == 0) ? this : makeWorker(
+          search, classInstances);
+        final int from = (int) ((long) totalInstances * i / numWorkers);
+        final int to = (int) ((long) totalInstances * (i + 1) / numWorkers);
+        workers[i] = worker;
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            worker.processSample(sample, from, to);
+            return null;
+          }
+        });
+      }
+      TaskRunner runner = new TaskRunner(numWorkers);
+      try {
+        runner.invokeAll(tasks);
+      } finally {
+        runner.shutdown();
+      }
+      for (int i = 1; i < numWorkers; i++) {
+        merge(workers[i]);
       }
     }
+    m_searches = null;
 
     // now scale weights by 1/m_numInstances (nominal class) or
     // calculate weights numeric class
@@ -804,6 +1048,9 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     m_sigma = 2;
     m_weightByDistance = false;
     m_seed = 1;
+    m_numExecutionSlots = 1;
+    m_useNNSearch = false;
+    m_nnSearch = new KDTree();
   }
 
   /**
@@ -1310,6 +1557,262 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     }
   }
 
+  /**
+   * Find the K nearest instances/hits and misses like findKHitMiss, but with
+   * the neighbour search of each class. The neighbours are ranked by the
+   * distance function of the search, but their ReliefF distances are stored
+   * for weighting them by distance.
+   * 
+   * @param instNum the index of the instance to find nearest neighbours of
+   * @throws Exception if the neighbour search fails
+   */
+  private void searchKHitMiss(int instNum) throws Exception {
+    int i, k, index;
+    int cl;
+    Instance thisInst = m_trainInstances.instance(instNum);
+    int thisClass = m_numericClass ? 0 : (int) thisInst.value(m_classIndex);
+
+    for (cl = 0; cl < m_numClasses; cl++) {
+      if (m_searches[cl] == null) {
+        continue;
+      }
+
+      // the instance itself is found among the hits
+      k = Math.min((cl == thisClass) ? m_Knn + 1 : m_Knn, m_searches[cl]
+        .getInstances().numInstances());
+      Instances neighbours = m_searches[cl].kNearestNeighbours(thisInst, k);
+
+      for (i = 0; (i < neighbours.numInstances()) && (m_stored[cl] < m_Knn); i++) {
+        // the weight holds the index in the training data
+        index = (int) neighbours.instance(i).weight();
+        if (index != instNum) {
+          m_karray[cl][m_stored[cl]][0] = distance(
+            m_trainInstances.instance(index), thisInst);
+          m_karray[cl][m_stored[cl]][1] = index;
+          m_stored[cl]++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the neighbour search to build for each class. As the KDTree can't
+   * deal with missing values, it is replaced by a LinearNNSearch with the same
+   * distance function if there are any.
+   * 
+   * @return the neighbour search to copy for each class
+   * @throws Exception if the distance function can't be set
+   */
+  private NearestNeighbourSearch getSearchTemplate() throws Exception {
+    NearestNeighbourSearch search = m_nnSearch;
+
+    if (search instanceof KDTree) {
+      boolean missing = false;
+
+      for (int i = 0; (i < m_numInstances) && !missing; i++) {
+        Instance inst = m_trainInstances.instance(i);
+
+        for (int j = 0; j < inst.numValues(); j++) {
+          if ((inst.index(j) != m_classIndex) && inst.isMissingSparse(j)) {
+            missing = true;
+            break;
+          }
+        }
+      }
+
+      if (missing) {
+        search = new LinearNNSearch();
+        search.setDistanceFunction(m_nnSearch.getDistanceFunction());
+      }
+    }
+
+    return search;
+  }
+
+  /**
+   * Splits the training data by class (a single set for a numeric class).
+   * Instances with a missing class are left out, and the weights of the
+   * instances are set to their indices in the training data.
+   * 
+   * @return the instances of each class
+   */
+  private Instances[] splitByClass() {
+    Instances[] result = new Instances[m_numClasses];
+    for (int i = 0; i < m_numClasses; i++) {
+      result[i] = new Instances(m_trainInstances, 0);
+    }
+
+    for (int i = 0; i < m_numInstances; i++) {
+      Instance inst = m_trainInstances.instance(i);
+
+      if (!inst.isMissing(m_classIndex)) {
+        inst = (Instance) inst.copy();
+        inst.setWeight(i);
+        result[m_numericClass ? 0 : (int) inst.value(m_classIndex)].add(inst);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds a neighbour search over the instances of each class. The ranges of
+   * all the training data are used for normalizing. The searches only read the
+   * instances, so they can be built over the same ones more than once.
+   * 
+   * @param search the neighbour search to copy for each class
+   * @param classInstances the instances of each class
+   * @return the neighbour searches, null for classes without instances
+   * @throws Exception if a search can't be built
+   */
+  private NearestNeighbourSearch[] buildSearches(NearestNeighbourSearch search,
+    Instances[] classInstances) throws Exception {
+
+    NearestNeighbourSearch[] result = new NearestNeighbourSearch[m_numClasses];
+    for (int i = 0; i < m_numClasses; i++) {
+      if (classInstances[i].numInstances() > 0) {
+        result[i] = (NearestNeighbourSearch) new SerializedObject(search)
+          .getObject();
+        result[i].setInstances(classInstances[i]);
+
+        for (int j = 0; j < m_numInstances; j++) {
+          result[i].addInstanceInfo(m_trainInstances.instance(j));
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether a built neighbour search can be queried by several threads
+   * at once. A LinearNNSearch or KDTree with a normalizable distance only
+   * writes the distances of the last query, which aren't used here, unless it
+   * measures its performance.
+   * 
+   * @param search the neighbour search
+   * @return true if the search can be shared by the workers
+   */
+  private static boolean isSharable(NearestNeighbourSearch search) {
+    return ((search.getClass() == LinearNNSearch.class) || (search
+      .getClass() == KDTree.class))
+      && !search.getMeasurePerformance()
+      && (search.getDistanceFunction() instanceof NormalizableDistance);
+  }
+
+  /**
+   * Updates the attribute weights with a range of the sampled instances.
+   * 
+   * @param sample the indices of the sampled instances
+   * @param from the first sampled instance to process
+   * @param to the sampled instance after the last one to process
+   * @throws Exception if the neighbour search fails
+   */
+  private void processSample(int[] sample, int from, int to) throws Exception {
+    int z;
+
+    for (int i = from; i < to; i++) {
+      z = sample[i];
+
+      if (!(m_trainInstances.instance(z).isMissing(m_classIndex))) {
+        // first clear the knn and worst index stuff for the classes
+        for (int j = 0; j < m_numClasses; j++) {
+          m_index[j] = m_stored[j] = 0;
+
+          for (int k = 0; k < m_Knn; k++) {
+            m_karray[j][k][0] = m_karray[j][k][1] = 0;
+          }
+        }
+
+        if (m_searches == null) {
+          findKHitMiss(z);
+        } else {
+          searchKHitMiss(z);
+        }
+
+        if (m_numericClass) {
+          updateWeightsNumericClass(z);
+        } else {
+          updateWeightsDiscreteClass(z);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a copy of this evaluator for processing a share of the sample in
+   * parallel. The copy shares the training data and the statistics derived
+   * from it, but has its own nearest hit/miss buffers and weight accumulators.
+   * The neighbour searches are shared as well if they can be queried
+   * concurrently, otherwise the copy gets its own ones, built over the same
+   * instances.
+   * 
+   * @param search the neighbour search to copy for each class, null if there
+   *          are no searches
+   * @param classInstances the instances of each class the searches are built
+   *          over, null if there are no searches
+   * @return the copy
+   * @throws Exception if the neighbour searches can't be built
+   */
+  private ReliefFAttributeEval makeWorker(NearestNeighbourSearch search,
+    Instances[] classInstances) throws Exception {
+    ReliefFAttributeEval result = new ReliefFAttributeEval();
+
+    result.m_trainInstances = m_trainInstances;
+    result.m_classIndex = m_classIndex;
+    result.m_numAttribs = m_numAttribs;
+    result.m_numInstances = m_numInstances;
+    result.m_numericClass = m_numericClass;
+    result.m_numClasses = m_numClasses;
+    result.m_classProbs = m_classProbs;
+    result.m_Knn = m_Knn;
+    result.m_maxArray = m_maxArray;
+    result.m_minArray = m_minArray;
+    result.m_weightsByRank = m_weightsByRank;
+    result.m_weightByDistance = m_weightByDistance;
+
+    result.m_weights = new double[m_numAttribs];
+    if (m_numericClass) {
+      result.m_nda = new double[m_numAttribs];
+      result.m_ndcda = new double[m_numAttribs];
+    }
+    result.m_karray = new double[m_numClasses][m_Knn][2];
+    result.m_worst = new double[m_numClasses];
+    result.m_index = new int[m_numClasses];
+    result.m_stored = new int[m_numClasses];
+
+    if (m_searches != null) {
+      if (isSharable(search)) {
+        result.m_searches = m_searches;
+      } else {
+        result.m_searches = buildSearches(search, classInstances);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds the weight accumulators of a copy made with makeWorker to the ones of
+   * this evaluator.
+   * 
+   * @param worker the copy
+   */
+  private void merge(ReliefFAttributeEval worker) {
+    for (int i = 0; i < m_numAttribs; i++) {
+      m_weights[i] += worker.m_weights[i];
+    }
+
+    if (m_numericClass) {
+      m_ndc += worker.m_ndc;
+
+      for (int i = 0; i < m_numAttribs; i++) {
+        m_nda[i] += worker.m_nda[i];
+        m_ndcda[i] += worker.m_ndcda[i];
+      }
+    }
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -27,7 +27,6 @@ import java.util.Vector;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.ContingencyTables;
-import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
@@ -55,6 +54,13 @@ import weka.filters.supervised.attribute.Discretize;
  *  treat missing values as a seperate value.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for counting blocks
+ *  of attributes in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -82,6 +88,12 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
   /** Treat missing values as a seperate value */
   private boolean m_missing_merge;
 
+  /** The contingency tables of the attributes and the class */
+  private ContingencyCounts m_counts;
+
+  /** The number of threads used to count the values */
+  private int m_numExecutionSlots = 1;
+
   /**
    * Returns a string describing this attribute evaluator
    * 
@@ -109,9 +121,14 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(1);
+    Vector<Option> newVector = new Vector<Option>(2);
     newVector.addElement(new Option("\ttreat missing values as a seperate "
       + "value.", "M", 0, "-M"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for counting blocks\n"
+        + "\tof attributes in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
     return newVector.elements();
   }
 
@@ -127,6 +144,13 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
    *  treat missing values as a seperate value.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for counting blocks
+   *  of attributes in parallel.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -136,6 +160,11 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
   public void setOptions(String[] options) throws Exception {
     resetOptions();
     setMissingMerge(!(Utils.getFlag('M', options)));
+
+    String optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -168,6 +197,35 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
     return m_missing_merge;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for counting blocks of attributes "
+      + "in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use.
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Gets the current settings of WrapperSubsetEval.
    * 
@@ -175,18 +233,15 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
    */
   @Override
   public String[] getOptions() {
-    String[] options = new String[1];
-    int current = 0;
+    Vector<String> options = new Vector<String>();
 
     if (!getMissingMerge()) {
-      options[current++] = "-M";
-    }
-
-    while (current < options.length) {
-      options[current++] = "";
+      options.add("-M");
     }
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
 
-    return options;
+    return options.toArray(new String[0]);
   }
 
   /**
@@ -234,6 +289,10 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
     disTransform.setInputFormat(m_trainInstances);
     m_trainInstances = Filter.useFilter(m_trainInstances, disTransform);
     m_numClasses = m_trainInstances.attribute(m_classIndex).numValues();
+
+    m_counts = new ContingencyCounts(m_trainInstances, false);
+    m_counts.add(m_trainInstances, m_numExecutionSlots);
+    m_trainInstances = m_counts.getHeader();
   }
 
   /**
@@ -241,7 +300,9 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
    */
   protected void resetOptions() {
     m_trainInstances = null;
+    m_counts = null;
     m_missing_merge = true;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -254,47 +315,16 @@ public class SymmetricalUncertAttributeEval extends ASEvaluation implements
    */
   @Override
   public double evaluateAttribute(int attribute) throws Exception {
-    int i, j, ii, jj;
+    int i, j;
     int ni, nj;
     double sum = 0.0;
     ni = m_trainInstances.attribute(attribute).numValues() + 1;
     nj = m_numClasses + 1;
     double[] sumi, sumj;
-    Instance inst;
     double temp = 0.0;
     sumi = new double[ni];
     sumj = new double[nj];
-    double[][] counts = new double[ni][nj];
-    sumi = new double[ni];
-    sumj = new double[nj];
-
-    for (i = 0; i < ni; i++) {
-      sumi[i] = 0.0;
-
-      for (j = 0; j < nj; j++) {
-        sumj[j] = 0.0;
-        counts[i][j] = 0.0;
-      }
-    }
-
-    // Fill the contingency table
-    for (i = 0; i < m_numInstances; i++) {
-      inst = m_trainInstances.instance(i);
-
-      if (inst.isMissing(attribute)) {
-        ii = ni - 1;
-      } else {
-        ii = (int) inst.value(attribute);
-      }
-
-      if (inst.isMissing(m_classIndex)) {
-        jj = nj - 1;
-      } else {
-        jj = (int) inst.value(m_classIndex);
-      }
-
-      counts[ii][jj]++;
-    }
+    double[][] counts = m_counts.getCounts(attribute);
 
     // get the row totals
     for (i = 0; i < ni; i++) {
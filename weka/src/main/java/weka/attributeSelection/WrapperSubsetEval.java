@@ -21,13 +21,22 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.AggregateableEvaluation;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.rules.ZeroR;
@@ -43,6 +52,7 @@ import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
+import weka.core.ThreadSafe;
 import weka.core.Utils;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
@@ -126,6 +136,13 @@ import weka.filters.unsupervised.attribute.Remove;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for evaluating the folds of
+ *  the cross-validation in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * Options specific to scheme weka.classifiers.rules.ZeroR:
  * </pre>
  * 
@@ -141,7 +158,7 @@ import weka.filters.unsupervised.attribute.Remove;
  * @version $Revision: 10422 $
  */
 public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
-  OptionHandler, TechnicalInformationHandler {
+  OptionHandler, TechnicalInformationHandler, ThreadSafe {
 
   /** for serialization */
   static final long serialVersionUID = -4573057658746728675L;
@@ -152,12 +169,19 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
   private int m_classIndex;
   /** number of attributes in the training data */
   private int m_numAttribs;
-  /** holds an evaluation object */
-  private Evaluation m_Evaluation;
   /** holds the base classifier object */
   private Classifier m_BaseClassifier;
   /** number of folds to use for cross validation */
   private int m_folds;
+  /** the number of threads to use for cross-validation */
+  private int m_numExecutionSlots = 1;
+  /** the maximum number of merits kept in the cache of evaluated subsets */
+  private static final int MAX_CACHE_SIZE = 10000;
+  /**
+   * the merits of the subsets evaluated recently, shared by all threads (not
+   * saved with the evaluator)
+   */
+  private transient Map<BitSet, Double> m_subsetCache;
   /** random number seed */
   private int m_seed;
   /**
@@ -286,6 +310,12 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
           + "\tthe class-weighted average.", "IRclass", 1,
         "-IRclass <label | index>"));
 
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for evaluating the folds of\n"
+        + "\tthe cross-validation in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
     if ((m_BaseClassifier != null)
       && (m_BaseClassifier instanceof OptionHandler)) {
       newVector.addElement(new Option("", "", 0,
@@ -348,6 +378,13 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for evaluating the folds of
+   *  the cross-validation in parallel.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
    * Options specific to scheme weka.classifiers.rules.ZeroR:
    * </pre>
    * 
@@ -420,6 +457,11 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
     if (optionString.length() > 0) {
       setIRClassValue(optionString);
     }
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -547,6 +589,35 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
     return m_folds;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for evaluating the folds of the "
+      + "cross-validation in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for cross-validation.
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for cross-validation.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -617,7 +688,7 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
       classifierOptions = ((OptionHandler) m_BaseClassifier).getOptions();
     }
 
-    String[] options = new String[13 + classifierOptions.length];
+    String[] options = new String[15 + classifierOptions.length];
     int current = 0;
 
     if (getClassifier() != null) {
@@ -660,6 +731,9 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
       options[current++] = m_IRClassValS;
     }
 
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
+
     options[current++] = "--";
     System.arraycopy(classifierOptions, 0, options, current,
       classifierOptions.length);
@@ -674,9 +748,10 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
 
   protected void resetOptions() {
     m_trainInstances = null;
-    m_Evaluation = null;
+    m_subsetCache = null;
     m_BaseClassifier = new ZeroR();
     m_folds = 5;
+    m_numExecutionSlots = 1;
     m_seed = 1;
     m_threshold = 0.01;
   }
@@ -734,6 +809,7 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
     m_trainInstances = data;
     m_classIndex = m_trainInstances.classIndex();
     m_numAttribs = m_trainInstances.numAttributes();
+    m_subsetCache = Collections.synchronizedMap(new HashMap<BitSet, Double>());
 
     if (m_IRClassValS != null && m_IRClassValS.length() > 0) {
       // try to parse as a number first
@@ -750,7 +826,67 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
   }
 
   /**
-   * Evaluates a subset of attributes
+   * Performs a (stratified if class is nominal) cross-validation of the base
+   * classifier. If more than one execution slot is available, the folds are
+   * evaluated in parallel; the data is split exactly as in
+   * Evaluation.crossValidateModel().
+   * 
+   * @param data the data to use
+   * @param random the random number generator for splitting the data
+   * @return the evaluation
+   * @throws Exception if the cross-validation fails
+   */
+  protected Evaluation crossValidate(Instances data, Random random)
+    throws Exception {
+    if (m_numExecutionSlots <= 1 || m_folds < 2) {
+      Evaluation evaluation = new Evaluation(data);
+      evaluation.crossValidateModel(m_BaseClassifier, data, m_folds, random);
+      return evaluation;
+    }
+
+    data = new Instances(data);
+    data.randomize(random);
+    if (data.classAttribute().isNominal()) {
+      data.stratify(m_folds);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(
+      m_numExecutionSlots, m_folds));
+    try {
+      List<Future<Evaluation>> results = new ArrayList<Future<Evaluation>>();
+      for (int i = 0; i < m_folds; i++) {
+        final Instances train = data.trainCV(m_folds, i, random);
+        final Instances test = data.testCV(m_folds, i);
+        final Classifier classifier = AbstractClassifier
+          .makeCopy(m_BaseClassifier);
+        results.add(pool.submit(new Callable<Evaluation>() {
+          @Override
+          public Evaluation call() throws Exception {
+            Evaluation evaluation = new Evaluation(train);
+            classifier.buildClassifier(train);
+            evaluation.evaluateModel(classifier, test);
+            return evaluation;
+          }
+        }));
+      }
+
+      AggregateableEvaluation result = null;
+      for (Future<Evaluation> f : results) {
+        if (result == null) {
+          result = new AggregateableEvaluation(f.get());
+        }
+        result.aggregate(f.get());
+      }
+      return result;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Evaluates a subset of attributes. The merits of recently evaluated subsets
+   * are cached, so that subsets that are visited again by the search are not
+   * cross-validated again.
    * 
    * @param subset a bitset representing the attribute subset to be evaluated
    * @return the error rate
@@ -758,6 +894,14 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
    */
   @Override
   public double evaluateSubset(BitSet subset) throws Exception {
+    BitSet key = (BitSet) subset.clone();
+    if (m_subsetCache != null) {
+      Double cached = m_subsetCache.get(key);
+      if (cached != null) {
+        return cached.doubleValue();
+      }
+    }
+
     double evalMetric = 0;
     double[] repError = new double[5];
     int numAttributes = 0;
@@ -791,48 +935,46 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
 
     // max of 5 repetitions of cross validation
     for (i = 0; i < 5; i++) {
-      m_Evaluation = new Evaluation(trainCopy);
-      m_Evaluation
-        .crossValidateModel(m_BaseClassifier, trainCopy, m_folds, Rnd);
+      Evaluation evaluation = crossValidate(trainCopy, Rnd);
 
       switch (m_evaluationMeasure) {
       case EVAL_DEFAULT:
-        repError[i] = m_Evaluation.errorRate();
+        repError[i] = evaluation.errorRate();
         // if (m_trainInstances.classAttribute().isNominal()) {
         // repError[i] = 1.0 - repError[i];
         // }
         break;
       case EVAL_ACCURACY:
-        repError[i] = m_Evaluation.errorRate();
+        repError[i] = evaluation.errorRate();
         // if (m_trainInstances.classAttribute().isNominal()) {
         // repError[i] = 1.0 - repError[i];
         // }
         break;
       case EVAL_RMSE:
-        repError[i] = m_Evaluation.rootMeanSquaredError();
+        repError[i] = evaluation.rootMeanSquaredError();
         break;
       case EVAL_MAE:
-        repError[i] = m_Evaluation.meanAbsoluteError();
+        repError[i] = evaluation.meanAbsoluteError();
         break;
       case EVAL_FMEASURE:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedFMeasure();
+          repError[i] = evaluation.weightedFMeasure();
         } else {
-          repError[i] = m_Evaluation.fMeasure(m_IRClassVal);
+          repError[i] = evaluation.fMeasure(m_IRClassVal);
         }
         break;
       case EVAL_AUC:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedAreaUnderROC();
+          repError[i] = evaluation.weightedAreaUnderROC();
         } else {
-          repError[i] = m_Evaluation.areaUnderROC(m_IRClassVal);
+          repError[i] = evaluation.areaUnderROC(m_IRClassVal);
         }
         break;
       case EVAL_AUPRC:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedAreaUnderPRC();
+          repError[i] = evaluation.weightedAreaUnderPRC();
         } else {
-          repError[i] = m_Evaluation.areaUnderPRC(m_IRClassVal);
+          repError[i] = evaluation.areaUnderPRC(m_IRClassVal);
         }
         break;
       }
@@ -849,7 +991,6 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
     }
 
     evalMetric /= i;
-    m_Evaluation = null;
 
     switch (m_evaluationMeasure) {
     case EVAL_DEFAULT:
@@ -866,6 +1007,16 @@ public class WrapperSubsetEval extends ASEvaluation implements SubsetEvaluator,
       break;
     }
 
+    if (m_subsetCache != null) {
+      // start over when full, as BestFirst does with its lookup cache
+      synchronized (m_subsetCache) {
+        if (m_subsetCache.size() >= MAX_CACHE_SIZE) {
+          m_subsetCache.clear();
+        }
+        m_subsetCache.put(key, evalMetric);
+      }
+    }
+
     return evalMetric;
   }
 
@@ -0,0 +1,202 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    EnsemblePredictions.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
+
+/**
+ * Batch prediction for ensembles. The instances are processed in batches: the
+ * members of the ensemble are split into one group per execution slot, every
+ * group computes the predictions of its members for the whole batch, and the
+ * predictions are then combined one instance at a time. Every member is only
+ * used by one thread, so the members do not need to be thread safe, and as
+ * the predictions are combined in the order of the members the results are
+ * the same as when predicting one instance at a time.
+ *
+ * @version $Revision$
+ */
+public class EnsemblePredictions implements RevisionHandler {
+
+  /**
+   * Combines the predictions of the members of an ensemble for an instance.
+   */
+  public static interface Combiner {
+
+    /**
+     * Combines the predictions for an instance.
+     *
+     * @param instance the instance
+     * @param predictions the predictions of the members, in order
+     * @return the class distribution for the instance
+     * @throws Exception if the predictions cannot be combined
+     */
+    double[] combine(Instance instance, double[][] predictions)
+      throws Exception;
+  }
+
+  /**
+   * Returns the prediction of a member for an instance.
+   *
+   * @param member the member
+   * @param instance the instance
+   * @param classify true if classifyInstance() is used rather than
+   *          distributionForInstance()
+   * @return the distribution, or an array holding the predicted value
+   * @throws Exception if the prediction fails
+   */
+  public static double[] predict(Classifier member, Instance instance,
+    boolean classify) throws Exception {
+    if (classify) {
+      return new double[] { member.classifyInstance(instance) };
+    }
+    return member.distributionForInstance(instance);
+  }
+
+  /**
+   * Returns the predictions of the members for a range of instances.
+   *
+   * @param members the members
+   * @param insts the instances
+   * @param first the index of the first instance
+   * @param num the number of instances
+   * @param classify true if classifyInstance() is used rather than
+   *          distributionForInstance()
+   * @param runner the task runner, or null to use the calling thread only
+   * @return the predictions, [instance][member]
+   * @throws Exception if a prediction fails
+   */
+  public static double[][][] predict(final Classifier[] members,
+    final Instances insts, final int first, final int num,
+    final boolean classify, TaskRunner runner) throws Exception {
+
+    final double[][][] predictions = new double[num][members.length][];
+    int numGroups = (runner == null) ? 1 : Math.min(members.length,
+      runner.getNumSlots());
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int g = 0; g < numGroups; g++) {
+      final int lo = g * members.length / numGroups;
+      final int hi = (g + 1) * members.length / numGroups;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          for (int m = lo; m < hi; m++) {
+            for (int i = 0; i < num; i++) {
+              predictions[i][m] = predict(members[m],
+                insts.instance(first + i), classify);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    if (runner != null) {
+      runner.invokeAll(tasks);
+    } else {
+      for (Callable<Object> task : tasks) {
+        task.call();
+      }
+    }
+
+    return predictions;
+  }
+
+  /**
+   * Returns the class distributions of an ensemble for a set of instances.
+   *
+   * @param members the members
+   * @param insts the instances
+   * @param classify true if classifyInstance() is used rather than
+   *          distributionForInstance() to get the predictions of the members
+   * @param numSlots the number of execution slots
+   * @param batchSize the number of instances to process at a time (all of
+   *          them if not positive)
+   * @param combiner combines the predictions for an instance
+   * @return the class distributions, one for each instance
+   * @throws Exception if a prediction fails
+   */
+  public static double[][] distributionsForInstances(Classifier[] members,
+    Instances insts, boolean classify, int numSlots, int batchSize,
+    Combiner combiner) throws Exception {
+
+    int numInstances = insts.numInstances();
+    if (batchSize <= 0) {
+      batchSize = Math.max(1, numInstances);
+    }
+
+    double[][] result = new double[numInstances][];
+    TaskRunner runner = (numSlots > 1 && members.length > 1) ? new TaskRunner(
+      numSlots) : null;
+    try {
+      for (int first = 0; first < numInstances; first += batchSize) {
+        int num = Math.min(batchSize, numInstances - first);
+        double[][][] predictions = predict(members, insts, first, num,
+          classify, runner);
+        for (int i = 0; i < num; i++) {
+          result[first + i] = combiner.combine(insts.instance(first + i),
+            predictions[i]);
+          predictions[i] = null;
+        }
+      }
+    } finally {
+      if (runner != null) {
+        runner.shutdown();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses a batch size.
+   *
+   * @param batchSize the batch size as a string
+   * @return the batch size, 0 if it is null, empty or not a number
+   */
+  public static int parseBatchSize(String batchSize) {
+    if (batchSize == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(batchSize.trim());
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
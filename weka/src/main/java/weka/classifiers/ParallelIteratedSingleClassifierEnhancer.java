@@ -21,6 +21,7 @@
 
 package weka.classifiers;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -29,6 +30,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.Utils;
@@ -172,10 +174,7 @@ public abstract class ParallelIteratedSingleClassifierEnhancer extends
 
     if (m_numExecutionSlots != 1) {
 
-      int numCores = (m_numExecutionSlots == 0) 
-	  ? Runtime.getRuntime().availableProcessors()
-	  : m_numExecutionSlots;
-      ExecutorService executorPool = Executors.newFixedThreadPool(numCores);
+      ExecutorService executorPool = Executors.newFixedThreadPool(getNumThreads());
 
       final CountDownLatch doneSignal = new CountDownLatch(m_Classifiers.length);
       final AtomicInteger numFailed = new AtomicInteger();
@@ -224,6 +223,66 @@ public abstract class ParallelIteratedSingleClassifierEnhancer extends
   }
 
 
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return the number of execution slots, or the number of cores if it is 0
+   */
+  protected int getNumThreads() {
+    return (m_numExecutionSlots == 0)
+      ? Runtime.getRuntime().availableProcessors()
+      : m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the class distributions for a batch of instances, averaging the
+   * predictions of the members: for a numeric class the mean of the
+   * (non-missing) predicted values, otherwise the normalized sum of the
+   * distributions. The members are evaluated concurrently if there is more
+   * than one execution slot.
+   *
+   * @param insts the instances
+   * @param batchSize the number of instances to process at a time
+   * @return the class distributions, one for each instance
+   * @throws Exception if the distributions can't be computed
+   */
+  protected double[][] averageDistributions(Instances insts, int batchSize)
+    throws Exception {
+
+    final boolean numeric = insts.classAttribute().isNumeric();
+    return EnsemblePredictions.distributionsForInstances(
+      Arrays.copyOf(m_Classifiers, m_NumIterations), insts, numeric,
+      getNumThreads(), batchSize, new EnsemblePredictions.Combiner() {
+        @Override
+        public double[] combine(Instance instance, double[][] predictions) {
+          double[] sums = new double[instance.numClasses()];
+          double numPreds = 0;
+          for (double[] prediction : predictions) {
+            if (numeric) {
+              if (!Utils.isMissingValue(prediction[0])) {
+                sums[0] += prediction[0];
+                numPreds++;
+              }
+            } else {
+              for (int j = 0; j < prediction.length; j++) {
+                sums[j] += prediction[j];
+              }
+            }
+          }
+          if (numeric) {
+            if (numPreds == 0) {
+              sums[0] = Utils.missingValue();
+            } else {
+              sums[0] /= numPreds;
+            }
+          } else if (!Utils.eq(Utils.sum(sums), 0)) {
+            Utils.normalize(sums);
+          }
+          return sums;
+        }
+      });
+  }
+
   /**
    * Gets a training set for a particular iteration. Implementations need
    * to be careful with thread safety and should probably be synchronized
@@ -0,0 +1,179 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScoreCache.java
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+package weka.classifiers.bayes.net.search;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Memory bounded cache of scores computed during a network structure search.
+ * Scores are keyed by an integer array describing what was scored, e.g. a node
+ * followed by its parents for local scores, or the parent sets of all nodes
+ * for global scores. When the cache is full, the least recently used entry is
+ * discarded. All methods are thread safe.
+ *
+ * @version $Revision$
+ */
+public class ScoreCache implements RevisionHandler {
+
+  /**
+   * Key wrapping an integer array, so that it can be used in a hash map.
+   */
+  protected static class Key {
+
+    /** the wrapped array */
+    protected final int[] m_nKey;
+
+    /** the hash code of the wrapped array */
+    protected final int m_nHash;
+
+    /**
+     * c'tor
+     *
+     * @param nKey the array to wrap (not copied)
+     */
+    public Key(int[] nKey) {
+      m_nKey = nKey;
+      m_nHash = Arrays.hashCode(nKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return m_nHash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      return Arrays.equals(m_nKey, ((Key) other).m_nKey);
+    }
+  } // class Key
+
+  /** the cached scores, in access order */
+  protected final LinkedHashMap<Key, Double> m_Scores;
+
+  /** maximum number of entries kept */
+  protected final int m_nMaxSize;
+
+  /** number of lookups that found a score */
+  protected long m_nHits;
+
+  /** number of lookups that did not find a score */
+  protected long m_nMisses;
+
+  /**
+   * c'tor
+   *
+   * @param nMaxSize the maximum number of scores to keep
+   */
+  public ScoreCache(int nMaxSize) {
+    m_nMaxSize = nMaxSize;
+    m_Scores = new LinkedHashMap<Key, Double>(Math.min(nMaxSize, 1024), 0.75f,
+      true) {
+
+      /** for serialization */
+      private static final long serialVersionUID = -2427434858218766592L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+        return size() > m_nMaxSize;
+      }
+    };
+  }
+
+  /**
+   * Looks up a score.
+   *
+   * @param nKey the key of the score
+   * @return the cached score, or null if it is not in the cache
+   */
+  public synchronized Double get(int[] nKey) {
+    Double score = m_Scores.get(new Key(nKey));
+    if (score == null) {
+      m_nMisses++;
+    } else {
+      m_nHits++;
+    }
+    return score;
+  }
+
+  /**
+   * Stores a score. The key array must not be modified afterwards.
+   *
+   * @param nKey the key of the score
+   * @param fScore the score
+   */
+  public synchronized void put(int[] nKey, double fScore) {
+    if (m_nMaxSize > 0) {
+      m_Scores.put(new Key(nKey), fScore);
+    }
+  }
+
+  /**
+   * Removes all scores from the cache.
+   */
+  public synchronized void clear() {
+    m_Scores.clear();
+  }
+
+  /**
+   * Returns the number of scores currently in the cache.
+   *
+   * @return the number of cached scores
+   */
+  public synchronized int size() {
+    return m_Scores.size();
+  }
+
+  /**
+   * Returns the number of lookups that found a score.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return m_nHits;
+  }
+
+  /**
+   * Returns the number of lookups that did not find a score.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return m_nMisses;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
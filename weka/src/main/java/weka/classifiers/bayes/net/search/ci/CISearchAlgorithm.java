@@ -45,6 +45,14 @@ import weka.core.RevisionUtils;
  * <pre> -S [BAYES|MDL|ENTROPY|AIC|CROSS_CLASSIC|CROSS_BAYES]
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
+ * <pre> -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -103,6 +103,12 @@ import weka.core.Utils;
  *  (default probabilistic scoring)
  * </pre>
  * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of network scores kept in the score cache.
+ *  (default 10000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -581,6 +587,12 @@ public class GeneticSearch extends GlobalScoreSearchAlgorithm {
    *  (default probabilistic scoring)
    * </pre>
    * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of network scores kept in the score cache.
+   *  (default 10000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -27,6 +27,7 @@ import java.util.Vector;
 
 import weka.classifiers.bayes.BayesNet;
 import weka.classifiers.bayes.net.ParentSet;
+import weka.classifiers.bayes.net.search.ScoreCache;
 import weka.classifiers.bayes.net.search.SearchAlgorithm;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -64,6 +65,12 @@ import weka.core.Utils;
  *  (default probabilistic scoring)
  * </pre>
  * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of network scores kept in the score cache.
+ *  (default 10000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert
@@ -101,6 +108,46 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
    */
   int m_nCVType = LOOCV;
 
+  /** maximum number of network scores kept in the score cache */
+  int m_nScoreCacheSize = 10000;
+
+  /** network scores keyed by network structure, only present during search */
+  transient ScoreCache m_ScoreCache;
+
+  /**
+   * buildStructure determines the network structure/graph of the network,
+   * using the score cache while searching.
+   * 
+   * @param bayesNet the network
+   * @param instances the data to use
+   * @throws Exception if something goes wrong
+   */
+  @Override
+  public void buildStructure(BayesNet bayesNet, Instances instances)
+    throws Exception {
+    initScoreCache();
+    try {
+      super.buildStructure(bayesNet, instances);
+    } finally {
+      freeScoreCache();
+    }
+  } // buildStructure
+
+  /**
+   * Sets up the score cache. Derived classes that score outside search()
+   * should call this first, and freeScoreCache() when done.
+   */
+  protected void initScoreCache() {
+    m_ScoreCache = new ScoreCache(m_nScoreCacheSize);
+  } // initScoreCache
+
+  /**
+   * Releases the score cache set up by initScoreCache().
+   */
+  protected void freeScoreCache() {
+    m_ScoreCache = null;
+  } // freeScoreCache
+
   /**
    * performCV returns the accuracy calculated using cross validation. The
    * dataset used is m_Instances associated with the Bayes Network.
@@ -111,19 +158,65 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
    *           updateClassifier
    */
   public double calcScore(BayesNet bayesNet) throws Exception {
+    // the score only depends on the structure, so networks the search
+    // returns to need not be cross validated again
+    int[] nKey = null;
+    ScoreCache cache = m_ScoreCache;
+    if (cache != null) {
+      nKey = structureKey(bayesNet);
+      Double fScore = cache.get(nKey);
+      if (fScore != null) {
+        return fScore;
+      }
+    }
+
+    double fScore;
     switch (m_nCVType) {
     case LOOCV:
-      return leaveOneOutCV(bayesNet);
+      fScore = leaveOneOutCV(bayesNet);
+      break;
     case CUMCV:
-      return cumulativeCV(bayesNet);
+      fScore = cumulativeCV(bayesNet);
+      break;
     case KFOLDCV:
-      return kFoldCV(bayesNet, m_nNrOfFolds);
+      fScore = kFoldCV(bayesNet, m_nNrOfFolds);
+      break;
     default:
       throw new Exception("Unrecognized cross validation type encountered: "
         + m_nCVType);
     }
+
+    if (cache != null) {
+      cache.put(nKey, fScore);
+    }
+    return fScore;
   } // calcScore
 
+  /**
+   * Returns a key describing the structure of a network: for each node, the
+   * number of parents followed by the parents.
+   * 
+   * @param bayesNet the network
+   * @return the key
+   */
+  protected int[] structureKey(BayesNet bayesNet) {
+    int nNrOfNodes = bayesNet.getNrOfNodes();
+    int nSize = nNrOfNodes;
+    for (int iNode = 0; iNode < nNrOfNodes; iNode++) {
+      nSize += bayesNet.getParentSet(iNode).getNrOfParents();
+    }
+    int[] nKey = new int[nSize];
+    int iKey = 0;
+    for (int iNode = 0; iNode < nNrOfNodes; iNode++) {
+      ParentSet oParentSet = bayesNet.getParentSet(iNode);
+      nKey[iKey++] = oParentSet.getNrOfParents();
+      for (int iParent = 0; iParent < oParentSet.getNrOfParents(); iParent++) {
+        nKey[iKey++] = oParentSet.getParent(iParent);
+      }
+    }
+    return nKey;
+  } // structureKey
+
   /**
    * Calc Node Score With Added Parent
    * 
@@ -419,6 +512,11 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
       "\tUse probabilistic or 0/1 scoring.\n\t(default probabilistic scoring)",
       "Q", 0, "-Q"));
 
+    newVector.addElement(new Option(
+      "\tMaximum number of network scores kept in the score cache.\n"
+        + "\t(default 10000, 0 disables the cache)", "score-cache", 1,
+      "-score-cache <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -450,6 +548,12 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
    *  (default probabilistic scoring)
    * </pre>
    * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of network scores kept in the score cache.
+   *  (default 10000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -472,6 +576,14 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
       setCVType(new SelectedTag(CUMCV, TAGS_CV_TYPE));
     }
     setUseProb(!Utils.getFlag('Q', options));
+
+    String sCacheSize = Utils.getOption("score-cache", options);
+    if (sCacheSize.length() != 0) {
+      setScoreCacheSize(Integer.parseInt(sCacheSize));
+    } else {
+      setScoreCacheSize(10000);
+    }
+
     super.setOptions(options);
   } // setOptions
 
@@ -507,6 +619,9 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
       options.add("-Q");
     }
 
+    options.add("-score-cache");
+    options.add("" + getScoreCacheSize());
+
     Collections.addAll(options, super.getOptions());
 
     return options.toArray(new String[0]);
@@ -531,6 +646,34 @@ public class GlobalScoreSearchAlgorithm extends SearchAlgorithm {
       + "exactly the correct class.";
   } // useProbTipText
 
+  /**
+   * Sets the maximum number of network scores kept in the score cache.
+   * 
+   * @param nSize the maximum number of scores, 0 disables the cache
+   */
+  public void setScoreCacheSize(int nSize) {
+    m_nScoreCacheSize = nSize;
+  }
+
+  /**
+   * Gets the maximum number of network scores kept in the score cache.
+   * 
+   * @return the maximum number of scores
+   */
+  public int getScoreCacheSize() {
+    return m_nScoreCacheSize;
+  }
+
+  /**
+   * @return a string to describe the ScoreCacheSize option.
+   */
+  public String scoreCacheSizeTipText() {
+    return "The maximum number of network scores remembered during search, so"
+      + " that structures the search returns to are not cross validated again."
+      + " The least recently used scores are discarded first. Set to 0 to"
+      + " disable the cache.";
+  }
+
   /**
    * This will return a string describing the search algorithm.
    * 
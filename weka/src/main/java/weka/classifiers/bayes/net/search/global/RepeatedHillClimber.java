@@ -88,6 +88,12 @@ import weka.core.Utils;
  *  (default probabilistic scoring)
  * </pre>
  * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of network scores kept in the score cache.
+ *  (default 10000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -316,6 +322,12 @@ public class RepeatedHillClimber extends HillClimber {
    *  (default probabilistic scoring)
    * </pre>
    * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of network scores kept in the score cache.
+   *  (default 10000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
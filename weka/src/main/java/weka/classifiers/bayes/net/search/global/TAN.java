@@ -82,6 +82,12 @@ import weka.core.TechnicalInformationHandler;
  *  (default probabilistic scoring)
  * </pre>
  * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of network scores kept in the score cache.
+ *  (default 10000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert
@@ -144,43 +150,21 @@ public class TAN extends GlobalScoreSearchAlgorithm implements
     int[] link1 = new int[nNrOfAtts - 1];
     int[] link2 = new int[nNrOfAtts - 1];
     boolean[] linked = new boolean[nNrOfAtts];
-    // 1. find strongest link
-    int nBestLinkNode1 = -1;
-    int nBestLinkNode2 = -1;
-    double fBestDeltaScore = 0.0;
-    int iLinkNode1;
-    for (iLinkNode1 = 0; iLinkNode1 < nNrOfAtts; iLinkNode1++) {
-      if (iLinkNode1 != nClassNode) {
-        for (int iLinkNode2 = 0; iLinkNode2 < nNrOfAtts; iLinkNode2++) {
-          if ((iLinkNode1 != iLinkNode2) && (iLinkNode2 != nClassNode)) {
-            double fScore = calcScoreWithExtraParent(iLinkNode1, iLinkNode2);
-            if ((nBestLinkNode1 == -1) || (fScore > fBestDeltaScore)) {
-              fBestDeltaScore = fScore;
-              nBestLinkNode1 = iLinkNode2;
-              nBestLinkNode2 = iLinkNode1;
-            }
-          }
-        }
-      }
-    }
 
-    link1[0] = nBestLinkNode1;
-    link2[0] = nBestLinkNode2;
-    linked[nBestLinkNode1] = true;
-    linked[nBestLinkNode2] = true;
-
-    // 2. find remaining links by adding strongest link to already
-    // connected nodes
-    for (int iLink = 1; iLink < nNrOfAtts - 2; iLink++) {
-      nBestLinkNode1 = -1;
+    // the same candidate networks are scored for every link, so remember
+    // their scores
+    initScoreCache();
+    try {
+      // 1. find strongest link
+      int nBestLinkNode1 = -1;
+      int nBestLinkNode2 = -1;
+      double fBestDeltaScore = 0.0;
+      int iLinkNode1;
       for (iLinkNode1 = 0; iLinkNode1 < nNrOfAtts; iLinkNode1++) {
         if (iLinkNode1 != nClassNode) {
           for (int iLinkNode2 = 0; iLinkNode2 < nNrOfAtts; iLinkNode2++) {
-            if ((iLinkNode1 != iLinkNode2) && (iLinkNode2 != nClassNode)
-              && (linked[iLinkNode1] || linked[iLinkNode2])
-              && (!linked[iLinkNode1] || !linked[iLinkNode2])) {
+            if ((iLinkNode1 != iLinkNode2) && (iLinkNode2 != nClassNode)) {
               double fScore = calcScoreWithExtraParent(iLinkNode1, iLinkNode2);
-
               if ((nBestLinkNode1 == -1) || (fScore > fBestDeltaScore)) {
                 fBestDeltaScore = fScore;
                 nBestLinkNode1 = iLinkNode2;
@@ -190,10 +174,41 @@ public class TAN extends GlobalScoreSearchAlgorithm implements
           }
         }
       }
-      link1[iLink] = nBestLinkNode1;
-      link2[iLink] = nBestLinkNode2;
+
+      link1[0] = nBestLinkNode1;
+      link2[0] = nBestLinkNode2;
       linked[nBestLinkNode1] = true;
       linked[nBestLinkNode2] = true;
+
+      // 2. find remaining links by adding strongest link to already
+      // connected nodes
+      for (int iLink = 1; iLink < nNrOfAtts - 2; iLink++) {
+        nBestLinkNode1 = -1;
+        for (iLinkNode1 = 0; iLinkNode1 < nNrOfAtts; iLinkNode1++) {
+          if (iLinkNode1 != nClassNode) {
+            for (int iLinkNode2 = 0; iLinkNode2 < nNrOfAtts; iLinkNode2++) {
+              if ((iLinkNode1 != iLinkNode2) && (iLinkNode2 != nClassNode)
+                && (linked[iLinkNode1] || linked[iLinkNode2])
+                && (!linked[iLinkNode1] || !linked[iLinkNode2])) {
+                double fScore = calcScoreWithExtraParent(iLinkNode1,
+                  iLinkNode2);
+
+                if ((nBestLinkNode1 == -1) || (fScore > fBestDeltaScore)) {
+                  fBestDeltaScore = fScore;
+                  nBestLinkNode1 = iLinkNode2;
+                  nBestLinkNode2 = iLinkNode1;
+                }
+              }
+            }
+          }
+        }
+        link1[iLink] = nBestLinkNode1;
+        link2[iLink] = nBestLinkNode2;
+        linked[nBestLinkNode1] = true;
+        linked[nBestLinkNode2] = true;
+      }
+    } finally {
+      freeScoreCache();
     }
 
     // System.out.println();
@@ -253,6 +268,12 @@ public class TAN extends GlobalScoreSearchAlgorithm implements
    *  (default probabilistic scoring)
    * </pre>
    * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of network scores kept in the score cache.
+   *  (default 10000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
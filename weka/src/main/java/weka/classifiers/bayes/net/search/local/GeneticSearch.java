@@ -97,6 +97,18 @@ import weka.core.Utils;
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -572,6 +584,18 @@ public class GeneticSearch extends LocalScoreSearchAlgorithm {
    *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for scoring candidate parent sets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of node scores kept in the score cache.
+   *  (default 100000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
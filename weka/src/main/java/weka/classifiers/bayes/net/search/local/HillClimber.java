@@ -22,6 +22,7 @@
 package weka.classifiers.bayes.net.search.local;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -75,6 +76,18 @@ import weka.core.Utils;
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -274,18 +287,38 @@ public class HillClimber extends LocalScoreSearchAlgorithm {
       fBaseScores[iAttribute] = calcNodeScore(iAttribute);
     }
 
+    // collect all arc additions, so they can be scored in one go
+    Operation[] oOperations = new Operation[nNrOfAtts * nNrOfAtts];
+    int[] nHeads = new int[nNrOfAtts * nNrOfAtts];
+    int[][] nParents = new int[nNrOfAtts * nNrOfAtts][];
+    int nCandidates = 0;
     for (int iAttributeHead = 0; iAttributeHead < nNrOfAtts; iAttributeHead++) {
       for (int iAttributeTail = 0; iAttributeTail < nNrOfAtts; iAttributeTail++) {
         if (iAttributeHead != iAttributeTail) {
           Operation oOperation = new Operation(iAttributeTail, iAttributeHead,
             Operation.OPERATION_ADD);
-          m_Cache.put(oOperation,
-            calcScoreWithExtraParent(iAttributeHead, iAttributeTail)
-              - fBaseScores[iAttributeHead]);
+          int[] nNewParents = parentsWithExtraParent(iAttributeHead,
+            iAttributeTail);
+          if (nNewParents == null) {
+            // iAttributeTail already is a parent
+            m_Cache.put(oOperation, -1e100 - fBaseScores[iAttributeHead]);
+          } else {
+            oOperations[nCandidates] = oOperation;
+            nHeads[nCandidates] = iAttributeHead;
+            nParents[nCandidates] = nNewParents;
+            nCandidates++;
+          }
         }
       }
     }
 
+    double[] fScores = calcNodeScores(Arrays.copyOf(nHeads, nCandidates),
+      Arrays.copyOf(nParents, nCandidates));
+    for (int iCandidate = 0; iCandidate < nCandidates; iCandidate++) {
+      m_Cache.put(oOperations[iCandidate], fScores[iCandidate]
+        - fBaseScores[oOperations[iCandidate].m_nHead]);
+    }
+
   } // initCache
 
   /**
@@ -379,7 +412,7 @@ public class HillClimber extends LocalScoreSearchAlgorithm {
    * @param instances
    */
   void applyArcAddition(BayesNet bayesNet, int iHead, int iTail,
-    Instances instances) {
+    Instances instances) throws Exception {
     ParentSet bestParentSet = bayesNet.getParentSet(iHead);
     bestParentSet.addParent(iTail, instances);
     updateCache(iHead, instances.numAttributes(), bestParentSet);
@@ -393,7 +426,7 @@ public class HillClimber extends LocalScoreSearchAlgorithm {
    * @param instances
    */
   void applyArcDeletion(BayesNet bayesNet, int iHead, int iTail,
-    Instances instances) {
+    Instances instances) throws Exception {
     ParentSet bestParentSet = bayesNet.getParentSet(iHead);
     bestParentSet.deleteParent(iTail, instances);
     updateCache(iHead, instances.numAttributes(), bestParentSet);
@@ -505,31 +538,44 @@ public class HillClimber extends LocalScoreSearchAlgorithm {
    * @param nNrOfAtts number of nodes/attributes in data set
    * @param parentSet new parents set of node iAttributeHead
    */
-  void updateCache(int iAttributeHead, int nNrOfAtts, ParentSet parentSet) {
+  void updateCache(int iAttributeHead, int nNrOfAtts, ParentSet parentSet)
+    throws Exception {
     // update cache entries for arrows heading towards iAttributeHead
     double fBaseScore = calcNodeScore(iAttributeHead);
     int nNrOfParents = parentSet.getNrOfParents();
+
+    // collect the changed parent sets, so they can be scored in one go
+    Operation[] oOperations = new Operation[nNrOfAtts];
+    int[] nHeads = new int[nNrOfAtts];
+    int[][] nParents = new int[nNrOfAtts][];
+    int nCandidates = 0;
     for (int iAttributeTail = 0; iAttributeTail < nNrOfAtts; iAttributeTail++) {
       if (iAttributeTail != iAttributeHead) {
         if (!parentSet.contains(iAttributeTail)) {
           // add entries to cache for adding arcs
           if (nNrOfParents < m_nMaxNrOfParents) {
-            Operation oOperation = new Operation(iAttributeTail,
+            oOperations[nCandidates] = new Operation(iAttributeTail,
               iAttributeHead, Operation.OPERATION_ADD);
-            m_Cache.put(oOperation,
-              calcScoreWithExtraParent(iAttributeHead, iAttributeTail)
-                - fBaseScore);
+            nParents[nCandidates] = parentsWithExtraParent(iAttributeHead,
+              iAttributeTail);
+            nHeads[nCandidates++] = iAttributeHead;
           }
         } else {
           // add entries to cache for deleting arcs
-          Operation oOperation = new Operation(iAttributeTail, iAttributeHead,
-            Operation.OPERATION_DEL);
-          m_Cache.put(oOperation,
-            calcScoreWithMissingParent(iAttributeHead, iAttributeTail)
-              - fBaseScore);
+          oOperations[nCandidates] = new Operation(iAttributeTail,
+            iAttributeHead, Operation.OPERATION_DEL);
+          nParents[nCandidates] = parentsWithMissingParent(iAttributeHead,
+            iAttributeTail);
+          nHeads[nCandidates++] = iAttributeHead;
         }
       }
     }
+
+    double[] fScores = calcNodeScores(Arrays.copyOf(nHeads, nCandidates),
+      Arrays.copyOf(nParents, nCandidates));
+    for (int iCandidate = 0; iCandidate < nCandidates; iCandidate++) {
+      m_Cache.put(oOperations[iCandidate], fScores[iCandidate] - fBaseScore);
+    }
   } // updateCache
 
   /**
@@ -609,6 +655,18 @@ public class HillClimber extends LocalScoreSearchAlgorithm {
    *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for scoring candidate parent sets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of node scores kept in the score cache.
+   *  (default 100000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
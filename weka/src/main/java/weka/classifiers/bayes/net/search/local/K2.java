@@ -20,6 +20,7 @@
  */
 package weka.classifiers.bayes.net.search.local;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Random;
@@ -107,6 +108,18 @@ import weka.core.Utils;
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert (rrb@xm.co.nz)
@@ -214,12 +227,29 @@ public class K2 extends LocalScoreSearchAlgorithm implements
       boolean bProgress = (bayesNet.getParentSet(iAttribute).getNrOfParents() < getMaxNrOfParents());
       while (bProgress) {
         int nBestAttribute = -1;
+        // score all candidate parents in one go
+        int[] nCandidates = new int[iOrder];
+        int[] nHeads = new int[iOrder];
+        int[][] nParents = new int[iOrder][];
+        int nNrOfCandidates = 0;
         for (int iOrder2 = 0; iOrder2 < iOrder; iOrder2++) {
           int iAttribute2 = nOrder[iOrder2];
-          double fScore = calcScoreWithExtraParent(iAttribute, iAttribute2);
+          int[] nNewParents = parentsWithExtraParent(iAttribute, iAttribute2);
+          if (nNewParents != null) {
+            nCandidates[nNrOfCandidates] = iAttribute2;
+            nHeads[nNrOfCandidates] = iAttribute;
+            nParents[nNrOfCandidates] = nNewParents;
+            nNrOfCandidates++;
+          }
+        }
+        double[] fScores = calcNodeScores(
+          Arrays.copyOf(nHeads, nNrOfCandidates),
+          Arrays.copyOf(nParents, nNrOfCandidates));
+        for (int iCandidate = 0; iCandidate < nNrOfCandidates; iCandidate++) {
+          double fScore = fScores[iCandidate];
           if (fScore > fBestScore) {
             fBestScore = fScore;
-            nBestAttribute = iAttribute2;
+            nBestAttribute = nCandidates[iCandidate];
           }
         }
         if (nBestAttribute != -1) {
@@ -347,6 +377,18 @@ public class K2 extends LocalScoreSearchAlgorithm implements
    *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for scoring candidate parent sets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of node scores kept in the score cache.
+   *  (default 100000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
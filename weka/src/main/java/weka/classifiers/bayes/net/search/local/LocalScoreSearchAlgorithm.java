@@ -21,12 +21,20 @@
 
 package weka.classifiers.bayes.net.search.local;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import weka.classifiers.bayes.BayesNet;
 import weka.classifiers.bayes.net.ParentSet;
+import weka.classifiers.bayes.net.search.ScoreCache;
 import weka.classifiers.bayes.net.search.SearchAlgorithm;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -60,6 +68,18 @@ import weka.core.Utils;
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert
@@ -106,6 +126,24 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
    */
   int m_nScoreType = Scoreable.BAYES;
 
+  /** number of threads used to score candidate parent sets */
+  int m_numExecutionSlots = 1;
+
+  /** maximum number of node scores kept in the score cache */
+  int m_nScoreCacheSize = 100000;
+
+  /** node scores keyed by node and parent set, only present during search */
+  transient ScoreCache m_ScoreCache;
+
+  /**
+   * the data in column order, used for counting when no ADTree is available
+   * (only present during search)
+   */
+  transient int[][] m_nValues;
+
+  /** the pool for scoring candidate parent sets in parallel */
+  transient ExecutorService m_executorPool;
+
   /**
    * logScore returns the log of the quality of a network (e.g. the posterior
    * probability of the network, or the MDL value).
@@ -166,9 +204,61 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
   public void buildStructure(BayesNet bayesNet, Instances instances)
     throws Exception {
     m_BayesNet = bayesNet;
-    super.buildStructure(bayesNet, instances);
+    initScoreCache();
+    try {
+      super.buildStructure(bayesNet, instances);
+    } finally {
+      freeScoreCache();
+    }
   } // buildStructure
 
+  /**
+   * Sets up the score cache, the column representation of the data used for
+   * counting (if there is no ADTree) and the pool for scoring candidates in
+   * parallel. Derived classes that score outside search() should call this
+   * first, and freeScoreCache() when done.
+   */
+  protected void initScoreCache() {
+    Instances instances = m_BayesNet.m_Instances;
+
+    m_ScoreCache = new ScoreCache(m_nScoreCacheSize);
+
+    if (!m_BayesNet.getUseADTree() || m_BayesNet.getADTree() == null) {
+      m_nValues = new int[instances.numAttributes()][instances.numInstances()];
+      for (int iInstance = 0; iInstance < instances.numInstances(); iInstance++) {
+        Instance instance = instances.instance(iInstance);
+        for (int iAttribute = 0; iAttribute < instances.numAttributes(); iAttribute++) {
+          m_nValues[iAttribute][iInstance] = (int) instance.value(iAttribute);
+        }
+      }
+    }
+
+    if (m_numExecutionSlots > 1 && m_executorPool == null) {
+      m_executorPool = Executors.newFixedThreadPool(m_numExecutionSlots,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BayesNet structure search");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+  } // initScoreCache
+
+  /**
+   * Releases the score cache, the column representation of the data and the
+   * thread pool set up by initScoreCache().
+   */
+  protected void freeScoreCache() {
+    m_ScoreCache = null;
+    m_nValues = null;
+    if (m_executorPool != null) {
+      m_executorPool.shutdown();
+      m_executorPool = null;
+    }
+  } // freeScoreCache
+
   /**
    * Calc Node Score for given parent set
    * 
@@ -176,27 +266,111 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
    * @return log score
    */
   public double calcNodeScore(int nNode) {
+    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
+    int[] nParents = new int[oParentSet.getNrOfParents()];
+    for (int iParent = 0; iParent < nParents.length; iParent++) {
+      nParents[iParent] = oParentSet.getParent(iParent);
+    }
+    return calcNodeScore(nNode, nParents);
+  }
+
+  /**
+   * Calc Node Score for a node with the given parents. The parent set of the
+   * node in the network is not used nor modified, so this method can be called
+   * from several threads at the same time. Scores are looked up in, and added
+   * to, the score cache while a search is running.
+   * 
+   * @param nNode node for which the score is calculate
+   * @param nParents the parents of the node
+   * @return log score
+   */
+  protected double calcNodeScore(int nNode, int[] nParents) {
+    int[] nKey = null;
+    ScoreCache cache = m_ScoreCache;
+    if (cache != null) {
+      nKey = new int[nParents.length + 1];
+      nKey[0] = nNode;
+      System.arraycopy(nParents, 0, nKey, 1, nParents.length);
+      Double fScore = cache.get(nKey);
+      if (fScore != null) {
+        return fScore;
+      }
+    }
+
+    double fScore;
     if (m_BayesNet.getUseADTree() && m_BayesNet.getADTree() != null) {
-      return calcNodeScoreADTree(nNode);
+      fScore = calcNodeScoreADTree(nNode, nParents);
     } else {
-      return calcNodeScorePlain(nNode);
+      fScore = calcNodeScorePlain(nNode, nParents);
+    }
+
+    if (cache != null) {
+      cache.put(nKey, fScore);
     }
+    return fScore;
   }
 
+  /**
+   * Calculates the node scores for a batch of (node, parent set) pairs, in
+   * parallel if more than one execution slot is available. The results are
+   * the same as those of calling calcNodeScore(int, int[]) for each pair in
+   * turn.
+   * 
+   * @param nNodes the nodes to score
+   * @param nParents the parents to score each node with
+   * @return the log scores
+   * @throws Exception if scoring is interrupted
+   */
+  protected double[] calcNodeScores(final int[] nNodes, final int[][] nParents)
+    throws Exception {
+    final double[] fScores = new double[nNodes.length];
+
+    ExecutorService pool = m_executorPool;
+    if (pool == null || nNodes.length < 2) {
+      for (int i = 0; i < nNodes.length; i++) {
+        fScores[i] = calcNodeScore(nNodes[i], nParents[i]);
+      }
+      return fScores;
+    }
+
+    // each task scores every nTasks-th pair, so results go to distinct cells
+    final int nTasks = Math.min(m_numExecutionSlots, nNodes.length);
+    List<Future<Object>> results = new ArrayList<Future<Object>>(nTasks);
+    for (int iTask = 0; iTask < nTasks; iTask++) {
+      final int iFirst = iTask;
+      results.add(pool.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          for (int i = iFirst; i < nNodes.length; i += nTasks) {
+            fScores[i] = calcNodeScore(nNodes[i], nParents[i]);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> result : results) {
+      result.get();
+    }
+
+    return fScores;
+  } // calcNodeScores
+
   /**
    * helper function for CalcNodeScore above using the ADTree data structure
    * 
    * @param nNode node for which the score is calculate
+   * @param nParents the parents of the node
    * @return log score
    */
-  private double calcNodeScoreADTree(int nNode) {
+  private double calcNodeScoreADTree(int nNode, int[] nParents) {
     Instances instances = m_BayesNet.m_Instances;
-    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
     // get set of parents, insert iNode
-    int nNrOfParents = oParentSet.getNrOfParents();
+    int nNrOfParents = nParents.length;
     int[] nNodes = new int[nNrOfParents + 1];
+    int nCardinality = 1;
     for (int iParent = 0; iParent < nNrOfParents; iParent++) {
-      nNodes[iParent] = oParentSet.getParent(iParent);
+      nNodes[iParent] = nParents[iParent];
+      nCardinality *= instances.attribute(nParents[iParent]).numValues();
     }
     nNodes[nNrOfParents] = nNode;
 
@@ -225,7 +399,6 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
     }
 
     // get counts from ADTree
-    int nCardinality = oParentSet.getCardinalityOfParents();
     int numValues = instances.attribute(nNode).numValues();
     int[] nCounts = new int[nCardinality * numValues];
     // if (nNrOfParents > 1) {
@@ -235,37 +408,58 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
     return calcScoreOfCounts(nCounts, nCardinality, numValues, instances);
   } // CalcNodeScore
 
-  private double calcNodeScorePlain(int nNode) {
+  /**
+   * helper function for CalcNodeScore above that counts by scanning the data
+   * 
+   * @param nNode node for which the score is calculate
+   * @param nParents the parents of the node
+   * @return log score
+   */
+  private double calcNodeScorePlain(int nNode, int[] nParents) {
     Instances instances = m_BayesNet.m_Instances;
-    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
 
     // determine cardinality of parent set & reserve space for frequency counts
-    int nCardinality = oParentSet.getCardinalityOfParents();
+    int nCardinality = 1;
+    for (int nParent : nParents) {
+      nCardinality *= instances.attribute(nParent).numValues();
+    }
     int numValues = instances.attribute(nNode).numValues();
     int[] nCounts = new int[nCardinality * numValues];
 
-    // initialize (don't need this?)
-    for (int iParent = 0; iParent < nCardinality * numValues; iParent++) {
-      nCounts[iParent] = 0;
-    }
-
-    // estimate distributions
-    Enumeration<Instance> enumInsts = instances.enumerateInstances();
+    int[][] nValues = m_nValues;
+    if (nValues != null) {
+      // go through the data column by column
+      int nNrOfInstances = nValues[nNode].length;
+      int[] iCPT = new int[nNrOfInstances];
+      for (int nParent : nParents) {
+        int[] nParentValues = nValues[nParent];
+        int nParentCardinality = instances.attribute(nParent).numValues();
+        for (int iInstance = 0; iInstance < nNrOfInstances; iInstance++) {
+          iCPT[iInstance] = iCPT[iInstance] * nParentCardinality
+            + nParentValues[iInstance];
+        }
+      }
+      int[] nNodeValues = nValues[nNode];
+      for (int iInstance = 0; iInstance < nNrOfInstances; iInstance++) {
+        nCounts[numValues * iCPT[iInstance] + nNodeValues[iInstance]]++;
+      }
+    } else {
+      // estimate distributions
+      Enumeration<Instance> enumInsts = instances.enumerateInstances();
 
-    while (enumInsts.hasMoreElements()) {
-      Instance instance = enumInsts.nextElement();
+      while (enumInsts.hasMoreElements()) {
+        Instance instance = enumInsts.nextElement();
 
-      // updateClassifier;
-      double iCPT = 0;
+        // updateClassifier;
+        double iCPT = 0;
 
-      for (int iParent = 0; iParent < oParentSet.getNrOfParents(); iParent++) {
-        int nParent = oParentSet.getParent(iParent);
+        for (int nParent : nParents) {
+          iCPT = iCPT * instances.attribute(nParent).numValues()
+            + instance.value(nParent);
+        }
 
-        iCPT = iCPT * instances.attribute(nParent).numValues()
-          + instance.value(nParent);
+        nCounts[numValues * ((int) iCPT) + (int) instance.value(nNode)]++;
       }
-
-      nCounts[numValues * ((int) iCPT) + (int) instance.value(nNode)]++;
     }
 
     return calcScoreOfCounts(nCounts, nCardinality, numValues, instances);
@@ -484,23 +678,14 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
    * @return log score
    */
   public double calcScoreWithExtraParent(int nNode, int nCandidateParent) {
-    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
+    int[] nParents = parentsWithExtraParent(nNode, nCandidateParent);
 
     // sanity check: nCandidateParent should not be in parent set already
-    if (oParentSet.contains(nCandidateParent)) {
+    if (nParents == null) {
       return -1e100;
     }
 
-    // set up candidate parent
-    oParentSet.addParent(nCandidateParent, m_BayesNet.m_Instances);
-
-    // calculate the score
-    double logScore = calcNodeScore(nNode);
-
-    // delete temporarily added parent
-    oParentSet.deleteLastParent(m_BayesNet.m_Instances);
-
-    return logScore;
+    return calcNodeScore(nNode, nParents);
   } // CalcScoreWithExtraParent
 
   /**
@@ -512,25 +697,61 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
    * @return log score
    */
   public double calcScoreWithMissingParent(int nNode, int nCandidateParent) {
-    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
+    int[] nParents = parentsWithMissingParent(nNode, nCandidateParent);
 
     // sanity check: nCandidateParent should be in parent set already
-    if (!oParentSet.contains(nCandidateParent)) {
+    if (nParents == null) {
       return -1e100;
     }
 
-    // set up candidate parent
-    int iParent = oParentSet.deleteParent(nCandidateParent,
-      m_BayesNet.m_Instances);
-
-    // calculate the score
-    double logScore = calcNodeScore(nNode);
+    return calcNodeScore(nNode, nParents);
+  } // CalcScoreWithMissingParent
 
-    // restore temporarily deleted parent
-    oParentSet.addParent(nCandidateParent, iParent, m_BayesNet.m_Instances);
+  /**
+   * Returns the parents of a node with a candidate parent added at the end,
+   * i.e. in the order ParentSet.addParent() would give.
+   * 
+   * @param nNode the node
+   * @param nCandidateParent candidate parent to add
+   * @return the parents, or null if the candidate already is a parent
+   */
+  protected int[] parentsWithExtraParent(int nNode, int nCandidateParent) {
+    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
+    if (oParentSet.contains(nCandidateParent)) {
+      return null;
+    }
+    int nNrOfParents = oParentSet.getNrOfParents();
+    int[] nParents = new int[nNrOfParents + 1];
+    for (int iParent = 0; iParent < nNrOfParents; iParent++) {
+      nParents[iParent] = oParentSet.getParent(iParent);
+    }
+    nParents[nNrOfParents] = nCandidateParent;
+    return nParents;
+  } // parentsWithExtraParent
 
-    return logScore;
-  } // CalcScoreWithMissingParent
+  /**
+   * Returns the parents of a node with a candidate parent removed, i.e. in the
+   * order ParentSet.deleteParent() would give.
+   * 
+   * @param nNode the node
+   * @param nCandidateParent candidate parent to remove
+   * @return the parents, or null if the candidate is not a parent
+   */
+  protected int[] parentsWithMissingParent(int nNode, int nCandidateParent) {
+    ParentSet oParentSet = m_BayesNet.getParentSet(nNode);
+    if (!oParentSet.contains(nCandidateParent)) {
+      return null;
+    }
+    int nNrOfParents = oParentSet.getNrOfParents();
+    int[] nParents = new int[nNrOfParents - 1];
+    int iParent2 = 0;
+    for (int iParent = 0; iParent < nNrOfParents; iParent++) {
+      if (oParentSet.getParent(iParent) != nCandidateParent) {
+        nParents[iParent2++] = oParentSet.getParent(iParent);
+      }
+    }
+    return nParents;
+  } // parentsWithMissingParent
 
   /**
    * set quality measure to be used in searching for networks.
@@ -589,6 +810,16 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
       "\tScore type (BAYES, BDeu, MDL, ENTROPY and AIC)", "S", 1,
       "-S [BAYES|MDL|ENTROPY|AIC|CROSS_CLASSIC|CROSS_BAYES]"));
 
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for scoring candidate parent sets.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+      "\tMaximum number of node scores kept in the score cache.\n"
+        + "\t(default 100000, 0 disables the cache)", "score-cache", 1,
+      "-score-cache <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -614,6 +845,18 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
    *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for scoring candidate parent sets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of node scores kept in the score cache.
+   *  (default 100000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -642,6 +885,20 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
       setScoreType(new SelectedTag(Scoreable.AIC, TAGS_SCORE_TYPE));
     }
 
+    String sSlots = Utils.getOption("num-slots", options);
+    if (sSlots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(sSlots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    String sCacheSize = Utils.getOption("score-cache", options);
+    if (sCacheSize.length() != 0) {
+      setScoreCacheSize(Integer.parseInt(sCacheSize));
+    } else {
+      setScoreCacheSize(100000);
+    }
+
     super.setOptions(options);
   } // setOptions
 
@@ -685,6 +942,12 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
       break;
     }
 
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+
+    options.add("-score-cache");
+    options.add("" + getScoreCacheSize());
+
     Collections.addAll(options, super.getOptions());
 
     return options.toArray(new String[0]);
@@ -699,6 +962,61 @@ public class LocalScoreSearchAlgorithm extends SearchAlgorithm {
       + " Akaike Information Criterion (AIC), and Entropy.";
   }
 
+  /**
+   * Sets the number of threads used to score candidate parent sets.
+   * 
+   * @param nSlots the number of threads
+   */
+  public void setNumExecutionSlots(int nSlots) {
+    m_numExecutionSlots = nSlots;
+  }
+
+  /**
+   * Gets the number of threads used to score candidate parent sets.
+   * 
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * @return a string to describe the NumExecutionSlots option.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for scoring the"
+      + " candidate parent sets considered by the search. Set equal to the"
+      + " number of available cpu/cores.";
+  }
+
+  /**
+   * Sets the maximum number of node scores kept in the score cache.
+   * 
+   * @param nSize the maximum number of scores, 0 disables the cache
+   */
+  public void setScoreCacheSize(int nSize) {
+    m_nScoreCacheSize = nSize;
+  }
+
+  /**
+   * Gets the maximum number of node scores kept in the score cache.
+   * 
+   * @return the maximum number of scores
+   */
+  public int getScoreCacheSize() {
+    return m_nScoreCacheSize;
+  }
+
+  /**
+   * @return a string to describe the ScoreCacheSize option.
+   */
+  public String scoreCacheSizeTipText() {
+    return "The maximum number of node scores (a node with a particular parent"
+      + " set) remembered during search, so that parent sets the search returns"
+      + " to are not counted again. The least recently used scores are"
+      + " discarded first. Set to 0 to disable the cache.";
+  }
+
   /**
    * @return a string to describe the MarkovBlanketClassifier option.
    */
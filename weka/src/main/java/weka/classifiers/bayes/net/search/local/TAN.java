@@ -21,6 +21,7 @@
 
 package weka.classifiers.bayes.net.search.local;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import weka.classifiers.bayes.BayesNet;
@@ -76,6 +77,18 @@ import weka.core.TechnicalInformationHandler;
  *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for scoring candidate parent sets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -score-cache &lt;num&gt;
+ *  Maximum number of node scores kept in the score cache.
+ *  (default 100000, 0 disables the cache)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Remco Bouckaert
@@ -142,15 +155,39 @@ public class TAN extends LocalScoreSearchAlgorithm implements
     // // cache scores & whether adding an arc makes sense
     double[][] fScore = new double[nNrOfAtts][nNrOfAtts];
 
+    // score all arcs in one go
+    int[] nHeads = new int[nNrOfAtts * nNrOfAtts];
+    int[] nTails = new int[nNrOfAtts * nNrOfAtts];
+    int[][] nParents = new int[nNrOfAtts * nNrOfAtts][];
+    int nCandidates = 0;
     for (int iAttributeHead = 0; iAttributeHead < nNrOfAtts; iAttributeHead++) {
       for (int iAttributeTail = 0; iAttributeTail < nNrOfAtts; iAttributeTail++) {
         if (iAttributeHead != iAttributeTail) {
-          fScore[iAttributeHead][iAttributeTail] = calcScoreWithExtraParent(
-            iAttributeHead, iAttributeTail);
+          int[] nNewParents = parentsWithExtraParent(iAttributeHead,
+            iAttributeTail);
+          if (nNewParents == null) {
+            fScore[iAttributeHead][iAttributeTail] = -1e100;
+          } else {
+            nHeads[nCandidates] = iAttributeHead;
+            nTails[nCandidates] = iAttributeTail;
+            nParents[nCandidates] = nNewParents;
+            nCandidates++;
+          }
         }
       }
     }
 
+    initScoreCache();
+    try {
+      double[] fScores = calcNodeScores(Arrays.copyOf(nHeads, nCandidates),
+        Arrays.copyOf(nParents, nCandidates));
+      for (int iCandidate = 0; iCandidate < nCandidates; iCandidate++) {
+        fScore[nHeads[iCandidate]][nTails[iCandidate]] = fScores[iCandidate];
+      }
+    } finally {
+      freeScoreCache();
+    }
+
     // TAN greedy search (not restricted by ordering like K2)
     // 1. find strongest link
     // 2. find remaining links by adding strongest link to already
@@ -261,6 +298,18 @@ public class TAN extends LocalScoreSearchAlgorithm implements
    *  Score type (BAYES, BDeu, MDL, ENTROPY and AIC)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for scoring candidate parent sets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -score-cache &lt;num&gt;
+   *  Maximum number of node scores kept in the score cache.
+   *  (default 100000, 0 disables the cache)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -481,7 +481,7 @@ public class GaussianProcesses extends AbstractClassifier implements
       k.set(i, 0, m_kernel.eval(-1, i, inst));
     }
 
-    double result = k.transpose().times(m_t).get(0, 0) + m_avg_target;
+    double result = k.transposeTimes(m_t).get(0, 0) + m_avg_target;
     result = (result - m_Blin) / m_Alin;
 
     return result;
@@ -559,7 +559,7 @@ public class GaussianProcesses extends AbstractClassifier implements
       k.set(i, 0, m_kernel.eval(-1, i, inst));
     }
 
-    double estimate = k.transpose().times(m_t).get(0, 0) + m_avg_target;
+    double estimate = k.transposeTimes(m_t).get(0, 0) + m_avg_target;
 
     double sigma = computeStdDev(inst, k);
 
@@ -619,7 +619,7 @@ public class GaussianProcesses extends AbstractClassifier implements
       k.set(i, 0, m_kernel.eval(-1, i, inst));
     }
 
-    double estimate = k.transpose().times(m_t).get(0, 0) + m_avg_target;
+    double estimate = k.transposeTimes(m_t).get(0, 0) + m_avg_target;
 
     double sigma = computeStdDev(inst, k);
 
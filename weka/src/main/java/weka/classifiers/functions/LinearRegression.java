@@ -38,7 +38,7 @@ import weka.core.SelectedTag;
 import weka.core.Tag;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
-import weka.core.matrix.Matrix;
+import weka.core.matrix.NormalEquations;
 import weka.filters.Filter;
 import weka.filters.supervised.attribute.NominalToBinary;
 import weka.filters.unsupervised.attribute.ReplaceMissingValues;
@@ -121,6 +121,13 @@ public class LinearRegression extends AbstractClassifier implements
    */
   protected NominalToBinary m_TransformFilter;
 
+  /**
+   * The sufficient statistics (means and cross-products) of the training
+   * data, from which the models for the different subsets of attributes are
+   * computed
+   */
+  protected NormalEquations m_Statistics;
+
   /** The standard deviations of the class attribute */
   protected double m_ClassStdDev;
 
@@ -281,8 +288,15 @@ public class LinearRegression extends AbstractClassifier implements
     m_ClassStdDev = Math.sqrt(data.variance(m_TransformedData.classIndex()));
     m_ClassMean = data.meanOrMode(m_TransformedData.classIndex());
 
+    // Collect the sufficient statistics in a single pass over the data
+    m_Statistics = new NormalEquations(data.numAttributes() - 1);
+    for (int i = 0; i < data.numInstances(); i++) {
+      addToStatistics(data.instance(i));
+    }
+
     // Perform the regression
     findBestModel();
+    m_Statistics = null;
 
     if (m_outputAdditionalStats) {
       // find number of coefficients, degrees of freedom
@@ -834,7 +848,7 @@ public class LinearRegression extends AbstractClassifier implements
 
     // For the weighted case we still use numInstances in
     // the calculation of the Akaike criterion.
-    int numInstances = m_TransformedData.numInstances();
+    int numInstances = (int) m_Statistics.numObservations();
 
     if (m_Debug) {
       System.out.println((new Instances(m_TransformedData, 0)).toString());
@@ -1010,7 +1024,26 @@ public class LinearRegression extends AbstractClassifier implements
   }
 
   /**
-   * Calculate a linear regression using the selected attributes
+   * Adds a (transformed) training instance to the sufficient statistics.
+   * 
+   * @param transformedInstance the instance to add
+   */
+  protected void addToStatistics(Instance transformedInstance) {
+    double[] values = new double[m_Statistics.numVariables()];
+    int variable = 0;
+    for (int j = 0; j < transformedInstance.numAttributes(); j++) {
+      if (j != m_ClassIndex) {
+        values[variable++] = transformedInstance.value(j);
+      }
+    }
+    m_Statistics.add(values, transformedInstance.classValue(),
+      transformedInstance.weight());
+  }
+
+  /**
+   * Calculate a linear regression using the selected attributes. The
+   * regression is computed from the sufficient statistics of the training
+   * data, so no pass over the data is required.
    * 
    * @param selectedAttributes an array of booleans where each element is true
    *          if the corresponding attribute should be included in the
@@ -1035,32 +1068,18 @@ public class LinearRegression extends AbstractClassifier implements
       }
     }
 
-    // Check whether there are still attributes left
-    Matrix independent = null, dependent = null;
-    if (numAttributes > 0) {
-      independent = new Matrix(m_TransformedData.numInstances(), numAttributes);
-      dependent = new Matrix(m_TransformedData.numInstances(), 1);
-      for (int i = 0; i < m_TransformedData.numInstances(); i++) {
-        Instance inst = m_TransformedData.instance(i);
-        double sqrt_weight = Math.sqrt(inst.weight());
-        int column = 0;
-        for (int j = 0; j < m_TransformedData.numAttributes(); j++) {
-          if (j == m_ClassIndex) {
-            dependent.set(i, 0, inst.classValue() * sqrt_weight);
-          } else {
-            if (selectedAttributes[j]) {
-              double value = inst.value(j) - m_Means[j];
+    // Select the columns of the (standardised) cross-product matrix
+    boolean[] selected = new boolean[m_Statistics.numVariables()];
+    double[] scale = new double[m_Statistics.numVariables()];
+    int variable = 0;
+    for (int j = 0; j < selectedAttributes.length; j++) {
+      if (j != m_ClassIndex) {
+        selected[variable] = selectedAttributes[j];
 
-              // We only need to do this if we want to
-              // scale the input
-              if (!m_checksTurnedOff) {
-                value /= m_StdDevs[j];
-              }
-              independent.set(i, column, value * sqrt_weight);
-              column++;
-            }
-          }
-        }
+        // We only need to do this if we want to
+        // scale the input
+        scale[variable] = m_checksTurnedOff ? 1 : m_StdDevs[j];
+        variable++;
       }
     }
 
@@ -1069,8 +1088,8 @@ public class LinearRegression extends AbstractClassifier implements
     // by the ridge constant.)
     double[] coefficients = new double[numAttributes + 1];
     if (numAttributes > 0) {
-      double[] coeffsWithoutIntercept = independent.regression(dependent,
-        m_Ridge).getCoefficients();
+      double[] coeffsWithoutIntercept = m_Statistics.solve(selected, scale,
+        m_Ridge);
       System.arraycopy(coeffsWithoutIntercept, 0, coefficients, 0,
         numAttributes);
     }
@@ -0,0 +1,390 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LinearRegressionUpdateable.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.functions;
+
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Aggregateable;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.matrix.NormalEquations;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.NominalToBinary;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+
+/**
+ * <!-- globalinfo-start --> Class for using linear regression for prediction.
+ * Uses the Akaike criterion for model selection, and is able to deal with
+ * weighted instances. This is the updateable version of LinearRegression: it
+ * only keeps the sufficient statistics of the training data (means and
+ * cross-products of the attributes), so the memory required does not depend
+ * on the number of training instances. The model is computed from the
+ * statistics when it is needed. The filters for nominal attributes and
+ * missing values are initialized on the data passed to buildClassifier (which
+ * may be empty). Models that have been trained on separate parts of the data
+ * can be aggregated.
+ * <p/>
+ * <!-- globalinfo-end -->
+ *
+ * <!-- options-start --> Valid options are:
+ * <p/>
+ *
+ * <pre>
+ * -S &lt;number of selection method&gt;
+ *  Set the attribute selection method to use. 1 = None, 2 = Greedy.
+ *  (default 0 = M5' method)
+ * </pre>
+ *
+ * <pre>
+ * -C
+ *  Do not try to eliminate colinear attributes.
+ * </pre>
+ *
+ * <pre>
+ * -R &lt;double&gt;
+ *  Set ridge parameter (default 1.0e-8).
+ * </pre>
+ *
+ * <pre>
+ * -minimal
+ *  Conserve memory, don't keep dataset header and means/stdevs.
+ *  Model cannot be printed out if this option is enabled. (default: keep data)
+ * </pre>
+ *
+ * <pre>
+ * -additional-stats
+ *  Output additional statistics.
+ * </pre>
+ *
+ * <pre>
+ * -output-debug-info
+ *  If set, classifier is run in debug mode and
+ *  may output additional info to the console
+ * </pre>
+ *
+ * <pre>
+ * -do-not-check-capabilities
+ *  If set, classifier capabilities are not checked before classifier is built
+ *  (use with caution).
+ * </pre>
+ *
+ * <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class LinearRegressionUpdateable extends LinearRegression implements
+  UpdateableClassifier, Aggregateable<LinearRegressionUpdateable> {
+
+  /** for serialization */
+  private static final long serialVersionUID = 2863890729813417342L;
+
+  /** Whether the model has to be recomputed from the statistics */
+  protected boolean m_ModelOutOfDate;
+
+  /**
+   * Returns a string describing this classifier
+   *
+   * @return a description of the classifier suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return super.globalInfo()
+      + " This is the updateable version of LinearRegression: it only keeps "
+      + "the sufficient statistics of the training data (means and "
+      + "cross-products of the attributes), so the memory required does not "
+      + "depend on the number of training instances. The model is computed "
+      + "from the statistics when it is needed. The filters for nominal "
+      + "attributes and missing values are initialized on the data passed to "
+      + "buildClassifier (which may be empty). Models that have been trained "
+      + "on separate parts of the data can be aggregated.";
+  }
+
+  /**
+   * Returns default capabilities of the classifier.
+   *
+   * @return the capabilities of this classifier
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // instances
+    result.setMinimumNumberInstances(0);
+
+    return result;
+  }
+
+  /**
+   * Additional statistics require the training data and are not available.
+   *
+   * @param additional must be false
+   */
+  @Override
+  public void setOutputAdditionalStats(boolean additional) {
+    if (additional) {
+      throw new IllegalArgumentException("Can't output additional "
+        + "statistics in LinearRegressionUpdateable!");
+    }
+    m_outputAdditionalStats = false;
+  }
+
+  /**
+   * Initializes the classifier with the given data. The data may be empty;
+   * further training data can be supplied with updateClassifier().
+   *
+   * @param data the initial training data
+   * @throws Exception if the classifier could not be initialized successfully
+   */
+  @Override
+  public synchronized void buildClassifier(Instances data) throws Exception {
+    m_ModelBuilt = false;
+
+    if (!m_checksTurnedOff) {
+      // can classifier handle the data?
+      getCapabilities().testWithFail(data);
+
+      // remove instances with missing class
+      data = new Instances(data);
+      data.deleteWithMissingClass();
+
+      m_TransformFilter = new NominalToBinary();
+      m_TransformFilter.setInputFormat(data);
+      data = Filter.useFilter(data, m_TransformFilter);
+      m_MissingFilter = new ReplaceMissingValues();
+      m_MissingFilter.setInputFormat(data);
+      data = Filter.useFilter(data, m_MissingFilter);
+      data.deleteWithMissingClass();
+    } else {
+      m_TransformFilter = null;
+      m_MissingFilter = null;
+    }
+
+    m_ClassIndex = data.classIndex();
+    m_TransformedData = new Instances(data, 0);
+    m_Coefficients = null;
+
+    m_Statistics = new NormalEquations(data.numAttributes() - 1);
+    for (int i = 0; i < data.numInstances(); i++) {
+      addToStatistics(data.instance(i));
+    }
+    m_ModelOutOfDate = true;
+
+    m_ModelBuilt = true;
+  }
+
+  /**
+   * Updates the classifier with the given instance.
+   *
+   * @param instance the new training instance
+   * @throws Exception if the instance can't be processed
+   */
+  @Override
+  public synchronized void updateClassifier(Instance instance)
+    throws Exception {
+    if (instance.classIsMissing()) {
+      return;
+    }
+
+    // Transform the input instance
+    Instance transformedInstance = instance;
+    if (!m_checksTurnedOff) {
+      m_TransformFilter.input(transformedInstance);
+      m_TransformFilter.batchFinished();
+      transformedInstance = m_TransformFilter.output();
+      m_MissingFilter.input(transformedInstance);
+      m_MissingFilter.batchFinished();
+      transformedInstance = m_MissingFilter.output();
+    }
+
+    addToStatistics(transformedInstance);
+    m_ModelOutOfDate = true;
+  }
+
+  /**
+   * Computes the model from the sufficient statistics, if it is out of date.
+   * The model is computed lazily, as recomputing it after every update would
+   * be far more expensive than the update itself. This and all methods that
+   * update the statistics or use the model are synchronized, so a model
+   * that is trained and used by different threads is never read while it is
+   * being recomputed.
+   *
+   * @throws Exception if the regression can't be done
+   */
+  protected synchronized void updateModel() throws Exception {
+    if (!m_ModelOutOfDate) {
+      return;
+    }
+
+    int numAttributes = m_TransformedData.numAttributes();
+    m_SelectedAttributes = new boolean[numAttributes];
+    m_Means = new double[numAttributes];
+    m_StdDevs = new double[numAttributes];
+    int variable = 0;
+    for (int j = 0; j < numAttributes; j++) {
+      if (j != m_ClassIndex) {
+        m_SelectedAttributes[j] = true; // Turn attributes on for a start
+        m_Means[j] = m_Statistics.mean(variable);
+        m_StdDevs[j] = Math.sqrt(m_Statistics.variance(variable));
+        if (m_StdDevs[j] == 0) {
+          m_SelectedAttributes[j] = false;
+        }
+        variable++;
+      }
+    }
+    m_ClassStdDev = Math.sqrt(m_Statistics.targetVariance());
+    m_ClassMean = m_Statistics.targetMean();
+
+    findBestModel();
+    m_ModelOutOfDate = false;
+  }
+
+  /**
+   * Calculate the squared error of a regression model on the training data
+   * from the sufficient statistics. Unlike in the batch version, the errors
+   * are weighted by the instance weights.
+   *
+   * @param selectedAttributes an array of flags indicating which attributes are
+   *          included in the regression model
+   * @param coefficients an array of coefficients for the regression model
+   * @return the squared error on the training data
+   */
+  @Override
+  protected double calculateSE(boolean[] selectedAttributes,
+    double[] coefficients) {
+
+    boolean[] selected = new boolean[m_Statistics.numVariables()];
+    int variable = 0;
+    for (int j = 0; j < selectedAttributes.length; j++) {
+      if (j != m_ClassIndex) {
+        selected[variable++] = selectedAttributes[j];
+      }
+    }
+    return m_Statistics.squaredError(selected, coefficients);
+  }
+
+  /**
+   * Classifies the given instance using the linear regression function.
+   *
+   * @param instance the test instance
+   * @return the classification
+   * @throws Exception if classification can't be done successfully
+   */
+  @Override
+  public synchronized double classifyInstance(Instance instance)
+    throws Exception {
+    updateModel();
+
+    return super.classifyInstance(instance);
+  }
+
+  /**
+   * Returns the coefficients for this linear model.
+   *
+   * @return the coefficients for this linear model
+   */
+  @Override
+  public synchronized double[] coefficients() {
+    try {
+      updateModel();
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+
+    return super.coefficients();
+  }
+
+  /**
+   * Outputs the linear regression model as a string.
+   *
+   * @return the model as string
+   */
+  @Override
+  public synchronized String toString() {
+    if (m_ModelBuilt) {
+      try {
+        updateModel();
+      } catch (Exception ex) {
+        return "Can't print Linear Regression!";
+      }
+    }
+
+    return super.toString();
+  }
+
+  /**
+   * Aggregates the statistics of another model, trained on a different part
+   * of the data, with this one. Both models should have been initialized
+   * with the same data (e.g. just the header of the data).
+   *
+   * @param toAggregate the model to aggregate
+   * @return this model
+   * @throws Exception if the models can't be aggregated
+   */
+  @Override
+  public synchronized LinearRegressionUpdateable aggregate(
+    LinearRegressionUpdateable toAggregate) throws Exception {
+
+    if (!m_ModelBuilt || !toAggregate.m_ModelBuilt) {
+      throw new Exception("Can't aggregate - model has not been built!");
+    }
+    if (!m_TransformedData.equalHeaders(toAggregate.m_TransformedData)) {
+      throw new Exception("Can't aggregate - data headers don't match: "
+        + m_TransformedData.equalHeadersMsg(toAggregate.m_TransformedData));
+    }
+
+    m_Statistics.add(toAggregate.m_Statistics);
+    m_ModelOutOfDate = true;
+
+    return this;
+  }
+
+  /**
+   * Computes the model from the aggregated statistics.
+   *
+   * @throws Exception if the regression can't be done
+   */
+  @Override
+  public synchronized void finalizeAggregation() throws Exception {
+    updateModel();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Generates a linear regression function predictor.
+   *
+   * @param argv the options
+   */
+  public static void main(String argv[]) {
+    runClassifier(new LinearRegressionUpdateable(), argv);
+  }
+}
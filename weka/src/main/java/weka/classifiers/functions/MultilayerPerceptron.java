@@ -38,6 +38,8 @@ import java.util.Enumeration;
 import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -53,6 +55,7 @@ import javax.swing.JTextField;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.functions.neural.LinearUnit;
+import weka.classifiers.functions.neural.MatrixNetwork;
 import weka.classifiers.functions.neural.NeuralConnection;
 import weka.classifiers.functions.neural.NeuralNode;
 import weka.classifiers.functions.neural.SigmoidUnit;
@@ -172,6 +175,19 @@ import weka.filters.unsupervised.attribute.NominalToBinary;
  *  (Set this to cause the learning rate to decay).
  * </pre>
  * 
+ * <pre>
+ * -mini-batch-size &lt;num&gt;
+ *  The number of instances per weight update for the
+ *  matrix based training engine.
+ *  (0 = train the node network one instance at a time, Default = 0).
+ * </pre>
+ * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots used by the matrix based engine.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Malcolm Ware (mfw4@cs.waikato.ac.nz)
@@ -1050,6 +1066,17 @@ public class MultilayerPerceptron extends AbstractClassifier implements
    */
   private boolean m_normalizeClass;
 
+  /**
+   * The number of instances whose errors are accumulated before each weight
+   * update. If this is greater than zero (and the gui is not in use) the
+   * network is trained with the matrix based engine rather than by running
+   * each instance through the node objects.
+   */
+  private int m_miniBatchSize;
+
+  /** The number of threads used by the matrix based training engine */
+  private int m_numExecutionSlots;
+
   /**
    * this is a sigmoid unit.
    */
@@ -1104,6 +1131,8 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     m_momentum = .2;
     m_reset = true;
     m_decay = false;
+    m_miniBatchSize = 0;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -1414,6 +1443,42 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     return m_numEpochs;
   }
 
+  /**
+   * Set the number of instances whose errors are summed before each weight
+   * update. Zero trains the node network one instance at a time; anything
+   * greater uses the matrix based training engine.
+   * 
+   * @param n The mini-batch size.
+   */
+  public void setMiniBatchSize(int n) {
+    if (n >= 0) {
+      m_miniBatchSize = n;
+    }
+  }
+
+  /**
+   * @return The mini-batch size.
+   */
+  public int getMiniBatchSize() {
+    return m_miniBatchSize;
+  }
+
+  /**
+   * Set the number of threads used by the matrix based training engine.
+   * 
+   * @param slots The number of execution slots (at least 1).
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = Math.max(1, slots);
+  }
+
+  /**
+   * @return The number of execution slots.
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Call this function to place a node into the network list.
    * 
@@ -1946,6 +2011,14 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     }
     m_stopped = false;
 
+    if (!m_gui && m_miniBatchSize > 0) {
+      MatrixNetwork net = MatrixNetwork.create(m_inputs, m_outputs);
+      if (net != null) {
+        trainMatrixNetwork(net, i, numInVal, totalWeight, totalValWeight);
+        return;
+      }
+    }
+
     for (int noa = 1; noa < m_numEpochs + 1; noa++) {
       right = 0;
       for (int nob = numInVal; nob < m_instances.numInstances(); nob++) {
@@ -2087,6 +2160,132 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     m_currentInstance = null;
   }
 
+  /**
+   * Trains the (automatically built) network using the matrix based engine.
+   * The instances are copied into flat arrays once, each epoch is run in
+   * mini-batches whose gradients are accumulated over several threads and the
+   * final weights are written back into the nodes of the network.
+   * 
+   * @param net the flat view of the network
+   * @param i the original training data (needed if the network is reset)
+   * @param numInVal the number of instances at the start of m_instances that
+   *          form the validation set
+   * @param totalWeight the total weight of the training instances
+   * @param totalValWeight the total weight of the validation instances
+   * @throws Exception if the network can't be trained
+   */
+  private void trainMatrixNetwork(MatrixNetwork net, Instances i,
+    int numInVal, double totalWeight, double totalValWeight) throws Exception {
+
+    int numInst = m_instances.numInstances();
+    int numIn = net.numInputs();
+    int numOut = net.numOutputs();
+    int classIndex = m_instances.classIndex();
+    double[] x = new double[numInst * numIn];
+    double[] y = new double[numInst * numOut];
+    double[] w = new double[numInst];
+    for (int noa = 0; noa < numInst; noa++) {
+      Instance inst = m_instances.instance(noa);
+      for (int nob = 0; nob < numIn; nob++) {
+        int link = m_inputs[nob].getLink();
+        x[noa * numIn + nob] = inst.isMissing(link) ? 0 : inst.value(link);
+      }
+      if (m_numeric) {
+        double target = inst.classValue();
+        if (m_normalizeClass) {
+          target = (m_attributeRanges[classIndex] == 0) ? Double.NaN
+            : (target - m_attributeBases[classIndex])
+              / m_attributeRanges[classIndex];
+        }
+        y[noa * numOut] = target;
+      } else {
+        for (int nob = 0; nob < numOut; nob++) {
+          y[noa * numOut + nob] = (inst.classValue() == m_outputs[nob]
+            .getLink()) ? 1 : 0;
+        }
+      }
+      w[noa] = inst.weight();
+    }
+
+    ExecutorService pool = null;
+    if (m_numExecutionSlots > 1) {
+      pool = Executors.newFixedThreadPool(m_numExecutionSlots);
+    }
+
+    double right = 0;
+    double driftOff = 0;
+    double lastRight = Double.POSITIVE_INFINITY;
+    double bestError = Double.POSITIVE_INFINITY;
+    double origRate = m_learningRate; // only used for when reset
+    try {
+      for (int noa = 1; noa < m_numEpochs + 1; noa++) {
+        double tempRate = m_learningRate;
+        if (m_decay) {
+          tempRate /= noa;
+        }
+        right = net.trainEpoch(x, y, w, numInVal, numInst, m_miniBatchSize,
+          tempRate, m_momentum, pool, m_numExecutionSlots);
+        right /= totalWeight;
+        if (Double.isInfinite(right) || Double.isNaN(right)) {
+          if (!m_reset) {
+            m_instances = null;
+            throw new Exception("Network cannot train. Try restarting with a"
+              + " smaller learning rate.");
+          } else {
+            // reset the network if possible
+            if (m_learningRate <= Utils.SMALL) {
+              throw new IllegalStateException("Learning rate got too small ("
+                + m_learningRate + " <= " + Utils.SMALL + ")!");
+            }
+            if (pool != null) {
+              pool.shutdown();
+              pool = null;
+            }
+            m_learningRate /= 2;
+            buildClassifier(i);
+            m_learningRate = origRate;
+            m_instances = new Instances(m_instances, 0);
+            m_currentInstance = null;
+            return;
+          }
+        }
+
+        // do validation testing if applicable
+        if (m_valSize != 0) {
+          right = net.error(x, y, w, 0, numInVal, pool, m_numExecutionSlots);
+          if (right < lastRight) {
+            if (right < bestError) {
+              bestError = right;
+              net.saveWeights();
+              driftOff = 0;
+            }
+          } else {
+            driftOff++;
+          }
+          lastRight = right;
+          if (driftOff > m_driftThreshold || noa + 1 >= m_numEpochs) {
+            net.restoreWeights();
+            m_accepted = true;
+          }
+          right /= totalValWeight;
+        }
+        m_epoch = noa;
+        m_error = right;
+        if (m_accepted) {
+          break;
+        }
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+
+    net.writeWeights();
+    m_instances = new Instances(m_instances, 0);
+    m_currentInstance = null;
+  }
+
   /**
    * Call this function to predict the class of an instance once a
    * classification model has been built with the buildClassifier call.
@@ -2161,7 +2360,7 @@ public class MultilayerPerceptron extends AbstractClassifier implements
   @Override
   public Enumeration<Option> listOptions() {
 
-    Vector<Option> newVector = new Vector<Option>(14);
+    Vector<Option> newVector = new Vector<Option>(16);
 
     newVector.addElement(new Option(
       "\tLearning Rate for the backpropagation algorithm.\n"
@@ -2214,6 +2413,15 @@ public class MultilayerPerceptron extends AbstractClassifier implements
         + "\t(Set this to not allow the network to reset).", "R", 0, "-R"));
     newVector.addElement(new Option("\tLearning rate decay will occur.\n"
       + "\t(Set this to cause the learning rate to decay).", "D", 0, "-D"));
+    newVector.addElement(new Option(
+      "\tThe number of instances per weight update for the\n"
+        + "\tmatrix based training engine.\n"
+        + "\t(0 = train the node network one instance at a time, Default = 0).",
+      "mini-batch-size", 1, "-mini-batch-size <num>"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots used by the matrix based engine.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
 
     newVector.addAll(Collections.list(super.listOptions()));
 
@@ -2316,6 +2524,19 @@ public class MultilayerPerceptron extends AbstractClassifier implements
    *  (Set this to cause the learning rate to decay).
    * </pre>
    * 
+   * <pre>
+   * -mini-batch-size &lt;num&gt;
+   *  The number of instances per weight update for the
+   *  matrix based training engine.
+   *  (0 = train the node network one instance at a time, Default = 0).
+   * </pre>
+   * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots used by the matrix based engine.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -2403,6 +2624,18 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     } else {
       setDecay(false);
     }
+    String batchString = Utils.getOption("mini-batch-size", options);
+    if (batchString.length() != 0) {
+      setMiniBatchSize(Integer.parseInt(batchString));
+    } else {
+      setMiniBatchSize(0);
+    }
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
 
     super.setOptions(options);
 
@@ -2454,6 +2687,10 @@ public class MultilayerPerceptron extends AbstractClassifier implements
     if (getDecay()) {
       options.add("-D");
     }
+    options.add("-mini-batch-size");
+    options.add("" + getMiniBatchSize());
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
 
     Collections.addAll(options, super.getOptions());
 
@@ -2719,6 +2956,29 @@ public class MultilayerPerceptron extends AbstractClassifier implements
       + " starting learning rate.";
   }
 
+  /**
+   * @return a string to describe the mini-batch size option.
+   */
+  public String miniBatchSizeTipText() {
+    return "The number of instances whose errors are summed before the weights"
+      + " are updated. If this is zero the network is trained one instance at a"
+      + " time by running each instance through the nodes of the network."
+      + " Otherwise the network is copied into flat weight arrays and trained"
+      + " in mini-batches, after which the weights are copied back into the"
+      + " nodes. The matrix based engine is only used when the gui is not set"
+      + " and the network is fully connected layer to layer (as it is when"
+      + " auto build is used).";
+  }
+
+  /**
+   * @return a string to describe the number of execution slots option.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) the matrix based training"
+      + " engine uses to compute the errors of the instances in a mini-batch."
+      + " Only used if the mini-batch size is greater than zero.";
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -22,10 +22,16 @@
 package weka.classifiers.functions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.classifiers.RandomizableClassifier;
 import weka.classifiers.UpdateableClassifier;
@@ -38,6 +44,7 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
+import weka.core.SparseInstance;
 import weka.core.Tag;
 import weka.core.Utils;
 import weka.filters.Filter;
@@ -82,6 +89,11 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  * <pre> -M
  *  Don't replace missing values</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots. Batch training shares each epoch
+ *  out over this many threads and averages the resulting weights.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -158,6 +170,13 @@ public class SGD extends RandomizableClassifier implements
   /** Holds the header of the training data */
   protected Instances m_data;
 
+  /**
+   * The number of threads to use for batch training. Each thread trains its
+   * own copy of the weights on a shard of the data and the copies are averaged
+   * at the end of every epoch.
+   */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Returns default capabilities of the classifier.
    * 
@@ -366,6 +385,39 @@ public class SGD extends RandomizableClassifier implements
     return "Turn off global replacement of missing values";
   }
 
+  /**
+   * Set the number of threads to use for batch training.
+   * 
+   * @param slots the number of execution slots
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of threads to use for batch training.
+   * 
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for batch "
+        + "training. The data is split into one shard per thread, each thread "
+        + "runs an epoch of SGD over its shard starting from the current "
+        + "weights and the resulting weight vectors are averaged at the end "
+        + "of every epoch (parameter mixing). Has no effect on incremental "
+        + "training.";
+  }
+
   /**
    * Set the loss function to use.
    * 
@@ -425,6 +477,10 @@ public class SGD extends RandomizableClassifier implements
         "-C <double>"));
     newVector.add(new Option("\tDon't normalize the data", "N", 0, "-N"));
     newVector.add(new Option("\tDon't replace missing values", "M", 0, "-M"));
+    newVector.add(new Option("\tNumber of execution slots. Batch training "
+        + "shares each epoch\n\tout over this many threads and averages the "
+        + "resulting weights.\n\t(default 1 - i.e. no parallelism)",
+        "num-slots", 1, "-num-slots <num>"));
 
     newVector.addAll(Collections.list(super.listOptions()));
     
@@ -467,6 +523,11 @@ public class SGD extends RandomizableClassifier implements
    * <pre> -M
    *  Don't replace missing values</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots. Batch training shares each epoch
+   *  out over this many threads and averages the resulting weights.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -518,6 +579,13 @@ public class SGD extends RandomizableClassifier implements
 
     setDontNormalize(Utils.getFlag("N", options));
     setDontReplaceMissing(Utils.getFlag('M', options));
+
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
     
     Utils.checkForRemainingOptions(options);
   }
@@ -547,6 +615,8 @@ public class SGD extends RandomizableClassifier implements
     if (getDontReplaceMissing()) {
       options.add("-M");
     }
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
 
     Collections.addAll(options, super.getOptions());
     
@@ -708,11 +778,97 @@ public class SGD extends RandomizableClassifier implements
     return z;
   }
 
-  private void train(Instances data) throws Exception {
-    for (int e = 0; e < m_epochs; e++) {
-      for (int i = 0; i < data.numInstances(); i++) {
-        updateClassifier(data.instance(i), false);
+  /**
+   * Performs m_epochs passes of SGD over the (filtered and randomized)
+   * training data. If the data is sparse, updates only touch the weights of
+   * the non-zero values of each instance. If more than one execution slot is
+   * available, each epoch is shared out over a pool of threads.
+   * 
+   * @param data the training data
+   * @throws Exception if training fails
+   */
+  private void train(final Instances data) throws Exception {
+    final boolean sparse = (data.instance(0) instanceof SparseInstance);
+    int numInst = data.numInstances();
+
+    if (m_numExecutionSlots <= 1 || numInst < 2 * m_numExecutionSlots) {
+      for (int e = 0; e < m_epochs; e++) {
+        trainShard(data, 0, numInst, m_weights, sparse);
+        m_t += numInst;
       }
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(m_numExecutionSlots);
+    try {
+      double[][] local = new double[m_numExecutionSlots][m_weights.length];
+      int numPerTask = numInst / m_numExecutionSlots;
+      for (int e = 0; e < m_epochs; e++) {
+        List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+        for (int i = 0; i < m_numExecutionSlots; i++) {
+          final double[] weights = local[i];
+          final int start = i * numPerTask;
+          final int end = (i == m_numExecutionSlots - 1) ? numInst : start
+              + numPerTask;
+          System.arraycopy(m_weights, 0, weights, 0, m_weights.length);
+          results.add(pool.submit(new Callable<double[]>() {
+            @Override
+            public double[] call() throws Exception {
+              trainShard(data, start, end, weights, sparse);
+              return weights;
+            }
+          }));
+        }
+
+        // average the weight vectors of the shards
+        Arrays.fill(m_weights, 0);
+        for (Future<double[]> f : results) {
+          double[] weights = f.get();
+          for (int j = 0; j < m_weights.length; j++) {
+            m_weights[j] += weights[j];
+          }
+        }
+        for (int j = 0; j < m_weights.length; j++) {
+          m_weights[j] /= m_numExecutionSlots;
+        }
+        m_t += numInst;
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Runs SGD over a contiguous range of the training data.
+   * 
+   * @param data the training data
+   * @param start the index of the first instance
+   * @param end one past the index of the last instance
+   * @param weights the weights (+ bias in the last element) to update
+   * @param sparse true if the weight vector should be kept in scaled form so
+   *          that each update only touches the non-zero values of the instance
+   */
+  protected void trainShard(Instances data, int start, int end,
+      double[] weights, boolean sparse) {
+    if (!sparse) {
+      for (int i = start; i < end; i++) {
+        Instance instance = data.instance(i);
+        if (!instance.classIsMissing()) {
+          updateWeights(instance, weights, m_t);
+        }
+      }
+      return;
+    }
+
+    double scale = 1.0;
+    for (int i = start; i < end; i++) {
+      Instance instance = data.instance(i);
+      if (!instance.classIsMissing()) {
+        scale = updateScaledWeights(instance, weights, scale);
+      }
+    }
+    for (int i = 0; i < weights.length - 1; i++) {
+      weights[i] *= scale;
     }
   }
 
@@ -720,22 +876,13 @@ public class SGD extends RandomizableClassifier implements
       int classIndex) {
     double result = 0;
 
+    // only visit the values stored in the instance, so that the cost for a
+    // sparse instance depends on its number of non-zero values
     int n1 = inst1.numValues();
-    int n2 = weights.length - 1;
-
-    for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
+    for (int p1 = 0; p1 < n1; p1++) {
       int ind1 = inst1.index(p1);
-      int ind2 = p2;
-      if (ind1 == ind2) {
-        if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-          result += inst1.valueSparse(p1) * weights[p2];
-        }
-        p1++;
-        p2++;
-      } else if (ind1 > ind2) {
-        p2++;
-      } else {
-        p1++;
+      if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
+        result += inst1.valueSparse(p1) * weights[ind1];
       }
     }
     return (result);
@@ -773,53 +920,119 @@ public class SGD extends RandomizableClassifier implements
         }
       }
 
-      double wx = dotProd(instance, m_weights, instance.classIndex());
+      updateWeights(instance, m_weights, m_t);
+      m_t++;
+    }
+  }
 
-      double y;
-      double z;
-      if (instance.classAttribute().isNominal()) {
-        y = (instance.classValue() == 0) ? -1 : 1;
-        z = y * (wx + m_weights[m_weights.length - 1]);
-      } else {
-        y = instance.classValue();
-        z = y - (wx + m_weights[m_weights.length - 1]);
-        y = 1;
-      }
+  /**
+   * Computes the multiplier of the update for the given instance, i.e. the
+   * learning rate times the derivative of the loss. Returns 0 if the loss is
+   * zero.
+   * 
+   * @param instance the (filtered) training instance
+   * @param wx the output of the linear model for the instance (including the
+   *          bias)
+   * @return the factor by which the instance is added to the weights
+   */
+  protected double updateFactor(Instance instance, double wx) {
+    double y;
+    double z;
+    if (instance.classAttribute().isNominal()) {
+      y = (instance.classValue() == 0) ? -1 : 1;
+      z = y * wx;
+    } else {
+      y = instance.classValue();
+      z = y - wx;
+      y = 1;
+    }
 
-      // Compute multiplier for weight decay
-      double multiplier = 1.0;
-      if (m_numInstances == 0) {
-        multiplier = 1.0 - (m_learningRate * m_lambda) / m_t;
-      } else {
-        multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+    // Only need to do the following if the loss is non-zero
+    if (m_loss == SQUAREDLOSS || m_loss == LOGLOSS || m_loss == HUBER
+        || (m_loss == HINGE && (z < 1))
+        || (m_loss == EPSILON_INSENSITIVE && Math.abs(z) > m_epsilon)) {
+      return m_learningRate * y * dloss(z);
+    }
+    return 0;
+  }
+
+  /**
+   * Performs a single SGD step for the given (filtered) instance.
+   * 
+   * @param instance the training instance
+   * @param weights the weights (+ bias in the last element) to update
+   * @param t the iteration number (used for weight decay when the number of
+   *          training instances is unknown)
+   */
+  protected void updateWeights(Instance instance, double[] weights, double t) {
+    double wx = dotProd(instance, weights, instance.classIndex());
+    double factor = updateFactor(instance, wx + weights[weights.length - 1]);
+
+    // Compute multiplier for weight decay
+    double multiplier = 1.0;
+    if (m_numInstances == 0) {
+      multiplier = 1.0 - (m_learningRate * m_lambda) / t;
+    } else {
+      multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+    }
+    for (int i = 0; i < weights.length - 1; i++) {
+      weights[i] *= multiplier;
+    }
+
+    if (factor != 0) {
+      // Update coefficients for attributes
+      int n1 = instance.numValues();
+      for (int p1 = 0; p1 < n1; p1++) {
+        int indS = instance.index(p1);
+        if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
+          weights[indS] += factor * instance.valueSparse(p1);
+        }
       }
-      for (int i = 0; i < m_weights.length - 1; i++) {
-        m_weights[i] *= multiplier;
+
+      // update the bias
+      weights[weights.length - 1] += factor;
+    }
+  }
+
+  /**
+   * Performs a single SGD step for the given (filtered) instance on a weight
+   * vector that is stored as scale * weights (the bias is not scaled). Weight
+   * decay then only changes the scale, so the cost of the step depends on the
+   * number of non-zero values in the instance rather than on the number of
+   * attributes. Only used for batch training.
+   * 
+   * @param instance the training instance
+   * @param weights the unscaled weights (+ bias in the last element)
+   * @param scale the current scale of the weights
+   * @return the new scale of the weights
+   */
+  protected double updateScaledWeights(Instance instance, double[] weights,
+      double scale) {
+    int bias = weights.length - 1;
+    double wx = scale * dotProd(instance, weights, instance.classIndex());
+    double factor = updateFactor(instance, wx + weights[bias]);
+
+    scale *= 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+    if (scale < 1e-9) {
+      // fold the scale into the weights before it underflows
+      for (int i = 0; i < bias; i++) {
+        weights[i] *= scale;
       }
+      scale = 1.0;
+    }
 
-      // Only need to do the following if the loss is non-zero
-      // if (m_loss != HINGE || (z < 1)) {
-      if (m_loss == SQUAREDLOSS || m_loss == LOGLOSS || m_loss == HUBER
-          || (m_loss == HINGE && (z < 1))
-          || (m_loss == EPSILON_INSENSITIVE && Math.abs(z) > m_epsilon)) {
-
-        // Compute Factor for updates
-        double factor = m_learningRate * y * dloss(z);
-
-        // Update coefficients for attributes
-        int n1 = instance.numValues();
-        for (int p1 = 0; p1 < n1; p1++) {
-          int indS = instance.index(p1);
-          if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-            m_weights[indS] += factor * instance.valueSparse(p1);
-          }
+    if (factor != 0) {
+      double scaledFactor = factor / scale;
+      int n1 = instance.numValues();
+      for (int p1 = 0; p1 < n1; p1++) {
+        int indS = instance.index(p1);
+        if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
+          weights[indS] += scaledFactor * instance.valueSparse(p1);
         }
-
-        // update the bias
-        m_weights[m_weights.length - 1] += factor;
       }
-      m_t++;
+      weights[bias] += factor;
     }
+    return scale;
   }
 
   /**
@@ -0,0 +1,570 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MatrixNetwork.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions.neural;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * A flat, layer by layer view of a network of NeuralNodes. The weights of each
+ * layer are held in a single contiguous row-major array (one row per node,
+ * threshold first, just like NeuralNode.getWeights()), which allows the
+ * network to be trained with mini-batch gradient descent and the gradient of a
+ * batch to be accumulated by several threads at once. Once training has
+ * finished the weights are written back into the original NeuralNodes so that
+ * the rest of the network (prediction, toString(), the GUI) is unaffected.
+ * <p/>
+ *
+ * Only strictly layered, fully connected networks (such as the ones created
+ * by MultilayerPerceptron's auto build) made of sigmoid and linear units can
+ * be represented. Use create() to obtain an instance; it returns null for any
+ * other topology.
+ *
+ * @version $Revision$
+ */
+public class MatrixNetwork implements RevisionHandler {
+
+  /** The nodes of each computing layer (hidden layers, then the output layer) */
+  protected NeuralNode[][] m_nodes;
+
+  /** The number of units in each layer, index 0 is the input layer */
+  protected int[] m_layerSizes;
+
+  /**
+   * For each computing layer and node, the position in the previous layer of
+   * each of the node's input connections
+   */
+  protected int[][][] m_inputMap;
+
+  /** True for the nodes that are linear units */
+  protected boolean[][] m_linear;
+
+  /** The weights of each computing layer */
+  protected double[][] m_weights;
+
+  /** The previous change in weights (for momentum) */
+  protected double[][] m_changeInWeights;
+
+  /** The best weights seen so far (used with a validation set) */
+  protected double[][] m_bestWeights;
+
+  /** Per thread working storage */
+  protected Worker[] m_workers = new Worker[0];
+
+  /**
+   * Constructor. Use create() instead.
+   *
+   * @param nodes the nodes of each computing layer
+   * @param layerSizes the number of units in each layer
+   * @param inputMap the input connection mapping
+   */
+  protected MatrixNetwork(NeuralNode[][] nodes, int[] layerSizes,
+    int[][][] inputMap) {
+    m_nodes = nodes;
+    m_layerSizes = layerSizes;
+    m_inputMap = inputMap;
+
+    int numLayers = nodes.length;
+    m_linear = new boolean[numLayers][];
+    m_weights = new double[numLayers][];
+    m_changeInWeights = new double[numLayers][];
+    m_bestWeights = new double[numLayers][];
+    for (int l = 0; l < numLayers; l++) {
+      int stride = layerSizes[l] + 1;
+      m_linear[l] = new boolean[nodes[l].length];
+      m_weights[l] = new double[nodes[l].length * stride];
+      m_changeInWeights[l] = new double[nodes[l].length * stride];
+      m_bestWeights[l] = new double[nodes[l].length * stride];
+      for (int j = 0; j < nodes[l].length; j++) {
+        m_linear[l][j] = (nodes[l][j].getMethod() instanceof LinearUnit);
+      }
+    }
+    readWeights();
+  }
+
+  /**
+   * Builds a flat view of the network whose input units are given in inputs
+   * and whose output units are given in outputs.
+   *
+   * @param inputs the units that feed the attribute values into the network
+   * @param outputs the units that collect the class values (each of which must
+   *          be fed by exactly one NeuralNode)
+   * @return the flat network, or null if the network is not strictly layered
+   *         and fully connected
+   */
+  public static MatrixNetwork create(NeuralConnection[] inputs,
+    NeuralConnection[] outputs) {
+
+    IdentityHashMap<NeuralConnection, Integer> inputPos = new IdentityHashMap<NeuralConnection, Integer>();
+    for (int i = 0; i < inputs.length; i++) {
+      inputPos.put(inputs[i], i);
+    }
+
+    List<NeuralNode> current = new ArrayList<NeuralNode>();
+    for (NeuralConnection out : outputs) {
+      if (out.getNumInputs() != 1
+        || !(out.getInputs()[0] instanceof NeuralNode)) {
+        return null;
+      }
+      current.add((NeuralNode) out.getInputs()[0]);
+    }
+
+    // walk back from the output layer towards the inputs
+    IdentityHashMap<NeuralConnection, Integer> seen = new IdentityHashMap<NeuralConnection, Integer>();
+    List<NeuralNode[]> layers = new ArrayList<NeuralNode[]>();
+    while (true) {
+      for (NeuralNode n : current) {
+        if (seen.containsKey(n)) {
+          return null;
+        }
+        seen.put(n, 0);
+        if (!(n.getMethod() instanceof SigmoidUnit)
+          && !(n.getMethod() instanceof LinearUnit)) {
+          return null;
+        }
+      }
+      layers.add(0, current.toArray(new NeuralNode[current.size()]));
+
+      boolean fromInputs = false;
+      boolean fromNodes = false;
+      List<NeuralNode> previous = new ArrayList<NeuralNode>();
+      IdentityHashMap<NeuralConnection, Integer> prevSet = new IdentityHashMap<NeuralConnection, Integer>();
+      for (NeuralNode n : current) {
+        NeuralConnection[] in = n.getInputs();
+        for (int k = 0; k < n.getNumInputs(); k++) {
+          if (inputPos.containsKey(in[k])) {
+            fromInputs = true;
+          } else if (in[k] instanceof NeuralNode) {
+            fromNodes = true;
+            if (!prevSet.containsKey(in[k])) {
+              prevSet.put(in[k], previous.size());
+              previous.add((NeuralNode) in[k]);
+            }
+          } else {
+            return null;
+          }
+        }
+      }
+      if (fromInputs && fromNodes) {
+        return null;
+      }
+      if (!fromNodes) {
+        break;
+      }
+      current = previous;
+    }
+
+    int[] layerSizes = new int[layers.size() + 1];
+    layerSizes[0] = inputs.length;
+    NeuralNode[][] nodes = new NeuralNode[layers.size()][];
+    int[][][] inputMap = new int[layers.size()][][];
+    for (int l = 0; l < nodes.length; l++) {
+      nodes[l] = layers.get(l);
+      layerSizes[l + 1] = nodes[l].length;
+
+      IdentityHashMap<NeuralConnection, Integer> prevPos = inputPos;
+      if (l > 0) {
+        prevPos = new IdentityHashMap<NeuralConnection, Integer>();
+        for (int k = 0; k < nodes[l - 1].length; k++) {
+          prevPos.put(nodes[l - 1][k], k);
+        }
+      }
+
+      inputMap[l] = new int[nodes[l].length][];
+      for (int j = 0; j < nodes[l].length; j++) {
+        NeuralNode n = nodes[l][j];
+        if (n.getNumInputs() != layerSizes[l]) {
+          return null;
+        }
+        boolean[] covered = new boolean[layerSizes[l]];
+        inputMap[l][j] = new int[n.getNumInputs()];
+        for (int k = 0; k < n.getNumInputs(); k++) {
+          Integer pos = prevPos.get(n.getInputs()[k]);
+          if (pos == null || covered[pos]) {
+            return null;
+          }
+          covered[pos] = true;
+          inputMap[l][j][k] = pos;
+        }
+      }
+    }
+
+    return new MatrixNetwork(nodes, layerSizes, inputMap);
+  }
+
+  /**
+   * Get the number of units in the input layer.
+   *
+   * @return the number of inputs
+   */
+  public int numInputs() {
+    return m_layerSizes[0];
+  }
+
+  /**
+   * Get the number of units in the output layer.
+   *
+   * @return the number of outputs
+   */
+  public int numOutputs() {
+    return m_layerSizes[m_layerSizes.length - 1];
+  }
+
+  /**
+   * Copies the current weights (and changes in weights) out of the
+   * NeuralNodes.
+   */
+  public void readWeights() {
+    for (int l = 0; l < m_nodes.length; l++) {
+      int stride = m_layerSizes[l] + 1;
+      for (int j = 0; j < m_nodes[l].length; j++) {
+        double[] w = m_nodes[l][j].getWeights();
+        double[] c = m_nodes[l][j].getChangeInWeights();
+        int row = j * stride;
+        m_weights[l][row] = w[0];
+        m_changeInWeights[l][row] = c[0];
+        for (int k = 0; k < m_inputMap[l][j].length; k++) {
+          m_weights[l][row + 1 + m_inputMap[l][j][k]] = w[k + 1];
+          m_changeInWeights[l][row + 1 + m_inputMap[l][j][k]] = c[k + 1];
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the weights (and changes in weights) back into the NeuralNodes.
+   */
+  public void writeWeights() {
+    for (int l = 0; l < m_nodes.length; l++) {
+      int stride = m_layerSizes[l] + 1;
+      for (int j = 0; j < m_nodes[l].length; j++) {
+        double[] w = m_nodes[l][j].getWeights();
+        double[] c = m_nodes[l][j].getChangeInWeights();
+        int row = j * stride;
+        w[0] = m_weights[l][row];
+        c[0] = m_changeInWeights[l][row];
+        for (int k = 0; k < m_inputMap[l][j].length; k++) {
+          w[k + 1] = m_weights[l][row + 1 + m_inputMap[l][j][k]];
+          c[k + 1] = m_changeInWeights[l][row + 1 + m_inputMap[l][j][k]];
+        }
+      }
+    }
+  }
+
+  /**
+   * Remembers the current weights as the best ones.
+   */
+  public void saveWeights() {
+    for (int l = 0; l < m_weights.length; l++) {
+      System.arraycopy(m_weights[l], 0, m_bestWeights[l], 0,
+        m_weights[l].length);
+    }
+  }
+
+  /**
+   * Restores the weights remembered by saveWeights().
+   */
+  public void restoreWeights() {
+    for (int l = 0; l < m_weights.length; l++) {
+      System.arraycopy(m_bestWeights[l], 0, m_weights[l], 0,
+        m_weights[l].length);
+    }
+  }
+
+  /**
+   * Makes sure that there is working storage for the given number of threads.
+   *
+   * @param numThreads the number of threads (at least one worker is created)
+   */
+  protected void ensureWorkers(int numThreads) {
+    numThreads = Math.max(1, numThreads);
+    if (m_workers.length < numThreads) {
+      Worker[] temp = new Worker[numThreads];
+      System.arraycopy(m_workers, 0, temp, 0, m_workers.length);
+      for (int i = m_workers.length; i < numThreads; i++) {
+        temp[i] = new Worker();
+      }
+      m_workers = temp;
+    }
+  }
+
+  /**
+   * Trains the network for one pass through the given rows.
+   *
+   * @param x the input values, row-major with numInputs() values per row
+   * @param y the target values, row-major with numOutputs() values per row (a
+   *          NaN target contributes no error)
+   * @param w the weight of each row
+   * @param start the first row to train on
+   * @param end one past the last row to train on
+   * @param batchSize the number of rows whose gradients are summed before each
+   *          weight update
+   * @param learningRate the learning rate
+   * @param momentum the momentum
+   * @param pool the thread pool to share each batch out over (may be null)
+   * @param numThreads the number of threads to use
+   * @return the weighted sum over the rows of the mean squared output error
+   * @throws Exception if a task fails
+   */
+  public double trainEpoch(double[] x, double[] y, double[] w, int start,
+    int end, int batchSize, double learningRate, double momentum,
+    ExecutorService pool, int numThreads) throws Exception {
+
+    if (batchSize < 1) {
+      batchSize = 1;
+    }
+    ensureWorkers(numThreads);
+    double error = 0;
+    for (int b = start; b < end; b += batchSize) {
+      int bEnd = Math.min(end, b + batchSize);
+      int used = run(x, y, w, b, bEnd, true, pool, numThreads);
+
+      for (int t = 0; t < used; t++) {
+        error += m_workers[t].m_error;
+      }
+      for (int l = 0; l < m_weights.length; l++) {
+        double[] weights = m_weights[l];
+        double[] change = m_changeInWeights[l];
+        double[] grad = m_workers[0].m_gradient[l];
+        for (int t = 1; t < used; t++) {
+          double[] g = m_workers[t].m_gradient[l];
+          for (int k = 0; k < grad.length; k++) {
+            grad[k] += g[k];
+          }
+        }
+        for (int k = 0; k < weights.length; k++) {
+          double c = learningRate * grad[k] + momentum * change[k];
+          weights[k] += c;
+          change[k] = c;
+        }
+      }
+    }
+    return error;
+  }
+
+  /**
+   * Computes the error of the network on the given rows without changing any
+   * weights.
+   *
+   * @param x the input values
+   * @param y the target values
+   * @param w the weight of each row
+   * @param start the first row
+   * @param end one past the last row
+   * @param pool the thread pool to share the rows out over (may be null)
+   * @param numThreads the number of threads to use
+   * @return the weighted sum over the rows of the mean squared output error
+   * @throws Exception if a task fails
+   */
+  public double error(double[] x, double[] y, double[] w, int start, int end,
+    ExecutorService pool, int numThreads) throws Exception {
+
+    ensureWorkers(numThreads);
+    int used = run(x, y, w, start, end, false, pool, numThreads);
+    double error = 0;
+    for (int t = 0; t < used; t++) {
+      error += m_workers[t].m_error;
+    }
+    return error;
+  }
+
+  /**
+   * Shares the given rows out over the workers.
+   *
+   * @return the number of workers used
+   */
+  protected int run(final double[] x, final double[] y, final double[] w,
+    int start, int end, final boolean backprop, ExecutorService pool,
+    int numThreads) throws Exception {
+
+    int n = end - start;
+    if (pool == null || numThreads <= 1 || n < 2 * numThreads) {
+      m_workers[0].process(x, y, w, start, end, backprop);
+      return 1;
+    }
+
+    int numPerTask = n / numThreads;
+    List<Future<Worker>> results = new ArrayList<Future<Worker>>();
+    for (int t = 0; t < numThreads; t++) {
+      final Worker worker = m_workers[t];
+      final int lo = start + t * numPerTask;
+      final int hi = (t == numThreads - 1) ? end : lo + numPerTask;
+      results.add(pool.submit(new Callable<Worker>() {
+        @Override
+        public Worker call() throws Exception {
+          worker.process(x, y, w, lo, hi, backprop);
+          return worker;
+        }
+      }));
+    }
+    for (Future<Worker> f : results) {
+      f.get();
+    }
+    return numThreads;
+  }
+
+  /**
+   * Holds the activations, deltas and gradient accumulator of one thread.
+   */
+  protected class Worker {
+
+    /** The output of each unit, per computing layer */
+    protected double[][] m_outputs;
+
+    /** The error (delta) of each unit, per computing layer */
+    protected double[][] m_deltas;
+
+    /** The gradient accumulated over the rows processed */
+    protected double[][] m_gradient;
+
+    /** The error accumulated over the rows processed */
+    protected double m_error;
+
+    /**
+     * Constructor
+     */
+    protected Worker() {
+      m_outputs = new double[m_nodes.length][];
+      m_deltas = new double[m_nodes.length][];
+      m_gradient = new double[m_nodes.length][];
+      for (int l = 0; l < m_nodes.length; l++) {
+        m_outputs[l] = new double[m_nodes[l].length];
+        m_deltas[l] = new double[m_nodes[l].length];
+        m_gradient[l] = new double[m_weights[l].length];
+      }
+    }
+
+    /**
+     * Runs the given rows through the network, accumulating the error and
+     * (optionally) the gradient.
+     */
+    protected void process(double[] x, double[] y, double[] w, int start,
+      int end, boolean backprop) {
+
+      int numLayers = m_nodes.length;
+      int numIn = m_layerSizes[0];
+      int numOut = m_layerSizes[numLayers];
+      m_error = 0;
+      if (backprop) {
+        for (double[] g : m_gradient) {
+          Arrays.fill(g, 0);
+        }
+      }
+
+      for (int i = start; i < end; i++) {
+        // forward pass
+        for (int l = 0; l < numLayers; l++) {
+          double[] in = (l == 0) ? x : m_outputs[l - 1];
+          int inOffset = (l == 0) ? i * numIn : 0;
+          int inSize = m_layerSizes[l];
+          int stride = inSize + 1;
+          double[] weights = m_weights[l];
+          double[] out = m_outputs[l];
+          for (int j = 0; j < out.length; j++) {
+            int row = j * stride;
+            double value = weights[row];
+            for (int k = 0; k < inSize; k++) {
+              value += weights[row + 1 + k] * in[inOffset + k];
+            }
+            if (!m_linear[l][j]) {
+              if (value < -45) {
+                value = 0;
+              } else if (value > 45) {
+                value = 1;
+              } else {
+                value = 1 / (1 + Math.exp(-value));
+              }
+            }
+            out[j] = value;
+          }
+        }
+
+        // output errors
+        double[] out = m_outputs[numLayers - 1];
+        double[] delta = m_deltas[numLayers - 1];
+        double sq = 0;
+        for (int j = 0; j < numOut; j++) {
+          double target = y[i * numOut + j];
+          double e = Double.isNaN(target) ? 0 : target - out[j];
+          sq += e * e;
+          delta[j] = m_linear[numLayers - 1][j] ? e : e * out[j]
+            * (1 - out[j]);
+        }
+        m_error += (sq / numOut) * w[i];
+
+        if (!backprop) {
+          continue;
+        }
+
+        // backward pass
+        for (int l = numLayers - 1; l >= 0; l--) {
+          double[] in = (l == 0) ? x : m_outputs[l - 1];
+          int inOffset = (l == 0) ? i * numIn : 0;
+          int inSize = m_layerSizes[l];
+          int stride = inSize + 1;
+          double[] weights = m_weights[l];
+          double[] grad = m_gradient[l];
+          double[] d = m_deltas[l];
+
+          if (l > 0) {
+            double[] prevDelta = m_deltas[l - 1];
+            double[] prevOut = m_outputs[l - 1];
+            for (int k = 0; k < inSize; k++) {
+              double e = 0;
+              for (int j = 0; j < d.length; j++) {
+                e += d[j] * weights[j * stride + 1 + k];
+              }
+              prevDelta[k] = m_linear[l - 1][k] ? e : e * prevOut[k]
+                * (1 - prevOut[k]);
+            }
+          }
+
+          for (int j = 0; j < d.length; j++) {
+            int row = j * stride;
+            double wd = w[i] * d[j];
+            grad[row] += wd;
+            for (int k = 0; k < inSize; k++) {
+              grad[row + 1 + k] += wd * in[inOffset + k];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
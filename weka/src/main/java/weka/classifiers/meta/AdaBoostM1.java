@@ -88,6 +88,12 @@ import weka.core.WeightedInstancesHandler;
  * </pre>
  * 
  * <pre>
+ * -represent-copies-using-weights
+ *  Represent copies of instances using weights rather than explicitly
+ *  when resampling.
+ * </pre>
+ * 
+ * <pre>
  * -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)
@@ -151,6 +157,9 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
   /** Use boosting with reweighting? */
   protected boolean m_UseResampling;
 
+  /** Whether to represent copies of instances using weights when resampling */
+  protected boolean m_RepresentUsingWeights = false;
+
   /** The number of classes */
   protected int m_NumClasses;
 
@@ -272,6 +281,11 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
     newVector.addElement(new Option("\tUse resampling for boosting.", "Q", 0,
       "-Q"));
 
+    newVector.addElement(new Option(
+      "\tRepresent copies of instances using weights rather than explicitly\n"
+        + "\twhen resampling.", "represent-copies-using-weights", 0,
+      "-represent-copies-using-weights"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -296,6 +310,12 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
    * </pre>
    * 
    * <pre>
+   * -represent-copies-using-weights
+   *  Represent copies of instances using weights rather than explicitly
+   *  when resampling.
+   * </pre>
+   * 
+   * <pre>
    * -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)
@@ -349,6 +369,9 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
 
     setUseResampling(Utils.getFlag('Q', options));
 
+    setRepresentCopiesUsingWeights(Utils.getFlag(
+      "represent-copies-using-weights", options));
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -367,6 +390,10 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
       result.add("-Q");
     }
 
+    if (getRepresentCopiesUsingWeights()) {
+      result.add("-represent-copies-using-weights");
+    }
+
     result.add("-P");
     result.add("" + getWeightThreshold());
 
@@ -435,6 +462,39 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
     return m_UseResampling;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String representCopiesUsingWeightsTipText() {
+    return "Whether to represent copies of instances using weights rather "
+      + "than explicitly when resampling.";
+  }
+
+  /**
+   * Set whether copies of instances are represented using weights rather than
+   * explicitly when resampling.
+   * 
+   * @param representUsingWeights whether to represent copies using weights
+   */
+  public void setRepresentCopiesUsingWeights(boolean representUsingWeights) {
+
+    m_RepresentUsingWeights = representUsingWeights;
+  }
+
+  /**
+   * Get whether copies of instances are represented using weights rather than
+   * explicitly when resampling.
+   * 
+   * @return whether copies are represented using weights
+   */
+  public boolean getRepresentCopiesUsingWeights() {
+
+    return m_RepresentUsingWeights;
+  }
+
   /**
    * Returns default capabilities of the classifier.
    * 
@@ -473,6 +533,14 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
+    // Has user asked to represent copies using weights?
+    if (getRepresentCopiesUsingWeights()
+      && !(m_Classifier instanceof WeightedInstancesHandler)) {
+      throw new IllegalArgumentException("Cannot represent copies using "
+        + "weights when base learner does not implement "
+        + "WeightedInstancesHandler.");
+    }
+
     // remove instances with missing class
     data = new Instances(data);
     data.deleteWithMissingClass();
@@ -533,12 +601,13 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
           + (m_NumIterationsPerformed + 1));
       }
 
-      // Select instances to train the classifier on
+      // Select instances to train the classifier on (resampling does not
+      // modify trainData, so no copy is needed)
       if (m_WeightThreshold < 100) {
         trainData = selectWeightQuantile(training,
           (double) m_WeightThreshold / 100);
       } else {
-        trainData = new Instances(training);
+        trainData = training;
       }
 
       // Resample
@@ -548,7 +617,8 @@ public class AdaBoostM1 extends RandomizableIteratedSingleClassifierEnhancer
         weights[i] = trainData.instance(i).weight();
       }
       do {
-        sample = trainData.resampleWithWeights(randomInstance, weights);
+        sample = trainData.resampleWithWeights(randomInstance, weights, null,
+          getRepresentCopiesUsingWeights());
 
         // Build and evaluate classifier
         m_Classifiers[m_NumIterationsPerformed].buildClassifier(sample);
@@ -36,6 +36,7 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.TargetOverlayInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -331,9 +332,12 @@ public class AdditiveRegression
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
+    // remove instances with missing class; the class values are stored in
+    // the instances, so relabeling them with the residuals in every
+    // iteration does not copy the attribute values
     Instances newData = new Instances(data);
     newData.deleteWithMissingClass();
+    newData = TargetOverlayInstance.overlay(newData);
 
     double sum = 0;
     double temp_sum = 0;
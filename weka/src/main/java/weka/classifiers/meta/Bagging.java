@@ -21,6 +21,8 @@
 
 package weka.classifiers.meta;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -30,9 +32,11 @@ import java.util.Vector;
 import java.util.ArrayList;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.EnsemblePredictions;
 import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Aggregateable;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -85,6 +89,10 @@ import weka.core.PartitionGenerator;
  * <pre> -represent-copies-using-weights
  *  Represent copies of instances using weights rather than explicitly.</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The preferred number of instances to process at a time
+ *  when predicting a batch of instances. (default 100)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -146,10 +154,14 @@ import weka.core.PartitionGenerator;
 public class Bagging
   extends RandomizableParallelIteratedSingleClassifierEnhancer 
   implements WeightedInstancesHandler, AdditionalMeasureProducer,
-             TechnicalInformationHandler, PartitionGenerator, Aggregateable<Bagging> {
+             TechnicalInformationHandler, PartitionGenerator, Aggregateable<Bagging>,
+             BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -115879962237199703L;
+
+  /** The preferred number of instances per batch in batch prediction */
+  protected String m_BatchSize = "100";
   
   /** The size of each bag sample, as a percentage of the training size */
   protected int m_BagSizePercent = 100;
@@ -226,7 +238,7 @@ public class Bagging
   @Override
   public Enumeration<Option> listOptions() {
 
-    Vector<Option> newVector = new Vector<Option>(3);
+    Vector<Option> newVector = new Vector<Option>(4);
 
     newVector.addElement(new Option(
               "\tSize of each bag, as a percentage of the\n" 
@@ -238,6 +250,10 @@ public class Bagging
     newVector.addElement(new Option(
               "\tRepresent copies of instances using weights rather than explicitly.",
               "-represent-copies-using-weights", 0, "-represent-copies-using-weights"));
+    newVector.addElement(new Option(
+              "\tThe preferred number of instances to process at a time\n"
+              + "\twhen predicting a batch of instances. (default 100)",
+              "batch-size", 1, "-batch-size <size>"));
 
     newVector.addAll(Collections.list(super.listOptions()));
  
@@ -261,6 +277,10 @@ public class Bagging
    * <pre> -represent-copies-using-weights
    *  Represent copies of instances using weights rather than explicitly.</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The preferred number of instances to process at a time
+   *  when predicting a batch of instances. (default 100)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -331,6 +351,13 @@ public class Bagging
 
     setRepresentCopiesUsingWeights(Utils.getFlag("represent-copies-using-weights", options));
 
+    String batchSize = Utils.getOption("batch-size", options);
+    if (batchSize.length() != 0) {
+      setBatchSize(batchSize);
+    } else {
+      setBatchSize("100");
+    }
+
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -357,6 +384,11 @@ public class Bagging
         options.add("-represent-copies-using-weights");
     }
 
+    if (!getBatchSize().equals("100")) {
+        options.add("-batch-size");
+        options.add(getBatchSize());
+    }
+
     Collections.addAll(options, super.getOptions());
     
     return options.toArray(new String[0]);
@@ -689,6 +721,67 @@ public class Bagging
     }
   }
 
+  /**
+   * Calculates the class membership probabilities for a batch of instances.
+   * The members of the ensemble are evaluated concurrently if there is more
+   * than one execution slot.
+   *
+   * @param insts the instances to be classified
+   * @return the class distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts)
+    throws Exception {
+    return averageDistributions(insts,
+      EnsemblePredictions.parseBatchSize(m_BatchSize));
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The preferred number of instances to process at a time when "
+      + "predicting a batch of instances.";
+  }
+
+  /**
+   * Set the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = (size == null) ? "100" : size;
+  }
+
+  /**
+   * Get the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @return the batch size to use
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Sets the batch size of models serialized before it was added to its
+   * default.
+   *
+   * @param in the stream to read from
+   * @throws IOException if the object can't be read
+   * @throws ClassNotFoundException if a class can't be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    in.defaultReadObject();
+    if (m_BatchSize == null) {
+      m_BatchSize = "100";
+    }
+  }
+
   /**
    * Returns description of the bagged classifier.
    *
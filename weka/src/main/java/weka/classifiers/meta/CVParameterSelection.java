@@ -22,13 +22,19 @@
 package weka.classifiers.meta;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.RandomizableSingleClassifierEnhancer;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Drawable;
 import weka.core.Instance;
@@ -38,6 +44,7 @@ import weka.core.OptionHandler;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
 import weka.core.Summarizable;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -85,6 +92,10 @@ import weka.core.Utils;
  *  once to optimise over several classifier options
  *  simultaneously.</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -272,6 +283,9 @@ public class CVParameterSelection
   /** The number of folds used in cross-validation */
   protected int m_NumFolds = 10;
 
+  /** The number of threads to have executing at any one time */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Create the options array to pass to the classifier. The parameter
    * values and positions are taken from m_ClassifierOptions and
@@ -316,10 +330,9 @@ public class CVParameterSelection
   }
 
   /**
-   * Finds the best parameter combination. (recursive for each parameter
-   * being optimised).
+   * Finds the best parameter combination.
    * 
-   * @param depth the index of the parameter to be optimised at this level
+   * @param depth the index of the first parameter to be optimised
    * @param trainData the data the search is based on
    * @param random a random number generator
    * @throws Exception if an error occurs
@@ -328,6 +341,20 @@ public class CVParameterSelection
 					     Random random)
     throws Exception {
 
+    List<String[]> settings = new ArrayList<String[]>();
+    collectSettings(depth, settings);
+    evaluateSettings(settings, trainData);
+  }
+
+  /**
+   * Collects the options for all parameter combinations. (recursive for each
+   * parameter being optimised).
+   * 
+   * @param depth the index of the parameter to be optimised at this level
+   * @param settings the list to add the options to
+   */
+  protected void collectSettings(int depth, List<String[]> settings) {
+
     if (depth < m_CVParams.size()) {
       CVParameter cvParam = (CVParameter)m_CVParams.elementAt(depth);
 
@@ -347,44 +374,138 @@ public class CVParameterSelection
       for(cvParam.m_ParamValue = cvParam.m_Lower; 
 	  cvParam.m_ParamValue <= upper; 
 	  cvParam.m_ParamValue += increment) {
-	findParamsByCrossValidation(depth + 1, trainData, random);
+	collectSettings(depth + 1, settings);
       }
     } else {
-      
-      Evaluation evaluation = new Evaluation(trainData);
-
-      // Set the classifier options
-      String [] options = createOptions();
-      if (m_Debug) {
-	System.err.print("Setting options for " 
-			 + m_Classifier.getClass().getName() + ":");
-	for (int i = 0; i < options.length; i++) {
-	  System.err.print(" " + options[i]);
+      settings.add(createOptions());
+    }
+  }
+
+  /**
+   * Cross-validates the classifier with each of the given options and keeps
+   * the best ones. The (setting, fold) pairs are run concurrently if there is
+   * more than one execution slot; the predictions are evaluated in the same
+   * order as when running them one after the other.
+   * 
+   * @param settings the options to evaluate
+   * @param trainData the data the search is based on
+   * @throws Exception if an error occurs
+   */
+  protected void evaluateSettings(List<String[]> settings,
+				  final Instances trainData)
+    throws Exception {
+
+    final TaskRunner runner = (m_numExecutionSlots > 1) 
+      ? new TaskRunner(m_numExecutionSlots) : null;
+
+    // settings evaluated at a time (bounds the predictions kept in memory)
+    int numSettings = (runner == null) ? 1 : m_numExecutionSlots;
+
+    try {
+      for (int first = 0; first < settings.size(); first += numSettings) {
+	int num = Math.min(numSettings, settings.size() - first);
+	final Instances[][] train = new Instances[num][m_NumFolds];
+	final double[][][][] predictions = new double[num][m_NumFolds][][];
+	List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+	for (int s = 0; s < num; s++) {
+	  for (int j = 0; j < m_NumFolds; j++) {
+	    final String[] options = settings.get(first + s);
+	    final int setting = s;
+	    final int fold = j;
+	    tasks.add(new Callable<Object>() {
+	      public Object call() throws Exception {
+		Classifier classifier = (runner == null) ? m_Classifier 
+		  : AbstractClassifier.makeCopy(m_Classifier);
+		((OptionHandler)classifier).setOptions(options.clone());
+
+		// We want to randomize the data the same way for every 
+		// learning scheme.
+		train[setting][fold] = 
+		  trainData.trainCV(m_NumFolds, fold, new Random(1));
+		classifier.buildClassifier(train[setting][fold]);
+		predictions[setting][fold] = 
+		  distributionsForInstances(classifier, 
+		    trainData.testCV(m_NumFolds, fold));
+		return null;
+	      }
+	    });
+	  }
+	}
+	if (runner != null) {
+	  runner.invokeAll(tasks);
+	} else {
+	  for (Callable<Object> task : tasks) {
+	    task.call();
+	  }
+	}
+
+	for (int s = 0; s < num; s++) {
+	  String[] options = settings.get(first + s);
+	  if (m_Debug) {
+	    System.err.print("Setting options for " 
+			     + m_Classifier.getClass().getName() + ":");
+	    for (int i = 0; i < options.length; i++) {
+	      System.err.print(" " + options[i]);
+	    }
+	    System.err.println("");
+	  }
+	  Evaluation evaluation = new Evaluation(trainData);
+	  for (int j = 0; j < m_NumFolds; j++) {
+	    Instances test = trainData.testCV(m_NumFolds, j);
+	    evaluation.setPriors(train[s][j]);
+	    for (int i = 0; i < test.numInstances(); i++) {
+	      evaluation.evaluateModelOnceAndRecordPrediction(
+		predictions[s][j][i], test.instance(i));
+	    }
+	  }
+	  double error = evaluation.errorRate();
+	  if (m_Debug) {
+	    System.err.println("Cross-validated error rate: " 
+			       + Utils.doubleToString(error, 6, 4));
+	  }
+	  if ((m_BestPerformance == -99) || (error < m_BestPerformance)) {
+	
+	    m_BestPerformance = error;
+	    m_BestClassifierOptions = options;
+	  }
 	}
-	System.err.println("");
-      }
-      ((OptionHandler)m_Classifier).setOptions(options);
-      for (int j = 0; j < m_NumFolds; j++) {
-
-        // We want to randomize the data the same way for every 
-        // learning scheme.
-	Instances train = trainData.trainCV(m_NumFolds, j, new Random(1));
-	Instances test = trainData.testCV(m_NumFolds, j);
-	m_Classifier.buildClassifier(train);
-	evaluation.setPriors(train);
-	evaluation.evaluateModel(m_Classifier, test);
       }
-      double error = evaluation.errorRate();
-      if (m_Debug) {
-	System.err.println("Cross-validated error rate: " 
-			   + Utils.doubleToString(error, 6, 4));
+    } finally {
+      if (runner != null) {
+	runner.shutdown();
       }
-      if ((m_BestPerformance == -99) || (error < m_BestPerformance)) {
-	
-	m_BestPerformance = error;
-	m_BestClassifierOptions = createOptions();
+    }
+  }
+
+  /**
+   * Predicts the class distributions of the given test instances, in the
+   * same way as Evaluation.evaluateModel() does.
+   * 
+   * @param classifier the classifier
+   * @param test the test instances
+   * @return the class distributions
+   * @throws Exception if the distributions can't be computed
+   */
+  protected static double[][] distributionsForInstances(Classifier classifier,
+							Instances test)
+    throws Exception {
+
+    if (classifier instanceof BatchPredictor) {
+      Instances testPred = new Instances(test);
+      for (int i = 0; i < test.numInstances(); i++) {
+	testPred.instance(i).setClassMissing();
       }
+      return ((BatchPredictor)classifier).distributionsForInstances(testPred);
+    }
+
+    double[][] result = new double[test.numInstances()][];
+    for (int i = 0; i < result.length; i++) {
+      Instance classMissing = (Instance)test.instance(i).copy();
+      classMissing.setDataset(test);
+      classMissing.setClassMissing();
+      result[i] = classifier.distributionForInstance(classMissing);
     }
+    return result;
   }
 
   /**
@@ -426,7 +547,7 @@ public class CVParameterSelection
    */
   public Enumeration<Option> listOptions() {
 
-    Vector<Option> newVector = new Vector<Option>(2);
+    Vector<Option> newVector = new Vector<Option>(3);
 
     newVector.addElement(new Option(
 	      "\tNumber of folds used for cross validation (default 10).",
@@ -442,6 +563,10 @@ public class CVParameterSelection
 	      + "\tonce to optimise over several classifier options\n"
 	      + "\tsimultaneously.",
 	      "P", 1, "-P <classifier parameter>"));
+    newVector.addElement(new Option(
+	      "\tNumber of execution slots.\n"
+	      + "\t(default 1 - i.e. no parallelism)",
+	      "num-slots", 1, "-num-slots <num>"));
 
     newVector.addAll(Collections.list(super.listOptions()));
     
@@ -469,6 +594,10 @@ public class CVParameterSelection
    *  once to optimise over several classifier options
    *  simultaneously.</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -514,6 +643,13 @@ public class CVParameterSelection
       }
     } while (cvParam.length() != 0);
 
+    String slots = Utils.getOption("num-slots", options);
+    if (slots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -541,6 +677,7 @@ public class CVParameterSelection
       options.add("-P"); options.add("" + getCVParameter(i));
     }
     options.add("-X"); options.add("" + getNumFolds());
+    options.add("-num-slots"); options.add("" + getNumExecutionSlots());
 
     Collections.addAll(options, super.getOptions());
     
@@ -749,6 +886,36 @@ public class CVParameterSelection
     }
     m_NumFolds = numFolds;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for " +
+      "cross-validating the parameter settings.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for cross-validating
+   * the parameter settings.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for cross-validating
+   * the parameter settings.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
  
   /**
    *  Returns the type of graph this classifier
@@ -21,10 +21,13 @@
 
 package weka.classifiers.meta;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
@@ -38,6 +41,8 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionUtils;
+import weka.core.TargetOverlayInstance;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -97,6 +102,10 @@ import weka.core.UnassignedClassException;
  *  Shrinkage parameter.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -185,6 +194,9 @@ public class LogitBoost
   
   /** The Z max value to use */
   protected double m_zMax = DEFAULT_Z_MAX;
+
+  /** The number of threads to use for fitting the models for the classes */
+  protected int m_numExecutionSlots = 1;
     
   /**
    * Returns a string describing classifier
@@ -289,7 +301,7 @@ public class LogitBoost
    */
   public Enumeration<Option> listOptions() {
 
-    Vector<Option> newVector = new Vector<Option>(6);
+    Vector<Option> newVector = new Vector<Option>(8);
 
     newVector.addElement(new Option(
 	      "\tUse resampling instead of reweighting for boosting.",
@@ -316,6 +328,10 @@ public class LogitBoost
 	      "H", 1, "-H <num>"));
     newVector.addElement(new Option("\tZ max threshold for responses." +
     		"\n\t(default 3)", "Z", 1, "-Z <num>"));    
+    newVector.addElement(new Option(
+	      "\tNumber of execution slots.\n"
+	      + "\t(default 1 - i.e. no parallelism)",
+	      "num-slots", 1, "-num-slots <num>"));
 
     newVector.addAll(Collections.list(super.listOptions()));
     
@@ -352,6 +368,10 @@ public class LogitBoost
    *  Shrinkage parameter.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -427,6 +447,13 @@ public class LogitBoost
       setZMax(Double.parseDouble(zString));
     }
 
+    String slots = Utils.getOption("num-slots", options);
+    if (slots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     setUseResampling(Utils.getFlag('Q', options));
     if (m_UseResampling && (thresholdString.length() != 0)) {
       throw new Exception("Weight pruning with resampling"+
@@ -458,6 +485,7 @@ public class LogitBoost
     options.add("-L"); options.add("" + getLikelihoodThreshold());
     options.add("-H"); options.add("" + getShrinkage());
     options.add("-Z"); options.add("" + getZMax());
+    options.add("-num-slots"); options.add("" + getNumExecutionSlots());
 
     Collections.addAll(options, super.getOptions());
     
@@ -669,6 +697,36 @@ public class LogitBoost
     return m_WeightThreshold;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for " +
+      "fitting the models for the different classes in each iteration.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for fitting the
+   * models for the classes.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for fitting the
+   * models for the classes.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns default capabilities of the classifier.
    *
@@ -694,7 +752,6 @@ public class LogitBoost
   public void buildClassifier(Instances data) throws Exception {
 
     m_RandomInstance = new Random(m_Seed);
-    int classIndex = data.classIndex();
 
     if (m_Classifier == null) {
       throw new Exception("A base classifier has not been specified!");
@@ -732,6 +789,30 @@ public class LogitBoost
     m_NumClasses = data.numClasses();
     m_ClassAttribute = data.classAttribute();
 
+    TaskRunner runner = ((m_numExecutionSlots > 1) && (m_NumClasses > 1)) 
+      ? new TaskRunner(m_numExecutionSlots) : null;
+    try {
+      boost(data, runner);
+    } finally {
+      if (runner != null) {
+        runner.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Performs the boosting iterations, after selecting the number of
+   * iterations by cross-validation if required.
+   *
+   * @param data the training data, without instances with missing class
+   * @param runner the task runner for fitting the models for the classes
+   * concurrently, null to fit them one after the other
+   * @throws Exception if the classifier could not be built successfully
+   */
+  protected void boost(Instances data, TaskRunner runner) throws Exception {
+
+    int classIndex = data.classIndex();
+
     // Create the base classifiers
     if (m_Debug) {
       System.err.println("Creating base classifiers");
@@ -773,6 +854,7 @@ public class LogitBoost
 	  trainN.deleteAttributeAt(classIndex);
 	  trainN.insertAttributeAt(new Attribute("'pseudo class'"), classIndex);
 	  trainN.setClassIndex(classIndex);
+	  trainN = TargetOverlayInstance.overlay(trainN);
 	  m_NumericClassData = new Instances(trainN, 0);
 	  
 	  // Get class values
@@ -791,7 +873,8 @@ public class LogitBoost
 	  m_NumGenerated = 0;
 	  double sumOfWeights = train.sumOfWeights();
 	  for (int j = 0; j < getNumIterations(); j++) {
-	    performIteration(trainYs, trainFs, probs, trainN, sumOfWeights);
+	    performIteration(trainYs, trainFs, probs, trainN, sumOfWeights,
+			     runner);
 	    Evaluation eval = new Evaluation(train);
 	    eval.evaluateModel(this, test);
 	    results[j] += eval.correct();
@@ -830,6 +913,7 @@ public class LogitBoost
     data.deleteAttributeAt(classIndex);
     data.insertAttributeAt(new Attribute("'pseudo class'"), classIndex);
     data.setClassIndex(classIndex);
+    data = TargetOverlayInstance.overlay(data);
     m_NumericClassData = new Instances(data, 0);
 	
     // Perform iterations
@@ -842,7 +926,7 @@ public class LogitBoost
     double sumOfWeights = data.sumOfWeights();
     for (int j = 0; j < bestNumIterations; j++) {
       double previousLoglikelihood = logLikelihood;
-      performIteration(trainYs, trainFs, probs, data, sumOfWeights);
+      performIteration(trainYs, trainFs, probs, data, sumOfWeights, runner);
       logLikelihood = logLikelihood(trainYs, probs);
       if (m_Debug) {
 	System.err.println("Avg. log-likelihood: " + logLikelihood);
@@ -899,19 +983,25 @@ public class LogitBoost
    * @param probs probabilities
    * @param data the data to run the iteration on
    * @param origSumOfWeights the original sum of weights
+   * @param runner the task runner for fitting the models for the classes
+   * concurrently, null to fit them one after the other
    * @throws Exception in case base classifiers run into problems
    */
   private void performIteration(double[][] trainYs,
 				double[][] trainFs,
 				double[][] probs,
 				Instances data,
-				double origSumOfWeights) throws Exception {
+				double origSumOfWeights,
+				TaskRunner runner) throws Exception {
 
     if (m_Debug) {
       System.err.println("Training classifier " + (m_NumGenerated + 1));
     }
 
-    // Build the new models
+    // Set up the data for the new models. The instances share the
+    // attribute values with the data, only the pseudo class and the
+    // weight are stored in every copy.
+    Instances[] trainDatas = new Instances[m_NumClasses];
     for (int j = 0; j < m_NumClasses; j++) {
       if (m_Debug) {
 	System.err.println("\t...for class " + (j + 1)
@@ -971,9 +1061,28 @@ public class LogitBoost
 	}
       }
       
-      // Build the classifier
-      m_Classifiers[j][m_NumGenerated].buildClassifier(trainData);
+      trainDatas[j] = trainData;
     }      
+
+    // Build the new models
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int j = 0; j < m_NumClasses; j++) {
+      final Classifier classifier = m_Classifiers[j][m_NumGenerated];
+      final Instances trainData = trainDatas[j];
+      tasks.add(new Callable<Object>() {
+	  public Object call() throws Exception {
+	    classifier.buildClassifier(trainData);
+	    return null;
+	  }
+	});
+    }
+    if (runner != null) {
+      runner.invokeAll(tasks);
+    } else {
+      for (Callable<Object> task : tasks) {
+	task.call();
+      }
+    }
     
     // Evaluate / increment trainFs from the classifier
     for (int i = 0; i < trainFs.length; i++) {
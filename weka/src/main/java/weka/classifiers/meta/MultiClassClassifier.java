@@ -22,6 +22,7 @@
 package weka.classifiers.meta;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.Vector;
@@ -35,6 +36,7 @@ import weka.classifiers.rules.ZeroR;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
 import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -45,6 +47,7 @@ import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
 import weka.core.Tag;
+import weka.core.TargetOverlayInstance;
 import weka.core.Utils;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.MakeIndicator;
@@ -74,6 +77,11 @@ import weka.filters.unsupervised.instance.RemoveWithValues;
  *  Random number seed.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ *  (use 0 to auto-detect number of cores)</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -140,6 +148,12 @@ public class MultiClassClassifier
   
   /** The code needed inside getTrainingSet */
   protected Code m_code;
+
+  /**
+   * Whether getTrainingSet relabels the instances of m_insts in a view that
+   * shares their attribute values, rather than filtering a copy of the data
+   */
+  protected boolean m_RelabelTrainingSets;
   
 
   /** 
@@ -441,7 +455,16 @@ public class MultiClassClassifier
       Instances tempInstances = new Instances(m_insts, 0);
       tempInstances.setClassIndex(-1);
       classFilter.setInputFormat(tempInstances);
-      newInsts = Filter.useFilter(m_insts, classFilter);
+      if (m_RelabelTrainingSets) {
+        int[] pair = (int[])m_pairs.elementAt(i);
+        int[] newClassValues = new int[m_insts.numClasses()];
+        Arrays.fill(newClassValues, -1);
+        newClassValues[pair[0]] = 0;
+        newClassValues[pair[1]] = 1;
+        newInsts = relabel(classFilter.getOutputFormat(), newClassValues);
+      } else {
+        newInsts = Filter.useFilter(m_insts, classFilter);
+      }
       // allow for 0 instances in m_insts: incremental ...???
       if (newInsts.numInstances() > 0 || m_insts.numInstances() == 0) {
 	newInsts.setClassIndex(m_insts.classIndex());
@@ -458,11 +481,46 @@ public class MultiClassClassifier
       classFilter.setValueIndices(m_code.getIndices(i));
       classFilter.setNumeric(false);
       classFilter.setInputFormat(m_insts);
-      newInsts = Filter.useFilter(m_insts, m_ClassFilters[i]);
+      if (m_RelabelTrainingSets) {
+        int[] newClassValues = new int[m_insts.numClasses()];
+        for (int j = 0; j < newClassValues.length; j++) {
+          newClassValues[j] = classFilter.getValueRange().isInRange(j) ? 1 : 0;
+        }
+        newInsts = relabel(classFilter.getOutputFormat(), newClassValues);
+      } else {
+        newInsts = Filter.useFilter(m_insts, m_ClassFilters[i]);
+      }
     }
     return newInsts;
   }
 
+  /**
+   * Relabels the classes of the training data, the same way the class filters
+   * do. The instances of the result share their attribute values with the
+   * training data (only the class value is stored separately), so no copy of
+   * the data is made for each binary classifier.
+   *
+   * @param header the output format of the class filter
+   * @param newClassValues the new class value for each class value of the
+   * training data, -1 to leave out the instances of that class
+   * @return the relabeled training data
+   */
+  protected Instances relabel(Instances header, int[] newClassValues) {
+    int classIndex = m_insts.classIndex();
+    Instances result = new Instances(header, m_insts.numInstances());
+    result.setClassIndex(classIndex);
+    for (int j = 0; j < m_insts.numInstances(); j++) {
+      Instance inst = m_insts.instance(j);
+      int newClassValue = newClassValues[(int) inst.classValue()];
+      if (newClassValue >= 0) {
+        Instance relabeled = new TargetOverlayInstance(inst, classIndex);
+        relabeled.setValue(classIndex, newClassValue);
+        result.add(relabeled);
+      }
+    }
+    return result;
+  }
+
 
 
   /**
@@ -481,6 +539,14 @@ public class MultiClassClassifier
     insts.deleteWithMissingClass();
 
     m_insts = insts;
+
+    // Dense data without string or relational attributes can be relabeled
+    // in place of filtering it for every binary classifier
+    m_RelabelTrainingSets = !insts.checkForStringAttributes()
+      && !insts.checkForAttributeType(Attribute.RELATIONAL);
+    for (int i = 0; m_RelabelTrainingSets && (i < insts.numInstances()); i++) {
+      m_RelabelTrainingSets = (insts.instance(i) instanceof DenseInstance);
+    }
     
     if (m_Classifier == null) {
       throw new Exception("No base classifier has been set!");
@@ -749,6 +815,11 @@ public class MultiClassClassifier
    *  Random number seed.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   *  (use 0 to auto-detect number of cores)</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -21,13 +21,21 @@
 
 package weka.classifiers.meta;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.Random;
 import java.util.ArrayList;
+import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.EnsemblePredictions;
 import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Option;
 import weka.core.Randomizable;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
@@ -43,6 +51,10 @@ import weka.core.PartitionGenerator;
  <!-- options-start -->
  * Valid options are: <p/>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The preferred number of instances to process at a time
+ *  when predicting a batch of instances. (default 100)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -91,10 +103,13 @@ import weka.core.PartitionGenerator;
  */
 public class RandomCommittee 
   extends RandomizableParallelIteratedSingleClassifierEnhancer
-  implements WeightedInstancesHandler, PartitionGenerator {
+  implements WeightedInstancesHandler, PartitionGenerator, BatchPredictor {
     
   /** for serialization */
   static final long serialVersionUID = -9204394360557300093L;
+
+  /** The preferred number of instances per batch in batch prediction */
+  protected String m_BatchSize = "100";
   
   /** training data */
   protected Instances m_data;
@@ -130,6 +145,112 @@ public class RandomCommittee
       + "predictions generated by the individual base classifiers.";
   }
 
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration<Option> listOptions() {
+
+    Vector<Option> newVector = new Vector<Option>(1);
+
+    newVector.addElement(new Option(
+              "\tThe preferred number of instances to process at a time\n"
+              + "\twhen predicting a batch of instances. (default 100)",
+              "batch-size", 1, "-batch-size <size>"));
+
+    newVector.addAll(Collections.list(super.listOptions()));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The preferred number of instances to process at a time
+   *  when predicting a batch of instances. (default 100)</pre>
+   * 
+   * <pre> -S &lt;num&gt;
+   *  Random number seed.
+   *  (default 1)</pre>
+   * 
+   * <pre> -I &lt;num&gt;
+   *  Number of iterations.
+   *  (default 10)</pre>
+   * 
+   * <pre> -D
+   *  If set, classifier is run in debug mode and
+   *  may output additional info to the console</pre>
+   * 
+   * <pre> -W
+   *  Full name of base classifier.
+   *  (default: weka.classifiers.trees.RandomTree)</pre>
+   * 
+   * <pre> 
+   * Options specific to classifier weka.classifiers.trees.RandomTree:
+   * </pre>
+   * 
+   * <pre> -K &lt;number of attributes&gt;
+   *  Number of attributes to randomly investigate
+   *  (&lt;1 = int(log(#attributes)+1)).</pre>
+   * 
+   * <pre> -M &lt;minimum number of instances&gt;
+   *  Set minimum number of instances per leaf.</pre>
+   * 
+   * <pre> -S &lt;num&gt;
+   *  Seed for random number generator.
+   *  (default 1)</pre>
+   * 
+   * <pre> -depth &lt;num&gt;
+   *  The maximum depth of the tree, 0 for unlimited.
+   *  (default 0)</pre>
+   * 
+   * <pre> -D
+   *  If set, classifier is run in debug mode and
+   *  may output additional info to the console</pre>
+   * 
+   <!-- options-end -->
+   *
+   * Options after -- are passed to the designated classifier.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+
+    String batchSize = Utils.getOption("batch-size", options);
+    if (batchSize.length() != 0) {
+      setBatchSize(batchSize);
+    } else {
+      setBatchSize("100");
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the Classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String [] getOptions() {
+
+    Vector<String> options = new Vector<String>();
+
+    if (!getBatchSize().equals("100")) {
+      options.add("-batch-size");
+      options.add(getBatchSize());
+    }
+
+    Collections.addAll(options, super.getOptions());
+
+    return options.toArray(new String[0]);
+  }
+
   /**
    * Builds the committee of randomizable classifiers.
    *
@@ -229,6 +350,67 @@ public class RandomCommittee
     }
   }
 
+  /**
+   * Calculates the class membership probabilities for a batch of instances.
+   * The members of the ensemble are evaluated concurrently if there is more
+   * than one execution slot.
+   *
+   * @param insts the instances to be classified
+   * @return the class distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts)
+    throws Exception {
+    return averageDistributions(insts,
+      EnsemblePredictions.parseBatchSize(m_BatchSize));
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The preferred number of instances to process at a time when "
+      + "predicting a batch of instances.";
+  }
+
+  /**
+   * Set the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = (size == null) ? "100" : size;
+  }
+
+  /**
+   * Get the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @return the batch size to use
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Sets the batch size of models serialized before it was added to its
+   * default.
+   *
+   * @param in the stream to read from
+   * @throws IOException if the object can't be read
+   * @throws ClassNotFoundException if a class can't be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    in.defaultReadObject();
+    if (m_BatchSize == null) {
+      m_BatchSize = "100";
+    }
+  }
+
   /**
    * Returns description of the committee.
    *
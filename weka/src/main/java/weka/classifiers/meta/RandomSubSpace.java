@@ -21,6 +21,8 @@
 
 package weka.classifiers.meta;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -28,7 +30,9 @@ import java.util.Random;
 import java.util.Vector;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.EnsemblePredictions;
 import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -79,6 +83,10 @@ import weka.filters.unsupervised.attribute.Remove;
  *   &gt;=1: absolute number of attributes
  * </pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The preferred number of instances to process at a time
+ *  when predicting a batch of instances. (default 100)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -128,10 +136,14 @@ import weka.filters.unsupervised.attribute.Remove;
  */
 public class RandomSubSpace
   extends RandomizableParallelIteratedSingleClassifierEnhancer 
-  implements WeightedInstancesHandler, TechnicalInformationHandler {
+  implements WeightedInstancesHandler, TechnicalInformationHandler,
+  BatchPredictor {
 
   /** for serialization */
   private static final long serialVersionUID = 1278172513912424947L;
+
+  /** The preferred number of instances per batch in batch prediction */
+  protected String m_BatchSize = "100";
   
   /** The size of each bag sample, as a percentage of the training size */
   protected double m_SubSpaceSize = 0.5;
@@ -216,6 +228,11 @@ public class RandomSubSpace
 	+ "\t\t>=1: absolute number of attributes\n",
 	"P", 1, "-P"));
 
+    result.addElement(new Option(
+	"\tThe preferred number of instances to process at a time\n"
+	+ "\twhen predicting a batch of instances. (default 100)",
+	"batch-size", 1, "-batch-size <size>"));
+
     result.addAll(Collections.list(super.listOptions()));
     
     return result.elements();
@@ -233,6 +250,10 @@ public class RandomSubSpace
    *   &gt;=1: absolute number of attributes
    * </pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The preferred number of instances to process at a time
+   *  when predicting a batch of instances. (default 100)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -288,6 +309,12 @@ public class RandomSubSpace
     else
       setSubSpaceSize(0.5);
 
+    tmpStr = Utils.getOption("batch-size", options);
+    if (tmpStr.length() != 0)
+      setBatchSize(tmpStr);
+    else
+      setBatchSize("100");
+
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -303,6 +330,11 @@ public class RandomSubSpace
 
     result.add("-P");
     result.add("" + getSubSpaceSize());
+
+    if (!getBatchSize().equals("100")) {
+      result.add("-batch-size");
+      result.add(getBatchSize());
+    }
     
     Collections.addAll(result, super.getOptions());
 
@@ -505,6 +537,77 @@ public class RandomSubSpace
     }
   }
 
+  /**
+   * Calculates the class membership probabilities for a batch of instances.
+   * The members of the ensemble are evaluated concurrently if there is more
+   * than one execution slot.
+   *
+   * @param insts the instances to be classified
+   * @return the class distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts)
+    throws Exception {
+
+    // default model?
+    if (m_ZeroR != null) {
+      double[][] result = new double[insts.numInstances()][];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = m_ZeroR.distributionForInstance(insts.instance(i));
+      }
+      return result;
+    }
+
+    return averageDistributions(insts,
+      EnsemblePredictions.parseBatchSize(m_BatchSize));
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The preferred number of instances to process at a time when "
+      + "predicting a batch of instances.";
+  }
+
+  /**
+   * Set the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = (size == null) ? "100" : size;
+  }
+
+  /**
+   * Get the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   *
+   * @return the batch size to use
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Sets the batch size of models serialized before it was added to its
+   * default.
+   *
+   * @param in the stream to read from
+   * @throws IOException if the object can't be read
+   * @throws ClassNotFoundException if a class can't be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    in.defaultReadObject();
+    if (m_BatchSize == null) {
+      m_BatchSize = "100";
+    }
+  }
+
   /**
    * Returns description of the bagged classifier.
    *
@@ -24,11 +24,14 @@ package weka.classifiers.meta;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
+import weka.classifiers.EnsemblePredictions;
 import weka.classifiers.RandomizableParallelMultipleClassifiersCombiner;
 import weka.classifiers.rules.ZeroR;
 import weka.core.Attribute;
@@ -39,6 +42,7 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -85,6 +89,10 @@ import weka.core.Utils;
  *  Random number seed.
  *  (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -B &lt;classifier specification&gt;
  *  Full class name of classifier to include, followed
  *  by scheme options. May be specified multiple times.
@@ -208,6 +216,10 @@ public class Stacking
    *  Random number seed.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -B &lt;classifier specification&gt;
    *  Full class name of classifier to include, followed
    *  by scheme options. May be specified multiple times.
@@ -405,26 +417,72 @@ public class Stacking
 
     Instances metaData = metaFormat(newData);
     m_MetaFormat = new Instances(metaData, 0);
+
+    // the folds are drawn in order, so that the random number generator
+    // is used in the same way however the classifiers are run
+    final Instances[] train = new Instances[m_NumFolds];
+    final Instances[] test = new Instances[m_NumFolds];
+    for (int j = 0; j < m_NumFolds; j++) {
+      train[j] = newData.trainCV(m_NumFolds, j, random);
+      test[j] = newData.testCV(m_NumFolds, j);
+    }
+
+    // build every classifier on every fold (concurrently if there is more
+    // than one execution slot) and classify the test instances of the fold
+    final TaskRunner runner = (m_numExecutionSlots > 1) 
+      ? new TaskRunner(m_numExecutionSlots) : null;
+    final boolean numeric = m_BaseFormat.classAttribute().isNumeric();
+    final double[][][][] predictions = 
+      new double[m_NumFolds][m_Classifiers.length][][];
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
     for (int j = 0; j < m_NumFolds; j++) {
-      Instances train = newData.trainCV(m_NumFolds, j, random);
-      
-      // start the executor pool (if necessary)
-      // has to be done after each set of classifiers as the
-      // executor pool gets shut down in order to prevent the
-      // program executing as a server (and not returning to
-      // the command prompt when run from the command line
-      super.buildClassifier(train);
-      
-      // construct the actual classifiers
-      buildClassifiers(train);
-      
-      // Classify test instances and add to meta data
-      Instances test = newData.testCV(m_NumFolds, j);
-      for (int i = 0; i < test.numInstances(); i++) {
-	metaData.add(metaInstance(test.instance(i)));
+      for (int k = 0; k < m_Classifiers.length; k++) {
+        final int fold = j;
+        final int index = k;
+        tasks.add(new Callable<Object>() {
+          public Object call() throws Exception {
+            Classifier classifier = getClassifier(index);
+            if (runner != null) {
+              classifier = AbstractClassifier.makeCopy(classifier);
+            }
+            classifier.buildClassifier(new Instances(train[fold]));
+            double[][] preds = new double[test[fold].numInstances()][];
+            for (int i = 0; i < preds.length; i++) {
+              preds[i] = EnsemblePredictions.predict(classifier, 
+                test[fold].instance(i), numeric);
+            }
+            predictions[fold][index] = preds;
+            return null;
+          }
+        });
+      }
+    }
+    try {
+      if (runner != null) {
+        runner.invokeAll(tasks);
+      } else {
+        for (Callable<Object> task : tasks) {
+          task.call();
+        }
+      }
+    } finally {
+      if (runner != null) {
+        runner.shutdown();
       }
     }
 
+    // Add test instances to meta data
+    double[][] instancePredictions = new double[m_Classifiers.length][];
+    for (int j = 0; j < m_NumFolds; j++) {
+      for (int i = 0; i < test[j].numInstances(); i++) {
+        for (int k = 0; k < m_Classifiers.length; k++) {
+          instancePredictions[k] = predictions[j][k][i];
+        }
+	metaData.add(metaInstance(test[j].instance(i), instancePredictions));
+      }
+      predictions[j] = null;
+    }
+
     m_MetaClassifier.buildClassifier(metaData);    
   }
 
@@ -507,18 +565,35 @@ public class Stacking
    */
   protected Instance metaInstance(Instance instance) throws Exception {
 
+    boolean numeric = m_BaseFormat.classAttribute().isNumeric();
+    double[][] predictions = new double[m_Classifiers.length][];
+    for (int k = 0; k < m_Classifiers.length; k++) {
+      predictions[k] = 
+        EnsemblePredictions.predict(getClassifier(k), instance, numeric);
+    }
+    return metaInstance(instance, predictions);
+  }
+
+  /**
+   * Makes a level-1 instance from the given instance and the predictions of
+   * the base classifiers for it.
+   * 
+   * @param instance the instance to be transformed
+   * @param predictions the predicted values (numeric class) or class
+   * distributions of the base classifiers
+   * @return the level-1 instance
+   * @throws Exception if the instance generation fails
+   */
+  protected Instance metaInstance(Instance instance, double[][] predictions)
+    throws Exception {
+
     double[] values = new double[m_MetaFormat.numAttributes()];
     Instance metaInstance;
     int i = 0;
-    for (int k = 0; k < m_Classifiers.length; k++) {
-      Classifier classifier = getClassifier(k);
-      if (m_BaseFormat.classAttribute().isNumeric()) {
-	values[i++] = classifier.classifyInstance(instance);
-      } else {
-	double[] dist = classifier.distributionForInstance(instance);
-	for (int j = 0; j < dist.length; j++) {
-	  values[i++] = dist[j];
-	}
+    for (int k = 0; k < predictions.length; k++) {
+      double[] dist = predictions[k];
+      for (int j = 0; j < dist.length; j++) {
+	values[i++] = dist[j];
       }
     }
     values[i] = instance.classValue();
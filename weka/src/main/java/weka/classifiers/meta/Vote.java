@@ -24,6 +24,7 @@ package weka.classifiers.meta;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -31,12 +32,15 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.EnsemblePredictions;
 import weka.classifiers.RandomizableMultipleClassifiersCombiner;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Aggregateable;
+import weka.core.BatchPredictor;
 import weka.core.Environment;
 import weka.core.EnvironmentHandler;
 import weka.core.Instance;
@@ -45,6 +49,7 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
+import weka.core.TaskRunner;
 import weka.core.Tag;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
@@ -106,6 +111,19 @@ import weka.core.Utils;
  *  (default: AVG)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for building the members
+ *  and for batch prediction.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -batch-size &lt;size&gt;
+ *  The preferred number of instances to process at a time
+ *  when predicting a batch of instances. (default 100)
+ * </pre>
+ * 
  <!-- options-end -->
  * 
  <!-- technical-bibtex-start --> 
@@ -138,7 +156,8 @@ import weka.core.Utils;
  * @version $Revision: 10487 $
  */
 public class Vote extends RandomizableMultipleClassifiersCombiner implements
-    TechnicalInformationHandler, EnvironmentHandler, Aggregateable<Classifier> {
+    TechnicalInformationHandler, EnvironmentHandler, Aggregateable<Classifier>,
+    BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -637891196294399624L;
@@ -170,7 +189,7 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
   /**
    * the random number generator used for breaking ties in majority voting
    * 
-   * @see #distributionForInstanceMajorityVoting(Instance)
+   * @see #distributionForInstanceMajorityVoting(Instance, double[][])
    */
   protected Random m_Random;
 
@@ -186,6 +205,12 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
   /** Structure of the training data */
   protected Instances m_structure;
 
+  /** The preferred number of instances per batch in batch prediction */
+  protected String m_BatchSize = "100";
+
+  /** The number of execution slots for building and batch prediction */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Returns a string describing classifier
    * 
@@ -219,6 +244,17 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
 
     result.addElement(new Option("\tThe combination rule to use\n"
         + "\t(default: AVG)", "R", 1, "-R " + Tag.toOptionList(TAGS_RULES)));
+
+    result.addElement(new Option(
+        "\tNumber of execution slots for building the members\n"
+            + "\tand for batch prediction.\n"
+            + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+
+    result.addElement(new Option(
+        "\tThe preferred number of instances to process at a time\n"
+            + "\twhen predicting a batch of instances. (default 100)",
+        "batch-size", 1, "-batch-size <size>"));
     
     result.addAll(Collections.list(super.listOptions()));
 
@@ -243,6 +279,14 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     result.add("-R");
     result.add("" + getCombinationRule());
 
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
+    if (!getBatchSize().equals("100")) {
+      result.add("-batch-size");
+      result.add(getBatchSize());
+    }
+
     for (i = 0; i < m_classifiersToLoad.size(); i++) {
       result.add("-P");
       result.add(m_classifiersToLoad.get(i));
@@ -293,6 +337,19 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    *  (default: AVG)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for building the members
+   *  and for batch prediction.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -batch-size &lt;size&gt;
+   *  The preferred number of instances to process at a time
+   *  when predicting a batch of instances. (default 100)
+   * </pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -308,6 +365,18 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     else
       setCombinationRule(new SelectedTag(AVERAGE_RULE, TAGS_RULES));
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
+    tmpStr = Utils.getOption("batch-size", options);
+    if (tmpStr.length() != 0)
+      setBatchSize(tmpStr);
+    else
+      setBatchSize("100");
+
     m_classifiersToLoad.clear();
     while (true) {
       String loadString = Utils.getOption('P', options);
@@ -414,7 +483,7 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
   public void buildClassifier(Instances data) throws Exception {
 
     // remove instances with missing class
-    Instances newData = new Instances(data);
+    final Instances newData = new Instances(data);
     newData.deleteWithMissingClass();
     m_structure = new Instances(newData, 0);
 
@@ -434,8 +503,28 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      getClassifier(i).buildClassifier(newData);
+    if (m_numExecutionSlots > 1) {
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < m_Classifiers.length; i++) {
+        final Classifier classifier = getClassifier(i);
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            classifier.buildClassifier(newData);
+            return null;
+          }
+        });
+      }
+      TaskRunner runner = new TaskRunner(m_numExecutionSlots);
+      try {
+        runner.invokeAll(tasks);
+      } finally {
+        runner.shutdown();
+      }
+    } else {
+      for (int i = 0; i < m_Classifiers.length; i++) {
+        getClassifier(i).buildClassifier(newData);
+      }
     }
   }
 
@@ -504,6 +593,48 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     m_preBuiltClassifiers.remove(c);
   }
 
+  /**
+   * Returns the members of the ensemble: the classifiers followed by the
+   * pre-built classifiers.
+   * 
+   * @return the members
+   */
+  protected Classifier[] getMembers() {
+    Classifier[] members = new Classifier[m_Classifiers.length
+        + m_preBuiltClassifiers.size()];
+    System.arraycopy(m_Classifiers, 0, members, 0, m_Classifiers.length);
+    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
+      members[m_Classifiers.length + i] = m_preBuiltClassifiers.get(i);
+    }
+    return members;
+  }
+
+  /**
+   * Returns the predictions of the members for the given instance: the
+   * predicted values for the median rule, the class distributions otherwise.
+   * 
+   * @param instance the instance to be classified
+   * @return the predictions of the members, in order
+   * @throws Exception if an error occurred during the prediction
+   */
+  protected double[][] getPredictions(Instance instance) throws Exception {
+    boolean classify = (m_CombinationRule == MEDIAN_RULE);
+    double[][] predictions = new double[m_Classifiers.length
+        + m_preBuiltClassifiers.size()][];
+
+    for (int i = 0; i < m_Classifiers.length; i++) {
+      predictions[i] = EnsemblePredictions.predict(getClassifier(i), instance,
+          classify);
+    }
+
+    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
+      predictions[m_Classifiers.length + i] = EnsemblePredictions.predict(
+          m_preBuiltClassifiers.get(i), instance, classify);
+    }
+
+    return predictions;
+  }
+
   /**
    * Classifies the given test instance.
    * 
@@ -514,6 +645,20 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    */
   @Override
   public double classifyInstance(Instance instance) throws Exception {
+    return classifyInstance(instance, getPredictions(instance));
+  }
+
+  /**
+   * Classifies the given test instance, given the predictions of the members.
+   * 
+   * @param instance the instance to be classified
+   * @param predictions the predictions of the members
+   * @return the predicted most likely class for the instance or
+   *         Utils.missingValue() if no prediction is made
+   * @throws Exception if an error occurred during the prediction
+   */
+  protected double classifyInstance(Instance instance, double[][] predictions)
+      throws Exception {
     double result;
     double[] dist;
     int index;
@@ -524,7 +669,7 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     case MAJORITY_VOTING_RULE:
     case MIN_RULE:
     case MAX_RULE:
-      dist = distributionForInstance(instance);
+      dist = distributionForInstance(instance, predictions);
       if (instance.classAttribute().isNominal()) {
         index = Utils.maxIndex(dist);
         if (dist[index] == 0)
@@ -538,7 +683,7 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
       }
       break;
     case MEDIAN_RULE:
-      result = classifyInstanceMedian(instance);
+      result = classifyInstanceMedian(predictions);
       break;
     default:
       throw new IllegalStateException("Unknown combination rule '"
@@ -552,25 +697,18 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    * Classifies the given test instance, returning the median from all
    * classifiers. Can assume that class is numeric.
    * 
-   * @param instance the instance to be classified
+   * @param predictions the values predicted by the members
    * @return the predicted most likely class for the instance or
    *         Utils.missingValue() if no prediction is made
    * @throws Exception if an error occurred during the prediction
    */
-  protected double classifyInstanceMedian(Instance instance) throws Exception {
-    double[] results = new double[m_Classifiers.length + m_preBuiltClassifiers.size()];
-
+  protected double classifyInstanceMedian(double[][] predictions)
+      throws Exception {
+    double[] results = new double[predictions.length];
 
     int numResults = 0;
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      double pred = m_Classifiers[i].classifyInstance(instance);
-      if (!Utils.isMissingValue(pred)) {
-        results[numResults++] = pred;
-      }
-    }
-
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      double pred = m_preBuiltClassifiers.get(i).classifyInstance(instance);
+    for (double[] prediction : predictions) {
+      double pred = prediction[0];
       if (!Utils.isMissingValue(pred)) {
         results[numResults++] = pred;
       }
@@ -596,26 +734,40 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    */
   @Override
   public double[] distributionForInstance(Instance instance) throws Exception {
+    return distributionForInstance(instance, getPredictions(instance));
+  }
+
+  /**
+   * Classifies a given instance using the selected combination rule, given
+   * the predictions of the members.
+   * 
+   * @param instance the instance to be classified
+   * @param predictions the predictions of the members
+   * @return the distribution
+   * @throws Exception if instance could not be classified successfully
+   */
+  protected double[] distributionForInstance(Instance instance,
+      double[][] predictions) throws Exception {
     double[] result = new double[instance.numClasses()];
 
     switch (m_CombinationRule) {
     case AVERAGE_RULE:
-      result = distributionForInstanceAverage(instance);
+      result = distributionForInstanceAverage(instance, predictions);
       break;
     case PRODUCT_RULE:
-      result = distributionForInstanceProduct(instance);
+      result = distributionForInstanceProduct(instance, predictions);
       break;
     case MAJORITY_VOTING_RULE:
-      result = distributionForInstanceMajorityVoting(instance);
+      result = distributionForInstanceMajorityVoting(instance, predictions);
       break;
     case MIN_RULE:
-      result = distributionForInstanceMin(instance);
+      result = distributionForInstanceMin(instance, predictions);
       break;
     case MAX_RULE:
-      result = distributionForInstanceMax(instance);
+      result = distributionForInstanceMax(instance, predictions);
       break;
     case MEDIAN_RULE:
-      result[0] = classifyInstance(instance);
+      result[0] = classifyInstance(instance, predictions);
       break;
     default:
       throw new IllegalStateException("Unknown combination rule '"
@@ -628,32 +780,46 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     return result;
   }
 
+  /**
+   * Calculates the class distributions for a batch of instances using the
+   * selected combination rule. The members of the ensemble are evaluated
+   * concurrently if there is more than one execution slot.
+   * 
+   * @param insts the instances to be classified
+   * @return the class distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  @Override
+  public double[][] distributionsForInstances(Instances insts)
+      throws Exception {
+    return EnsemblePredictions.distributionsForInstances(getMembers(), insts,
+        m_CombinationRule == MEDIAN_RULE, m_numExecutionSlots,
+        EnsemblePredictions.parseBatchSize(m_BatchSize),
+        new EnsemblePredictions.Combiner() {
+          @Override
+          public double[] combine(Instance instance, double[][] predictions)
+              throws Exception {
+            return distributionForInstance(instance, predictions);
+          }
+        });
+  }
+
   /**
    * Classifies a given instance using the Average of Probabilities combination
    * rule.
    * 
    * @param instance the instance to be classified
+   * @param predictions the distributions predicted by the members
    * @return the distribution
    * @throws Exception if instance could not be classified successfully
    */
-  protected double[] distributionForInstanceAverage(Instance instance)
-      throws Exception {
+  protected double[] distributionForInstanceAverage(Instance instance,
+      double[][] predictions) throws Exception {
 
     double[] probs = new double[instance.numClasses()];
 
     double numPredictions = 0;
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      double[] dist = getClassifier(i).distributionForInstance(instance);
-      if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
-        for (int j = 0; j < dist.length; j++) {
-          probs[j] += dist[j];
-        }
-        numPredictions++;
-      }
-    }
-
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      double[] dist = m_preBuiltClassifiers.get(i).distributionForInstance(instance);
+    for (double[] dist : predictions) {
       if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
         for (int j = 0; j < dist.length; j++) {
           probs[j] += dist[j];
@@ -686,11 +852,12 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    * rule. Can assume that class is nominal.
    * 
    * @param instance the instance to be classified
+   * @param predictions the distributions predicted by the members
    * @return the distribution
    * @throws Exception if instance could not be classified successfully
    */
-  protected double[] distributionForInstanceProduct(Instance instance)
-      throws Exception {
+  protected double[] distributionForInstanceProduct(Instance instance,
+      double[][] predictions) throws Exception {
 
     double[] probs = new double[instance.numClasses()];
     for (int i = 0; i < probs.length; i++) {
@@ -698,18 +865,7 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
     }
 
     int numPredictions = 0;
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      double[] dist = getClassifier(i).distributionForInstance(instance);
-      if (Utils.sum(dist) > 0) {
-        for (int j = 0; j < dist.length; j++) {
-          probs[j] *= dist[j];
-        }
-        numPredictions++;
-      }
-    }
-
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      double[] dist = m_preBuiltClassifiers.get(i).distributionForInstance(instance);
+    for (double[] dist : predictions) {
       if (Utils.sum(dist) > 0) {
         for (int j = 0; j < dist.length; j++) {
           probs[j] *= dist[j];
@@ -736,17 +892,18 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    * Can assume that class is nominal.
    * 
    * @param instance the instance to be classified
+   * @param predictions the distributions predicted by the members
    * @return the distribution
    * @throws Exception if instance could not be classified successfully
    */
-  protected double[] distributionForInstanceMajorityVoting(Instance instance)
-      throws Exception {
+  protected double[] distributionForInstanceMajorityVoting(Instance instance,
+      double[][] predictions) throws Exception {
 
     double[] probs = new double[instance.classAttribute().numValues()];
     double[] votes = new double[probs.length];
 
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      probs = getClassifier(i).distributionForInstance(instance);
+    for (double[] dist : predictions) {
+      probs = dist;
       int maxIndex = 0;
       for (int j = 0; j < probs.length; j++) {
         if (probs[j] > probs[maxIndex])
@@ -762,24 +919,6 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
         }
     }
 
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      probs = m_preBuiltClassifiers.get(i).distributionForInstance(instance);
-      int maxIndex = 0;
-
-      for (int j = 0; j < probs.length; j++) {
-        if (probs[j] > probs[maxIndex])
-          maxIndex = j;
-      }
-
-      // Consider the cases when multiple classes happen to have the same
-      // probability
-      if (probs[maxIndex] > 0) // Unclassified?
-        for (int j = 0; j < probs.length; j++) {
-          if (probs[j] == probs[maxIndex])
-            votes[j]++;
-        }
-    }
-
     int tmpMajorityIndex = 0;
     for (int k = 1; k < votes.length; k++) {
       if (votes[k] > votes[tmpMajorityIndex])
@@ -814,29 +953,17 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    * Classifies a given instance using the Maximum Probability combination rule.
    * 
    * @param instance the instance to be classified
+   * @param predictions the distributions predicted by the members
    * @return the distribution
    * @throws Exception if instance could not be classified successfully
    */
-  protected double[] distributionForInstanceMax(Instance instance)
-      throws Exception {
+  protected double[] distributionForInstanceMax(Instance instance,
+      double[][] predictions) throws Exception {
 
     double[] probs = new double[instance.numClasses()];
 
     double numPredictions = 0;
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      double[] dist = getClassifier(i).distributionForInstance(instance);
-      if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
-        for (int j = 0; j < dist.length; j++) {
-          if ((probs[j] < dist[j]) || (numPredictions == 0)) {
-            probs[j] = dist[j];
-          }
-        }
-        numPredictions++;
-      }
-    }
-
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      double[] dist = m_preBuiltClassifiers.get(i).distributionForInstance(instance);
+    for (double[] dist : predictions) {
       if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
         for (int j = 0; j < dist.length; j++) {
           if ((probs[j] < dist[j]) || (numPredictions == 0)) {
@@ -866,29 +993,17 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
    * Classifies a given instance using the Minimum Probability combination rule.
    * 
    * @param instance the instance to be classified
+   * @param predictions the distributions predicted by the members
    * @return the distribution
    * @throws Exception if instance could not be classified successfully
    */
-  protected double[] distributionForInstanceMin(Instance instance)
-      throws Exception {
+  protected double[] distributionForInstanceMin(Instance instance,
+      double[][] predictions) throws Exception {
 
     double[] probs = new double[instance.numClasses()];
 
     double numPredictions = 0;
-    for (int i = 0; i < m_Classifiers.length; i++) {
-      double[] dist = getClassifier(i).distributionForInstance(instance);
-      if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
-        for (int j = 0; j < dist.length; j++) {
-          if ((probs[j] > dist[j]) || (numPredictions == 0)) {
-            probs[j] = dist[j];
-          }
-        }
-        numPredictions++;
-      }
-    }
-
-    for (int i = 0; i < m_preBuiltClassifiers.size(); i++) {
-      double[] dist = m_preBuiltClassifiers.get(i).distributionForInstance(instance);
+    for (double[] dist : predictions) {
       if (!instance.classAttribute().isNumeric() || !Utils.isMissingValue(dist[0])) {
         for (int j = 0; j < dist.length; j++) {
           if ((probs[j] > dist[j]) || (numPredictions == 0)) {
@@ -943,6 +1058,87 @@ public class Vote extends RandomizableMultipleClassifiersCombiner implements
       m_CombinationRule = newRule.getSelectedTag().getID();
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The preferred number of instances to process at a time when "
+        + "predicting a batch of instances.";
+  }
+
+  /**
+   * Set the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   * 
+   * @param size the batch size to use
+   */
+  @Override
+  public void setBatchSize(String size) {
+    m_BatchSize = (size == null) ? "100" : size;
+  }
+
+  /**
+   * Get the preferred number of instances to process at a time when
+   * predicting a batch of instances.
+   * 
+   * @return the batch size to use
+   */
+  @Override
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building the "
+        + "members of the ensemble and for predicting batches of instances.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use.
+   * 
+   * @param numSlots the number of slots to use (at least 1)
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = Math.max(1, numSlots);
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Sets the fields that models serialized before they were added lack to
+   * their defaults.
+   * 
+   * @param in the stream to read from
+   * @throws IOException if the object can't be read
+   * @throws ClassNotFoundException if a class can't be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+    in.defaultReadObject();
+    if (m_BatchSize == null) {
+      m_BatchSize = "100";
+    }
+    if (m_numExecutionSlots < 1) {
+      m_numExecutionSlots = 1;
+    }
+  }
+
   /**
    * Returns the tip text for this property
    * 
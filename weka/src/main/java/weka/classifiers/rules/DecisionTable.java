@@ -26,6 +26,9 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
 
@@ -50,6 +53,7 @@ import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
+import weka.core.ThreadSafe;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
 import weka.filters.Filter;
@@ -230,6 +234,57 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
 
   protected int m_evaluationMeasure = EVAL_DEFAULT;
 
+  /** Maximum number of group ids held by the cache of partitions */
+  protected static final int PARTITION_CACHE_SIZE = 1 << 22;
+
+  /**
+   * Grouping of the training instances by their values on a feature subset
+   */
+  protected static class Partition {
+
+    /** The group of each training instance (by original index) */
+    protected final int[] m_groups;
+
+    /** The number of groups */
+    protected final int m_numGroups;
+
+    /**
+     * Creates a partition.
+     * 
+     * @param groups the group of each training instance
+     * @param numGroups the number of groups
+     */
+    protected Partition(int[] groups, int numGroups) {
+      m_groups = groups;
+      m_numGroups = numGroups;
+    }
+  }
+
+  /**
+   * Codes of the discretized training values, [attribute][instance], with
+   * missing values coded as the number of values (null if an attribute is not
+   * nominal)
+   */
+  protected transient int[][] m_codes;
+
+  /** Number of codes of each attribute */
+  protected transient int[] m_numCodes;
+
+  /** Original index of the training instance at each position */
+  protected transient int[] m_order;
+
+  /** Original index of each training instance */
+  protected transient IdentityHashMap<Instance, Integer> m_originalIndex;
+
+  /** Recently used partitions of the training instances */
+  protected transient LinkedHashMap<BitSet, Partition> m_partitions;
+
+  /** Index for looking up the final table without creating hash keys */
+  protected DecisionTableIndex m_index;
+
+  /** The class distributions of the groups in m_index */
+  protected double[][] m_indexEntries;
+
   /**
    * Returns a string describing classifier
    * 
@@ -469,10 +524,15 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
           class_distribs[i][1] -= inst.weight();
         }
       }
-      m_classPriorCounts[(int) inst.classValue()] -= inst.weight();
+      if (m_classIsNominal) {
+        m_classPriorCounts[(int) inst.classValue()] -= inst.weight();
+      }
+    }
+    double[] classPriors = null;
+    if (m_classIsNominal) {
+      classPriors = m_classPriorCounts.clone();
+      Utils.normalize(classPriors);
     }
-    double[] classPriors = m_classPriorCounts.clone();
-    Utils.normalize(classPriors);
 
     // now classify instances
     for (i = 0; i < numFold; i++) {
@@ -521,9 +581,8 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
     for (i = 0; i < numFold; i++) {
       inst = fold.instance(i);
 
-      m_classPriorCounts[(int) inst.classValue()] += inst.weight();
-
       if (m_classIsNominal) {
+        m_classPriorCounts[(int) inst.classValue()] += inst.weight();
         class_distribs[i][(int) inst.classValue()] += inst.weight();
       } else {
         class_distribs[i][0] += (inst.classValue() * inst.weight());
@@ -605,24 +664,36 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
       }
     }
 
+    return getMerit(m_evaluation);
+  }
+
+  /**
+   * Returns the merit of a feature subset according to the evaluation measure
+   * 
+   * @param evaluation the evaluation of the subset
+   * @return the merit
+   * @throws Exception if the merit can't be computed
+   */
+  protected double getMerit(Evaluation evaluation) throws Exception {
+
     switch (m_evaluationMeasure) {
     case EVAL_DEFAULT:
       if (m_classIsNominal) {
-        return m_evaluation.pctCorrect();
+        return evaluation.pctCorrect();
       }
-      return -m_evaluation.rootMeanSquaredError();
+      return -evaluation.rootMeanSquaredError();
     case EVAL_ACCURACY:
-      return m_evaluation.pctCorrect();
+      return evaluation.pctCorrect();
     case EVAL_RMSE:
-      return -m_evaluation.rootMeanSquaredError();
+      return -evaluation.rootMeanSquaredError();
     case EVAL_MAE:
-      return -m_evaluation.meanAbsoluteError();
+      return -evaluation.meanAbsoluteError();
     case EVAL_AUC:
-      double[] classPriors = m_evaluation.getClassPriors();
+      double[] classPriors = evaluation.getClassPriors();
       Utils.normalize(classPriors);
       double weightedAUC = 0;
-      for (i = 0; i < m_theInstances.classAttribute().numValues(); i++) {
-        double tempAUC = m_evaluation.areaUnderROC(i);
+      for (int i = 0; i < m_theInstances.classAttribute().numValues(); i++) {
+        double tempAUC = evaluation.areaUnderROC(i);
         if (!Utils.isMissingValue(tempAUC)) {
           weightedAUC += (classPriors[i] * tempAUC);
         } else {
@@ -635,12 +706,375 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
     return 0.0;
   }
 
+  /**
+   * Sets up the codes of the discretized training data and the cache of
+   * partitions used by estimatePerformanceIndexed(). Leaves m_codes null if
+   * some attribute (other than the class) is not nominal.
+   */
+  protected void initPartitions() {
+
+    m_codes = null;
+    m_partitions = null;
+    int classI = m_theInstances.classIndex();
+    for (int i = 0; i < m_numAttributes; i++) {
+      if (i != classI && !m_theInstances.attribute(i).isNominal()) {
+        return;
+      }
+    }
+
+    m_codes = new int[m_numAttributes][];
+    m_numCodes = new int[m_numAttributes];
+    for (int i = 0; i < m_numAttributes; i++) {
+      if (i != classI) {
+        int missing = m_theInstances.attribute(i).numValues();
+        m_numCodes[i] = missing + 1;
+        m_codes[i] = new int[m_numInstances];
+        for (int j = 0; j < m_numInstances; j++) {
+          Instance inst = m_theInstances.instance(j);
+          m_codes[i][j] = inst.isMissing(i) ? missing : (int) inst.value(i);
+        }
+      }
+    }
+
+    m_order = new int[m_numInstances];
+    m_originalIndex = new IdentityHashMap<Instance, Integer>(m_numInstances);
+    for (int j = 0; j < m_numInstances; j++) {
+      m_order[j] = j;
+      m_originalIndex.put(m_theInstances.instance(j), j);
+    }
+
+    final int maxPartitions = Math.max(1,
+      PARTITION_CACHE_SIZE / Math.max(1, m_numInstances));
+    m_partitions = new LinkedHashMap<BitSet, Partition>(16, 0.75f, true) {
+
+      /** for serialization */
+      private static final long serialVersionUID = -4367925125542389374L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<BitSet, Partition> eldest) {
+        return size() > maxPartitions;
+      }
+    };
+  }
+
+  /**
+   * Frees the data used for evaluating feature subsets.
+   */
+  protected void freePartitions() {
+    m_codes = null;
+    m_numCodes = null;
+    m_order = null;
+    m_originalIndex = null;
+    m_partitions = null;
+  }
+
+  /**
+   * Returns the grouping of the training instances by their values on a
+   * feature subset. The partition is derived from the cheapest cached one:
+   * the partition of a subset is refined by each added feature, and the
+   * partition of a superset is coarsened via one instance per group.
+   * 
+   * @param feature_set the feature subset
+   * @return the partition
+   */
+  protected Partition getPartition(BitSet feature_set) {
+
+    BitSet features = (BitSet) feature_set.clone();
+    features.clear(m_theInstances.classIndex());
+    int size = features.cardinality();
+
+    // find the cheapest starting point
+    BitSet baseFeatures = new BitSet();
+    Partition base = null;
+    boolean coarsen = false;
+    long bestCost = (long) m_numInstances * size;
+    synchronized (m_partitions) {
+      Partition partition = m_partitions.get(features);
+      if (partition != null) {
+        return partition;
+      }
+      BitSet diff = new BitSet();
+      for (Map.Entry<BitSet, Partition> entry : m_partitions.entrySet()) {
+        BitSet other = entry.getKey();
+        int otherSize = other.cardinality();
+        diff.clear();
+        long cost;
+        if (otherSize <= size) {
+          diff.or(other);
+          diff.andNot(features);
+          cost = (long) m_numInstances * (size - otherSize);
+        } else {
+          diff.or(features);
+          diff.andNot(other);
+          cost = m_numInstances + (long) entry.getValue().m_numGroups * size;
+        }
+        if (diff.isEmpty() && cost < bestCost) {
+          bestCost = cost;
+          baseFeatures = other;
+          base = entry.getValue();
+          coarsen = otherSize > size;
+        }
+      }
+    }
+
+    int[] groups;
+    int numGroups;
+    if (base == null) {
+      groups = new int[m_numInstances];
+      numGroups = 1;
+    } else {
+      groups = base.m_groups.clone();
+      numGroups = base.m_numGroups;
+    }
+    if (coarsen) {
+      int[][] codes = new int[size][];
+      int[] numCodes = new int[size];
+      for (int i = features.nextSetBit(0), j = 0; i >= 0; i = features
+        .nextSetBit(i + 1), j++) {
+        codes[j] = m_codes[i];
+        numCodes[j] = m_numCodes[i];
+      }
+      numGroups = DecisionTableIndex.coarsen(groups, numGroups, codes,
+        numCodes);
+    } else {
+      for (int i = features.nextSetBit(0); i >= 0; i = features
+        .nextSetBit(i + 1)) {
+        if (!baseFeatures.get(i)) {
+          numGroups = DecisionTableIndex.refine(groups, numGroups, m_codes[i],
+            m_numCodes[i]);
+        }
+      }
+    }
+
+    Partition partition = new Partition(groups, numGroups);
+    synchronized (m_partitions) {
+      m_partitions.put(features, partition);
+    }
+    return partition;
+  }
+
+  /**
+   * Builds the table for a partition of the training instances, inserting
+   * them in their current order (see insertIntoTable()).
+   * 
+   * @param partition the partition
+   * @return the class distribution of each group
+   */
+  protected double[][] fillTable(Partition partition) {
+
+    double[][] table = new double[partition.m_numGroups][];
+    for (int i = 0; i < m_numInstances; i++) {
+      Instance inst = m_theInstances.instance(i);
+      int group = partition.m_groups[m_order[i]];
+      double[] dist = table[group];
+      if (m_classIsNominal) {
+        if (dist == null) {
+          dist = new double[m_theInstances.classAttribute().numValues()];
+
+          // Laplace estimation
+          Arrays.fill(dist, 1.0);
+          dist[(int) inst.classValue()] = inst.weight();
+          table[group] = dist;
+        } else {
+          dist[(int) inst.classValue()] += inst.weight();
+        }
+      } else {
+        if (dist == null) {
+          dist = new double[2];
+          table[group] = dist;
+        }
+        dist[0] += (inst.classValue() * inst.weight());
+        dist[1] += inst.weight();
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Evaluates a feature subset like estimatePerformance(), but groups the
+   * training instances via cached partitions instead of hashing the feature
+   * values of each instance. Leave one out evaluations don't change any shared
+   * state and may run concurrently; cross validations shuffle the training
+   * data and are serialized.
+   * 
+   * @param feature_set the subset to be evaluated
+   * @return the estimated merit
+   * @throws Exception if subset can't be evaluated
+   */
+  protected double estimatePerformanceIndexed(BitSet feature_set)
+    throws Exception {
+
+    Partition partition = getPartition(feature_set);
+    if (m_CVFolds == 1) {
+      return leaveOneOutIndexed(partition);
+    }
+    synchronized (this) {
+      return crossValidateIndexed(partition);
+    }
+  }
+
+  /**
+   * Records the prediction for an instance.
+   * 
+   * @param evaluation the evaluation to update
+   * @param dist the predicted distribution or value
+   * @param inst the instance
+   * @throws Exception if the prediction can't be recorded
+   */
+  protected void recordPrediction(Evaluation evaluation, double[] dist,
+    Instance inst) throws Exception {
+
+    if (m_classIsNominal && m_evaluationMeasure == EVAL_AUC) {
+      evaluation.evaluateModelOnceAndRecordPrediction(dist, inst);
+    } else {
+      evaluation.evaluateModelOnce(dist, inst);
+    }
+  }
+
+  /**
+   * Leave one out evaluation of a partition (see
+   * evaluateInstanceLeaveOneOut()).
+   * 
+   * @param partition the partition of the training instances
+   * @return the merit
+   * @throws Exception if the partition can't be evaluated
+   */
+  protected double leaveOneOutIndexed(Partition partition) throws Exception {
+
+    Evaluation evaluation = new Evaluation(m_theInstances);
+    double[][] table = fillTable(partition);
+    double[] classPriorCounts = m_classIsNominal ? m_classPriorCounts.clone()
+      : null;
+
+    for (int i = 0; i < m_numInstances; i++) {
+      Instance inst = m_theInstances.instance(i);
+      double[] normDist = table[partition.m_groups[m_order[i]]].clone();
+      if (m_classIsNominal) {
+        int classValue = (int) inst.classValue();
+        normDist[classValue] -= inst.weight();
+
+        // first check to see if the class counts are all zero now
+        boolean ok = false;
+        for (double element : normDist) {
+          if (Utils.gr(element, 1.0)) {
+            ok = true;
+            break;
+          }
+        }
+        if (!ok) { // majority class
+          classPriorCounts[classValue] -= inst.weight();
+          normDist = classPriorCounts.clone();
+          Utils.normalize(normDist);
+          classPriorCounts[classValue] += inst.weight();
+        }
+        Utils.normalize(normDist);
+        recordPrediction(evaluation, normDist, inst);
+      } else {
+        normDist[0] -= (inst.classValue() * inst.weight());
+        normDist[1] -= inst.weight();
+        double[] temp = new double[1];
+        temp[0] = Utils.eq(normDist[1], 0.0) ? m_majority : normDist[0]
+          / normDist[1];
+        evaluation.evaluateModelOnce(temp, inst);
+      }
+    }
+    return getMerit(evaluation);
+  }
+
+  /**
+   * Cross validation of a partition (see evaluateFoldCV()). Shuffles the
+   * training data with the same random numbers as estimatePerformance().
+   * 
+   * @param partition the partition of the training instances
+   * @return the merit
+   * @throws Exception if the partition can't be evaluated
+   */
+  protected double crossValidateIndexed(Partition partition) throws Exception {
+
+    Evaluation evaluation = new Evaluation(m_theInstances);
+    double[][] table = fillTable(partition);
+
+    m_theInstances.randomize(m_rr);
+    m_theInstances.stratify(m_CVFolds);
+    for (int i = 0; i < m_numInstances; i++) {
+      m_order[i] = m_originalIndex.get(m_theInstances.instance(i));
+    }
+
+    int first = 0;
+    for (int fold = 0; fold < m_CVFolds; fold++) {
+      int numFold = m_numInstances / m_CVFolds;
+      if (fold < m_numInstances % m_CVFolds) {
+        numFold++;
+      }
+      double[][] class_distribs = new double[numFold][];
+
+      // first *remove* instances
+      for (int i = 0; i < numFold; i++) {
+        Instance inst = m_theInstances.instance(first + i);
+        class_distribs[i] = table[partition.m_groups[m_order[first + i]]];
+        if (m_classIsNominal) {
+          class_distribs[i][(int) inst.classValue()] -= inst.weight();
+          m_classPriorCounts[(int) inst.classValue()] -= inst.weight();
+        } else {
+          class_distribs[i][0] -= (inst.classValue() * inst.weight());
+          class_distribs[i][1] -= inst.weight();
+        }
+      }
+      double[] classPriors = null;
+      if (m_classIsNominal) {
+        classPriors = m_classPriorCounts.clone();
+        Utils.normalize(classPriors);
+      }
+
+      // now classify instances
+      for (int i = 0; i < numFold; i++) {
+        Instance inst = m_theInstances.instance(first + i);
+        double[] normDist = class_distribs[i].clone();
+        if (m_classIsNominal) {
+          boolean ok = false;
+          for (double element : normDist) {
+            if (Utils.gr(element, 1.0)) {
+              ok = true;
+              break;
+            }
+          }
+          if (!ok) { // majority class
+            normDist = classPriors.clone();
+          }
+          Utils.normalize(normDist);
+          recordPrediction(evaluation, normDist, inst);
+        } else {
+          double[] temp = new double[1];
+          temp[0] = Utils.eq(normDist[1], 0.0) ? m_majority : normDist[0]
+            / normDist[1];
+          evaluation.evaluateModelOnce(temp, inst);
+        }
+      }
+
+      // now re-insert instances
+      for (int i = 0; i < numFold; i++) {
+        Instance inst = m_theInstances.instance(first + i);
+        if (m_classIsNominal) {
+          m_classPriorCounts[(int) inst.classValue()] += inst.weight();
+          class_distribs[i][(int) inst.classValue()] += inst.weight();
+        } else {
+          class_distribs[i][0] += (inst.classValue() * inst.weight());
+          class_distribs[i][1] += inst.weight();
+        }
+      }
+      first += numFold;
+    }
+    return getMerit(evaluation);
+  }
+
   /**
    * Resets the options.
    */
   protected void resetOptions() {
 
     m_entries = null;
+    m_index = null;
+    m_indexEntries = null;
     m_decisionFeatures = null;
     m_useIBk = false;
     m_CVFolds = 1;
@@ -1074,6 +1508,10 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
     @Override
     public double evaluateSubset(BitSet subset) throws Exception {
 
+      if (m_codes != null) {
+        return estimatePerformanceIndexed(subset);
+      }
+
       int fc = 0;
       for (int jj = 0; jj < m_numAttributes; jj++) {
         if (subset.get(jj)) {
@@ -1081,16 +1519,32 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
         }
       }
 
-      return estimatePerformance(subset, fc);
+      synchronized (DecisionTable.this) {
+        return estimatePerformance(subset, fc);
+      }
     }
   }
 
+  /**
+   * Subset evaluator for leave one out evaluation, which lets search methods
+   * evaluate several subsets in parallel
+   */
+  private class LeaveOneOutSubsetEvaluator extends DummySubsetEvaluator
+    implements ThreadSafe {
+    /** for serialization */
+    private static final long serialVersionUID = -6251985212155749387L;
+  }
+
   /**
    * Sets up a dummy subset evaluator that basically just delegates evaluation
    * to the estimatePerformance method in DecisionTable
    */
   protected void setUpEvaluator() throws Exception {
-    m_evaluator = new DummySubsetEvaluator();
+    if (m_CVFolds == 1) {
+      m_evaluator = new LeaveOneOutSubsetEvaluator();
+    } else {
+      m_evaluator = new DummySubsetEvaluator();
+    }
   }
 
   protected boolean m_saveMemory = true;
@@ -1158,7 +1612,13 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
     m_majority = m_theInstances.meanOrMode(m_theInstances.classAttribute());
 
     // Perform the search
-    int[] selected = m_search.search(m_evaluator, m_theInstances);
+    initPartitions();
+    int[] selected;
+    try {
+      selected = m_search.search(m_evaluator, m_theInstances);
+    } finally {
+      freePartitions();
+    }
 
     m_decisionFeatures = new int[selected.length + 1];
     System.arraycopy(selected, 0, m_decisionFeatures, 0, selected.length);
@@ -1187,6 +1647,28 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
       insertIntoTable(inst, null);
     }
 
+    // index the table for lookups without hash keys
+    m_index = null;
+    m_indexEntries = null;
+    boolean nominal = true;
+    for (int i = 0; i < m_numAttributes; i++) {
+      if (i != m_dtInstances.classIndex()
+        && !m_dtInstances.attribute(i).isNominal()) {
+        nominal = false;
+      }
+    }
+    if (nominal) {
+      m_index = new DecisionTableIndex(m_dtInstances);
+      int[] groups = m_index.build(m_dtInstances);
+      m_indexEntries = new double[m_index.numGroups()][];
+      for (int i = 0; i < m_numInstances; i++) {
+        if (m_indexEntries[groups[i]] == null) {
+          m_indexEntries[groups[i]] = m_entries.get(new DecisionTableHashKey(
+            m_dtInstances.instance(i), m_numAttributes, false));
+        }
+      }
+    }
+
     // Replace the global table majority with nearest neighbour?
     if (m_useIBk) {
       m_ibk = new IBk();
@@ -1223,10 +1705,17 @@ public class DecisionTable extends AbstractClassifier implements OptionHandler,
     m_delTransform.batchFinished();
     instance = m_delTransform.output();
 
-    thekey = new DecisionTableHashKey(instance, instance.numAttributes(), false);
+    if (m_index != null) {
+      int group = m_index.lookup(instance);
+      tempDist = (group < 0) ? null : m_indexEntries[group];
+    } else {
+      thekey = new DecisionTableHashKey(instance, instance.numAttributes(),
+        false);
+      tempDist = m_entries.get(thekey);
+    }
 
     // if this one is not in the table
-    if ((tempDist = m_entries.get(thekey)) == null) {
+    if (tempDist == null) {
       if (m_useIBk) {
         tempDist = m_ibk.distributionForInstance(instance);
       } else {
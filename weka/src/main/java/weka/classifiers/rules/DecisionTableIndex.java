@@ -0,0 +1,323 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    DecisionTableIndex.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Index over the nominal attributes of a decision table. Every combination of
+ * attribute values that occurs in the training data gets a dense integer id,
+ * built one attribute at a time: the id after attribute j is looked up from
+ * the packed key (id after attribute j-1) * (number of values of j + 1) + (code
+ * of the value of j), where missing values get the code "number of values".
+ * The keys are stored in open addressing hash tables of longs, so neither
+ * building nor looking up creates objects per instance.
+ * <p/>
+ *
+ * The static methods work on group ids of whole data sets (partitions of the
+ * training instances) and are used for evaluating feature subsets.
+ *
+ * @version $Revision$
+ */
+public class DecisionTableIndex implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3386411906264658040L;
+
+  /**
+   * Open addressing hash map from non-negative long keys to the dense ids 0,
+   * 1, 2, ... in order of insertion.
+   */
+  public static class LongIntMap implements Serializable {
+
+    /** for serialization */
+    private static final long serialVersionUID = 4585004327738806227L;
+
+    /** the keys, -1 for empty slots */
+    protected long[] m_keys;
+
+    /** the ids */
+    protected int[] m_values;
+
+    /** number of keys in the map */
+    protected int m_size;
+
+    /**
+     * Creates a map.
+     *
+     * @param expectedSize the expected number of keys
+     */
+    public LongIntMap(int expectedSize) {
+      int capacity = 4;
+      while (capacity < 2 * expectedSize) {
+        capacity <<= 1;
+      }
+      m_keys = new long[capacity];
+      m_values = new int[capacity];
+      Arrays.fill(m_keys, -1L);
+    }
+
+    /**
+     * Returns the slot of a key, or of the empty slot it would go into.
+     *
+     * @param key the key
+     * @return the slot
+     */
+    protected int slot(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      int mask = m_keys.length - 1;
+      int slot = (int) (h ^ (h >>> 32)) & mask;
+      while (m_keys[slot] != -1L && m_keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * Returns the id of a key.
+     *
+     * @param key the key
+     * @return the id, or -1 if the key is not in the map
+     */
+    public int get(long key) {
+      int slot = slot(key);
+      return m_keys[slot] == -1L ? -1 : m_values[slot];
+    }
+
+    /**
+     * Returns the id of a key, adding it with the next free id if it is not in
+     * the map yet.
+     *
+     * @param key the key (must not be negative)
+     * @return the id
+     */
+    public int getOrAdd(long key) {
+      int slot = slot(key);
+      if (m_keys[slot] == -1L) {
+        if (2 * (m_size + 1) > m_keys.length) {
+          grow();
+          slot = slot(key);
+        }
+        m_keys[slot] = key;
+        m_values[slot] = m_size++;
+      }
+      return m_values[slot];
+    }
+
+    /**
+     * Doubles the capacity of the map.
+     */
+    protected void grow() {
+      long[] keys = m_keys;
+      int[] values = m_values;
+      m_keys = new long[2 * keys.length];
+      m_values = new int[2 * keys.length];
+      Arrays.fill(m_keys, -1L);
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != -1L) {
+          int slot = slot(keys[i]);
+          m_keys[slot] = keys[i];
+          m_values[slot] = values[i];
+        }
+      }
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+      return m_size;
+    }
+  }
+
+  /** the indexed attributes, in lookup order */
+  protected int[] m_attributes;
+
+  /** number of codes of each indexed attribute (values + 1 for missing) */
+  protected int[] m_numCodes;
+
+  /** the id maps, one per indexed attribute */
+  protected LongIntMap[] m_levels;
+
+  /**
+   * Sets up an index over all attributes of the data, except the class. The
+   * attributes must be nominal.
+   *
+   * @param data the training data, or its header
+   */
+  public DecisionTableIndex(Instances data) {
+    int numAttributes = 0;
+    for (int i = 0; i < data.numAttributes(); i++) {
+      if (i != data.classIndex()) {
+        numAttributes++;
+      }
+    }
+    m_attributes = new int[numAttributes];
+    m_numCodes = new int[numAttributes];
+    m_levels = new LongIntMap[numAttributes];
+    for (int i = 0, j = 0; i < data.numAttributes(); i++) {
+      if (i != data.classIndex()) {
+        m_attributes[j] = i;
+        m_numCodes[j] = data.attribute(i).numValues() + 1;
+        j++;
+      }
+    }
+  }
+
+  /**
+   * Adds all value combinations of the given data to the index.
+   *
+   * @param data the training data
+   * @return the group id of every instance
+   */
+  public int[] build(Instances data) {
+    int numInstances = data.numInstances();
+    int[] groups = new int[numInstances];
+    int numGroups = 1;
+    for (int j = 0; j < m_attributes.length; j++) {
+      m_levels[j] = new LongIntMap(Math.min(numInstances, numGroups
+        * m_numCodes[j]));
+      for (int i = 0; i < numInstances; i++) {
+        groups[i] = m_levels[j].getOrAdd(key(groups[i], j, data.instance(i)));
+      }
+      numGroups = m_levels[j].size();
+    }
+    return groups;
+  }
+
+  /**
+   * Returns the packed key for an instance at a level of the index.
+   *
+   * @param id the id after the previous level
+   * @param level the level
+   * @param inst the instance
+   * @return the key
+   */
+  protected long key(int id, int level, Instance inst) {
+    int att = m_attributes[level];
+    int code = inst.isMissing(att) ? m_numCodes[level] - 1 : (int) inst
+      .value(att);
+    return (long) id * m_numCodes[level] + code;
+  }
+
+  /**
+   * Returns the number of groups (distinct value combinations) in the index.
+   *
+   * @return the number of groups
+   */
+  public int numGroups() {
+    return m_levels.length == 0 ? 1 : m_levels[m_levels.length - 1].size();
+  }
+
+  /**
+   * Looks up the group of an instance with the same format as the training
+   * data.
+   *
+   * @param inst the instance
+   * @return the group id, or -1 if the value combination did not occur in the
+   *         training data
+   */
+  public int lookup(Instance inst) {
+    int id = 0;
+    for (int j = 0; j < m_levels.length && id >= 0; j++) {
+      id = m_levels[j].get(key(id, j, inst));
+    }
+    return id;
+  }
+
+  /**
+   * Refines a partition of a data set by one more attribute. Instances stay in
+   * the same group only if they also have the same code for the attribute.
+   *
+   * @param groups the group id of every instance, replaced by the refined ids
+   * @param numGroups the number of groups in the partition
+   * @param codes the code of the attribute for every instance
+   * @param numCodes the number of different codes of the attribute
+   * @return the number of groups in the refined partition
+   */
+  public static int refine(int[] groups, int numGroups, int[] codes,
+    int numCodes) {
+    LongIntMap map = new LongIntMap(Math.min(groups.length,
+      (int) Math.min(Integer.MAX_VALUE, (long) numGroups * numCodes)));
+    for (int i = 0; i < groups.length; i++) {
+      groups[i] = map.getOrAdd((long) groups[i] * numCodes + codes[i]);
+    }
+    return map.size();
+  }
+
+  /**
+   * Coarsens a partition of a data set to one over a subset of the attributes
+   * it was built from. As instances in the same group agree on all of these
+   * attributes, only one representative per group needs to be looked at.
+   *
+   * @param groups the group id of every instance, replaced by the new ids
+   * @param numGroups the number of groups in the partition
+   * @param codes the codes of the remaining attributes, [attribute][instance]
+   * @param numCodes the number of different codes of the remaining attributes
+   * @return the number of groups in the coarser partition
+   */
+  public static int coarsen(int[] groups, int numGroups, int[][] codes,
+    int[] numCodes) {
+    int[] representative = new int[numGroups];
+    Arrays.fill(representative, -1);
+    for (int i = 0; i < groups.length; i++) {
+      if (representative[groups[i]] < 0) {
+        representative[groups[i]] = i;
+      }
+    }
+
+    int[] newGroups = new int[numGroups];
+    int numNewGroups = 1;
+    for (int j = 0; j < codes.length; j++) {
+      LongIntMap map = new LongIntMap(Math.min(numGroups, numNewGroups
+        * numCodes[j]));
+      for (int g = 0; g < numGroups; g++) {
+        newGroups[g] = map.getOrAdd((long) newGroups[g] * numCodes[j]
+          + codes[j][representative[g]]);
+      }
+      numNewGroups = map.size();
+    }
+
+    for (int i = 0; i < groups.length; i++) {
+      groups[i] = newGroups[groups[i]];
+    }
+    return numNewGroups;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -24,8 +24,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.AbstractClassifier;
 import weka.core.AdditionalMeasureProducer;
@@ -38,6 +40,7 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -174,6 +177,13 @@ import weka.filters.supervised.attribute.ClassOrder;
  *  (default: use pruning)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ *  (use 0 to auto-detect number of cores)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Xin Xu (xx5@cs.waikato.ac.nz)
@@ -232,6 +242,21 @@ public class JRip extends AbstractClassifier implements
   /** The RuleStats for the ruleset of each class value */
   private ArrayList<RuleStats> m_RulesetStats;
 
+  /** The number of execution slots (threads) used for growing the rules */
+  private int m_numExecutionSlots = 1;
+
+  /**
+   * Evaluates the candidate antecedents of a rule concurrently (null to
+   * evaluate them sequentially)
+   */
+  private transient TaskRunner m_taskRunner;
+
+  /**
+   * Minimum amount of work (instances times attributes) for which candidate
+   * antecedents are evaluated by other threads
+   */
+  private static final int MIN_PARALLEL_WORK = 1 << 14;
+
   /**
    * Returns a string describing classifier
    * 
@@ -352,11 +377,16 @@ public class JRip extends AbstractClassifier implements
    * Whether NOT use pruning. (default: use pruning)
    * <p>
    * 
+   * -num-slots number <br>
+   * Number of execution slots. (default 1 - i.e. no parallelism, use 0 to
+   * auto-detect number of cores)
+   * <p>
+   * 
    * @return an enumeration of all the available options
    */
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(7);
+    Vector<Option> newVector = new Vector<Option>(8);
     newVector.add(new Option("\tSet number of folds for REP\n"
       + "\tOne fold is used as pruning set.\n" + "\t(default 3)", "F", 1,
       "-F <number of folds>"));
@@ -379,6 +409,11 @@ public class JRip extends AbstractClassifier implements
     newVector.add(new Option("\tWhether NOT use pruning\n"
       + "\t(default: use pruning)", "P", 0, "-P"));
 
+    newVector.add(new Option("\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)\n"
+      + "\t(use 0 to auto-detect number of cores)", "num-slots", 1,
+      "-num-slots <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -435,6 +470,13 @@ public class JRip extends AbstractClassifier implements
    *  (default: use pruning)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   *  (use 0 to auto-detect number of cores)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -474,6 +516,13 @@ public class JRip extends AbstractClassifier implements
     m_CheckErr = !Utils.getFlag('E', options);
     m_UsePruning = !Utils.getFlag('P', options);
 
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      m_numExecutionSlots = Integer.parseInt(slotsString);
+    } else {
+      m_numExecutionSlots = 1;
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -510,6 +559,9 @@ public class JRip extends AbstractClassifier implements
       options.add("-P");
     }
 
+    options.add("-num-slots");
+    options.add("" + m_numExecutionSlots);
+
     Collections.addAll(options, super.getOptions());
 
     return options.toArray(new String[0]);
@@ -745,6 +797,36 @@ public class JRip extends AbstractClassifier implements
     return m_UsePruning;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for growing the "
+      + "rules: the candidate antecedents of all attributes are evaluated "
+      + "concurrently (0 uses as many slots as there are cores).";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for growing the rules
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for growing the rules
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Get the ruleset generated by Ripper
    * 
@@ -917,6 +999,22 @@ public class JRip extends AbstractClassifier implements
      */
     @Override
     public Instances[] splitData(Instances insts, double defAcRt, double cl) {
+      insts.sort(att);
+      return splitSortedData(insts, defAcRt, cl);
+    }
+
+    /**
+     * Same as splitData(), but for data that is already sorted on the
+     * attribute of this antecedent, with the instances that have a missing
+     * value at the end. The data is not modified.
+     * 
+     * @param insts the sorted data to be split
+     * @param defAcRt the default accuracy rate for data
+     * @param cl the class label to be predicted
+     * @return the array of data after split
+     */
+    public Instances[] splitSortedData(Instances insts, double defAcRt,
+      double cl) {
       Instances data = insts;
       int total = data.numInstances();// Total number of instances without
       // missing value for att
@@ -929,7 +1027,6 @@ public class JRip extends AbstractClassifier implements
 
       double fstCover = 0, sndCover = 0, fstAccu = 0, sndAccu = 0;
 
-      data.sort(att);
       // Find the las instance without missing value
       for (int x = 0; x < data.numInstances(); x++) {
         Instance inst = data.instance(x);
@@ -1372,6 +1469,13 @@ public class JRip extends AbstractClassifier implements
         }
       }
 
+      /*
+       * Sort the growing data once for each numeric attribute. The sorted
+       * copies are filtered by every antecedent added, which keeps them
+       * sorted, so the covered data does not have to be sorted again.
+       */
+      Instances[] sortedData = sortData(growData);
+
       double maxInfoGain;
       while (Utils.gr(growData.numInstances(), 0.0) && (numUnused > 0)
         && Utils.sm(defAcRt, 1.0)) {
@@ -1384,12 +1488,44 @@ public class JRip extends AbstractClassifier implements
          */
         maxInfoGain = 0.0;
 
-        /* Build a list of antecedents */
-        Antd oneAntd = null;
-        Instances coverData = null;
+        /*
+         * Compute the best information gain for each attribute not used yet,
+         * it's stored in the antecedent formed by this attribute. The
+         * attributes are independent, so this is done concurrently.
+         */
+        final Antd[] antds = new Antd[growData.numAttributes()];
+        final Instances[] coveredData = new Instances[growData.numAttributes()];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
         Enumeration<Attribute> enumAttr = growData.enumerateAttributes();
+        while (enumAttr.hasMoreElements()) {
+          Attribute att = (enumAttr.nextElement());
+          if (!used[att.index()]) {
+            final int index = att.index();
+            final Instances splitData = att.isNumeric() ? sortedData[index]
+              : growData;
+            final double acRt = defAcRt;
+            if (att.isNumeric()) {
+              antds[index] = new NumericAntd(att);
+            } else {
+              antds[index] = new NominalAntd(att);
+            }
+            tasks.add(new Callable<Object>() {
+              @Override
+              public Object call() {
+                coveredData[index] = computeInfoGain(splitData, acRt,
+                  antds[index]);
+                return null;
+              }
+            });
+          }
+        }
+        runTasks(
+          taskRunnerFor((long) growData.numInstances() * tasks.size()), tasks);
 
         /* Build one condition based on all attributes not used yet */
+        Antd oneAntd = null;
+        Instances coverData = null;
+        enumAttr = growData.enumerateAttributes();
         while (enumAttr.hasMoreElements()) {
           Attribute att = (enumAttr.nextElement());
 
@@ -1398,34 +1534,20 @@ public class JRip extends AbstractClassifier implements
               + growData.sumOfWeights());
           }
 
-          Antd antd = null;
-          if (att.isNumeric()) {
-            antd = new NumericAntd(att);
-          } else {
-            antd = new NominalAntd(att);
-          }
-
-          if (!used[att.index()]) {
-            /*
-             * Compute the best information gain for each attribute, it's stored
-             * in the antecedent formed by this attribute. This procedure
-             * returns the data covered by the antecedent
-             */
-            Instances coveredData = computeInfoGain(growData, defAcRt, antd);
-            if (coveredData != null) {
-              double infoGain = antd.getMaxInfoGain();
-              if (m_Debug) {
-                System.err.println("Test of \'" + antd.toString()
-                  + "\': infoGain = " + infoGain + " | Accuracy = "
-                  + antd.getAccuRate() + "=" + antd.getAccu() + "/"
-                  + antd.getCover() + " def. accuracy: " + defAcRt);
-              }
+          Antd antd = antds[att.index()];
+          if ((antd != null) && (coveredData[att.index()] != null)) {
+            double infoGain = antd.getMaxInfoGain();
+            if (m_Debug) {
+              System.err.println("Test of \'" + antd.toString()
+                + "\': infoGain = " + infoGain + " | Accuracy = "
+                + antd.getAccuRate() + "=" + antd.getAccu() + "/"
+                + antd.getCover() + " def. accuracy: " + defAcRt);
+            }
 
-              if (infoGain > maxInfoGain) {
-                oneAntd = antd;
-                coverData = coveredData;
-                maxInfoGain = infoGain;
-              }
+            if (infoGain > maxInfoGain) {
+              oneAntd = antd;
+              coverData = coveredData[att.index()];
+              maxInfoGain = infoGain;
             }
           }
         }
@@ -1446,16 +1568,87 @@ public class JRip extends AbstractClassifier implements
         m_Antds.add(oneAntd);
         growData = coverData;// Grow data size is shrinking
         defAcRt = oneAntd.getAccuRate();
+        sortedData = filterSortedData(sortedData, oneAntd);
+      }
+    }
+
+    /**
+     * Returns a copy of the data sorted on each numeric attribute, with the
+     * instances that have a missing value at the end.
+     * 
+     * @param data the data to sort
+     * @return the sorted copies, null for the class and non-numeric attributes
+     * @throws Exception if the data can't be sorted
+     */
+    private Instances[] sortData(final Instances data) throws Exception {
+      final Instances[] sortedData = new Instances[data.numAttributes()];
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < data.numAttributes(); i++) {
+        if ((i != data.classIndex()) && data.attribute(i).isNumeric()) {
+          final int index = i;
+          tasks.add(new Callable<Object>() {
+            @Override
+            public Object call() {
+              sortedData[index] = new Instances(data);
+              sortedData[index].sort(index);
+              return null;
+            }
+          });
+        }
       }
+      runTasks(taskRunnerFor((long) data.numInstances() * tasks.size()),
+        tasks);
+
+      return sortedData;
+    }
+
+    /**
+     * Keeps only the instances covered by the given antecedent in each sorted
+     * copy of the data, preserving their order.
+     * 
+     * @param sortedData the sorted copies of the data
+     * @param antd the antecedent
+     * @return the filtered copies, null for the class and non-numeric
+     *         attributes
+     * @throws Exception if the data can't be filtered
+     */
+    private Instances[] filterSortedData(final Instances[] sortedData,
+      final Antd antd) throws Exception {
+      final Instances[] filtered = new Instances[sortedData.length];
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      long work = 0;
+      for (int i = 0; i < sortedData.length; i++) {
+        if (sortedData[i] != null) {
+          final int index = i;
+          work += sortedData[i].numInstances();
+          tasks.add(new Callable<Object>() {
+            @Override
+            public Object call() {
+              Instances data = sortedData[index];
+              filtered[index] = new Instances(data, data.numInstances());
+              for (int j = 0; j < data.numInstances(); j++) {
+                Instance inst = data.instance(j);
+                if (antd.covers(inst)) {
+                  filtered[index].add(inst);
+                }
+              }
+              return null;
+            }
+          });
+        }
+      }
+      runTasks(taskRunnerFor(work), tasks);
+
+      return filtered;
     }
 
     /**
      * Compute the best information gain for the specified antecedent
      * 
-     * @param instances the data based on which the infoGain is computed
+     * @param instances the data based on which the infoGain is computed; for a
+     *          numeric antecedent it must be sorted on its attribute
      * @param defAcRt the default accuracy rate of data
      * @param antd the specific antecedent
-     * @param numConds the number of antecedents in the rule so far
      * @return the data covered by the antecedent
      */
     private Instances computeInfoGain(Instances instances, double defAcRt,
@@ -1466,7 +1659,13 @@ public class JRip extends AbstractClassifier implements
        * Split the data into bags. The information gain of each bag is also
        * calculated in this procedure
        */
-      Instances[] splitData = antd.splitData(data, defAcRt, m_Consequent);
+      Instances[] splitData;
+      if (antd instanceof NumericAntd) {
+        splitData = ((NumericAntd) antd).splitSortedData(data, defAcRt,
+          m_Consequent);
+      } else {
+        splitData = antd.splitData(data, defAcRt, m_Consequent);
+      }
 
       /* Get the bag of data to be used for next antecedents */
       if (splitData != null) {
@@ -1512,7 +1711,12 @@ public class JRip extends AbstractClassifier implements
         worthRt[w] = coverage[w] = worthValue[w] = 0.0;
       }
 
-      /* Calculate accuracy parameters for all the antecedents in this rule */
+      /*
+       * Calculate accuracy parameters for all the antecedents in this rule.
+       * This is done sequentially: each antecedent is tested on the data
+       * covered by the ones before it, and a single pass of coverage tests is
+       * too little work to hand to other threads.
+       */
       double tn = 0.0; // True negative if useWhole
       for (int x = 0; x < size; x++) {
         Antd antd = m_Antds.get(x);
@@ -1637,6 +1841,26 @@ public class JRip extends AbstractClassifier implements
     instances = new Instances(instances);
     instances.deleteWithMissingClass();
 
+    int numThreads = getNumThreads();
+    m_taskRunner = (numThreads > 1) ? new TaskRunner(numThreads) : null;
+    try {
+      buildRuleset(instances);
+    } finally {
+      if (m_taskRunner != null) {
+        m_taskRunner.shutdown();
+        m_taskRunner = null;
+      }
+    }
+  }
+
+  /**
+   * Builds the ruleset, one class after the other.
+   * 
+   * @param instances the training data, without missing class values
+   * @throws Exception if the ruleset can't be built successfully
+   */
+  protected void buildRuleset(Instances instances) throws Exception {
+
     m_Random = instances.getRandomNumberGenerator(m_Seed);
     m_Total = RuleStats.numAllConditions(instances);
     if (m_Debug) {
@@ -1748,6 +1972,44 @@ public class JRip extends AbstractClassifier implements
     }
   }
 
+  /**
+   * Runs tasks, concurrently if a task runner is given.
+   * 
+   * @param taskRunner the task runner (may be null)
+   * @param tasks the tasks
+   * @throws Exception if a task fails
+   */
+  protected static void runTasks(TaskRunner taskRunner,
+    List<Callable<Object>> tasks) throws Exception {
+    if (taskRunner != null) {
+      taskRunner.invokeAll(tasks);
+    } else {
+      for (Callable<Object> task : tasks) {
+        task.call();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of threads to use.
+   * 
+   * @return the number of execution slots, or the number of cores if it is 0
+   */
+  protected int getNumThreads() {
+    return (m_numExecutionSlots == 0) ? Runtime.getRuntime()
+      .availableProcessors() : m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the task runner to use for work of the given size.
+   * 
+   * @param work the amount of work (instances times attributes)
+   * @return the task runner, or null if the work should be done sequentially
+   */
+  protected TaskRunner taskRunnerFor(long work) {
+    return (work < MIN_PARALLEL_WORK) ? null : m_taskRunner;
+  }
+
   /**
    * Classify the test instance with the rule learner and provide the class
    * distributions
@@ -90,6 +90,10 @@ import weka.core.TechnicalInformationHandler;
  *  Set minimum number of instances per leaf
  *  (default 4)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author <a href="mailto:mhall@cs.waikato.ac.nz">Mark Hall</a>
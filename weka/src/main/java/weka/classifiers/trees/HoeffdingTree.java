@@ -24,8 +24,11 @@ package weka.classifiers.trees;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
@@ -42,6 +45,7 @@ import weka.classifiers.trees.ht.NBNodeAdaptive;
 import weka.classifiers.trees.ht.SplitCandidate;
 import weka.classifiers.trees.ht.SplitMetric;
 import weka.classifiers.trees.ht.SplitNode;
+import weka.classifiers.trees.ht.WeightMass;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
@@ -54,6 +58,7 @@ import weka.core.OptionHandler;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
+import weka.core.TaskRunner;
 import weka.core.Tag;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
@@ -152,6 +157,20 @@ import weka.core.WeightedInstancesHandler;
  *  Print leaf models when using naive Bayes at the leaves.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for evaluating the split candidates
+ *  of the attributes.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -memory-limit &lt;MB&gt;
+ *  Memory budget (in MB) for the leaves; the least promising leaves
+ *  are deactivated when it is exceeded.
+ *  (default 0 - i.e. no limit)
+ * </pre>
+ * 
  <!-- options-end -->
  * 
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
@@ -207,6 +226,24 @@ public class HoeffdingTree extends AbstractClassifier implements
   protected int m_inactiveLeafCount;
   protected int m_decisionNodeCount;
 
+  /** The number of threads for evaluating split candidates */
+  protected int m_numExecutionSlots = 1;
+
+  /**
+   * Evaluates the split candidates of the attributes in parallel; created when
+   * first needed and kept until cleanup() is called
+   */
+  protected transient TaskRunner m_taskRunner;
+
+  /** The memory budget (in MB) for the leaves, 0 for no limit */
+  protected double m_memoryLimit = 0;
+
+  /** The number of instances between checks of the memory budget */
+  protected static final int MEMORY_CHECK_PERIOD = 1000;
+
+  /** The number of instances seen since the last check of the memory budget */
+  protected int m_instancesSinceMemoryCheck;
+
   public static final int GINI_SPLIT = 0;
   public static final int INFO_GAIN_SPLIT = 1;
 
@@ -281,6 +318,7 @@ public class HoeffdingTree extends AbstractClassifier implements
     m_activeLeafCount = 0;
     m_inactiveLeafCount = 0;
     m_decisionNodeCount = 0;
+    m_instancesSinceMemoryCheck = 0;
   }
 
   /**
@@ -342,6 +380,14 @@ public class HoeffdingTree extends AbstractClassifier implements
             "-N"));
     newVector.add(new Option("\tPrint leaf models when using naive Bayes "
         + "at the leaves.", "P", 0, "-P"));
+    newVector.add(new Option("\tNumber of execution slots for evaluating "
+        + "the split candidates\n\tof the attributes.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+    newVector.add(new Option("\tMemory budget (in MB) for the leaves; the "
+        + "least promising leaves\n\tare deactivated when it is exceeded.\n"
+        + "\t(default 0 - i.e. no limit)", "memory-limit", 1,
+        "-memory-limit <MB>"));
 
     return newVector.elements();
   }
@@ -401,6 +447,20 @@ public class HoeffdingTree extends AbstractClassifier implements
    *  Print leaf models when using naive Bayes at the leaves.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for evaluating the split candidates
+   *  of the attributes.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -memory-limit &lt;MB&gt;
+   *  Memory budget (in MB) for the leaves; the least promising leaves
+   *  are deactivated when it is exceeded.
+   *  (default 0 - i.e. no limit)
+   * </pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -449,6 +509,20 @@ public class HoeffdingTree extends AbstractClassifier implements
     }
 
     m_printLeafModels = Utils.getFlag('P', options);
+
+    opt = Utils.getOption("num-slots", options);
+    if (opt.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(opt));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    opt = Utils.getOption("memory-limit", options);
+    if (opt.length() > 0) {
+      setMemoryLimit(Double.parseDouble(opt));
+    } else {
+      setMemoryLimit(0);
+    }
   }
 
   /**
@@ -485,6 +559,16 @@ public class HoeffdingTree extends AbstractClassifier implements
       options.add("-P");
     }
 
+    if (getNumExecutionSlots() != 1) {
+      options.add("-num-slots");
+      options.add("" + getNumExecutionSlots());
+    }
+
+    if (getMemoryLimit() != 0) {
+      options.add("-memory-limit");
+      options.add("" + getMemoryLimit());
+    }
+
     return options.toArray(new String[1]);
   }
 
@@ -720,6 +804,96 @@ public class HoeffdingTree extends AbstractClassifier implements
     return m_nbThreshold;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for evaluating "
+        + "the split candidates of the attributes. Set equal to the number "
+        + "of available cpu/cores";
+  }
+
+  /**
+   * Set the number of threads to use for evaluating the split candidates
+   * 
+   * @param slots the number of threads
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of threads to use for evaluating the split candidates
+   * 
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String memoryLimitTipText() {
+    return "Memory budget (in MB) for the leaves of the tree. When the "
+        + "estimated size of the leaves exceeds it, the least promising "
+        + "leaves are deactivated (they stop collecting statistics and "
+        + "can't be split). 0 means no limit.";
+  }
+
+  /**
+   * Set the memory budget for the leaves
+   * 
+   * @param limit the budget in MB, 0 for no limit
+   */
+  public void setMemoryLimit(double limit) {
+    m_memoryLimit = limit;
+  }
+
+  /**
+   * Get the memory budget for the leaves
+   * 
+   * @return the budget in MB, 0 for no limit
+   */
+  public double getMemoryLimit() {
+    return m_memoryLimit;
+  }
+
+  /**
+   * Returns the task runner for evaluating split candidates, creating it the
+   * first time it is required. The runner is kept for further updates; its
+   * threads stop on their own while it is idle.
+   * 
+   * @return the task runner, null if the candidates are evaluated serially
+   */
+  protected TaskRunner getTaskRunner() {
+    if (m_taskRunner != null
+        && m_taskRunner.getNumSlots() != m_numExecutionSlots) {
+      cleanup();
+    }
+    if (m_numExecutionSlots > 1 && m_taskRunner == null) {
+      m_taskRunner = new TaskRunner(m_numExecutionSlots);
+    }
+    return m_taskRunner;
+  }
+
+  /**
+   * Stops the threads for evaluating split candidates. The tree can still be
+   * updated afterwards, which starts them again if required.
+   */
+  public void cleanup() {
+    if (m_taskRunner != null) {
+      m_taskRunner.shutdown();
+      m_taskRunner = null;
+    }
+  }
+
   protected static double computeHoeffdingBound(double max, double confidence,
       double weight) {
     return Math.sqrt(((max * max) * Math.log(1.0 / confidence))
@@ -764,10 +938,78 @@ public class HoeffdingTree extends AbstractClassifier implements
   @Override
   public void updateClassifier(Instance inst) throws Exception {
 
-    if (inst.classIsMissing()) {
+    LeafNode l = updateLeaf(inst);
+    if (l == null) {
       return;
     }
 
+    HNode actualNode = l.m_theNode;
+    if (/* m_growthAllowed && */actualNode instanceof ActiveHNode) {
+      double totalWeight = actualNode.totalWeight();
+      if (totalWeight
+          - ((ActiveHNode) actualNode).m_weightSeenAtLastSplitEval > m_gracePeriod) {
+
+        // try a split
+        trySplit((ActiveHNode) actualNode, l.m_parentNode, l.m_parentBranch);
+
+        ((ActiveHNode) actualNode).m_weightSeenAtLastSplitEval = totalWeight;
+      }
+    }
+
+    checkMemoryLimit(1);
+  }
+
+  /**
+   * Updates the classifier with a block of instances. The leaves are updated
+   * with all the instances first, then splits are attempted at the leaves
+   * that have observed a grace period's worth of weight since their last
+   * split attempt. Since no split happens while the block is processed, the
+   * resulting tree can differ from one built by updating with one instance
+   * at a time.
+   * 
+   * @param insts the new training instances
+   * @throws Exception if the instances could not be incorporated in the
+   *           model.
+   */
+  public void updateClassifier(Instances insts) throws Exception {
+    Map<ActiveHNode, LeafNode> touched = new IdentityHashMap<ActiveHNode, LeafNode>();
+    List<ActiveHNode> order = new ArrayList<ActiveHNode>();
+
+    for (int i = 0; i < insts.numInstances(); i++) {
+      LeafNode l = updateLeaf(insts.instance(i));
+      if (l != null && l.m_theNode instanceof ActiveHNode) {
+        ActiveHNode node = (ActiveHNode) l.m_theNode;
+        if (!touched.containsKey(node)) {
+          touched.put(node, l);
+          order.add(node);
+        }
+      }
+    }
+
+    for (ActiveHNode node : order) {
+      double totalWeight = node.totalWeight();
+      if (totalWeight - node.m_weightSeenAtLastSplitEval > m_gracePeriod) {
+        LeafNode l = touched.get(node);
+        trySplit(node, l.m_parentNode, l.m_parentBranch);
+        node.m_weightSeenAtLastSplitEval = totalWeight;
+      }
+    }
+
+    checkMemoryLimit(insts.numInstances());
+  }
+
+  /**
+   * Passes an instance down to its leaf and updates the leaf with it
+   * 
+   * @param inst the instance
+   * @return the leaf, null if the instance's class is missing
+   * @throws Exception if the leaf can't be updated
+   */
+  protected LeafNode updateLeaf(Instance inst) throws Exception {
+    if (inst.classIsMissing()) {
+      return null;
+    }
+
     if (m_root == null) {
       m_root = newLearningNode();
     }
@@ -777,21 +1019,114 @@ public class HoeffdingTree extends AbstractClassifier implements
     if (actualNode == null) {
       actualNode = new ActiveHNode();
       l.m_parentNode.setChild(l.m_parentBranch, actualNode);
+      l.m_theNode = actualNode;
     }
 
     if (actualNode instanceof LearningNode) {
       actualNode.updateNode(inst);
+    }
 
-      if (/* m_growthAllowed && */actualNode instanceof ActiveHNode) {
-        double totalWeight = actualNode.totalWeight();
-        if (totalWeight
-            - ((ActiveHNode) actualNode).m_weightSeenAtLastSplitEval > m_gracePeriod) {
+    return l;
+  }
 
-          // try a split
-          trySplit((ActiveHNode) actualNode, l.m_parentNode, l.m_parentBranch);
+  /**
+   * Enforces the memory budget, if any, every MEMORY_CHECK_PERIOD instances.
+   * 
+   * @param numInstances the number of instances seen since the last call
+   * @throws Exception if a leaf can't be activated
+   */
+  protected void checkMemoryLimit(int numInstances) throws Exception {
+    if (m_memoryLimit <= 0) {
+      return;
+    }
+    m_instancesSinceMemoryCheck += numInstances;
+    if (m_instancesSinceMemoryCheck >= MEMORY_CHECK_PERIOD) {
+      m_instancesSinceMemoryCheck = 0;
+      enforceMemoryLimit();
+    }
+  }
 
-          ((ActiveHNode) actualNode).m_weightSeenAtLastSplitEval = totalWeight;
-        }
+  /**
+   * Deactivates the least promising leaves if the estimated size of the
+   * leaves exceeds the memory budget, and reactivates the most promising
+   * inactive leaves if there is room. The promise of a leaf is the weight of
+   * the instances it misclassifies with its majority class, i.e., the weight
+   * that a split could still improve on.
+   * 
+   * @throws Exception if a leaf can't be activated
+   */
+  protected void enforceMemoryLimit() throws Exception {
+    if (m_root == null) {
+      return;
+    }
+
+    List<LeafNode> leaves = new ArrayList<LeafNode>();
+    m_root.collectLeaves(null, null, leaves);
+
+    // average sizes of active and inactive leaves
+    double activeSize = 0;
+    double inactiveSize = 0;
+    int numActive = 0;
+    int numInactive = 0;
+    final Map<HNode, Double> promise = new IdentityHashMap<HNode, Double>();
+    List<LeafNode> learning = new ArrayList<LeafNode>();
+    for (LeafNode l : leaves) {
+      HNode node = l.m_theNode;
+      if (node instanceof ActiveHNode) {
+        activeSize += node.estimateSize();
+        numActive++;
+      } else if (node instanceof InactiveHNode) {
+        inactiveSize += node.estimateSize();
+        numInactive++;
+      } else {
+        continue;
+      }
+      double max = 0;
+      for (WeightMass w : node.m_classDistribution.values()) {
+        max = Math.max(max, w.m_weight);
+      }
+      promise.put(node, node.totalWeight() - max);
+      learning.add(l);
+    }
+    if (numActive == 0) {
+      return;
+    }
+    activeSize /= numActive;
+    if (numInactive > 0) {
+      inactiveSize /= numInactive;
+    } else {
+      // an inactive leaf only keeps the class distribution
+      inactiveSize = new InactiveHNode(learning.get(0).m_theNode.m_classDistribution)
+          .estimateSize();
+    }
+
+    // the number of leaves that can be active within the budget
+    double budget = m_memoryLimit * 1024 * 1024;
+    int maxActive = 0;
+    if (activeSize > inactiveSize) {
+      maxActive = (int) ((budget - learning.size() * inactiveSize) / (activeSize
+          - inactiveSize));
+    } else {
+      maxActive = learning.size();
+    }
+    maxActive = Math.max(0, Math.min(maxActive, learning.size()));
+
+    Collections.sort(learning, new Comparator<LeafNode>() {
+      @Override
+      public int compare(LeafNode l1, LeafNode l2) {
+        return Double.compare(promise.get(l2.m_theNode),
+            promise.get(l1.m_theNode));
+      }
+    });
+
+    for (int i = 0; i < learning.size(); i++) {
+      LeafNode l = learning.get(i);
+      if (i < maxActive && l.m_theNode instanceof InactiveHNode) {
+        activateNode((InactiveHNode) l.m_theNode, l.m_parentNode,
+            l.m_parentBranch);
+      } else if (i >= maxActive && l.m_theNode instanceof ActiveHNode) {
+        deactivateNode((ActiveHNode) l.m_theNode, l.m_parentNode,
+            l.m_parentBranch);
       }
     }
   }
@@ -857,10 +1192,11 @@ public class HoeffdingTree extends AbstractClassifier implements
    * @param toActivate the node to activate
    * @param parent the node's parent
    * @param parentBranch the branch leading to the node
+   * @throws Exception if the new learning node can't be created
    */
   protected void activateNode(InactiveHNode toActivate, SplitNode parent,
-      String parentBranch) {
-    HNode leaf = new ActiveHNode();
+      String parentBranch) throws Exception {
+    HNode leaf = newLearningNode();
     leaf.m_classDistribution = toActivate.m_classDistribution;
 
     if (parent == null) {
@@ -886,7 +1222,8 @@ public class HoeffdingTree extends AbstractClassifier implements
 
     // non-pure?
     if (node.numEntriesInClassDistribution() > 1) {
-      List<SplitCandidate> bestSplits = node.getPossibleSplits(m_splitMetric);
+      List<SplitCandidate> bestSplits = node.getPossibleSplits(m_splitMetric,
+          getTaskRunner());
       Collections.sort(bestSplits);
 
       boolean doSplit = false;
@@ -39,6 +39,7 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -138,6 +139,12 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  *  Do not make split point actual value.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Niels Landwehr
@@ -195,6 +202,9 @@ public class LMT extends AbstractClassifier implements OptionHandler,
   /** Do not relocate split point to actual data value */
   private boolean m_doNotMakeSplitPointActualValue;
 
+  /** The number of threads to use for building the tree */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Creates an instance of LMT with standard options
    */
@@ -274,7 +284,16 @@ public class LMT extends AbstractClassifier implements OptionHandler,
       m_fastRegression, m_errorOnProbabilities, m_minNumInstances,
       m_weightTrimBeta, m_useAIC, m_nominalToBinary);
     // build tree
-    m_tree.buildClassifier(filteredData);
+    TaskRunner taskRunner = (m_numExecutionSlots > 1) ? new TaskRunner(
+      m_numExecutionSlots) : null;
+    try {
+      m_tree.setTaskRunner(taskRunner);
+      m_tree.buildClassifier(filteredData);
+    } finally {
+      if (taskRunner != null) {
+        taskRunner.shutdown();
+      }
+    }
 
     if (modSelection instanceof C45ModelSelection) {
       ((C45ModelSelection) modSelection).cleanup();
@@ -349,7 +368,7 @@ public class LMT extends AbstractClassifier implements OptionHandler,
    */
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(9);
+    Vector<Option> newVector = new Vector<Option>(10);
 
     newVector.addElement(new Option(
       "\tBinary splits (convert nominal attributes to binary ones)", "B", 0,
@@ -386,6 +405,10 @@ public class LMT extends AbstractClassifier implements OptionHandler,
     newVector.addElement(new Option("\tDo not make split point actual value.",
       "-doNotMakeSplitPointActualValue", 0, "-doNotMakeSplitPointActualValue"));
 
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -443,6 +466,12 @@ public class LMT extends AbstractClassifier implements OptionHandler,
    *  Do not make split point actual value.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -475,6 +504,13 @@ public class LMT extends AbstractClassifier implements OptionHandler,
     m_doNotMakeSplitPointActualValue = Utils.getFlag(
       "doNotMakeSplitPointActualValue", options);
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -524,6 +560,9 @@ public class LMT extends AbstractClassifier implements OptionHandler,
         options.add("-doNotMakeSplitPointActualValue");
     }
 
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+
     Collections.addAll(options, super.getOptions());
 
     return options.toArray(new String[0]);
@@ -921,6 +960,36 @@ public class LMT extends AbstractClassifier implements OptionHandler,
     this.m_doNotMakeSplitPointActualValue = m_doNotMakeSplitPointActualValue;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building the "
+      + "tree: the cross-validation folds, the subtrees and the regression "
+      + "fits for the classes are run concurrently.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for building the tree
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for building the tree
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -97,6 +97,12 @@ import weka.core.Utils;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * -L
  *  Save instances at the nodes in
  *  the tree (for visualization purposes)
@@ -225,6 +231,12 @@ public class M5P extends M5Base implements Drawable {
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
    * -L
    *  Save instances at the nodes in
    *  the tree (for visualization purposes)
@@ -26,9 +26,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import weka.core.Attribute;
 import weka.core.Instance;
+import weka.core.TaskRunner;
 
 /**
  * Node that is "active" (i.e. growth can occur) in a Hoeffding tree
@@ -82,6 +84,26 @@ public class ActiveHNode extends LeafNode implements LearningNode, Serializable
    * @return a list of split candidates
    */
   public List<SplitCandidate> getPossibleSplits(SplitMetric splitMetric) {
+    try {
+      return getPossibleSplits(splitMetric, null);
+    } catch (Exception ex) {
+      // can't happen without a task runner
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Returns a list of split candidates. The best split of each attribute is
+   * determined by the supplied task runner, if any.
+   * 
+   * @param splitMetric the splitting metric to use
+   * @param runner the task runner to evaluate the attributes with, null to
+   *          evaluate them in the current thread
+   * @return a list of split candidates
+   * @throws Exception if the evaluation of an attribute fails
+   */
+  public List<SplitCandidate> getPossibleSplits(final SplitMetric splitMetric,
+      TaskRunner runner) throws Exception {
 
     List<SplitCandidate> splits = new ArrayList<SplitCandidate>();
 
@@ -92,6 +114,34 @@ public class ActiveHNode extends LeafNode implements LearningNode, Serializable
         splitMetric.evaluateSplit(m_classDistribution, nullDist));
     splits.add(nullSplit);
 
+    if (runner != null && runner.getNumSlots() > 1) {
+      final SplitCandidate[] results = new SplitCandidate[m_nodeStats.size()];
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (final Map.Entry<String, ConditionalSufficientStats> e : m_nodeStats
+          .entrySet()) {
+        final int index = tasks.size();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() {
+            results[index] = e.getValue().bestSplit(splitMetric,
+                m_classDistribution, e.getKey());
+            return null;
+          }
+        });
+      }
+      runner.invokeAll(tasks);
+
+      // collect in attribute order, so ties are broken as in the
+      // sequential case
+      for (SplitCandidate splitCandidate : results) {
+        if (splitCandidate != null) {
+          splits.add(splitCandidate);
+        }
+      }
+
+      return splits;
+    }
+
     for (Map.Entry<String, ConditionalSufficientStats> e : m_nodeStats
         .entrySet()) {
       ConditionalSufficientStats stat = e.getValue();
@@ -106,4 +156,20 @@ public class ActiveHNode extends LeafNode implements LearningNode, Serializable
 
     return splits;
   }
+
+  /**
+   * Returns a rough estimate of the memory used by this node and its
+   * statistics.
+   * 
+   * @return the estimated size in bytes
+   */
+  @Override
+  public long estimateSize() {
+    long size = super.estimateSize();
+    for (ConditionalSufficientStats stats : m_nodeStats.values()) {
+      size += stats.estimateSize();
+    }
+
+    return size;
+  }
 }
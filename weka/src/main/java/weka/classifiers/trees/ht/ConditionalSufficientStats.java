@@ -72,4 +72,13 @@ public abstract class ConditionalSufficientStats implements Serializable {
    */
   public abstract SplitCandidate bestSplit(SplitMetric splitMetric,
       Map<String, WeightMass> preSplitDist, String attName);
+
+  /**
+   * Returns a rough estimate of the memory used by these stats
+   * 
+   * @return the estimated size in bytes
+   */
+  public long estimateSize() {
+    return 64 + 96 * m_classLookup.size();
+  }
 }
@@ -221,6 +221,12 @@ public class GaussianConditionalSufficientStats extends
     return dists;
   }
 
+  @Override
+  public long estimateSize() {
+    // estimator plus minimum and maximum per class value
+    return super.estimateSize() + 160 * m_classLookup.size();
+  }
+
   @Override
   public SplitCandidate bestSplit(SplitMetric splitMetric,
       Map<String, WeightMass> preSplitDist, String attName) {
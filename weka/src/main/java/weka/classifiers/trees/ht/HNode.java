@@ -23,6 +23,7 @@ package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import weka.core.Attribute;
@@ -84,6 +85,28 @@ public abstract class HNode implements Serializable {
     return m_classDistribution.size();
   }
 
+  /**
+   * Returns a rough estimate of the memory used by this node (without its
+   * children)
+   * 
+   * @return the estimated size in bytes
+   */
+  public long estimateSize() {
+    return 64 + 48 * m_classDistribution.size();
+  }
+
+  /**
+   * Collects the leaves at or below this node
+   * 
+   * @param parent the parent of this node, null for the root
+   * @param parentBranch the branch leading to this node
+   * @param leaves the list to add the leaves to
+   */
+  public void collectLeaves(SplitNode parent, String parentBranch,
+      List<LeafNode> leaves) {
+    leaves.add(new LeafNode(this, parent, parentBranch));
+  }
+
   /**
    * Returns true if the class distribution is pure
    * 
@@ -98,6 +98,13 @@ public class NBNode extends ActiveHNode implements LearningNode, Serializable {
     return super.getDistribution(inst, classAtt);
   }
 
+  @Override
+  public long estimateSize() {
+    // the naive Bayes model holds an estimator per attribute and class value
+    return super.estimateSize() + 64L * (m_nodeStats.size() + 1)
+        * Math.max(1, m_classDistribution.size());
+  }
+
   @Override
   protected int dumpTree(int depth, int leafCount, StringBuffer buff) {
     leafCount = super.dumpTree(depth, leafCount, buff);
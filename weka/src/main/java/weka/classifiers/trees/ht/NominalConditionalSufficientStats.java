@@ -170,6 +170,16 @@ public class NominalConditionalSufficientStats extends
     return result;
   }
 
+  @Override
+  public long estimateSize() {
+    long size = super.estimateSize();
+    for (Object valDist : m_classLookup.values()) {
+      size += 48 * ((ValueDistribution) valDist).m_dist.size();
+    }
+
+    return size;
+  }
+
   @Override
   public SplitCandidate bestSplit(SplitMetric splitMetric,
     Map<String, WeightMass> preSplitDist, String attName) {
@@ -22,6 +22,7 @@
 package weka.classifiers.trees.ht;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import weka.core.Instance;
@@ -92,6 +93,14 @@ public class SplitNode extends HNode {
     m_children.put(branch, child);
   }
 
+  @Override
+  public void collectLeaves(SplitNode parent, String parentBranch,
+    List<LeafNode> leaves) {
+    for (Map.Entry<String, HNode> e : m_children.entrySet()) {
+      e.getValue().collectLeaves(this, e.getKey(), leaves);
+    }
+  }
+
   @Override
   public LeafNode leafForInstance(Instance inst, SplitNode parent,
     String parentBranch) {
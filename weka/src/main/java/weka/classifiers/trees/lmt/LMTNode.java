@@ -21,9 +21,12 @@
 
 package weka.classifiers.trees.lmt;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.Evaluation;
 import weka.classifiers.trees.j48.ClassifierSplitModel;
@@ -183,29 +186,38 @@ public class LMTNode extends LogisticBase {
     }
 
     // Need to cross-validate alpha-parameter for CART-pruning
-    Instances cvData = new Instances(data);
+    final Instances cvData = new Instances(data);
     cvData.stratify(m_numFoldsPruning);
 
-    double[][] alphas = new double[m_numFoldsPruning][];
-    double[][] errors = new double[m_numFoldsPruning][];
+    final double[][] alphas = new double[m_numFoldsPruning][];
+    final double[][] errors = new double[m_numFoldsPruning][];
 
+    // the folds are independent of each other, so they can be grown and
+    // pruned concurrently, each in its own tree
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
     for (int i = 0; i < m_numFoldsPruning; i++) {
-      // for every fold, grow tree on training set...
-      Instances train = cvData.trainCV(m_numFoldsPruning, i);
-      Instances test = cvData.testCV(m_numFoldsPruning, i);
-
-      buildTree(train, null, train.numInstances(), 0, null);
-
-      int numNodes = getNumInnerNodes();
-      alphas[i] = new double[numNodes + 2];
-      errors[i] = new double[numNodes + 2];
-
-      // ... then prune back and log alpha-values and errors on test set
-      prune(alphas[i], errors[i], test);
+      final int fold = i;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          // for every fold, grow tree on training set...
+          Instances train = cvData.trainCV(m_numFoldsPruning, fold);
+          Instances test = cvData.testCV(m_numFoldsPruning, fold);
+
+          LMTNode tree = newNode();
+          tree.buildTree(train, null, train.numInstances(), 0, null);
+
+          int numNodes = tree.getNumInnerNodes();
+          alphas[fold] = new double[numNodes + 2];
+          errors[fold] = new double[numNodes + 2];
+
+          // ... then prune back and log alpha-values and errors on test set
+          tree.prune(alphas[fold], errors[fold], test);
+          return null;
+        }
+      });
     }
-
-    // don't need CV data anymore
-    cvData = null;
+    runTasks(m_taskRunner, tasks);
 
     // build tree using all the data
     buildTree(data, null, data.numInstances(), 0, null);
@@ -286,6 +298,7 @@ public class LMTNode extends LogisticBase {
     // init
     m_numericDataHeader = numericDataHeader;
     m_numericData = getNumericData(m_train);
+    m_boostingData = new BoostingData(m_numericData, m_train);
 
     if (higherRegressions == null) {
       m_regressions = initRegressions();
@@ -310,9 +323,7 @@ public class LMTNode extends LogisticBase {
     m_numParameters += m_numRegressions;
 
     // store performance of model at this node
-    Evaluation eval = new Evaluation(m_train);
-    eval.evaluateModel(this, m_train);
-    m_numIncorrectModel = eval.incorrect();
+    m_numIncorrectModel = getNumIncorrect(m_boostingData, m_regressions);
 
     boolean grow;
     // split node if more than minNumInstances...
@@ -321,7 +332,7 @@ public class LMTNode extends LogisticBase {
       // residuals
       if (m_modelSelection instanceof ResidualModelSelection) {
         // need ps/Ys/Zs/weights
-        double[][] probs = getProbs(getFs(m_numericData));
+        double[][] probs = getProbs(getFs(m_boostingData, m_regressions));
         double[][] trainYs = getYs(m_train);
         double[][] dataZs = getZs(probs, trainYs);
         double[][] dataWs = getWs(probs, trainYs);
@@ -339,25 +350,50 @@ public class LMTNode extends LogisticBase {
     if (grow) {
       // create and build children of node
       m_isLeaf = false;
-      Instances[] localInstances = m_localModel.split(m_train);
+      final Instances[] localInstances = m_localModel.split(m_train);
 
       // don't need data anymore, so clean up
       cleanup();
 
+      // the subtrees are built concurrently if there is enough work
       m_sons = new LMTNode[m_localModel.numSubsets()];
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
       for (int i = 0; i < m_sons.length; i++) {
-        m_sons[i] = new LMTNode(m_modelSelection, m_fixedNumIterations,
-          m_fastRegression, m_errorOnProbabilities, m_minNumInstances,
-          getWeightTrimBeta(), getUseAIC(), m_nominalToBinary);
-        m_sons[i].buildTree(localInstances[i], copyRegressions(m_regressions),
-          m_totalInstanceWeight, m_numParameters, m_numericDataHeader);
-        localInstances[i] = null;
+        final int son = i;
+        final SimpleLinearRegression[][] regressions = copyRegressions(
+          m_regressions);
+        m_sons[i] = newNode();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_sons[son].buildTree(localInstances[son], regressions,
+              m_totalInstanceWeight, m_numParameters, m_numericDataHeader);
+            localInstances[son] = null;
+            return null;
+          }
+        });
       }
+      runTasks(taskRunnerFor((long) m_numInstances
+        * m_numericDataHeader.numAttributes()), tasks);
     } else {
       cleanup();
     }
   }
 
+  /**
+   * Creates a node with the same settings as this one, for a child node or
+   * the tree of a cross-validation fold.
+   * 
+   * @return the new node
+   */
+  protected LMTNode newNode() {
+    LMTNode node = new LMTNode(m_modelSelection, m_fixedNumIterations,
+      m_fastRegression, m_errorOnProbabilities, m_minNumInstances,
+      getWeightTrimBeta(), getUseAIC(), m_nominalToBinary);
+    node.setTaskRunner(m_taskRunner);
+    return node;
+  }
+
   /**
    * Prunes a logistic model tree using the CART pruning scheme, given a
    * cost-complexity parameter alpha.
@@ -511,7 +547,10 @@ public class LMTNode extends LogisticBase {
   protected int tryLogistic(Instances data) throws Exception {
 
     // convert nominal attributes
-    Instances filteredData = Filter.useFilter(data, m_nominalToBinary);
+    Instances filteredData;
+    synchronized (m_nominalToBinary) {
+      filteredData = Filter.useFilter(data, m_nominalToBinary);
+    }
 
     LogisticBase logistic = new LogisticBase(0, true, m_errorOnProbabilities);
 
@@ -520,6 +559,7 @@ public class LMTNode extends LogisticBase {
     logistic.setWeightTrimBeta(getWeightTrimBeta()); // Not in Marc's code.
                                                      // Added by Eibe.
     logistic.setUseAIC(getUseAIC());
+    logistic.setTaskRunner(m_taskRunner);
     logistic.buildClassifier(filteredData);
 
     // return best number of iterations
@@ -646,7 +686,11 @@ public class LMTNode extends LogisticBase {
   @Override
   protected Instances getNumericData(Instances train) throws Exception {
 
-    Instances filteredData = Filter.useFilter(train, m_nominalToBinary);
+    // the filter is shared by all nodes, which may be built concurrently
+    Instances filteredData;
+    synchronized (m_nominalToBinary) {
+      filteredData = Filter.useFilter(train, m_nominalToBinary);
+    }
 
     return super.getNumericData(filteredData);
   }
@@ -672,8 +716,10 @@ public class LMTNode extends LogisticBase {
     throws Exception {
 
     // make copy and convert nominal attributes
-    m_nominalToBinary.input(instance);
-    instance = m_nominalToBinary.output();
+    synchronized (m_nominalToBinary) {
+      m_nominalToBinary.input(instance);
+      instance = m_nominalToBinary.output();
+    }
 
     // saet numeric pseudo-class
     instance.setDataset(m_numericDataHeader);
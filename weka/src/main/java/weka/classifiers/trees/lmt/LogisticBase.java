@@ -21,6 +21,11 @@
 
 package weka.classifiers.trees.lmt;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Evaluation;
 import weka.core.Attribute;
@@ -28,6 +33,7 @@ import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
 
@@ -119,6 +125,292 @@ public class LogisticBase extends AbstractClassifier implements
    **/
   protected double m_weightTrimBeta = 0;
 
+  /**
+   * Minimum amount of work (instances times attributes) for running
+   * cross-validation folds, class fits or subtrees concurrently.
+   */
+  protected static final int MIN_PARALLEL_WORK = 1 << 14;
+
+  /** Task runner for concurrent work (null if everything runs sequentially) */
+  protected transient TaskRunner m_taskRunner;
+
+  /** Array version of the numeric training data */
+  protected transient BoostingData m_boostingData;
+
+  /**
+   * Numeric version of a set of instances in the form used by LogitBoost. The
+   * attribute values are stored in plain arrays, so simple regression
+   * functions can be fit and evaluated without touching instance objects. Also
+   * holds the buffers for the responses and weights of every class, which are
+   * reused in every LogitBoost iteration.
+   */
+  protected static class BoostingData {
+
+    /** The number of instances */
+    protected int m_numInstances;
+
+    /** The number of attributes, including the pseudo-class */
+    protected int m_numAttributes;
+
+    /** The index of the pseudo-class */
+    protected int m_classIndex;
+
+    /**
+     * The attribute values, [instance][attribute] (the value of the
+     * pseudo-class is not used)
+     */
+    protected double[][] m_rows;
+
+    /** The instance weights */
+    protected double[] m_weights;
+
+    /** The class of every instance (-1 if missing) */
+    protected int[] m_classes;
+
+    /** For every class, the responses of the regression fit */
+    protected double[][] m_responses;
+
+    /** For every class, the weights of the regression fit */
+    protected double[][] m_fitWeights;
+
+    /** Buffer for the F-values when evaluating a model */
+    protected double[][] m_evalFs;
+
+    /** Buffer for the p-values when evaluating a model */
+    protected double[][] m_evalProbs;
+
+    /**
+     * Creates the array version of a set of instances.
+     * 
+     * @param numericData the numeric version of the instances
+     * @param data the instances (for the class values)
+     */
+    public BoostingData(Instances numericData, Instances data) {
+      m_numInstances = numericData.numInstances();
+      m_numAttributes = numericData.numAttributes();
+      m_classIndex = numericData.classIndex();
+      m_rows = new double[m_numInstances][];
+      m_weights = new double[m_numInstances];
+      m_classes = new int[m_numInstances];
+      for (int k = 0; k < m_numInstances; k++) {
+        Instance inst = numericData.instance(k);
+        m_rows[k] = inst.toDoubleArray();
+        m_weights[k] = inst.weight();
+        Instance original = data.instance(k);
+        m_classes[k] = original.classIsMissing() ? -1 : (int) original
+          .classValue();
+      }
+    }
+
+    /**
+     * Creates the version of a subset of the instances given by two ranges.
+     * The attribute values are shared with the full set.
+     * 
+     * @param data the full set of instances
+     * @param first the start of the first range
+     * @param num the length of the first range
+     * @param first2 the start of the second range
+     * @param num2 the length of the second range
+     */
+    protected BoostingData(BoostingData data, int first, int num, int first2,
+      int num2) {
+      m_numInstances = num + num2;
+      m_numAttributes = data.m_numAttributes;
+      m_classIndex = data.m_classIndex;
+      m_rows = new double[m_numInstances][];
+      System.arraycopy(data.m_rows, first, m_rows, 0, num);
+      System.arraycopy(data.m_rows, first2, m_rows, num, num2);
+      m_weights = new double[m_numInstances];
+      System.arraycopy(data.m_weights, first, m_weights, 0, num);
+      System.arraycopy(data.m_weights, first2, m_weights, num, num2);
+      m_classes = new int[m_numInstances];
+      System.arraycopy(data.m_classes, first, m_classes, 0, num);
+      System.arraycopy(data.m_classes, first2, m_classes, num, num2);
+    }
+
+    /**
+     * Returns the instances of the training set of a fold, in the same order as
+     * Instances.trainCV().
+     * 
+     * @param numFolds the number of folds
+     * @param numFold the fold
+     * @return the training instances
+     */
+    public BoostingData trainCV(int numFolds, int numFold) {
+      int numInstForFold = numInstForFold(numFolds, numFold);
+      int first = firstInstOfFold(numFolds, numFold);
+      return new BoostingData(this, 0, first, first + numInstForFold,
+        m_numInstances - first - numInstForFold);
+    }
+
+    /**
+     * Returns the instances of the test set of a fold, in the same order as
+     * Instances.testCV().
+     * 
+     * @param numFolds the number of folds
+     * @param numFold the fold
+     * @return the test instances
+     */
+    public BoostingData testCV(int numFolds, int numFold) {
+      return new BoostingData(this, firstInstOfFold(numFolds, numFold),
+        numInstForFold(numFolds, numFold), 0, 0);
+    }
+
+    /**
+     * Returns the number of test instances of a fold.
+     * 
+     * @param numFolds the number of folds
+     * @param numFold the fold
+     * @return the number of instances
+     */
+    protected int numInstForFold(int numFolds, int numFold) {
+      int numInstForFold = m_numInstances / numFolds;
+      if (numFold < m_numInstances % numFolds) {
+        numInstForFold++;
+      }
+      return numInstForFold;
+    }
+
+    /**
+     * Returns the index of the first test instance of a fold.
+     * 
+     * @param numFolds the number of folds
+     * @param numFold the fold
+     * @return the index
+     */
+    protected int firstInstOfFold(int numFolds, int numFold) {
+      int offset = (numFold < m_numInstances % numFolds) ? numFold
+        : m_numInstances % numFolds;
+      return numFold * (m_numInstances / numFolds) + offset;
+    }
+
+    /**
+     * Allocates the buffers for the regression fits, unless already done.
+     * 
+     * @param numClasses the number of classes
+     */
+    protected void initBuffers(int numClasses) {
+      if (m_responses == null) {
+        m_responses = new double[numClasses][m_numInstances];
+        m_fitWeights = new double[numClasses][m_numInstances];
+      }
+    }
+  }
+
+  /**
+   * The errors of the cross-validation folds, summed up over the folds for
+   * every number of LogitBoost iterations. The early stopping of a fold looks
+   * at the sums over the folds before it, and a fold never runs more
+   * iterations than a fold before it has completed. When the folds run
+   * concurrently, a fold therefore waits until the folds before it have logged
+   * an iteration (or stopped) before deciding on it, which gives the same
+   * results as running the folds one after the other.
+   */
+  protected static class FoldErrors {
+
+    /** the summed errors, indexed by number of iterations */
+    protected double[] m_error;
+
+    /** the last iteration logged by each fold, -1 if none */
+    protected int[] m_logged;
+
+    /** the iterations completed by each fold, -1 if it is still running */
+    protected int[] m_completed;
+
+    /**
+     * Creates the error sums for the given folds.
+     *
+     * @param numFolds the number of folds
+     * @param maxIterations the maximum number of iterations
+     */
+    public FoldErrors(int numFolds, int maxIterations) {
+      m_error = new double[maxIterations + 1];
+      m_logged = new int[numFolds];
+      m_completed = new int[numFolds];
+      Arrays.fill(m_logged, -1);
+      Arrays.fill(m_completed, -1);
+    }
+
+    /**
+     * Waits until all folds before the given one have logged the given
+     * iteration or have stopped.
+     *
+     * @param fold the fold
+     * @param iteration the iteration
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected void waitForFolds(int fold, int iteration)
+      throws InterruptedException {
+      for (int i = 0; i < fold; i++) {
+        while (m_completed[i] < 0 && m_logged[i] < iteration) {
+          wait();
+        }
+      }
+    }
+
+    /**
+     * Returns whether a fold may run another iteration, i.e. whether no fold
+     * before it has stopped at the number of iterations completed so far.
+     *
+     * @param fold the fold
+     * @param iteration the number of iterations completed by the fold
+     * @return true if the fold may run another iteration
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean mayContinue(int fold, int iteration)
+      throws InterruptedException {
+      waitForFolds(fold, iteration + 1);
+      for (int i = 0; i < fold; i++) {
+        if (m_completed[i] >= 0 && m_completed[i] <= iteration) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Adds the error of a fold after the given number of iterations.
+     *
+     * @param fold the fold
+     * @param iteration the number of iterations
+     * @param error the error on the test set of the fold
+     * @return the error summed up over this fold and the folds before it
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized double log(int fold, int iteration, double error)
+      throws InterruptedException {
+      waitForFolds(fold, iteration);
+      m_error[iteration] += error;
+      m_logged[fold] = iteration;
+      notifyAll();
+      return m_error[iteration];
+    }
+
+    /**
+     * Marks a fold as stopped.
+     *
+     * @param fold the fold
+     * @param iterations the number of iterations it has completed
+     */
+    public synchronized void finish(int fold, int iterations) {
+      m_completed[fold] = iterations;
+      notifyAll();
+    }
+
+    /**
+     * Returns the number of iterations completed by all folds.
+     *
+     * @return the smallest number of completed iterations
+     */
+    public synchronized int getCompletedIterations() {
+      int completed = m_error.length - 1;
+      for (int iterations : m_completed) {
+        completed = Math.min(completed, iterations);
+      }
+      return completed;
+    }
+  }
+
   /**
    * Constructor that creates LogisticBase object with standard options.
    */
@@ -168,6 +460,7 @@ public class LogisticBase extends AbstractClassifier implements
     // get numeric version of the training data (class variable replaced by
     // numeric pseudo-class)
     m_numericData = getNumericData(m_train);
+    m_boostingData = new BoostingData(m_numericData, m_train);
 
     // init the array of simple regression functions
     m_regressions = initRegressions();
@@ -195,44 +488,58 @@ public class LogisticBase extends AbstractClassifier implements
 
   /**
    * Runs LogitBoost, determining the best number of iterations by
-   * cross-validation.
+   * cross-validation. The folds are run concurrently if a task runner has been
+   * set.
    * 
    * @throws Exception if something goes wrong
    */
   protected void performBoostingCV() throws Exception {
 
-    // completed iteration keeps track of the number of iterations that have
-    // been
-    // performed in every fold (some might stop earlier than others).
-    // Best iteration is selected only from these.
-    int completedIterations = m_maxIterations;
-
     Instances allData = new Instances(m_train);
 
     allData.stratify(m_numFoldsBoosting);
 
-    double[] error = new double[m_maxIterations + 1];
+    // convert the data once, the folds are taken from the converted version
+    final BoostingData allNumeric = new BoostingData(getNumericData(allData),
+      allData);
+    allData = null;
 
-    SimpleLinearRegression[][] backup = m_regressions;
+    // keeps track of the number of iterations that have been performed in
+    // every fold (some might stop earlier than others). Best iteration is
+    // selected only from these.
+    final FoldErrors errors = new FoldErrors(m_numFoldsBoosting,
+      m_maxIterations);
 
+    final SimpleLinearRegression[][] backup = m_regressions;
+
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
     for (int i = 0; i < m_numFoldsBoosting; i++) {
-      // split into training/test data in fold
-      Instances train = allData.trainCV(m_numFoldsBoosting, i);
-      Instances test = allData.testCV(m_numFoldsBoosting, i);
-
-      // initialize LogitBoost
-      m_numRegressions = 0;
-      m_regressions = copyRegressions(backup);
-
-      // run LogitBoost iterations
-      int iterations = performBoosting(train, test, error, completedIterations);
-      if (iterations < completedIterations) {
-        completedIterations = iterations;
-      }
+      final int fold = i;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          int iterations = 0;
+          try {
+            // split into training/test data in fold
+            BoostingData train = allNumeric.trainCV(m_numFoldsBoosting, fold);
+            BoostingData test = allNumeric.testCV(m_numFoldsBoosting, fold);
+
+            // run LogitBoost iterations
+            iterations = performBoosting(train, test, copyRegressions(backup),
+              errors, fold);
+          } finally {
+            errors.finish(fold, iterations);
+          }
+          return null;
+        }
+      });
     }
+    runTasks(taskRunnerFor((long) allNumeric.m_numInstances
+      * allNumeric.m_numAttributes), tasks);
 
     // determine iteration with minimum error over the folds
-    int bestIteration = getBestIteration(error, completedIterations);
+    int bestIteration = getBestIteration(errors.m_error,
+      errors.getCompletedIterations());
 
     // rebuild model on all of the training data
     m_numRegressions = 0;
@@ -240,6 +547,34 @@ public class LogisticBase extends AbstractClassifier implements
     performBoosting(bestIteration);
   }
 
+  /**
+   * Runs the given tasks, concurrently if a task runner is given.
+   * 
+   * @param taskRunner the task runner, or null to run the tasks sequentially
+   * @param tasks the tasks
+   * @throws Exception if a task fails
+   */
+  protected static void runTasks(TaskRunner taskRunner,
+    List<Callable<Object>> tasks) throws Exception {
+    if (taskRunner != null) {
+      taskRunner.invokeAll(tasks);
+    } else {
+      for (Callable<Object> task : tasks) {
+        task.call();
+      }
+    }
+  }
+
+  /**
+   * Returns the task runner to use for work of the given size.
+   * 
+   * @param work the amount of work (instances times attributes)
+   * @return the task runner, or null if the work should be done sequentially
+   */
+  protected TaskRunner taskRunnerFor(long work) {
+    return (work < MIN_PARALLEL_WORK) ? null : m_taskRunner;
+  }
+
   /**
    * Deep copies the given array of simple linear regression functions.
    * 
@@ -275,8 +610,8 @@ public class LogisticBase extends AbstractClassifier implements
     double criterionValue = Double.MAX_VALUE;
 
     // initialize Ys/Fs/ps
-    double[][] trainYs = getYs(m_train);
-    double[][] trainFs = getFs(m_numericData);
+    double[][] trainYs = getYs(m_boostingData);
+    double[][] trainFs = getFs(m_boostingData, m_regressions);
     double[][] probs = getProbs(trainFs);
 
     int iteration = 0;
@@ -284,7 +619,7 @@ public class LogisticBase extends AbstractClassifier implements
 
       // perform single LogitBoost iteration
       boolean foundAttribute = performIteration(iteration, trainYs, trainFs,
-        probs, m_numericData);
+        probs, m_boostingData, m_regressions);
       if (foundAttribute) {
         iteration++;
         m_numRegressions = iteration;
@@ -325,22 +660,22 @@ public class LogisticBase extends AbstractClassifier implements
    * 
    * @param train the training set
    * @param test the test set
-   * @param error array to hold the logged error values
-   * @param maxIterations the maximum number of LogitBoost iterations to run
+   * @param regressions the model to extend, holds the result
+   * @param errors the error sums over the folds to log the error values to
+   * @param fold the index of the fold
    * @return the number of completed LogitBoost iterations (can be smaller than
-   *         maxIterations if the heuristic for early stopping is active or
-   *         there is a problem while fitting the regressions in LogitBoost).
+   *         the maximum if the heuristic for early stopping is active, a fold
+   *         before this one has stopped earlier or there is a problem while
+   *         fitting the regressions in LogitBoost).
    * @throws Exception if something goes wrong
    */
-  protected int performBoosting(Instances train, Instances test,
-    double[] error, int maxIterations) throws Exception {
-
-    // get numeric version of the (sub)set of training instances
-    Instances numericTrain = getNumericData(train);
+  protected int performBoosting(BoostingData train, BoostingData test,
+    SimpleLinearRegression[][] regressions, FoldErrors errors, int fold)
+    throws Exception {
 
     // initialize Ys/Fs/ps
     double[][] trainYs = getYs(train);
-    double[][] trainFs = getFs(numericTrain);
+    double[][] trainFs = getFs(train, regressions);
     double[][] probs = getProbs(trainFs);
 
     int iteration = 0;
@@ -348,38 +683,30 @@ public class LogisticBase extends AbstractClassifier implements
     int noMin = 0;
     double lastMin = Double.MAX_VALUE;
 
-    if (m_errorOnProbabilities) {
-      error[0] += getMeanAbsoluteError(test);
-    } else {
-      error[0] += getErrorRate(test);
-    }
+    errors.log(fold, 0, getTestError(test, regressions));
 
-    while (iteration < maxIterations) {
+    while (iteration < m_maxIterations && errors.mayContinue(fold, iteration)) {
 
       // perform single LogitBoost iteration
       boolean foundAttribute = performIteration(iteration, trainYs, trainFs,
-        probs, numericTrain);
+        probs, train, regressions);
       if (foundAttribute) {
         iteration++;
-        m_numRegressions = iteration;
       } else {
         // could not fit simple linear regression: stop LogitBoost
         break;
       }
 
-      if (m_errorOnProbabilities) {
-        error[iteration] += getMeanAbsoluteError(test);
-      } else {
-        error[iteration] += getErrorRate(test);
-      }
+      double error = errors.log(fold, iteration,
+        getTestError(test, regressions));
 
       // heuristic: stop LogitBoost if the current minimum has not changed for
       // <m_heuristicStop> iterations
       if (noMin > m_heuristicStop) {
         break;
       }
-      if (error[iteration] < lastMin) {
-        lastMin = error[iteration];
+      if (error < lastMin) {
+        lastMin = error;
         noMin = 0;
       } else {
         noMin++;
@@ -389,6 +716,24 @@ public class LogisticBase extends AbstractClassifier implements
     return iteration;
   }
 
+  /**
+   * Returns the error of the given model on a test set that is used to choose
+   * the number of iterations.
+   * 
+   * @param test the test set
+   * @param regressions the model
+   * @return the mean absolute error or the error rate
+   * @throws Exception if something goes wrong
+   */
+  protected double getTestError(BoostingData test,
+    SimpleLinearRegression[][] regressions) throws Exception {
+    if (m_errorOnProbabilities) {
+      return getMeanAbsoluteError(test, regressions);
+    } else {
+      return getErrorRate(test, regressions);
+    }
+  }
+
   /**
    * Runs LogitBoost with a fixed number of iterations.
    * 
@@ -398,8 +743,8 @@ public class LogisticBase extends AbstractClassifier implements
   protected void performBoosting(int numIterations) throws Exception {
 
     // initialize Ys/Fs/ps
-    double[][] trainYs = getYs(m_train);
-    double[][] trainFs = getFs(m_numericData);
+    double[][] trainYs = getYs(m_boostingData);
+    double[][] trainFs = getFs(m_boostingData, m_regressions);
     double[][] probs = getProbs(trainFs);
 
     int iteration = 0;
@@ -407,7 +752,7 @@ public class LogisticBase extends AbstractClassifier implements
     // run iterations
     while (iteration < numIterations) {
       boolean foundAttribute = performIteration(iteration, trainYs, trainFs,
-        probs, m_numericData);
+        probs, m_boostingData, m_regressions);
       if (foundAttribute) {
         iteration++;
       } else {
@@ -429,21 +774,21 @@ public class LogisticBase extends AbstractClassifier implements
   protected void performBoosting() throws Exception {
 
     // initialize Ys/Fs/ps
-    double[][] trainYs = getYs(m_train);
-    double[][] trainFs = getFs(m_numericData);
+    double[][] trainYs = getYs(m_boostingData);
+    double[][] trainFs = getFs(m_boostingData, m_regressions);
     double[][] probs = getProbs(trainFs);
 
     int iteration = 0;
 
     double[] trainErrors = new double[m_maxIterations + 1];
-    trainErrors[0] = getErrorRate(m_train);
+    trainErrors[0] = getErrorRate(m_boostingData, m_regressions);
 
     int noMin = 0;
     double lastMin = Double.MAX_VALUE;
 
     while (iteration < m_maxIterations) {
       boolean foundAttribute = performIteration(iteration, trainYs, trainFs,
-        probs, m_numericData);
+        probs, m_boostingData, m_regressions);
       if (foundAttribute) {
         iteration++;
         m_numRegressions = iteration;
@@ -452,7 +797,7 @@ public class LogisticBase extends AbstractClassifier implements
         break;
       }
 
-      trainErrors[iteration] = getErrorRate(m_train);
+      trainErrors[iteration] = getErrorRate(m_boostingData, m_regressions);
 
       // heuristic: stop LogitBoost if the current minimum has not changed for
       // <m_heuristicStop> iterations
@@ -502,6 +847,102 @@ public class LogisticBase extends AbstractClassifier implements
     return eval.meanAbsoluteError();
   }
 
+  /**
+   * Returns the weighted number of instances misclassified by a model. Gives
+   * the same result as Evaluation.incorrect().
+   * 
+   * @param data the instances
+   * @param regressions the model
+   * @return the weighted number of misclassified instances
+   */
+  protected double getNumIncorrect(BoostingData data,
+    SimpleLinearRegression[][] regressions) {
+    double[][] probs = getProbs(data, regressions);
+    double incorrect = 0;
+    for (int k = 0; k < data.m_numInstances; k++) {
+      int actualClass = data.m_classes[k];
+      if (actualClass >= 0) {
+        int predictedClass = predictedClass(probs[k]);
+        if (predictedClass >= 0 && predictedClass != actualClass) {
+          incorrect += data.m_weights[k];
+        }
+      }
+    }
+    return incorrect;
+  }
+
+  /**
+   * Returns the misclassification error of a model on a set of instances.
+   * Gives the same result as getErrorRate(Instances) for the current model.
+   * 
+   * @param data the instances
+   * @param regressions the model
+   * @return the error rate
+   */
+  protected double getErrorRate(BoostingData data,
+    SimpleLinearRegression[][] regressions) {
+    double withClass = 0;
+    for (int k = 0; k < data.m_numInstances; k++) {
+      if (data.m_classes[k] >= 0) {
+        withClass += data.m_weights[k];
+      }
+    }
+    return getNumIncorrect(data, regressions) / withClass;
+  }
+
+  /**
+   * Returns the error of the probability estimates of a model on a set of
+   * instances. Gives the same result as getMeanAbsoluteError(Instances) for
+   * the current model.
+   * 
+   * @param data the instances
+   * @param regressions the model
+   * @return the error
+   */
+  protected double getMeanAbsoluteError(BoostingData data,
+    SimpleLinearRegression[][] regressions) {
+    double[][] probs = getProbs(data, regressions);
+    double sumAbsErr = 0;
+    double withClass = 0;
+    double unclassified = 0;
+    for (int k = 0; k < data.m_numInstances; k++) {
+      int actualClass = data.m_classes[k];
+      if (actualClass < 0) {
+        continue;
+      }
+      double weight = data.m_weights[k];
+      withClass += weight;
+      if (predictedClass(probs[k]) < 0) {
+        unclassified += weight;
+        continue;
+      }
+      double absErr = 0;
+      for (int j = 0; j < m_numClasses; j++) {
+        absErr += Math.abs(probs[k][j] - ((j == actualClass) ? 1.0 : 0.0));
+      }
+      sumAbsErr += weight * absErr / m_numClasses;
+    }
+    return sumAbsErr / (withClass - unclassified);
+  }
+
+  /**
+   * Returns the class with the highest probability, like Evaluation does.
+   * 
+   * @param probs the class probabilities
+   * @return the predicted class, or -1 if all probabilities are zero
+   */
+  protected static int predictedClass(double[] probs) {
+    int predictedClass = -1;
+    double bestProb = 0.0;
+    for (int j = 0; j < probs.length; j++) {
+      if (probs[j] > bestProb) {
+        predictedClass = j;
+        bestProb = probs[j];
+      }
+    }
+    return predictedClass;
+  }
+
   /**
    * Helper function to find the minimum in an array of error values.
    * 
@@ -523,8 +964,9 @@ public class LogisticBase extends AbstractClassifier implements
 
   /**
    * Performs a single iteration of LogitBoost, and updates the model
-   * accordingly. A simple regression function is fit to the response and added
-   * to the m_regressions array.
+   * accordingly. A simple regression function is fit to the response of every
+   * class and added to the given array. The classes are fit concurrently if a
+   * task runner has been set.
    * 
    * @param iteration the current iteration
    * @param trainYs the y-values (see description of LogitBoost) for the model
@@ -534,111 +976,63 @@ public class LogisticBase extends AbstractClassifier implements
    * @param probs the p-values (see description of LogitBoost) for the model
    *          trained so far
    * @param trainNumeric numeric version of the training data
+   * @param regressions the model trained so far
    * @return returns true if iteration performed successfully, false if no
    *         simple regression function could be fitted.
    * @throws Exception if something goes wrong
    */
-  protected boolean performIteration(int iteration, double[][] trainYs,
-    double[][] trainFs, double[][] probs, Instances trainNumeric)
+  protected boolean performIteration(int iteration, final double[][] trainYs,
+    double[][] trainFs, final double[][] probs,
+    final BoostingData trainNumeric, SimpleLinearRegression[][] regressions)
     throws Exception {
 
-    SimpleLinearRegression[] linearRegressionForEachClass = new SimpleLinearRegression[m_numClasses];
+    final SimpleLinearRegression[] linearRegressionForEachClass = new SimpleLinearRegression[m_numClasses];
 
-    // Store weights
-    double[] oldWeights = new double[trainNumeric.numInstances()];
-    for (int i = 0; i < oldWeights.length; i++) {
-      oldWeights[i] = trainNumeric.instance(i).weight();
-    }
+    trainNumeric.initBuffers(m_numClasses);
 
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
     for (int j = 0; j < m_numClasses; j++) {
-      // Keep track of sum of weights
-      double weightSum = 0.0;
-
-      for (int i = 0; i < trainNumeric.numInstances(); i++) {
-
-        // compute response and weight
-        double p = probs[i][j];
-        double actual = trainYs[i][j];
-        double z = getZ(actual, p);
-        double w = (actual - p) / z;
-
-        // set values for instance
-        Instance current = trainNumeric.instance(i);
-        current.setValue(trainNumeric.classIndex(), z);
-        current.setWeight(oldWeights[i] * w);
-
-        weightSum += current.weight();
-      }
-
-      Instances instancesCopy = trainNumeric;
-
-      if (weightSum > 0) {
-
-        // Only the (1-beta)th quantile of instances are sent to the base
-        // classifier
-        if (m_weightTrimBeta > 0) {
-
-          // Need to make an empty dataset
-          instancesCopy = new Instances(trainNumeric,
-            trainNumeric.numInstances());
-
-          // Get weights
-          double[] weights = new double[oldWeights.length];
-          for (int i = 0; i < oldWeights.length; i++) {
-            weights[i] = trainNumeric.instance(i).weight();
-          }
-
-          double weightPercentage = 0.0;
-          int[] weightsOrder = Utils.sort(weights);
-
-          for (int i = weightsOrder.length - 1; (i >= 0)
-            && (weightPercentage < (1 - m_weightTrimBeta)); i--) {
-            instancesCopy.add(trainNumeric.instance(weightsOrder[i]));
-            weightPercentage += (weights[weightsOrder[i]] / weightSum);
-
-          }
-
-          // Update the sum of weights
-          weightSum = instancesCopy.sumOfWeights();
+      final int classIndex = j;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          linearRegressionForEachClass[classIndex] = fitRegression(classIndex,
+            trainYs, probs, trainNumeric);
+          return null;
         }
+      });
+    }
+    runTasks(taskRunnerFor((long) trainNumeric.m_numInstances
+      * trainNumeric.m_numAttributes), tasks);
 
-        // Scale the weights
-        double multiplier = instancesCopy.numInstances() / weightSum;
-        for (Instance current : instancesCopy) {
-          current.setWeight(current.weight() * multiplier);
-        }
-      }
-
-      // fit simple regression function
-      linearRegressionForEachClass[j] = new SimpleLinearRegression();
-      linearRegressionForEachClass[j].buildClassifier(instancesCopy);
-
-      boolean foundAttribute = linearRegressionForEachClass[j]
-        .foundUsefulAttribute();
-      if (!foundAttribute) {
+    for (int j = 0; j < m_numClasses; j++) {
+      if (!linearRegressionForEachClass[j].foundUsefulAttribute()) {
         // could not fit simple regression function
-
-        // Restore weights
-        for (int i = 0; i < oldWeights.length; i++) {
-          trainNumeric.instance(i).setWeight(oldWeights[i]);
-        }
         return false;
       }
     }
 
     // Add each linear regression model to the sum
     for (int i = 0; i < m_numClasses; i++) {
-      m_regressions[i][linearRegressionForEachClass[i].getAttributeIndex()]
+      regressions[i][linearRegressionForEachClass[i].getAttributeIndex()]
         .addModel(linearRegressionForEachClass[i]);
     }
 
     // Evaluate / increment trainFs from the classifier
+    int[] attributes = new int[m_numClasses];
+    double[] slopes = new double[m_numClasses];
+    double[] intercepts = new double[m_numClasses];
+    for (int j = 0; j < m_numClasses; j++) {
+      attributes[j] = linearRegressionForEachClass[j].getAttributeIndex();
+      slopes[j] = linearRegressionForEachClass[j].getSlope();
+      intercepts[j] = linearRegressionForEachClass[j].getIntercept();
+    }
+    double[] pred = new double[m_numClasses];
     for (int i = 0; i < trainFs.length; i++) {
-      double[] pred = new double[m_numClasses];
+      double[] row = trainNumeric.m_rows[i];
       double predSum = 0;
       for (int j = 0; j < m_numClasses; j++) {
-        pred[j] = linearRegressionForEachClass[j].classifyInstance(trainNumeric
-          .instance(i));
+        pred[j] = intercepts[j] + slopes[j] * row[attributes[j]];
         predSum += pred[j];
       }
       predSum /= m_numClasses;
@@ -650,16 +1044,84 @@ public class LogisticBase extends AbstractClassifier implements
 
     // Compute the current probability estimates
     for (int i = 0; i < trainYs.length; i++) {
-      probs[i] = probs(trainFs[i]);
+      probs(trainFs[i], probs[i]);
     }
 
-    // Restore weights
-    for (int i = 0; i < oldWeights.length; i++) {
-      trainNumeric.instance(i).setWeight(oldWeights[i]);
-    }
     return true;
   }
 
+  /**
+   * Fits the simple regression function for one class in a LogitBoost
+   * iteration. The responses and weights are computed into the buffers of the
+   * class, the instances themselves are not changed.
+   * 
+   * @param classIndex the class
+   * @param trainYs the y-values for the model trained so far
+   * @param probs the p-values for the model trained so far
+   * @param trainNumeric numeric version of the training data
+   * @return the fitted function, without a useful attribute if none was found
+   */
+  protected SimpleLinearRegression fitRegression(int classIndex,
+    double[][] trainYs, double[][] probs, BoostingData trainNumeric) {
+
+    int numInstances = trainNumeric.m_numInstances;
+    double[] responses = trainNumeric.m_responses[classIndex];
+    double[] weights = trainNumeric.m_fitWeights[classIndex];
+
+    // Keep track of sum of weights
+    double weightSum = 0.0;
+    for (int i = 0; i < numInstances; i++) {
+
+      // compute response and weight
+      double p = probs[i][classIndex];
+      double actual = trainYs[i][classIndex];
+      double z = getZ(actual, p);
+      double w = (actual - p) / z;
+
+      responses[i] = z;
+      weights[i] = trainNumeric.m_weights[i] * w;
+      weightSum += weights[i];
+    }
+
+    int[] order = null;
+    int numFit = numInstances;
+    if (weightSum > 0) {
+
+      // Only the (1-beta)th quantile of instances are sent to the base
+      // classifier
+      if (m_weightTrimBeta > 0) {
+        int[] weightsOrder = Utils.sort(weights);
+        order = new int[numInstances];
+        numFit = 0;
+        double weightPercentage = 0.0;
+        for (int i = weightsOrder.length - 1; (i >= 0)
+          && (weightPercentage < (1 - m_weightTrimBeta)); i--) {
+          order[numFit++] = weightsOrder[i];
+          weightPercentage += (weights[weightsOrder[i]] / weightSum);
+        }
+
+        // Update the sum of weights
+        weightSum = 0;
+        for (int i = 0; i < numFit; i++) {
+          weightSum += weights[order[i]];
+        }
+      }
+
+      // Scale the weights
+      double multiplier = numFit / weightSum;
+      for (int i = 0; i < numFit; i++) {
+        int index = (order == null) ? i : order[i];
+        weights[index] = weights[index] * multiplier;
+      }
+    }
+
+    // fit simple regression function
+    SimpleLinearRegression linearRegression = new SimpleLinearRegression();
+    linearRegression.buildClassifier(trainNumeric.m_rows,
+      trainNumeric.m_classIndex, responses, weights, order, numFit);
+    return linearRegression;
+  }
+
   /**
    * Helper function to initialize m_regressions.
    * 
@@ -823,6 +1285,20 @@ public class LogisticBase extends AbstractClassifier implements
    */
   protected double[] probs(double[] Fs) {
 
+    double[] probs = new double[Fs.length];
+    probs(Fs, probs);
+    return probs;
+  }
+
+  /**
+   * Computes the p-values (probabilities for the classes) from the F-values of
+   * the logistic model into the given array.
+   * 
+   * @param Fs the F-values
+   * @param probs the array for the p-values
+   */
+  protected void probs(double[] Fs, double[] probs) {
+
     double maxF = -Double.MAX_VALUE;
     for (double element : Fs) {
       if (element > maxF) {
@@ -830,14 +1306,12 @@ public class LogisticBase extends AbstractClassifier implements
       }
     }
     double sum = 0;
-    double[] probs = new double[Fs.length];
     for (int i = 0; i < Fs.length; i++) {
       probs[i] = Math.exp(Fs[i] - maxF);
       sum += probs[i];
     }
 
     Utils.normalize(probs, sum);
-    return probs;
   }
 
   /**
@@ -857,6 +1331,23 @@ public class LogisticBase extends AbstractClassifier implements
     return dataYs;
   }
 
+  /**
+   * Computes the Y-values (actual class probabilities) for a set of instances.
+   * 
+   * @param data the data to compute the Y-values from
+   * @return the Y-values
+   */
+  protected double[][] getYs(BoostingData data) {
+
+    double[][] dataYs = new double[data.m_numInstances][m_numClasses];
+    for (int k = 0; k < data.m_numInstances; k++) {
+      if (data.m_classes[k] >= 0) {
+        dataYs[k][data.m_classes[k]] = 1.0;
+      }
+    }
+    return dataYs;
+  }
+
   /**
    * Computes the F-values for a single instance.
    * 
@@ -906,6 +1397,104 @@ public class LogisticBase extends AbstractClassifier implements
     return dataFs;
   }
 
+  /**
+   * Computes the F-values of a model for a set of instances. Gives the same
+   * values as getFs(Instance), but skips the attributes the model does not
+   * use.
+   * 
+   * @param data the data to work on
+   * @param regressions the model
+   * @param dataFs the array for the F-values, [instance][class]
+   */
+  protected void computeFs(BoostingData data,
+    SimpleLinearRegression[][] regressions, double[][] dataFs) {
+
+    for (double[] instanceFs : dataFs) {
+      Arrays.fill(instanceFs, 0);
+    }
+
+    // collect the attributes the model uses
+    int[] attributes = new int[data.m_numAttributes];
+    double[][] slopes = new double[data.m_numAttributes][];
+    double[][] intercepts = new double[data.m_numAttributes][];
+    int numUsed = 0;
+    for (int i = 0; i < data.m_numAttributes; i++) {
+      if (i == data.m_classIndex) {
+        continue;
+      }
+      boolean used = false;
+      double[] attSlopes = new double[m_numClasses];
+      double[] attIntercepts = new double[m_numClasses];
+      for (int j = 0; j < m_numClasses; j++) {
+        attSlopes[j] = regressions[j][i].getSlope();
+        attIntercepts[j] = regressions[j][i].getIntercept();
+        used |= (attSlopes[j] != 0) || (attIntercepts[j] != 0);
+      }
+      if (used) {
+        attributes[numUsed] = i;
+        slopes[numUsed] = attSlopes;
+        intercepts[numUsed] = attIntercepts;
+        numUsed++;
+      }
+    }
+
+    double[] pred = new double[m_numClasses];
+    for (int k = 0; k < data.m_numInstances; k++) {
+      double[] row = data.m_rows[k];
+      double[] instanceFs = dataFs[k];
+      for (int a = 0; a < numUsed; a++) {
+        double value = row[attributes[a]];
+        double predSum = 0;
+        for (int j = 0; j < m_numClasses; j++) {
+          pred[j] = intercepts[a][j] + slopes[a][j] * value;
+          predSum += pred[j];
+        }
+        predSum /= m_numClasses;
+        for (int j = 0; j < m_numClasses; j++) {
+          instanceFs[j] += (pred[j] - predSum) * (m_numClasses - 1)
+            / m_numClasses;
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the F-values of a model for a set of instances.
+   * 
+   * @param data the data to work on
+   * @param regressions the model
+   * @return the F-values
+   */
+  protected double[][] getFs(BoostingData data,
+    SimpleLinearRegression[][] regressions) {
+
+    double[][] dataFs = new double[data.m_numInstances][m_numClasses];
+    computeFs(data, regressions, dataFs);
+    return dataFs;
+  }
+
+  /**
+   * Computes the p-values of a model for a set of instances, into the
+   * evaluation buffers of the data.
+   * 
+   * @param data the data to work on
+   * @param regressions the model
+   * @return the p-values
+   */
+  protected double[][] getProbs(BoostingData data,
+    SimpleLinearRegression[][] regressions) {
+
+    if (data.m_evalFs == null) {
+      data.m_evalFs = new double[data.m_numInstances][m_numClasses];
+      data.m_evalProbs = new double[data.m_numInstances][m_numClasses];
+    }
+    computeFs(data, regressions, data.m_evalFs);
+    for (int k = 0; k < data.m_numInstances; k++) {
+      probs(data.m_evalFs[k], data.m_evalProbs[k]);
+    }
+    return data.m_evalProbs;
+  }
+
   /**
    * Computes the p-values (probabilities for the different classes) from the
    * F-values for a set of instances.
@@ -1055,6 +1644,16 @@ public class LogisticBase extends AbstractClassifier implements
     m_useAIC = c;
   }
 
+  /**
+   * Sets the task runner used for running cross-validation folds and the
+   * regression fits for the classes concurrently.
+   * 
+   * @param taskRunner the task runner, or null to run sequentially
+   */
+  public void setTaskRunner(TaskRunner taskRunner) {
+    m_taskRunner = taskRunner;
+  }
+
   /**
    * Returns the maxIterations parameter.
    * 
@@ -1196,6 +1795,7 @@ public class LogisticBase extends AbstractClassifier implements
     // save just header info
     m_train = new Instances(m_train, 0);
     m_numericData = null;
+    m_boostingData = null;
   }
 
   /**
@@ -150,10 +150,94 @@ public class SimpleLinearRegression {
       }
     }
 
+    chooseAttribute(means, slopes, sumWeightedDiffsSquared, classIndex);
+  }
+
+  /**
+   * Builds a simple linear regression model from attribute values stored in
+   * arrays. Gives the same model as buildClassifier(Instances) on the
+   * corresponding instances, without creating any instances.
+   * 
+   * @param rows the attribute values, [instance][attribute] (the values at the
+   *          class index are ignored)
+   * @param classIndex the index of the class
+   * @param classValues the class values
+   * @param weights the instance weights
+   * @param order the instances to use, in order, or null to use the first
+   *          numInstances ones
+   * @param numInstances the number of instances to use
+   */
+  public void buildClassifier(double[][] rows, int classIndex,
+    double[] classValues, double[] weights, int[] order, int numInstances) {
+
+    int numAttributes = rows[0].length;
+
+    // Compute the means, the class is handled separately
+    double[] means = new double[numAttributes];
+    double classMean = 0;
+    double count = 0;
+    for (int k = 0; k < numInstances; k++) {
+      int index = (order == null) ? k : order[k];
+      double[] row = rows[index];
+      double weight = weights[index];
+      for (int i = 0; i < numAttributes; i++) {
+        means[i] += weight * row[i];
+      }
+      classMean += weight * classValues[index];
+      count += weight;
+    }
+    means[classIndex] = classMean;
+    for (int i = 0; i < numAttributes; i++) {
+      if (count > 0) {
+        means[i] /= count;
+      } else {
+        means[i] = 0.0;
+      }
+    }
+
+    // Compute the sums of the products of the differences
+    double[] slopes = new double[numAttributes];
+    double[] sumWeightedDiffsSquared = new double[numAttributes];
+    double classSumWeightedDiffsSquared = 0;
+    for (int k = 0; k < numInstances; k++) {
+      int index = (order == null) ? k : order[k];
+      double[] row = rows[index];
+      double weight = weights[index];
+
+      double yDiff = classValues[index] - means[classIndex];
+      double weightedYDiff = weight * yDiff;
+
+      for (int i = 0; i < numAttributes; i++) {
+        double diff = row[i] - means[i];
+        double weightedDiff = weight * diff;
+        slopes[i] += weightedYDiff * diff;
+        sumWeightedDiffsSquared[i] += weightedDiff * diff;
+      }
+      classSumWeightedDiffsSquared += weightedYDiff * yDiff;
+    }
+    sumWeightedDiffsSquared[classIndex] = classSumWeightedDiffsSquared;
+
+    chooseAttribute(means, slopes, sumWeightedDiffsSquared, classIndex);
+  }
+
+  /**
+   * Picks the attribute giving the smallest squared error and sets up the
+   * model for it.
+   * 
+   * @param means the attribute means
+   * @param slopes the weighted sums of products of the differences to the
+   *          means of attribute and class (overwritten)
+   * @param sumWeightedDiffsSquared the weighted sums of the squared
+   *          differences to the means
+   * @param classIndex the index of the class
+   */
+  protected void chooseAttribute(double[] means, double[] slopes,
+    double[] sumWeightedDiffsSquared, int classIndex) {
+
     // Pick the best attribute
     double minSSE = Double.MAX_VALUE;
     m_attributeIndex = -1;
-    for (int i = 0; i < insts.numAttributes(); i++) {
+    for (int i = 0; i < means.length; i++) {
 
       // Should we skip this attribute?
       if ((i == classIndex) || (sumWeightedDiffsSquared[i] == 0)) {
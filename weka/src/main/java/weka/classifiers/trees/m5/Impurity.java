@@ -81,6 +81,35 @@ public final class Impurity
     this.incremental(0,0);
   }
 
+  /**
+   * Constructs an Impurity object containing the impurity values of partitioning a sequence of class values
+   * @param partition the index of the last value in the left subset
+   * @param attribute the attribute used in partitioning
+   * @param classValues the class values, sorted by the values of the attribute
+   * @param k the order of the impurity; =1, the variance; =2, the stardard deviation; =k, the k-th order root of the variance
+   */
+  public Impurity(int partition,int attribute,double[] classValues,int k){
+
+    Values values = new Values(0,classValues.length-1,classValues);
+    attr = attribute;
+    n   = classValues.length;
+    sd  = values.sd; 
+    va  = values.va;
+
+    values = new Values(0,partition,classValues);
+    nl  = partition + 1;
+    sl  = values.sum;
+    s2l = values.sqrSum;
+
+    values = new Values(partition+1,classValues.length-1,classValues);
+    nr  = classValues.length - partition -1;
+    sr  = values.sum;
+    s2r = values.sqrSum;
+
+    order = k;
+    this.incremental(0,0);
+  }
+
   /**
    * Converts an Impurity object to a string
    * @return the converted string
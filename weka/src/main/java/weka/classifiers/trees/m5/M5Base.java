@@ -37,6 +37,7 @@ import weka.core.Option;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
+import weka.core.TaskRunner;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
 import weka.filters.Filter;
@@ -72,6 +73,10 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  * 
  * -R <br>
  * Build regression tree/rule rather than model tree/rule
+ * <p>
+ * 
+ * -num-slots &lt;num&gt; <br>
+ * Number of execution slots for building the trees (default 1)
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
  * @version $Revision: 10153 $
@@ -137,6 +142,11 @@ public abstract class M5Base extends AbstractClassifier implements
    */
   protected double m_minNumInstances = 4;
 
+  /**
+   * The number of threads to use for building the trees
+   */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Constructor
    */
@@ -215,6 +225,10 @@ public abstract class M5Base extends AbstractClassifier implements
     newVector.add(new Option("\tSet minimum number of instances "
       + "per leaf\n\t(default 4)", "M", 1, "-M <minimum number of instances>"));
 
+    newVector.add(new Option("\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -235,6 +249,10 @@ public abstract class M5Base extends AbstractClassifier implements
    * Build a regression tree rather than a model tree.
    * <p>
    * 
+   * -num-slots &lt;num&gt; <br>
+   * Number of execution slots for building the trees (default 1).
+   * <p>
+   * 
    * @param options the list of options as an array of strings
    * @throws Exception if an option is not supported
    */
@@ -247,6 +265,12 @@ public abstract class M5Base extends AbstractClassifier implements
     if (optionString.length() != 0) {
       setMinNumInstances((new Double(optionString)).doubleValue());
     }
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
     super.setOptions(options);
     Utils.checkForRemainingOptions(options);
   }
@@ -258,7 +282,7 @@ public abstract class M5Base extends AbstractClassifier implements
    */
   @Override
   public String[] getOptions() {
-    String[] options = new String[5];
+    String[] options = new String[7];
     int current = 0;
 
     if (getUnpruned()) {
@@ -276,6 +300,9 @@ public abstract class M5Base extends AbstractClassifier implements
     options[current++] = "-M";
     options[current++] = "" + getMinNumInstances();
 
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -424,6 +451,36 @@ public abstract class M5Base extends AbstractClassifier implements
     return m_minNumInstances;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building the "
+      + "trees: split candidates are evaluated and sibling subtrees are "
+      + "built and pruned concurrently.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for building the trees
+   * 
+   * @param slots the number of slots to use
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for building the trees
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns default capabilities of the classifier, i.e., of LinearRegression.
    * 
@@ -469,43 +526,53 @@ public abstract class M5Base extends AbstractClassifier implements
 
     Rule tempRule;
 
-    if (m_generateRules) {
-      Instances tempInst = m_instances;
-
-      do {
+    TaskRunner taskRunner = (m_numExecutionSlots > 1) ? new TaskRunner(
+      m_numExecutionSlots) : null;
+    try {
+      if (m_generateRules) {
+        Instances tempInst = m_instances;
+
+        do {
+          tempRule = new Rule();
+          tempRule.setSmoothing(!m_unsmoothedPredictions);
+          tempRule.setRegressionTree(m_regressionTree);
+          tempRule.setUnpruned(m_useUnpruned);
+          tempRule.setSaveInstances(false);
+          tempRule.setMinNumInstances(m_minNumInstances);
+          tempRule.setTaskRunner(taskRunner);
+          tempRule.buildClassifier(tempInst);
+          m_ruleSet.add(tempRule);
+          // System.err.println("Built rule : "+tempRule.toString());
+          tempInst = tempRule.notCoveredInstances();
+          tempRule.freeNotCoveredInstances();
+        } while (tempInst.numInstances() > 0);
+      } else {
+        // just build a single tree
         tempRule = new Rule();
+
+        tempRule.setUseTree(true);
+        // tempRule.setGrowFullTree(true);
         tempRule.setSmoothing(!m_unsmoothedPredictions);
+        tempRule.setSaveInstances(m_saveInstances);
         tempRule.setRegressionTree(m_regressionTree);
         tempRule.setUnpruned(m_useUnpruned);
-        tempRule.setSaveInstances(false);
         tempRule.setMinNumInstances(m_minNumInstances);
-        tempRule.buildClassifier(tempInst);
-        m_ruleSet.add(tempRule);
-        // System.err.println("Built rule : "+tempRule.toString());
-        tempInst = tempRule.notCoveredInstances();
-        tempRule.freeNotCoveredInstances();
-      } while (tempInst.numInstances() > 0);
-    } else {
-      // just build a single tree
-      tempRule = new Rule();
+        tempRule.setTaskRunner(taskRunner);
 
-      tempRule.setUseTree(true);
-      // tempRule.setGrowFullTree(true);
-      tempRule.setSmoothing(!m_unsmoothedPredictions);
-      tempRule.setSaveInstances(m_saveInstances);
-      tempRule.setRegressionTree(m_regressionTree);
-      tempRule.setUnpruned(m_useUnpruned);
-      tempRule.setMinNumInstances(m_minNumInstances);
+        Instances temp_train;
 
-      Instances temp_train;
+        temp_train = m_instances;
 
-      temp_train = m_instances;
+        tempRule.buildClassifier(temp_train);
 
-      tempRule.buildClassifier(temp_train);
-
-      m_ruleSet.add(tempRule);
+        m_ruleSet.add(tempRule);
 
-      // System.err.print(tempRule.m_topOfTree.treeToString(0));
+        // System.err.print(tempRule.m_topOfTree.treeToString(0));
+      }
+    } finally {
+      if (taskRunner != null) {
+        taskRunner.shutdown();
+      }
     }
 
     // save space
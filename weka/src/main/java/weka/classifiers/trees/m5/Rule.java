@@ -27,6 +27,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.Utils;
 
 /**
@@ -143,6 +144,11 @@ public class Rule implements Serializable, RevisionHandler {
    */
   private double m_minNumInstances;
 
+  /**
+   * Runs the building of the tree concurrently (null to build sequentially)
+   */
+  private transient TaskRunner m_taskRunner;
+
   /**
    * Constructor declaration
    * 
@@ -182,6 +188,7 @@ public class Rule implements Serializable, RevisionHandler {
     m_topOfTree.setSaveInstances(m_saveInstances);
     m_topOfTree.setRegressionTree(m_regressionTree);
     m_topOfTree.setMinNumInstances(m_minNumInstances);
+    m_topOfTree.setTaskRunner(m_taskRunner);
     m_topOfTree.buildClassifier(m_instances);
 
     if (!m_useUnpruned) {
@@ -564,6 +571,15 @@ public class Rule implements Serializable, RevisionHandler {
     return absDev;
   }
 
+  /**
+   * Sets the task runner used to build the tree concurrently.
+   * 
+   * @param taskRunner the task runner, or null to build sequentially
+   */
+  protected void setTaskRunner(TaskRunner taskRunner) {
+    m_taskRunner = taskRunner;
+  }
+
   /**
    * Sets whether instances at each node in an M5 tree should be saved for
    * visualization purposes. Default is to save memory.
@@ -22,6 +22,8 @@
 package weka.classifiers.trees.m5;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Evaluation;
@@ -29,6 +31,7 @@ import weka.classifiers.functions.LinearRegression;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
+import weka.core.TaskRunner;
 import weka.core.Utils;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
@@ -167,6 +170,70 @@ public class RuleNode extends AbstractClassifier {
    */
   private boolean m_regressionTree;
 
+  /**
+   * Runs the split evaluations and the subtrees of this node concurrently
+   * (null to build sequentially)
+   */
+  protected transient TaskRunner m_taskRunner;
+
+  /**
+   * Minimum amount of work (instances times attributes) for which split
+   * evaluations or subtrees are handed to other threads
+   */
+  protected static final int MIN_PARALLEL_WORK = 1 << 14;
+
+  /**
+   * The training data of a tree by column, with the instances of every
+   * attribute sorted once at the root. The nodes pass sorted lists of instance
+   * ids down to their children instead of sorting again.
+   */
+  protected static class SortedData {
+
+    /** the values of the instances, [attribute][instance] (null for class) */
+    protected final double[][] m_values;
+
+    /** the class values of the instances */
+    protected final double[] m_classValues;
+
+    /** the ids of the instances in ascending order of each attribute */
+    protected final int[][] m_sorted;
+
+    /** which side of the split of its node each instance goes to */
+    protected final boolean[] m_left;
+
+    /**
+     * Sorts the training data.
+     * 
+     * @param data the training data
+     * @param taskRunner runs the sorts concurrently (may be null)
+     * @throws Exception if the data can't be sorted
+     */
+    protected SortedData(final Instances data, TaskRunner taskRunner)
+      throws Exception {
+      int numInstances = data.numInstances();
+      m_values = new double[data.numAttributes()][];
+      m_sorted = new int[data.numAttributes()][];
+      m_classValues = data.attributeToDoubleArray(data.classIndex());
+      m_left = new boolean[numInstances];
+
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < data.numAttributes(); i++) {
+        if (i != data.classIndex()) {
+          final int att = i;
+          tasks.add(new Callable<Object>() {
+            @Override
+            public Object call() {
+              m_values[att] = data.attributeToDoubleArray(att);
+              m_sorted[att] = Utils.stableSort(m_values[att]);
+              return null;
+            }
+          });
+        }
+      }
+      runTasks(taskRunner, tasks);
+    }
+  }
+
   /**
    * Creates a new <code>RuleNode</code> instance.
    * 
@@ -192,6 +259,56 @@ public class RuleNode extends AbstractClassifier {
   @Override
   public void buildClassifier(Instances data) throws Exception {
 
+    SortedData sortedData = new SortedData(data, m_taskRunner);
+    int[] ids = new int[data.numInstances()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    int[][] sorted = sortedData.m_sorted.clone();
+    buildNode(data, sortedData, ids, sorted);
+  }
+
+  /**
+   * Runs tasks, concurrently if a task runner is given.
+   * 
+   * @param taskRunner the task runner (may be null)
+   * @param tasks the tasks
+   * @throws Exception if a task fails
+   */
+  protected static void runTasks(TaskRunner taskRunner,
+    List<Callable<Object>> tasks) throws Exception {
+    if (taskRunner != null) {
+      taskRunner.invokeAll(tasks);
+    } else {
+      for (Callable<Object> task : tasks) {
+        task.call();
+      }
+    }
+  }
+
+  /**
+   * Returns the task runner to use for work of the given size.
+   * 
+   * @param work the amount of work (instances times attributes)
+   * @return the task runner, or null if the work should be done sequentially
+   */
+  protected TaskRunner taskRunnerFor(long work) {
+    return (work < MIN_PARALLEL_WORK) ? null : m_taskRunner;
+  }
+
+  /**
+   * Build this node from presorted data.
+   * 
+   * @param data the instances on which to build this node
+   * @param sortedData the sorted training data of the tree
+   * @param ids the ids of the instances in data, in ascending order
+   * @param sorted the ids of the instances in ascending order of each
+   *          attribute; the arrays are released when no longer needed
+   * @throws Exception if an error occurs
+   */
+  protected void buildNode(Instances data, SortedData sortedData, int[] ids,
+    int[][] sorted) throws Exception {
+
     m_rootMeanSquaredError = Double.MAX_VALUE;
     // m_instances = new Instances(data);
     m_instances = data;
@@ -209,7 +326,7 @@ public class RuleNode extends AbstractClassifier {
       m_isLeaf = false;
     }
 
-    split();
+    split(sortedData, ids, sorted);
   }
 
   /**
@@ -263,27 +380,72 @@ public class RuleNode extends AbstractClassifier {
    * @throws Exception if an error occurs
    */
   public void split() throws Exception {
+    SortedData sortedData = new SortedData(m_instances, m_taskRunner);
+    int[] ids = new int[m_numInstances];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    split(sortedData, ids, sortedData.m_sorted.clone());
+  }
+
+  /**
+   * Finds an attribute and split point for this node, using presorted data,
+   * and builds the subtrees.
+   * 
+   * @param sortedData the sorted training data of the tree
+   * @param ids the ids of the instances at this node, in ascending order
+   * @param sorted the ids of the instances in ascending order of each
+   *          attribute; the arrays are released when no longer needed
+   * @throws Exception if an error occurs
+   */
+  protected void split(final SortedData sortedData, int[] ids,
+    final int[][] sorted) throws Exception {
     int i;
     Instances leftSubset, rightSubset;
-    SplitEvaluate bestSplit, currentSplit;
+    SplitEvaluate bestSplit;
     boolean[] attsBelow;
 
     if (!m_isLeaf) {
 
-      bestSplit = new YongSplitInfo(0, m_numInstances - 1, -1);
-      currentSplit = new YongSplitInfo(0, m_numInstances - 1, -1);
+      // evaluate the splits on all attributes
+      final YongSplitInfo[] splits = new YongSplitInfo[m_numAttributes];
+      TaskRunner taskRunner = taskRunnerFor((long) m_numInstances
+        * m_numAttributes);
+      int numTasks = (taskRunner == null) ? 1 : taskRunner.getNumSlots();
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int t = 0; t < numTasks; t++) {
+        final int first = t;
+        final int step = numTasks;
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            double[] values = new double[m_numInstances];
+            double[] classValues = new double[m_numInstances];
+            for (int att = first; att < m_numAttributes; att += step) {
+              if (att != m_classIndex) {
+                int[] order = sorted[att];
+                for (int k = 0; k < order.length; k++) {
+                  values[k] = sortedData.m_values[att][order[k]];
+                  classValues[k] = sortedData.m_classValues[order[k]];
+                }
+                splits[att] = new YongSplitInfo(0, m_numInstances - 1, -1);
+                splits[att].attrSplit(att, values, classValues);
+              }
+            }
+            return null;
+          }
+        });
+      }
+      runTasks(taskRunner, tasks);
 
       // find the best attribute to split on
+      bestSplit = new YongSplitInfo(0, m_numInstances - 1, -1);
       for (i = 0; i < m_numAttributes; i++) {
         if (i != m_classIndex) {
-
-          // sort the instances by this attribute
-          m_instances.sort(i);
-          currentSplit.attrSplit(i, m_instances);
-
+          SplitEvaluate currentSplit = splits[i];
           if ((Math.abs(currentSplit.maxImpurity() - bestSplit.maxImpurity()) > 1.e-6)
             && (currentSplit.maxImpurity() > bestSplit.maxImpurity() + 1.e-6)) {
-            bestSplit = currentSplit.copy();
+            bestSplit = currentSplit;
           }
         }
       }
@@ -298,29 +460,69 @@ public class RuleNode extends AbstractClassifier {
         leftSubset = new Instances(m_instances, m_numInstances);
         rightSubset = new Instances(m_instances, m_numInstances);
 
+        int numLeft = 0;
         for (i = 0; i < m_numInstances; i++) {
           if (m_instances.instance(i).value(m_splitAtt) <= m_splitValue) {
             leftSubset.add(m_instances.instance(i));
+            sortedData.m_left[ids[i]] = true;
+            numLeft++;
           } else {
             rightSubset.add(m_instances.instance(i));
+            sortedData.m_left[ids[i]] = false;
           }
         }
 
         leftSubset.compactify();
         rightSubset.compactify();
 
+        // pass the sorted ids on to the subsets
+        final int[] leftIds = new int[numLeft];
+        final int[] rightIds = new int[m_numInstances - numLeft];
+        final int[][] leftSorted = new int[m_numAttributes][];
+        final int[][] rightSorted = new int[m_numAttributes][];
+        split(ids, sortedData.m_left, leftIds, rightIds);
+        for (int j = 0; j < m_numAttributes; j++) {
+          if (sorted[j] != null) {
+            leftSorted[j] = new int[numLeft];
+            rightSorted[j] = new int[m_numInstances - numLeft];
+            split(sorted[j], sortedData.m_left, leftSorted[j], rightSorted[j]);
+            sorted[j] = null;
+          }
+        }
+
         // build left and right nodes
         m_left = new RuleNode(m_globalDeviation, m_globalAbsDeviation, this);
         m_left.setMinNumInstances(m_splitNum);
         m_left.setRegressionTree(m_regressionTree);
         m_left.setSaveInstances(m_saveInstances);
-        m_left.buildClassifier(leftSubset);
+        m_left.setTaskRunner(m_taskRunner);
 
         m_right = new RuleNode(m_globalDeviation, m_globalAbsDeviation, this);
         m_right.setMinNumInstances(m_splitNum);
         m_right.setRegressionTree(m_regressionTree);
         m_right.setSaveInstances(m_saveInstances);
-        m_right.buildClassifier(rightSubset);
+        m_right.setTaskRunner(m_taskRunner);
+
+        final Instances leftData = leftSubset;
+        final Instances rightData = rightSubset;
+        tasks.clear();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_left.buildNode(leftData, sortedData, leftIds, leftSorted);
+            return null;
+          }
+        });
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_right.buildNode(rightData, sortedData, rightIds, rightSorted);
+            return null;
+          }
+        });
+        runTasks(
+          taskRunnerFor((long) Math.min(numLeft, m_numInstances - numLeft)
+            * m_numAttributes), tasks);
 
         // now find out what attributes are tested in the left and right
         // subtrees and use them to learn a linear model for this node
@@ -366,6 +568,27 @@ public class RuleNode extends AbstractClassifier {
     }
   }
 
+  /**
+   * Distributes a list of instance ids to the two subsets of a split,
+   * preserving their order.
+   * 
+   * @param ids the ids
+   * @param left which ids go to the left subset
+   * @param leftIds receives the ids of the left subset
+   * @param rightIds receives the ids of the right subset
+   */
+  protected static void split(int[] ids, boolean[] left, int[] leftIds,
+    int[] rightIds) {
+    int l = 0, r = 0;
+    for (int id : ids) {
+      if (left[id]) {
+        leftIds[l++] = id;
+      } else {
+        rightIds[r++] = id;
+      }
+    }
+  }
+
   /**
    * Build a linear model for this node using those attributes specified in
    * indices.
@@ -611,13 +834,27 @@ public class RuleNode extends AbstractClassifier {
     if (m_isLeaf) {
       buildLinearModel(m_indices);
     } else {
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
       if (m_left != null) {
-        m_left.installLinearModels();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_left.installLinearModels();
+            return null;
+          }
+        });
       }
 
       if (m_right != null) {
-        m_right.installLinearModels();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_right.installLinearModels();
+            return null;
+          }
+        });
       }
+      runTasks(taskRunnerFor((long) m_numInstances * m_numAttributes), tasks);
       buildLinearModel(m_indices);
     }
     nodeModelEval = new Evaluation(m_instances);
@@ -704,13 +941,27 @@ public class RuleNode extends AbstractClassifier {
     } else {
 
       // Prune the left and right subtrees
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
       if (m_left != null) {
-        m_left.prune();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_left.prune();
+            return null;
+          }
+        });
       }
 
       if (m_right != null) {
-        m_right.prune();
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            m_right.prune();
+            return null;
+          }
+        });
       }
+      runTasks(taskRunnerFor((long) m_numInstances * m_numAttributes), tasks);
 
       buildLinearModel(m_indices);
       nodeModelEval = new Evaluation(m_instances);
@@ -1038,6 +1289,16 @@ public class RuleNode extends AbstractClassifier {
     }
   }
 
+  /**
+   * Sets the task runner used to build this node and its subtrees
+   * concurrently.
+   * 
+   * @param taskRunner the task runner, or null to build sequentially
+   */
+  protected void setTaskRunner(TaskRunner taskRunner) {
+    m_taskRunner = taskRunner;
+  }
+
   /**
    * Set whether to save instances for visualization purposes. Default is to
    * save memory.
@@ -25,6 +25,7 @@ package weka.classifiers.trees.m5;
 import weka.core.Instances;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.Utils;
 
 /**
  * Stores some statistics.
@@ -82,6 +83,40 @@ public final class Values
     }
   }
 
+  /**
+   * Constructs an object which stores some statistics of an array of values
+   * @param low the index of the first value
+   * @param high the index of the last value
+   * @param values the values (missing values are skipped)
+   */
+  public Values(int low,int high,double[] values){
+    int i,count=0;
+    double value;
+
+    numInstances = high-low+1;
+    missingInstances = 0;
+    first = low;
+    last = high;
+    attr = -1;
+    sum=0.0;
+    sqrSum=0.0;
+    for(i=first;i<=last;i++){
+      if(Utils.isMissingValue(values[i])==false){
+	count++;
+	value = values[i];
+	sum += value;
+	sqrSum += value * value;
+      }
+      
+      if(count >1){
+	va = (sqrSum - sum * sum/count)/count;
+	va = Math.abs(va);
+	sd = Math.sqrt(va);
+      }
+      else {va = 0.0;  sd = 0.0;}      
+    }
+  }
+
   /**
    * Converts the stats to a string
    * @return the converted string
@@ -168,6 +168,49 @@ public final class YongSplitInfo implements Cloneable, Serializable,
     }
   }
 
+  /**
+   * Finds the best splitting point for an attribute, given its values in
+   * ascending order (same as attrSplit(int, Instances) on the sorted
+   * instances)
+   * 
+   * @param attr the splitting attribute
+   * @param values the values of the attribute, in ascending order
+   * @param classValues the class values, in the same order
+   */
+  public final void attrSplit(int attr, double[] values, double[] classValues) {
+    int i, len, part;
+    Impurity imp;
+
+    int low = 0;
+    int high = values.length - 1;
+    this.initialize(low, high, attr);
+    if (number < 4) {
+      return;
+    }
+
+    len = ((high - low + 1) < 5) ? 1 : (high - low + 1) / 5;
+
+    position = low;
+
+    part = low + len - 1;
+    imp = new Impurity(part, attr, classValues, 5);
+
+    for (i = low + len; i <= high - len - 1; i++) {
+
+      imp.incremental(classValues[i], 1);
+
+      if (Utils.eq(values[i + 1], values[i]) == false) {
+        if (imp.impurity > maxImpurity) {
+          maxImpurity = imp.impurity;
+          splitValue = (values[i] + values[i + 1]) * 0.5;
+          leftAve = imp.sl / imp.nl;
+          rightAve = imp.sr / imp.nr;
+          position = i;
+        }
+      }
+    }
+  }
+
   /**
    * Returns the impurity of this split
    * 
@@ -0,0 +1,363 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TargetOverlayInstance.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+/**
+ * Dense instance that shares the vector of attribute values with the instance
+ * it was created from, except for one attribute (usually the class), whose
+ * value is stored in the instance itself. Setting the value of that attribute
+ * and setting the weight do not copy the attribute values, and neither do
+ * copies made with copy() (they share the vector as well). This is useful for
+ * boosting schemes that relabel the training data in every iteration.
+ * <p/>
+ *
+ * Setting the value of any other attribute copies the vector of attribute
+ * values first, like for a DenseInstance.
+ *
+ * @version $Revision$
+ */
+public class TargetOverlayInstance extends AbstractInstance {
+
+  /** for serialization */
+  private static final long serialVersionUID = -6279127541856651457L;
+
+  /** the index of the attribute stored in the instance, -1 if none */
+  protected int m_TargetIndex;
+
+  /** the value of the attribute stored in the instance */
+  protected double m_TargetValue;
+
+  /**
+   * Creates an instance that shares the attribute values with the given
+   * instance, if it is a dense instance (otherwise they are copied). Reference
+   * to the dataset is set to null.
+   *
+   * @param instance the instance to share the attribute values with
+   * @param targetIndex the index of the attribute whose value is stored in the
+   *          new instance (-1 for none)
+   */
+  public TargetOverlayInstance(Instance instance, int targetIndex) {
+
+    if ((instance instanceof DenseInstance)
+      || (instance instanceof TargetOverlayInstance)) {
+      m_AttValues = ((AbstractInstance) instance).m_AttValues;
+    } else {
+      m_AttValues = instance.toDoubleArray();
+    }
+    m_TargetIndex = targetIndex;
+    if (targetIndex >= 0) {
+      m_TargetValue = instance.value(targetIndex);
+    }
+    m_Weight = instance.weight();
+    m_Dataset = null;
+  }
+
+  /**
+   * Returns a copy of the given dataset that consists of instances sharing the
+   * attribute values with the original ones, with the class value stored in
+   * the instances.
+   *
+   * @param data the data to copy (the class index must be set)
+   * @return the copy
+   */
+  public static Instances overlay(Instances data) {
+
+    Instances result = new Instances(data, data.numInstances());
+    for (int i = 0; i < data.numInstances(); i++) {
+      result.add(new TargetOverlayInstance(data.instance(i), data.classIndex()));
+    }
+    return result;
+  }
+
+  /**
+   * Produces a shallow copy of this instance, sharing the attribute values.
+   * The copy has access to the same dataset.
+   *
+   * @return the shallow copy
+   */
+  @Override
+  public Object copy() {
+
+    TargetOverlayInstance result = new TargetOverlayInstance(this,
+      m_TargetIndex);
+    result.m_Dataset = m_Dataset;
+    return result;
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position. Just
+   * returns the given value.
+   *
+   * @param position the position
+   * @return the index of the attribute stored at the given position
+   */
+  @Override
+  public int index(int position) {
+
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns the result.
+   * Dataset is set to null. The returned instance is a DenseInstance.
+   *
+   * @param inst the instance to be merged with this one
+   * @return the merged instances
+   */
+  @Override
+  public Instance mergeInstance(Instance inst) {
+
+    int m = 0;
+    double[] newVals = new double[numAttributes() + inst.numAttributes()];
+    for (int j = 0; j < numAttributes(); j++, m++) {
+      newVals[m] = value(j);
+    }
+    for (int j = 0; j < inst.numAttributes(); j++, m++) {
+      newVals[m] = inst.value(j);
+    }
+    return new DenseInstance(1.0, newVals);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  @Override
+  public int numAttributes() {
+
+    return m_AttValues.length;
+  }
+
+  /**
+   * Returns the number of values present. Always the same as numAttributes().
+   *
+   * @return the number of values
+   */
+  @Override
+  public int numValues() {
+
+    return m_AttValues.length;
+  }
+
+  /**
+   * Replaces all missing values in the instance with the values contained in
+   * the given array. A deep copy of the vector of attribute values is performed
+   * before the values are replaced.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  @Override
+  public void replaceMissingValues(double[] array) {
+
+    if ((array == null) || (array.length != m_AttValues.length)) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    double[] newValues = toDoubleArray();
+    for (int i = 0; i < newValues.length; i++) {
+      if (Utils.isMissingValue(newValues[i])) {
+        newValues[i] = array[i];
+      }
+    }
+    m_AttValues = newValues;
+    if (m_TargetIndex >= 0) {
+      m_TargetValue = newValues[m_TargetIndex];
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format). Only the value of the attribute stored in the
+   * instance is set without copying the vector of attribute values.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValue(int attIndex, double value) {
+
+    if (attIndex == m_TargetIndex) {
+      m_TargetValue = value;
+    } else {
+      m_AttValues = toDoubleArray();
+      m_AttValues[attIndex] = value;
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format). Does exactly the same thing as setValue().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValueSparse(int indexOfIndex, double value) {
+
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the instance attribute values
+   */
+  @Override
+  public double[] toDoubleArray() {
+
+    double[] newValues = new double[m_AttValues.length];
+    System.arraycopy(m_AttValues, 0, newValues, 0, m_AttValues.length);
+    if (m_TargetIndex >= 0) {
+      newValues[m_TargetIndex] = m_TargetValue;
+    }
+    return newValues;
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If the
+   * instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight() {
+    return toStringNoWeight(AbstractInstance.s_numericAfterDecimalPoint);
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If the
+   * instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @param afterDecimalPoint maximum number of digits after the decimal point
+   *          for numeric values
+   *
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight(int afterDecimalPoint) {
+    StringBuffer text = new StringBuffer();
+
+    for (int i = 0; i < m_AttValues.length; i++) {
+      if (i > 0) {
+        text.append(",");
+      }
+      text.append(toString(i, afterDecimalPoint));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding attribute is
+   *         nominal (or a string) then it returns the value's index as a
+   *         double).
+   */
+  @Override
+  public double value(int attIndex) {
+
+    if (attIndex == m_TargetIndex) {
+      return m_TargetValue;
+    }
+    return m_AttValues[attIndex];
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given an index
+   * in the sparse representation. Same as value().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double
+   */
+  @Override
+  public double valueSparse(int indexOfIndex) {
+
+    return value(indexOfIndex);
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1).
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceDeleteAttributeAt(int position) {
+
+    double[] values = toDoubleArray();
+    double[] newValues = new double[values.length - 1];
+
+    System.arraycopy(values, 0, newValues, 0, position);
+    if (position < values.length - 1) {
+      System.arraycopy(values, position + 1, newValues, position,
+        values.length - (position + 1));
+    }
+    m_AttValues = newValues;
+    if (position == m_TargetIndex) {
+      m_TargetIndex = -1;
+    } else if (position < m_TargetIndex) {
+      m_TargetIndex--;
+    }
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()) and sets
+   * its value to be missing.
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceInsertAttributeAt(int position) {
+
+    double[] values = toDoubleArray();
+    double[] newValues = new double[values.length + 1];
+
+    System.arraycopy(values, 0, newValues, 0, position);
+    newValues[position] = Utils.missingValue();
+    System.arraycopy(values, position, newValues, position + 1, values.length
+      - position);
+    m_AttValues = newValues;
+    if ((m_TargetIndex >= 0) && (position <= m_TargetIndex)) {
+      m_TargetIndex++;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TaskRunner.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs groups of tasks with a fixed number of execution slots, for recursive
+ * algorithms such as tree learners. A task is only handed to the thread pool
+ * if one of its threads is idle; otherwise the calling thread runs it. As
+ * tasks never wait in the queue of the pool, they can themselves run groups of
+ * tasks and wait for them without risking a deadlock.
+ *
+ * @version $Revision$
+ */
+public class TaskRunner implements RevisionHandler {
+
+  /** the number of seconds after which idle threads of the pool stop */
+  protected static final long KEEP_ALIVE = 60;
+
+  /** the pool of threads, in addition to the calling thread */
+  protected ExecutorService m_pool;
+
+  /** permits for the idle threads of the pool */
+  protected Semaphore m_idle;
+
+  /** the number of execution slots */
+  protected int m_numSlots;
+
+  /**
+   * Creates a task runner.
+   *
+   * @param numSlots the number of execution slots, including the calling
+   *          thread (1 runs all tasks on the calling thread)
+   */
+  public TaskRunner(int numSlots) {
+    m_numSlots = Math.max(1, numSlots);
+    if (m_numSlots > 1) {
+      m_idle = new Semaphore(m_numSlots - 1);
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(m_numSlots - 1,
+        m_numSlots - 1, KEEP_ALIVE, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "weka.core.TaskRunner");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      // a runner kept for the life of a model doesn't hold on to its threads
+      // while it isn't used
+      pool.allowCoreThreadTimeOut(true);
+      m_pool = pool;
+    }
+  }
+
+  /**
+   * Returns the number of execution slots.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumSlots() {
+    return m_numSlots;
+  }
+
+  /**
+   * Starts a task on an idle thread of the pool.
+   *
+   * @param task the task
+   * @return the future of the task, or null if no thread is idle
+   */
+  protected Future<Object> trySubmit(final Callable<?> task) {
+    if (m_pool == null || !m_idle.tryAcquire()) {
+      return null;
+    }
+    try {
+      return m_pool.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          try {
+            return task.call();
+          } finally {
+            m_idle.release();
+          }
+        }
+      });
+    } catch (RuntimeException ex) {
+      m_idle.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Runs the given tasks and waits for all of them to finish. Tasks are
+   * started on idle threads where possible, the remaining ones are run on the
+   * calling thread, in order. If tasks fail, the exception of the first
+   * failing task (in list order) is thrown.
+   *
+   * @param tasks the tasks to run
+   * @throws Exception if a task fails
+   */
+  public void invokeAll(List<? extends Callable<?>> tasks) throws Exception {
+    int n = tasks.size();
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(n);
+    futures.add(null);
+    for (int i = 1; i < n; i++) {
+      futures.add(trySubmit(tasks.get(i)));
+    }
+
+    Exception[] failures = new Exception[n];
+    for (int i = 0; i < n; i++) {
+      if (futures.get(i) == null) {
+        try {
+          tasks.get(i).call();
+        } catch (Exception ex) {
+          failures[i] = ex;
+        }
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (futures.get(i) != null) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException ex) {
+          if (ex.getCause() instanceof Error) {
+            throw (Error) ex.getCause();
+          }
+          failures[i] = (Exception) ex.getCause();
+        }
+      }
+    }
+    for (Exception failure : failures) {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  /**
+   * Stops the threads of the pool.
+   */
+  public void shutdown() {
+    if (m_pool != null) {
+      m_pool.shutdown();
+      m_pool = null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
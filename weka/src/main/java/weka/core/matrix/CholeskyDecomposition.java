@@ -61,35 +61,48 @@ public class CholeskyDecomposition
 
   /** 
    * Cholesky algorithm for symmetric and positive definite matrix.
+   * The factor is computed column by column; the entries below the
+   * diagonal of a column are independent of each other and are computed
+   * in parallel for large matrices (see {@link Parallel}), accumulating
+   * the same terms in the same order as the row-wise JAMA algorithm.
    *
    * @param  Arg   Square, symmetric matrix.
    */
   public CholeskyDecomposition(Matrix Arg) {
     // Initialize.
-    double[][] A = Arg.getArray();
+    final double[][] A = Arg.getArray();
     n = Arg.getRowDimension();
     L = new double[n][n];
     isspd = (Arg.getColumnDimension() == n);
+    final double[][] L = this.L;
     // Main loop.
     for (int j = 0; j < n; j++) {
-      double[] Lrowj = L[j];
+      final double[] Lrowj = L[j];
       double d = 0.0;
       for (int k = 0; k < j; k++) {
-        double[] Lrowk = L[k];
-        double s = 0.0;
-        for (int i = 0; i < k; i++) {
-          s += Lrowk[i]*Lrowj[i];
-        }
-        Lrowj[k] = s = (A[j][k] - s)/L[k][k];
+        double s = Lrowj[k];
         d = d + s*s;
         isspd = isspd & (A[k][j] == A[j][k]); 
       }
       d = A[j][j] - d;
       isspd = isspd & (d > 0.0);
-      L[j][j] = Math.sqrt(Math.max(d,0.0));
-      for (int k = j+1; k < n; k++) {
-        L[j][k] = 0.0;
-      }
+      final double Ljj = Math.sqrt(Math.max(d,0.0));
+      Lrowj[j] = Ljj;
+      // Column j below the diagonal (the upper triangle stays zero).
+      final int col = j;
+      Parallel.run(j + 1, n, j, new Parallel.Task() {
+        @Override
+        public void run(int from, int to) {
+          for (int i = from; i < to; i++) {
+            double[] Lrowi = L[i];
+            double s = 0.0;
+            for (int k = 0; k < col; k++) {
+              s += Lrowj[k]*Lrowi[k];
+            }
+            Lrowi[col] = (A[i][col] - s)/Ljj;
+          }
+        }
+      });
     }
   }
 
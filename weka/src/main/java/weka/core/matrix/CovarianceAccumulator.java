@@ -0,0 +1,371 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    CovarianceAccumulator.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.io.Serializable;
+
+import weka.core.Aggregateable;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Accumulates the means and the covariance matrix of a set of variables from
+ * a stream of observations, e.g. the rows delivered by an incremental loader,
+ * so that the data never needs to be held in memory. Observations are
+ * buffered in blocks; each full block is centred on its own mean and merged
+ * into the running co-moments with the pairwise update of Chan et al., which
+ * is numerically stable and only touches the upper triangle of the matrix.
+ * The update of the co-moments is shared out over the threads of
+ * {@link Parallel}. Accumulators that were filled with disjoint sets of
+ * observations (e.g. by different threads) can be aggregated.
+ *
+ * @version $Revision$
+ */
+public class CovarianceAccumulator implements Serializable, RevisionHandler,
+  Aggregateable<CovarianceAccumulator> {
+
+  /** for serialization */
+  private static final long serialVersionUID = 4326919463262651389L;
+
+  /** the default number of observations that are buffered */
+  public static final int DEFAULT_BLOCK_SIZE = 256;
+
+  /** the number of variables */
+  protected int m_NumVariables;
+
+  /** the number of observations that have been merged into the statistics */
+  protected long m_NumObservations;
+
+  /** the means of the variables */
+  protected double[] m_Means;
+
+  /** the co-moments (only the upper triangle is used) */
+  protected double[][] m_CoMoments;
+
+  /** the buffered observations */
+  protected double[][] m_Block;
+
+  /** the number of buffered observations */
+  protected int m_BlockCount;
+
+  /**
+   * Initializes the statistics with the default block size.
+   *
+   * @param numVariables the number of variables
+   */
+  public CovarianceAccumulator(int numVariables) {
+    this(numVariables, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param numVariables the number of variables
+   * @param blockSize the number of observations to buffer before they are
+   *          merged into the statistics
+   */
+  public CovarianceAccumulator(int numVariables, int blockSize) {
+    m_NumVariables = numVariables;
+    m_Means = new double[numVariables];
+    m_CoMoments = new double[numVariables][numVariables];
+    m_Block = new double[Math.max(1, blockSize)][numVariables];
+  }
+
+  /**
+   * Returns the number of variables.
+   *
+   * @return the number of variables
+   */
+  public int numVariables() {
+    return m_NumVariables;
+  }
+
+  /**
+   * Returns the number of observations that have been added.
+   *
+   * @return the number of observations
+   */
+  public long numObservations() {
+    return m_NumObservations + m_BlockCount;
+  }
+
+  /**
+   * Adds an observation.
+   *
+   * @param x the values of the variables
+   */
+  public void add(double[] x) {
+    System.arraycopy(x, 0, m_Block[m_BlockCount], 0, m_NumVariables);
+    m_BlockCount++;
+    if (m_BlockCount == m_Block.length) {
+      flush();
+    }
+  }
+
+  /**
+   * Merges the buffered observations into the statistics.
+   */
+  protected void flush() {
+    final int count = m_BlockCount;
+    if (count == 0) {
+      return;
+    }
+    final int n = m_NumVariables;
+    final double[][] block = m_Block;
+
+    // centre the block on its own mean
+    final double[] delta = new double[n];
+    for (int r = 0; r < count; r++) {
+      double[] row = block[r];
+      for (int j = 0; j < n; j++) {
+        delta[j] += row[j];
+      }
+    }
+    for (int j = 0; j < n; j++) {
+      delta[j] /= count;
+    }
+    for (int r = 0; r < count; r++) {
+      double[] row = block[r];
+      for (int j = 0; j < n; j++) {
+        row[j] -= delta[j];
+      }
+    }
+    for (int j = 0; j < n; j++) {
+      delta[j] -= m_Means[j];
+    }
+
+    long total = m_NumObservations + count;
+    double f = (double) count / total;
+    final double g = (double) m_NumObservations * count / total;
+
+    // row j of the upper triangle has n - j entries, so rows are processed
+    // in pairs from both ends to give every thread the same amount of work
+    Parallel.run(0, (n + 1) / 2, (long) (n + 1) * count, new Parallel.Task() {
+      @Override
+      public void run(int from, int to) {
+        for (int t = from; t < to; t++) {
+          updateRow(t, block, count, delta, g);
+          if (n - 1 - t != t) {
+            updateRow(n - 1 - t, block, count, delta, g);
+          }
+        }
+      }
+    });
+
+    for (int j = 0; j < n; j++) {
+      m_Means[j] += f * delta[j];
+    }
+    m_NumObservations = total;
+    m_BlockCount = 0;
+  }
+
+  /**
+   * Adds the co-moments of a centred block, and the correction for the
+   * difference of the means, to a row of the upper triangle.
+   *
+   * @param j the row
+   * @param block the centred observations
+   * @param count the number of observations in the block
+   * @param delta the difference between the block mean and the current means
+   * @param g the weight of the correction
+   */
+  protected void updateRow(int j, double[][] block, int count, double[] delta,
+    double g) {
+
+    double[] row = m_CoMoments[j];
+    int n = m_NumVariables;
+    for (int r = 0; r < count; r++) {
+      double[] x = block[r];
+      double d = x[j];
+      if (d == 0) {
+        continue;
+      }
+      for (int k = j; k < n; k++) {
+        row[k] += d * x[k];
+      }
+    }
+    double d = g * delta[j];
+    if (d != 0) {
+      for (int k = j; k < n; k++) {
+        row[k] += d * delta[k];
+      }
+    }
+  }
+
+  /**
+   * Merges the statistics of another (disjoint) set of observations into
+   * these statistics.
+   *
+   * @param toAggregate the statistics to merge
+   * @return these statistics
+   * @throws Exception if the number of variables differs
+   */
+  @Override
+  public CovarianceAccumulator aggregate(CovarianceAccumulator toAggregate)
+    throws Exception {
+    if (toAggregate.m_NumVariables != m_NumVariables) {
+      throw new Exception("Can't aggregate - number of variables differs: "
+        + m_NumVariables + " != " + toAggregate.m_NumVariables);
+    }
+
+    flush();
+    toAggregate.flush();
+    if (toAggregate.m_NumObservations == 0) {
+      return this;
+    }
+
+    int n = m_NumVariables;
+    long total = m_NumObservations + toAggregate.m_NumObservations;
+    double f = (double) toAggregate.m_NumObservations / total;
+    double g = (double) m_NumObservations * toAggregate.m_NumObservations
+      / total;
+    double[] delta = new double[n];
+    for (int j = 0; j < n; j++) {
+      delta[j] = toAggregate.m_Means[j] - m_Means[j];
+    }
+    for (int j = 0; j < n; j++) {
+      m_Means[j] += f * delta[j];
+      double[] row = m_CoMoments[j];
+      double[] otherRow = toAggregate.m_CoMoments[j];
+      double d = g * delta[j];
+      for (int k = j; k < n; k++) {
+        row[k] += otherRow[k] + d * delta[k];
+      }
+    }
+    m_NumObservations = total;
+
+    return this;
+  }
+
+  /**
+   * Merges any buffered observations into the statistics.
+   */
+  @Override
+  public void finalizeAggregation() {
+    flush();
+  }
+
+  /**
+   * Returns the mean of a variable.
+   *
+   * @param index the index of the variable
+   * @return the mean
+   */
+  public double mean(int index) {
+    flush();
+    return m_Means[index];
+  }
+
+  /**
+   * Returns the means of the variables.
+   *
+   * @return a new array with the means
+   */
+  public double[] getMeans() {
+    flush();
+    return m_Means.clone();
+  }
+
+  /**
+   * Returns the (unbiased) variance of a variable.
+   *
+   * @param index the index of the variable
+   * @return the variance
+   */
+  public double variance(int index) {
+    flush();
+    if (m_NumObservations <= 1) {
+      return 0;
+    }
+    return Math.max(0, m_CoMoments[index][index] / (m_NumObservations - 1));
+  }
+
+  /**
+   * Returns the standard deviations of the variables.
+   *
+   * @return a new array with the standard deviations
+   */
+  public double[] getStandardDeviations() {
+    double[] result = new double[m_NumVariables];
+    for (int j = 0; j < m_NumVariables; j++) {
+      result[j] = Math.sqrt(variance(j));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the (unbiased) covariance matrix.
+   *
+   * @return a new array with the covariances
+   */
+  public double[][] getCovariance() {
+    flush();
+    int n = m_NumVariables;
+    double[][] result = new double[n][n];
+    if (m_NumObservations <= 1) {
+      return result;
+    }
+    double scale = 1.0 / (m_NumObservations - 1);
+    for (int j = 0; j < n; j++) {
+      for (int k = j; k < n; k++) {
+        result[j][k] = m_CoMoments[j][k] * scale;
+        result[k][j] = result[j][k];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the correlation matrix. The diagonal is always one; the
+   * correlations of a variable with zero variance are zero.
+   *
+   * @return a new array with the correlations
+   */
+  public double[][] getCorrelation() {
+    flush();
+    int n = m_NumVariables;
+    double[] norms = new double[n];
+    for (int j = 0; j < n; j++) {
+      norms[j] = Math.sqrt(Math.max(0, m_CoMoments[j][j]));
+    }
+    double[][] result = new double[n][n];
+    for (int j = 0; j < n; j++) {
+      result[j][j] = 1.0;
+      for (int k = j + 1; k < n; k++) {
+        if (norms[j] > 0 && norms[k] > 0) {
+          result[j][k] = m_CoMoments[j][k] / (norms[j] * norms[k]);
+          result[k][j] = result[j][k];
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
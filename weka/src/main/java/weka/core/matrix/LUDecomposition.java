@@ -81,7 +81,8 @@ public class LUDecomposition
     }
     pivsign = 1;
     double[] LUrowi;
-    double[] LUcolj = new double[m];
+    final double[] LUcolj = new double[m];
+    final double[][] LU = this.LU;
 
     // Outer loop.
 
@@ -93,22 +94,40 @@ public class LUDecomposition
         LUcolj[i] = LU[i][j];
       }
 
-      // Apply previous transformations.
+      // Apply previous transformations. The rows above the diagonal
+      // depend on each other and are processed in order.
 
-      for (int i = 0; i < m; i++) {
+      int imax = Math.min(j, m);
+      for (int i = 0; i < imax; i++) {
         LUrowi = LU[i];
 
-        // Most of the time is spent in the following dot product.
-
-        int kmax = Math.min(i,j);
         double s = 0.0;
-        for (int k = 0; k < kmax; k++) {
+        for (int k = 0; k < i; k++) {
           s += LUrowi[k]*LUcolj[k];
         }
 
         LUrowi[j] = LUcolj[i] -= s;
       }
 
+      // The remaining rows only use the entries computed above and are
+      // independent, so they are processed in parallel for large matrices.
+      // Most of the time is spent in the following dot products.
+
+      final int col = j;
+      Parallel.run(imax, m, j, new Parallel.Task() {
+        @Override
+        public void run(int from, int to) {
+          for (int i = from; i < to; i++) {
+            double[] LUrowi = LU[i];
+            double s = 0.0;
+            for (int k = 0; k < col; k++) {
+              s += LUrowi[k]*LUcolj[k];
+            }
+            LUrowi[col] = LUcolj[i] -= s;
+          }
+        }
+      });
+
       // Find pivot and exchange if necessary.
 
       int p = j;
@@ -113,30 +113,35 @@ public class LinearRegression
   }
   
   /**
-   * Return aTa (a' * a)
+   * Return aTa (a' * a). The rows of a are swept once per block of rows of
+   * the result, and blocks are computed in parallel for large matrices.
    */
   private static Matrix aTa(Matrix a) {
-    int cols = a.getColumnDimension();
-    double[][] A = a.getArray();
+    final int cols = a.getColumnDimension();
+    final double[][] A = a.getArray();
     Matrix x = new Matrix(cols, cols);
-    double[][] X = x.getArray();
-    double[] Acol = new double[a.getRowDimension()];
-    for (int col1 = 0; col1 < cols; col1++) {
-      // cache the column for faster access later
-      for (int row = 0; row < Acol.length; row++) {
-        Acol[row] = A[row][col1];
-      }
-      // reference the row for faster lookup
-      double[] Xrow = X[col1];
-      for (int row = 0; row < Acol.length; row++) {
-        double[] Arow = A[row];
-        for (int col2 = col1; col2 < Xrow.length; col2++) {
-          Xrow[col2] += Acol[row] * Arow[col2];
+    final double[][] X = x.getArray();
+    Parallel.run(0, cols, (long) a.getRowDimension() * (cols + 1) / 2,
+      new Parallel.Task() {
+        @Override
+        public void run(int from, int to) {
+          for (int row = 0; row < A.length; row++) {
+            // reference the row for faster lookup
+            double[] Arow = A[row];
+            for (int col1 = from; col1 < to; col1++) {
+              double[] Xrow = X[col1];
+              double v = Arow[col1];
+              for (int col2 = col1; col2 < cols; col2++) {
+                Xrow[col2] += v * Arow[col2];
+              }
+            }
+          }
         }
-      }
-      // result is symmetric
-      for (int col2 = col1 + 1; col2 < Xrow.length; col2++) {
-        X[col2][col1] = Xrow[col2];
+      });
+    // result is symmetric
+    for (int col1 = 0; col1 < cols; col1++) {
+      for (int col2 = col1 + 1; col2 < cols; col2++) {
+        X[col2][col1] = X[col1][col2];
       }
     }
     return x;
@@ -905,7 +905,11 @@ public class Matrix implements Cloneable, Serializable, RevisionHandler {
   }
 
   /**
-   * Linear algebraic matrix multiplication, A * B
+   * Linear algebraic matrix multiplication, A * B. The product is computed
+   * block-wise (so that the blocks of B stay in cache) and, for large
+   * matrices, in parallel over panels of rows of the result (see
+   * {@link Parallel}). Each element is accumulated in the same order as the
+   * plain triple loop, so the result is identical.
    * 
    * @param B another matrix
    * @return Matrix product, A * B
@@ -916,24 +920,134 @@ public class Matrix implements Cloneable, Serializable, RevisionHandler {
       throw new IllegalArgumentException("Matrix inner dimensions must agree.");
     }
     Matrix X = new Matrix(m, B.n);
-    double[][] C = X.getArray();
-    double[] Bcolj = new double[n];
-    for (int j = 0; j < B.n; j++) {
-      for (int k = 0; k < n; k++) {
-        Bcolj[k] = B.A[k][j];
+    final double[][] C = X.getArray();
+    final double[][] BA = B.A;
+    final int inner = n;
+    final int cols = B.n;
+    Parallel.run(0, m, (long) inner * cols, new Parallel.Task() {
+      @Override
+      public void run(int from, int to) {
+        multiplyRows(A, BA, C, from, to, inner, cols);
       }
-      for (int i = 0; i < m; i++) {
-        double[] Arowi = A[i];
-        double s = 0;
-        for (int k = 0; k < n; k++) {
-          s += Arowi[k] * Bcolj[k];
+    });
+    return X;
+  }
+
+  /**
+   * Linear algebraic matrix multiplication, A' * B, without forming the
+   * transpose of A. Gives the same result as transpose().times(B).
+   * 
+   * @param B another matrix
+   * @return Matrix product, A' * B
+   * @throws IllegalArgumentException Matrix row dimensions must agree.
+   */
+  public Matrix transposeTimes(Matrix B) {
+    if (B.m != m) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+    Matrix X = new Matrix(n, B.n);
+    final double[][] C = X.getArray();
+    final double[][] BA = B.A;
+    final int rows = m;
+    final int cols = B.n;
+    Parallel.run(0, n, (long) rows * cols, new Parallel.Task() {
+      @Override
+      public void run(int from, int to) {
+        // k outermost: rows of A and B are read once per block of C
+        for (int k = 0; k < rows; k++) {
+          double[] Arowk = A[k];
+          double[] Browk = BA[k];
+          for (int i = from; i < to; i++) {
+            double a = Arowk[i];
+            double[] Crowi = C[i];
+            for (int j = 0; j < cols; j++) {
+              Crowi[j] += a * Browk[j];
+            }
+          }
         }
-        C[i][j] = s;
       }
+    });
+    return X;
+  }
+
+  /**
+   * Linear algebraic matrix multiplication, A * B', without forming the
+   * transpose of B. Gives the same result as times(B.transpose()).
+   * 
+   * @param B another matrix
+   * @return Matrix product, A * B'
+   * @throws IllegalArgumentException Matrix column dimensions must agree.
+   */
+  public Matrix timesTranspose(Matrix B) {
+    if (B.n != n) {
+      throw new IllegalArgumentException(
+        "Matrix column dimensions must agree.");
     }
+    Matrix X = new Matrix(m, B.m);
+    final double[][] C = X.getArray();
+    final double[][] BA = B.A;
+    final int inner = n;
+    final int cols = B.m;
+    Parallel.run(0, m, (long) inner * cols, new Parallel.Task() {
+      @Override
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          double[] Arowi = A[i];
+          double[] Crowi = C[i];
+          for (int j = 0; j < cols; j++) {
+            double[] Browj = BA[j];
+            double s = 0;
+            for (int k = 0; k < inner; k++) {
+              s += Arowi[k] * Browj[k];
+            }
+            Crowi[j] = s;
+          }
+        }
+      }
+    });
     return X;
   }
 
+  /** Size of the blocks used by multiplyRows() */
+  protected static final int BLOCK_SIZE = 64;
+
+  /**
+   * Adds the product of the rows from (inclusive) to to (exclusive) of A with
+   * B to the corresponding rows of C. The loops are blocked over the inner
+   * and the column dimension; the blocks of the inner dimension are visited
+   * in ascending order, so every element of C receives its terms in the same
+   * order as with a plain dot product.
+   * 
+   * @param A the left operand
+   * @param B the right operand
+   * @param C the result, initialized to zero
+   * @param from the first row to compute
+   * @param to one past the last row to compute
+   * @param inner the inner dimension
+   * @param cols the number of columns of B and C
+   */
+  protected static void multiplyRows(double[][] A, double[][] B,
+    double[][] C, int from, int to, int inner, int cols) {
+
+    for (int kk = 0; kk < inner; kk += BLOCK_SIZE) {
+      int kEnd = Math.min(kk + BLOCK_SIZE, inner);
+      for (int jj = 0; jj < cols; jj += BLOCK_SIZE) {
+        int jEnd = Math.min(jj + BLOCK_SIZE, cols);
+        for (int i = from; i < to; i++) {
+          double[] Arowi = A[i];
+          double[] Crowi = C[i];
+          for (int k = kk; k < kEnd; k++) {
+            double a = Arowi[k];
+            double[] Browk = B[k];
+            for (int j = jj; j < jEnd; j++) {
+              Crowi[j] += a * Browk[j];
+            }
+          }
+        }
+      }
+    }
+  }
+
   /**
    * LU Decomposition
    * 
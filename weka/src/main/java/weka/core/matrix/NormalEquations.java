@@ -0,0 +1,347 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    NormalEquations.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.io.Serializable;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Accumulates the sufficient statistics of a weighted least-squares problem:
+ * the sum of weights, the weighted means of the predictors and the target,
+ * and the matrix of centred cross-products (co-moments) of predictors and
+ * target, i.e. X'WX and X'Wy for the centred data. Observations are added one
+ * at a time, so the data never needs to be held in memory, and the statistics
+ * of two disjoint sets of observations can be merged (e.g. when they were
+ * collected by different threads or map tasks). The co-moments are updated
+ * with the numerically stable pairwise formulas rather than by accumulating
+ * raw sums of squares.
+ * <p/>
+ *
+ * Least-squares (ridge) solutions for any subset of the predictors can then
+ * be computed from the statistics with a Cholesky decomposition, without
+ * another pass over the data.
+ *
+ * @version $Revision$
+ */
+public class NormalEquations implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -2385394577381617036L;
+
+  /** the number of predictors */
+  protected int m_NumVariables;
+
+  /** the number of observations added */
+  protected long m_NumObservations;
+
+  /** the sum of the weights of the observations */
+  protected double m_SumOfWeights;
+
+  /** the weighted means of the predictors, the target is last */
+  protected double[] m_Means;
+
+  /** the co-moments (only the upper triangle is used), the target is last */
+  protected double[][] m_CoMoments;
+
+  /** scratch space for the deviations from the means */
+  protected transient double[] m_Delta;
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param numVariables the number of predictors
+   */
+  public NormalEquations(int numVariables) {
+    m_NumVariables = numVariables;
+    m_Means = new double[numVariables + 1];
+    m_CoMoments = new double[numVariables + 1][numVariables + 1];
+  }
+
+  /**
+   * Returns the number of predictors.
+   *
+   * @return the number of predictors
+   */
+  public int numVariables() {
+    return m_NumVariables;
+  }
+
+  /**
+   * Returns the number of observations that have been added.
+   *
+   * @return the number of observations
+   */
+  public long numObservations() {
+    return m_NumObservations;
+  }
+
+  /**
+   * Returns the sum of the weights of the observations.
+   *
+   * @return the sum of weights
+   */
+  public double sumOfWeights() {
+    return m_SumOfWeights;
+  }
+
+  /**
+   * Adds an observation.
+   *
+   * @param x the values of the predictors
+   * @param y the value of the target
+   * @param weight the weight of the observation
+   */
+  public void add(double[] x, double y, double weight) {
+    m_NumObservations++;
+    if (weight <= 0) {
+      return;
+    }
+
+    int n = m_NumVariables + 1;
+    if (m_Delta == null) {
+      m_Delta = new double[n];
+    }
+    double[] delta = m_Delta;
+    for (int j = 0; j < m_NumVariables; j++) {
+      delta[j] = x[j] - m_Means[j];
+    }
+    delta[m_NumVariables] = y - m_Means[m_NumVariables];
+
+    double sumOfWeights = m_SumOfWeights + weight;
+    double f = weight / sumOfWeights;
+    double g = weight * m_SumOfWeights / sumOfWeights;
+    for (int j = 0; j < n; j++) {
+      m_Means[j] += f * delta[j];
+      double[] row = m_CoMoments[j];
+      double d = g * delta[j];
+      for (int k = j; k < n; k++) {
+        row[k] += d * delta[k];
+      }
+    }
+    m_SumOfWeights = sumOfWeights;
+  }
+
+  /**
+   * Merges the statistics of another (disjoint) set of observations into
+   * these statistics.
+   *
+   * @param other the statistics to merge
+   * @throws IllegalArgumentException if the number of predictors differs
+   */
+  public void add(NormalEquations other) {
+    if (other.m_NumVariables != m_NumVariables) {
+      throw new IllegalArgumentException("Number of variables differs: "
+        + m_NumVariables + " != " + other.m_NumVariables);
+    }
+
+    m_NumObservations += other.m_NumObservations;
+    if (other.m_SumOfWeights <= 0) {
+      return;
+    }
+
+    int n = m_NumVariables + 1;
+    double sumOfWeights = m_SumOfWeights + other.m_SumOfWeights;
+    double f = other.m_SumOfWeights / sumOfWeights;
+    double g = m_SumOfWeights * other.m_SumOfWeights / sumOfWeights;
+    double[] delta = new double[n];
+    for (int j = 0; j < n; j++) {
+      delta[j] = other.m_Means[j] - m_Means[j];
+    }
+    for (int j = 0; j < n; j++) {
+      m_Means[j] += f * delta[j];
+      double[] row = m_CoMoments[j];
+      double[] otherRow = other.m_CoMoments[j];
+      double d = g * delta[j];
+      for (int k = j; k < n; k++) {
+        row[k] += otherRow[k] + d * delta[k];
+      }
+    }
+    m_SumOfWeights = sumOfWeights;
+  }
+
+  /**
+   * Returns the weighted mean of a predictor.
+   *
+   * @param index the index of the predictor
+   * @return the mean
+   */
+  public double mean(int index) {
+    return m_Means[index];
+  }
+
+  /**
+   * Returns the weighted variance of a predictor (with the same denominator
+   * as Instances.variance()).
+   *
+   * @param index the index of the predictor
+   * @return the variance
+   */
+  public double variance(int index) {
+    if (m_SumOfWeights <= 1) {
+      return 0;
+    }
+    return Math.max(0, m_CoMoments[index][index] / (m_SumOfWeights - 1));
+  }
+
+  /**
+   * Returns the weighted mean of the target.
+   *
+   * @return the mean
+   */
+  public double targetMean() {
+    return m_Means[m_NumVariables];
+  }
+
+  /**
+   * Returns the weighted variance of the target.
+   *
+   * @return the variance
+   */
+  public double targetVariance() {
+    return variance(m_NumVariables);
+  }
+
+  /**
+   * Returns a co-moment, i.e. the weighted sum of the products of the
+   * deviations from the means. The target has index numVariables().
+   *
+   * @param i the first index
+   * @param j the second index
+   * @return the co-moment
+   */
+  public double coMoment(int i, int j) {
+    return (i <= j) ? m_CoMoments[i][j] : m_CoMoments[j][i];
+  }
+
+  /**
+   * Returns the indices of the selected predictors.
+   *
+   * @param selected flags for the predictors to use
+   * @return the indices
+   */
+  protected int[] indices(boolean[] selected) {
+    int count = 0;
+    for (int j = 0; j < m_NumVariables; j++) {
+      if (selected[j]) {
+        count++;
+      }
+    }
+    int[] result = new int[count];
+    count = 0;
+    for (int j = 0; j < m_NumVariables; j++) {
+      if (selected[j]) {
+        result[count++] = j;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the ridge regression of the target on the selected predictors,
+   * after centring and dividing the predictors by the given scale factors.
+   * If the (ridged) cross-product matrix is not positive definite, the ridge
+   * parameter is increased by a factor of ten until it is.
+   *
+   * @param selected flags for the predictors to use
+   * @param scale the scale factors for the predictors, null for none
+   * @param ridge the ridge parameter
+   * @return the coefficients of the selected predictors (in the scaled space;
+   *         the intercept is the mean of the target)
+   * @throws IllegalArgumentException if no solution can be found
+   */
+  public double[] solve(boolean[] selected, double[] scale, double ridge) {
+    int[] indices = indices(selected);
+    int num = indices.length;
+    Matrix ss = new Matrix(num, num);
+    Matrix bb = new Matrix(num, 1);
+    double[][] S = ss.getArray();
+    double[][] B = bb.getArray();
+    for (int a = 0; a < num; a++) {
+      double sa = (scale == null) ? 1 : scale[indices[a]];
+      for (int b = a; b < num; b++) {
+        double sb = (scale == null) ? 1 : scale[indices[b]];
+        S[a][b] = S[b][a] = coMoment(indices[a], indices[b]) / (sa * sb);
+      }
+      B[a][0] = coMoment(indices[a], m_NumVariables) / sa;
+    }
+
+    while (true) {
+      Matrix ssWithRidge = ss.copy();
+      for (int a = 0; a < num; a++) {
+        ssWithRidge.set(a, a, ssWithRidge.get(a, a) + ridge);
+      }
+      CholeskyDecomposition chol = new CholeskyDecomposition(ssWithRidge);
+      if (chol.isSPD()) {
+        Matrix solution = chol.solve(bb);
+        double[] result = new double[num];
+        for (int a = 0; a < num; a++) {
+          result[a] = solution.get(a, 0);
+        }
+        return result;
+      }
+      ridge = (ridge > 0) ? ridge * 10 : 1.0e-8;
+      if (Double.isInfinite(ridge)) {
+        throw new IllegalArgumentException(
+          "Cross-product matrix cannot be made positive definite!");
+      }
+    }
+  }
+
+  /**
+   * Computes the weighted sum of squared errors of a linear model on the
+   * observations from the statistics.
+   *
+   * @param selected flags for the predictors used by the model
+   * @param coefficients the coefficients of the selected predictors (in the
+   *          original scale), followed by the intercept
+   * @return the weighted sum of squared errors
+   */
+  public double squaredError(boolean[] selected, double[] coefficients) {
+    int[] indices = indices(selected);
+    int num = indices.length;
+    double result = coMoment(m_NumVariables, m_NumVariables);
+    double offset = targetMean() - coefficients[num];
+    for (int a = 0; a < num; a++) {
+      double ca = coefficients[a];
+      result -= 2 * ca * coMoment(indices[a], m_NumVariables);
+      result += ca * ca * coMoment(indices[a], indices[a]);
+      for (int b = a + 1; b < num; b++) {
+        result += 2 * ca * coefficients[b] * coMoment(indices[a], indices[b]);
+      }
+      offset -= ca * m_Means[indices[a]];
+    }
+    result += m_SumOfWeights * offset * offset;
+
+    return Math.max(0, result);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    Parallel.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Shares loops of the matrix routines out over a pool of daemon threads. A
+ * loop is only split if the total amount of work is large enough to outweigh
+ * the cost of handing it to the pool; small matrices are always processed on
+ * the calling thread. Every task computes a disjoint set of entries in exactly
+ * the same order as the sequential code, so the results do not depend on the
+ * number of threads.
+ * <p/>
+ *
+ * The number of threads defaults to 1, i.e., no parallelism, and can be set
+ * with the system property <code>weka.core.matrix.numThreads</code> or with
+ * setNumThreads(). Changing the number of threads while loops are running is
+ * safe: the running loops finish on the pool they started with, which is only
+ * shut down afterwards.
+ *
+ * @version $Revision$
+ */
+public final class Parallel implements RevisionHandler {
+
+  /**
+   * The minimum number of (multiply-add) operations for which a loop is split
+   * across threads.
+   */
+  public static final long MIN_PARALLEL_WORK = 1L << 16;
+
+  /** The number of threads to use */
+  private static int m_numThreads = defaultNumThreads();
+
+  /** The current thread pool (created on demand) */
+  private static Pool m_pool;
+
+  /** Marks the threads of the pool so that nested loops run inline */
+  private static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<Boolean>();
+
+  /**
+   * The body of a loop over a range of indices.
+   */
+  public interface Task {
+
+    /**
+     * Processes the indices from (inclusive) to to (exclusive).
+     *
+     * @param from the first index
+     * @param to one past the last index
+     */
+    void run(int from, int to);
+  }
+
+  /**
+   * A thread pool and the number of loops that are using it.
+   */
+  private static final class Pool {
+
+    /** The threads */
+    final ExecutorService m_executor;
+
+    /** The number of loops using the pool */
+    int m_users;
+
+    /** Whether the pool has been replaced and has to be shut down when unused */
+    boolean m_retired;
+
+    /**
+     * Creates a pool.
+     *
+     * @param numThreads the number of threads
+     */
+    Pool(int numThreads) {
+      m_executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(final Runnable r) {
+            Thread t = new Thread(new Runnable() {
+              @Override
+              public void run() {
+                IN_POOL.set(Boolean.TRUE);
+                r.run();
+              }
+            }, "weka.core.matrix.Parallel");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+  }
+
+  /** Not to be instantiated */
+  private Parallel() {
+  }
+
+  /**
+   * Determines the default number of threads.
+   *
+   * @return the number of threads
+   */
+  private static int defaultNumThreads() {
+    int num = 1;
+    try {
+      String prop = System.getProperty("weka.core.matrix.numThreads");
+      if (prop != null && prop.trim().length() > 0) {
+        num = Integer.parseInt(prop.trim());
+      }
+    } catch (Exception ex) {
+      // ignore and use the default
+    }
+    return Math.max(1, num);
+  }
+
+  /**
+   * Sets the number of threads the matrix routines may use. Loops that are
+   * running keep the pool they started with.
+   *
+   * @param num the number of threads (1 turns parallel processing off)
+   */
+  public static synchronized void setNumThreads(int num) {
+    num = Math.max(1, num);
+    if (num != m_numThreads && m_pool != null) {
+      m_pool.m_retired = true;
+      if (m_pool.m_users == 0) {
+        m_pool.m_executor.shutdown();
+      }
+      m_pool = null;
+    }
+    m_numThreads = num;
+  }
+
+  /**
+   * Gets the number of threads the matrix routines may use.
+   *
+   * @return the number of threads
+   */
+  public static synchronized int getNumThreads() {
+    return m_numThreads;
+  }
+
+  /**
+   * Returns the current thread pool, creating it if necessary, and registers
+   * the caller as a user. Has to be followed by a call to release().
+   *
+   * @return the pool
+   */
+  private static synchronized Pool acquirePool() {
+    if (m_pool == null) {
+      m_pool = new Pool(m_numThreads);
+    }
+    m_pool.m_users++;
+    return m_pool;
+  }
+
+  /**
+   * Deregisters a user of a pool, shutting the pool down if it has been
+   * replaced and this was the last user.
+   *
+   * @param pool the pool
+   */
+  private static synchronized void release(Pool pool) {
+    pool.m_users--;
+    if (pool.m_retired && pool.m_users == 0) {
+      pool.m_executor.shutdown();
+    }
+  }
+
+  /**
+   * Runs the task over the indices from start (inclusive) to end (exclusive),
+   * splitting the range into contiguous chunks that are processed concurrently
+   * if the amount of work warrants it.
+   *
+   * @param start the first index
+   * @param end one past the last index
+   * @param workPerIndex a rough estimate of the number of operations per index
+   * @param task the loop body
+   */
+  public static void run(int start, int end, long workPerIndex,
+    final Task task) {
+
+    int n = end - start;
+    if (n <= 0) {
+      return;
+    }
+    int numThreads = getNumThreads();
+    if (numThreads <= 1 || n < 2 || (long) n * workPerIndex < MIN_PARALLEL_WORK
+      || IN_POOL.get() != null) {
+      task.run(start, end);
+      return;
+    }
+
+    int numChunks = Math.min(n, numThreads);
+    int chunkSize = n / numChunks;
+    int remainder = n % numChunks;
+    List<Future<Object>> results = new ArrayList<Future<Object>>(numChunks);
+    Pool pool = acquirePool();
+    try {
+      int from = start;
+      for (int i = 0; i < numChunks; i++) {
+        final int lo = from;
+        final int hi = lo + chunkSize + (i < remainder ? 1 : 0);
+        from = hi;
+        results.add(pool.m_executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() {
+            task.run(lo, hi);
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Object> f : results) {
+        f.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      release(pool);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
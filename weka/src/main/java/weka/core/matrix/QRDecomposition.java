@@ -90,22 +90,52 @@ public class QRDecomposition
         }
         QR[k][k] += 1.0;
 
-        // Apply transformation to remaining columns.
-        for (int j = k+1; j < n; j++) {
-          double s = 0.0; 
-          for (int i = k; i < m; i++) {
-            s += QR[i][k]*QR[i][j];
-          }
-          s = -s/QR[k][k];
-          for (int i = k; i < m; i++) {
-            QR[i][j] += s*QR[i][k];
+        // Apply transformation to remaining columns. The columns are
+        // updated a block at a time, sweeping along the rows of QR rather
+        // than down its columns; blocks are processed in parallel for large
+        // matrices (see Parallel).
+        final int col = k;
+        Parallel.run(k+1, n, 2L * (m - k), new Parallel.Task() {
+          @Override
+          public void run(int from, int to) {
+            applyHouseholder(col, from, to);
           }
-        }
+        });
       }
       Rdiag[k] = -nrm;
     }
   }
 
+  /**
+   * Applies the k-th Householder reflection to the columns from (inclusive)
+   * to to (exclusive). Each column accumulates its terms in the same order
+   * as with the column-wise loops.
+   *
+   * @param k		the index of the reflection
+   * @param from	the first column to update
+   * @param to		one past the last column to update
+   */
+  private void applyHouseholder(int k, int from, int to) {
+    double[] s = new double[to - from];
+    for (int i = k; i < m; i++) {
+      double[] QRrowi = QR[i];
+      double q = QRrowi[k];
+      for (int j = from; j < to; j++) {
+        s[j - from] += q*QRrowi[j];
+      }
+    }
+    for (int j = from; j < to; j++) {
+      s[j - from] = -s[j - from]/QR[k][k];
+    }
+    for (int i = k; i < m; i++) {
+      double[] QRrowi = QR[i];
+      double q = QRrowi[k];
+      for (int j = from; j < to; j++) {
+        QRrowi[j] += s[j - from]*q;
+      }
+    }
+  }
+
   /** 
    * Is the matrix full rank?
    * @return     true if R, and hence A, has full rank.
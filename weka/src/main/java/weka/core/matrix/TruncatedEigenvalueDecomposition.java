@@ -0,0 +1,162 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TruncatedEigenvalueDecomposition.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Computes the eigenvectors belonging to the k largest eigenvalues of a
+ * symmetric positive semi-definite matrix (e.g. a covariance matrix) with the
+ * randomized range finder of Halko, Martinsson and Tropp: the matrix is
+ * applied to a random Gaussian block of k + oversampling vectors, a few power
+ * iterations sharpen the resulting subspace, and the full eigenvalue
+ * decomposition is only computed for the projection of the matrix onto that
+ * subspace. For an n x n matrix this costs O(n^2 k) operations instead of the
+ * O(n^3) of EigenvalueDecomposition. If the subspace would span (almost) the
+ * whole space, the exact decomposition is used instead.
+ * <p/>
+ *
+ * Like EigenvalueDecomposition, the eigenvalues are returned in ascending
+ * order, and column i of V is the eigenvector of eigenvalue i.
+ *
+ * @version $Revision$
+ */
+public class TruncatedEigenvalueDecomposition implements Serializable,
+  RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -1480930981187424562L;
+
+  /** the default number of additional random vectors */
+  public static final int DEFAULT_OVERSAMPLING = 10;
+
+  /** the default number of power iterations */
+  public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+  /** the eigenvalues */
+  protected double[] m_Eigenvalues;
+
+  /** the eigenvectors (as columns) */
+  protected Matrix m_V;
+
+  /**
+   * Computes the decomposition with the default oversampling and number of
+   * power iterations.
+   *
+   * @param A the symmetric positive semi-definite matrix
+   * @param k the number of eigenvectors to compute
+   * @param random the random number generator for the initial subspace
+   */
+  public TruncatedEigenvalueDecomposition(Matrix A, int k, Random random) {
+    this(A, k, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, random);
+  }
+
+  /**
+   * Computes the decomposition.
+   *
+   * @param A the symmetric positive semi-definite matrix
+   * @param k the number of eigenvectors to compute
+   * @param oversampling the number of additional random vectors
+   * @param powerIterations the number of power iterations
+   * @param random the random number generator for the initial subspace
+   * @throws IllegalArgumentException if the matrix is not square or k is not
+   *           positive
+   */
+  public TruncatedEigenvalueDecomposition(Matrix A, int k, int oversampling,
+    int powerIterations, Random random) {
+
+    int n = A.getRowDimension();
+    if (n != A.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix must be square!");
+    }
+    if (k < 1) {
+      throw new IllegalArgumentException(
+        "Number of eigenvectors must be positive!");
+    }
+    k = Math.min(k, n);
+    int l = k + Math.max(0, oversampling);
+
+    Matrix U;
+    double[] d;
+    if (2 * l >= n) {
+      EigenvalueDecomposition eig = A.eig();
+      U = eig.getV();
+      d = eig.getRealEigenvalues();
+    } else {
+      // basis of the range of A, from a random Gaussian block
+      Matrix Omega = new Matrix(n, l);
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < l; j++) {
+          Omega.set(i, j, random.nextGaussian());
+        }
+      }
+      Matrix Q = A.times(Omega).qr().getQ();
+      for (int i = 0; i < powerIterations; i++) {
+        Q = A.times(Q).qr().getQ();
+      }
+
+      // decompose the projection onto the subspace and map back
+      Matrix B = Q.transposeTimes(A.times(Q));
+      B = B.plus(B.transpose()).timesEquals(0.5);
+      EigenvalueDecomposition eig = B.eig();
+      U = Q.times(eig.getV());
+      d = eig.getRealEigenvalues();
+    }
+
+    // keep the k largest (the last k, as the eigenvalues are ascending)
+    int first = d.length - k;
+    m_Eigenvalues = new double[k];
+    System.arraycopy(d, first, m_Eigenvalues, 0, k);
+    m_V = U.getMatrix(0, n - 1, first, d.length - 1);
+  }
+
+  /**
+   * Returns the eigenvector matrix, with one column per eigenvector.
+   *
+   * @return the n x k matrix of eigenvectors
+   */
+  public Matrix getV() {
+    return m_V;
+  }
+
+  /**
+   * Returns the eigenvalues in ascending order.
+   *
+   * @return the k largest eigenvalues
+   */
+  public double[] getRealEigenvalues() {
+    return m_Eigenvalues;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
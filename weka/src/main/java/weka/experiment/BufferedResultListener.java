@@ -0,0 +1,191 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    BufferedResultListener.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Collects the results of one iteration of an experiment that runs on its own
+ * thread, and forwards them to the actual ResultListener when the iteration's
+ * turn comes. This way the actual listener receives the results in the same
+ * order as in a sequential run, and never has to deal with more than one
+ * thread at a time: all calls to it are synchronized on the listener. As the
+ * iteration runs on a copy of the experiment's result producer, all calls are
+ * made on behalf of the experiment's own producer, which is the one the
+ * listener was prepared for. Before a buffered result is forwarded, the
+ * listener is asked again whether it still requires the result, so a key that
+ * has been delivered by an earlier iteration in the meantime is not accepted
+ * twice.
+ * <p/>
+ *
+ * The listener's preProcess() and postProcess() methods are not forwarded,
+ * these are left to the experiment.
+ *
+ * @version $Revision$
+ */
+public class BufferedResultListener implements ResultListener,
+  RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -6219795006734346813L;
+
+  /** the listener to forward the results to */
+  protected ResultListener m_Listener;
+
+  /** the result producer the listener was prepared for */
+  protected ResultProducer m_ResultProducer;
+
+  /** the keys of the buffered results */
+  protected List<Object[]> m_Keys = new ArrayList<Object[]>();
+
+  /** the buffered results */
+  protected List<Object[]> m_Results = new ArrayList<Object[]>();
+
+  /**
+   * Initializes the buffer.
+   *
+   * @param listener the listener to forward the results to
+   * @param producer the result producer the listener was prepared for
+   */
+  public BufferedResultListener(ResultListener listener,
+    ResultProducer producer) {
+    m_Listener = listener;
+    m_ResultProducer = producer;
+  }
+
+  /**
+   * Returns the listener the results are forwarded to.
+   *
+   * @return the listener
+   */
+  public ResultListener getResultListener() {
+    return m_Listener;
+  }
+
+  /**
+   * Determines the constraints of the actual listener.
+   *
+   * @param rp the ResultProducer to which the constraints will apply
+   * @return the constraints of the actual listener
+   * @throws Exception if an error occurs
+   */
+  @Override
+  public String[] determineColumnConstraints(ResultProducer rp)
+    throws Exception {
+    synchronized (m_Listener) {
+      return m_Listener.determineColumnConstraints(m_ResultProducer);
+    }
+  }
+
+  /**
+   * Does nothing, the experiment prepares the actual listener.
+   *
+   * @param rp the ResultProducer that will generate the results
+   */
+  @Override
+  public void preProcess(ResultProducer rp) {
+  }
+
+  /**
+   * Does nothing, the experiment finishes the actual listener.
+   *
+   * @param rp the ResultProducer that generated the results
+   */
+  @Override
+  public void postProcess(ResultProducer rp) {
+  }
+
+  /**
+   * Buffers a result until flush() is called.
+   *
+   * @param rp the ResultProducer that generated the results
+   * @param key the key of the result
+   * @param result the result
+   */
+  @Override
+  public synchronized void acceptResult(ResultProducer rp, Object[] key,
+    Object[] result) {
+    m_Keys.add(key);
+    m_Results.add(result);
+  }
+
+  /**
+   * Asks the actual listener whether a result is required.
+   *
+   * @param rp the ResultProducer wanting to generate the results
+   * @param key the key of the result
+   * @return true if the result should be generated
+   * @throws Exception if it could not be determined if the result is needed
+   */
+  @Override
+  public boolean isResultRequired(ResultProducer rp, Object[] key)
+    throws Exception {
+    synchronized (m_Listener) {
+      return m_Listener.isResultRequired(m_ResultProducer, key);
+    }
+  }
+
+  /**
+   * Returns the number of buffered results.
+   *
+   * @return the number of results
+   */
+  public synchronized int size() {
+    return m_Keys.size();
+  }
+
+  /**
+   * Forwards the buffered results, in the order in which they were accepted,
+   * to the actual listener and empties the buffer.
+   *
+   * @throws Exception if the listener can't accept a result
+   */
+  public synchronized void flush() throws Exception {
+    try {
+      synchronized (m_Listener) {
+        for (int i = 0; i < m_Keys.size(); i++) {
+          Object[] key = m_Keys.get(i);
+          if (m_Listener.isResultRequired(m_ResultProducer, key)) {
+            m_Listener.acceptResult(m_ResultProducer, key, m_Results.get(i));
+          }
+        }
+      }
+    } finally {
+      m_Keys.clear();
+      m_Results.clear();
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
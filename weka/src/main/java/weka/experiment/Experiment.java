@@ -35,7 +35,14 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.DefaultListModel;
 
@@ -45,6 +52,7 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
 import weka.core.Utils;
 import weka.core.converters.AbstractFileLoader;
 import weka.core.converters.ConverterUtils;
@@ -96,6 +104,13 @@ import weka.experiment.xml.XMLExperiment;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for running the iterations
+ *  of the experiment in parallel.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * Options specific to result producer weka.experiment.RandomSplitResultProducer:
  * </pre>
  * 
@@ -233,6 +248,12 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
    */
   protected boolean m_AdvanceDataSetFirst = true;
 
+  /**
+   * The number of iterations (dataset, run and custom property value) to run
+   * in parallel
+   */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * Sets whether the first attribute is treated as the class for all datasets
    * involved in the experiment. This information is not output with the result
@@ -367,6 +388,67 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
   protected transient Instances m_CurrentInstances;
   /** The custom property value that has actually been set */
   protected transient int m_CurrentProperty;
+  /** The thread pool for running iterations in parallel */
+  protected transient ExecutorService m_ExecutorPool;
+  /** The iterations that have been started, in the order they were started */
+  protected transient LinkedList<ParallelIteration> m_PendingIterations;
+  /**
+   * True if the iteration that failed in nextIteration() has already been
+   * counted, so that advanceCounters() must not skip another one
+   */
+  protected transient boolean m_IterationCounted;
+  /**
+   * True if the iterations are run serially despite several execution slots,
+   * because the result producer saves raw output
+   */
+  protected transient boolean m_RunSerially;
+
+  /**
+   * An iteration of the experiment that runs on a copy of the result
+   * producer, with its results being buffered until it is the iteration's
+   * turn to deliver them.
+   */
+  protected static class ParallelIteration implements Callable<Void> {
+
+    /** the copy of the result producer */
+    protected ResultProducer m_Producer;
+
+    /** the buffer for the results */
+    protected BufferedResultListener m_Results;
+
+    /** the run number */
+    protected int m_Run;
+
+    /** the outcome of the iteration */
+    protected Future<Void> m_Future;
+
+    /**
+     * Initializes the iteration.
+     * 
+     * @param producer the copy of the result producer
+     * @param results the buffer for the results, already registered with the
+     *          producer
+     * @param run the run number
+     */
+    public ParallelIteration(ResultProducer producer,
+      BufferedResultListener results, int run) {
+      m_Producer = producer;
+      m_Results = results;
+      m_Run = run;
+    }
+
+    /**
+     * Generates the results of the iteration.
+     * 
+     * @return null
+     * @throws Exception if the results can't be generated
+     */
+    @Override
+    public Void call() throws Exception {
+      m_Producer.doRun(m_Run);
+      return null;
+    }
+  }
 
   /**
    * When an experiment is running, this returns the current run number.
@@ -403,6 +485,7 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
    */
   public void initialize() throws Exception {
 
+    shutdownParallelIterations();
     m_RunNumber = getRunLower();
     m_DatasetNumber = 0;
     m_PropertyNumber = 0;
@@ -425,6 +508,15 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
       throw new Exception("No ResultListener set");
     }
 
+    // the copies of the result producer would all write their raw output
+    // to the same file
+    m_RunSerially = (m_NumExecutionSlots > 1)
+      && savesRawOutput(m_ResultProducer);
+    if (m_RunSerially) {
+      System.err.println("Raw output is saved, running the iterations "
+        + "serially.");
+    }
+
     // if (m_UsePropertyIterator && (m_PropertyArray != null)) {
     determineAdditionalResultMeasures();
     // }
@@ -443,6 +535,36 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
     }
   }
 
+  /**
+   * Checks whether a result producer, or a result producer it wraps, saves
+   * the raw output of its split evaluator (via a getRawOutput() property).
+   * 
+   * @param producer the result producer to check
+   * @return true if raw output is saved
+   */
+  protected static boolean savesRawOutput(ResultProducer producer) {
+    try {
+      Method getter = producer.getClass().getMethod("getRawOutput");
+      if (Boolean.TRUE.equals(getter.invoke(producer))) {
+        return true;
+      }
+    } catch (Exception ex) {
+      // no raw output
+    }
+
+    try {
+      Method getter = producer.getClass().getMethod("getResultProducer");
+      Object wrapped = getter.invoke(producer);
+      if (wrapped instanceof ResultProducer) {
+        return savesRawOutput((ResultProducer) wrapped);
+      }
+    } catch (Exception ex) {
+      // doesn't wrap a result producer
+    }
+
+    return false;
+  }
+
   /**
    * Iterate over the objects in the property array to determine what (if any)
    * additional measures they support
@@ -537,7 +659,8 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
    */
   public boolean hasMoreIterations() {
 
-    return !m_Finished;
+    return !m_Finished
+      || (m_PendingIterations != null && !m_PendingIterations.isEmpty());
   }
 
   /**
@@ -547,6 +670,11 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
    */
   public void nextIteration() throws Exception {
 
+    if ((m_NumExecutionSlots > 1) && !m_RunSerially) {
+      nextParallelIteration();
+      return;
+    }
+
     if (m_UsePropertyIterator) {
       if (m_CurrentProperty != m_PropertyNumber) {
         setProperty(0, m_ResultProducer);
@@ -555,19 +683,7 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
     }
 
     if (m_CurrentInstances == null) {
-      File currentFile = (File) getDatasets().elementAt(m_DatasetNumber);
-      AbstractFileLoader loader = ConverterUtils.getLoaderForFile(currentFile);
-      loader.setFile(currentFile);
-      Instances data = new Instances(loader.getDataSet());
-      // only set class attribute if not already done by loader
-      if (data.classIndex() == -1) {
-        if (m_ClassFirst) {
-          data.setClassIndex(0);
-        } else {
-          data.setClassIndex(data.numAttributes() - 1);
-        }
-      }
-      m_CurrentInstances = data;
+      m_CurrentInstances = loadCurrentDataset();
       m_ResultProducer.setInstances(m_CurrentInstances);
     }
 
@@ -576,11 +692,168 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
     advanceCounters();
   }
 
+  /**
+   * Carries out a single, given iteration of the experiment, sending the
+   * results to the given listener instead of the experiment's own. Used by
+   * task engines that run iterations handed out by a TaskDispatcher on a copy
+   * of the experiment. The dataset and property value of the previous call
+   * are reused if they are the same.
+   *
+   * @param run the run number
+   * @param dataset the index of the dataset
+   * @param property the index of the custom property value (ignored if the
+   *          property iterator is not used)
+   * @param listener the listener that receives the results
+   * @throws Exception if the iteration fails
+   */
+  protected void runIteration(int run, int dataset, int property,
+    ResultListener listener) throws Exception {
+
+    m_RunNumber = run;
+    if (m_UsePropertyIterator && (m_CurrentProperty != property)) {
+      m_PropertyNumber = property;
+      setProperty(0, m_ResultProducer);
+      m_CurrentProperty = property;
+    }
+    if ((m_CurrentInstances == null) || (m_DatasetNumber != dataset)) {
+      m_DatasetNumber = dataset;
+      m_CurrentInstances = null;
+      m_CurrentInstances = loadCurrentDataset();
+    }
+
+    m_ResultProducer.setResultListener(listener);
+    m_ResultProducer.setInstances(m_CurrentInstances);
+    m_ResultProducer.doRun(run);
+  }
+
+  /**
+   * Loads the current dataset and sets its class attribute.
+   * 
+   * @return the data
+   * @throws Exception if the dataset can't be loaded
+   */
+  protected Instances loadCurrentDataset() throws Exception {
+    File currentFile = (File) getDatasets().elementAt(m_DatasetNumber);
+    AbstractFileLoader loader = ConverterUtils.getLoaderForFile(currentFile);
+    loader.setFile(currentFile);
+    Instances data = new Instances(loader.getDataSet());
+    // only set class attribute if not already done by loader
+    if (data.classIndex() == -1) {
+      if (m_ClassFirst) {
+        data.setClassIndex(0);
+      } else {
+        data.setClassIndex(data.numAttributes() - 1);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Carries out the next step of a parallel run: either the current iteration
+   * is started on a copy of the result producer, or, if enough iterations are
+   * running (or all have been started), the oldest running iteration is
+   * waited for and its results are passed on to the result listener. The
+   * listener thus receives the results in the same order as in a sequential
+   * run. The iteration counters refer to the next iteration to be started.
+   * 
+   * @throws Exception if an iteration can't be started, or the oldest
+   *           iteration failed
+   */
+  protected void nextParallelIteration() throws Exception {
+
+    m_IterationCounted = false;
+    if (m_PendingIterations == null) {
+      m_PendingIterations = new LinkedList<ParallelIteration>();
+      m_ExecutorPool = Executors.newFixedThreadPool(m_NumExecutionSlots,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            // don't keep the VM alive if the experiment is abandoned
+            Thread t = new Thread(r, "Experiment iteration");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+
+    if (m_Finished
+      || m_PendingIterations.size() >= 2 * m_NumExecutionSlots) {
+      ParallelIteration oldest = m_PendingIterations.removeFirst();
+      try {
+        oldest.m_Future.get();
+      } catch (ExecutionException ex) {
+        // deliver what was produced before the failure, like a sequential run
+        m_IterationCounted = true;
+        oldest.m_Results.flush();
+        if (ex.getCause() instanceof Exception) {
+          throw (Exception) ex.getCause();
+        }
+        throw ex;
+      }
+      oldest.m_Results.flush();
+      if (m_Finished && m_PendingIterations.isEmpty()) {
+        shutdownParallelIterations();
+      }
+      return;
+    }
+
+    if (m_UsePropertyIterator) {
+      if (m_CurrentProperty != m_PropertyNumber) {
+        setProperty(0, m_ResultProducer);
+        m_CurrentProperty = m_PropertyNumber;
+      }
+    }
+
+    if (m_CurrentInstances == null) {
+      m_CurrentInstances = loadCurrentDataset();
+    }
+
+    // copy the result producer without the listener and data, the copies
+    // share the (read-only) data
+    ResultProducer producer;
+    m_ResultProducer.setResultListener(null);
+    try {
+      producer = (ResultProducer) new SerializedObject(m_ResultProducer)
+        .getObject();
+    } finally {
+      m_ResultProducer.setResultListener(m_ResultListener);
+    }
+    BufferedResultListener results = new BufferedResultListener(
+      m_ResultListener, m_ResultProducer);
+    producer.setResultListener(results);
+    producer.setInstances(m_CurrentInstances);
+
+    ParallelIteration iteration = new ParallelIteration(producer, results,
+      m_RunNumber);
+    iteration.m_Future = m_ExecutorPool.submit(iteration);
+    m_PendingIterations.add(iteration);
+
+    advanceCounters();
+  }
+
+  /**
+   * Discards any iterations that are still running in parallel and stops the
+   * threads.
+   */
+  protected void shutdownParallelIterations() {
+    if (m_ExecutorPool != null) {
+      m_ExecutorPool.shutdownNow();
+      m_ExecutorPool = null;
+    }
+    m_PendingIterations = null;
+  }
+
   /**
    * Increments iteration counters appropriately.
    */
   public void advanceCounters() {
 
+    if (m_IterationCounted) {
+      // the failed iteration was started (and counted) earlier
+      m_IterationCounted = false;
+      return;
+    }
+
     if (m_AdvanceDataSetFirst) {
       m_RunNumber++;
       if (m_RunNumber > getRunUpper()) {
@@ -622,6 +895,13 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
         }
       }
     }
+
+    if (m_Finished) {
+      // the counters stay valid while the last parallel iterations finish
+      m_RunNumber = getRunLower();
+      m_DatasetNumber = 0;
+      m_PropertyNumber = 0;
+    }
   }
 
   public void runExperiment(boolean verbose) {
@@ -673,9 +953,35 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
    */
   public void postProcess() throws Exception {
 
+    shutdownParallelIterations();
     m_ResultProducer.postProcess();
   }
 
+  /**
+   * Gets the number of execution slots (threads) to use for running the
+   * iterations of the experiment.
+   * 
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for running the
+   * iterations of the experiment. With more than one slot, each iteration
+   * (dataset, run and custom property value) runs on its own copy of the
+   * result producer, and the results are passed to the result listener in the
+   * same order as in a sequential run. If the result producer saves raw
+   * output, the iterations are run serially, as the copies would all write
+   * to the same file.
+   * 
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
   /**
    * Gets the datasets in the experiment.
    * 
@@ -802,7 +1108,7 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
   @Override
   public Enumeration<Option> listOptions() {
 
-    Vector<Option> newVector = new Vector<Option>(6);
+    Vector<Option> newVector = new Vector<Option>(7);
 
     newVector.addElement(new Option(
       "\tThe lower run number to start the experiment from.\n"
@@ -825,6 +1131,11 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
     newVector.addElement(new Option(
       "\tA string containing any notes about the experiment.\n"
         + "\t(default none)", "N", 1, "-N <string>"));
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for running the iterations\n"
+        + "\tof the experiment in parallel.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
 
     if ((m_ResultProducer != null)
       && (m_ResultProducer instanceof OptionHandler)) {
@@ -986,6 +1297,13 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
 
     setNotes(Utils.getOption('N', options));
 
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     getDatasets().removeAllElements();
     String dataName;
     do {
@@ -1055,7 +1373,7 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
     }
 
     String[] options = new String[rpOptions.length + getDatasets().size() * 2
-      + 11];
+      + 13];
     int current = 0;
 
     options[current++] = "-L";
@@ -1080,6 +1398,10 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
       options[current++] = "-N";
       options[current++] = getNotes();
     }
+    if (getNumExecutionSlots() > 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
     options[current++] = "--";
 
     System.arraycopy(rpOptions, 0, options, current, rpOptions.length);
@@ -1257,6 +1579,11 @@ public class Experiment implements Serializable, OptionHandler, RevisionHandler
           }
         } while (dataName.length() != 0);
 
+        // allow the number of execution slots to be changed as well
+        String slotsString = Utils.getOption("num-slots", args);
+        if (slotsString.length() != 0) {
+          exp.setNumExecutionSlots(Integer.parseInt(slotsString));
+        }
       }
       System.err.println("Experiment:\n" + exp.toString());
 
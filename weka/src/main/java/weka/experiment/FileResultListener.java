@@ -0,0 +1,735 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FileResultListener.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.experiment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * <!-- globalinfo-start --> Stores the results in a local file, keyed by the
+ * key of the result producer. Results that are already in the file are not
+ * required again, so an experiment that is re-run (e.g. after it was
+ * interrupted, or after a scheme was added) only computes the missing
+ * results. Every result is appended and flushed to the file as soon as it is
+ * received, and a result that was only partially written when the experiment
+ * crashed is discarded when the file is opened again. The stored results can
+ * be retrieved as a dataset (e.g. for the PairedCorrectedTTester) without
+ * re-reading an ARFF file.
+ * <p/>
+ * <!-- globalinfo-end -->
+ *
+ * <!-- options-start --> Valid options are:
+ * <p/>
+ *
+ * <pre>
+ * -O &lt;file name&gt;
+ *  The file in which the results are stored.
+ *  (default weka_experiment.results)
+ * </pre>
+ *
+ * <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class FileResultListener implements ResultListener, OptionHandler,
+  RevisionHandler {
+
+  /** for serialization */
+  static final long serialVersionUID = 2714086213516325671L;
+
+  /** the default file name */
+  public static final String DEFAULT_FILE_NAME = "weka_experiment.results";
+
+  /** identifies a result file (and its format version) */
+  protected static final int MAGIC = 0x574b5231;
+
+  /** the tag of a missing value */
+  protected static final byte TAG_NULL = 0;
+
+  /** the tag of a numeric value */
+  protected static final byte TAG_DOUBLE = 1;
+
+  /** the tag of a string value */
+  protected static final byte TAG_STRING = 2;
+
+  /** The ResultProducer sending us results */
+  protected ResultProducer m_RP;
+
+  /** the file in which the results are stored */
+  protected File m_OutputFile = new File(DEFAULT_FILE_NAME);
+
+  /** the stream new results are appended to */
+  protected transient DataOutputStream m_Out;
+
+  /** the keys of the results in the file */
+  protected transient HashSet<List<Object>> m_Keys;
+
+  /**
+   * Returns a string describing this result listener
+   *
+   * @return a description of the result listener suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "Stores the results in a local file, keyed by the key of the "
+      + "result producer. Results that are already in the file are not "
+      + "required again, so an experiment that is re-run (e.g. after it was "
+      + "interrupted, or after a scheme was added) only computes the missing "
+      + "results. Every result is appended and flushed to the file as soon as "
+      + "it is received, and a result that was only partially written when "
+      + "the experiment crashed is discarded when the file is opened again. "
+      + "The stored results can be retrieved as a dataset (e.g. for the "
+      + "PairedCorrectedTTester) without re-reading an ARFF file.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options..
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+
+    Vector<Option> newVector = new Vector<Option>(1);
+
+    newVector.addElement(new Option(
+      "\tThe file in which the results are stored.\n" + "\t(default "
+        + DEFAULT_FILE_NAME + ")", "O", 1, "-O <file name>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   * <p/>
+   *
+   * <!-- options-start --> Valid options are:
+   * <p/>
+   *
+   * <pre>
+   * -O &lt;file name&gt;
+   *  The file in which the results are stored.
+   *  (default weka_experiment.results)
+   * </pre>
+   *
+   * <!-- options-end -->
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+
+    String fName = Utils.getOption('O', options);
+    if (fName.length() != 0) {
+      setOutputFile(new File(fName));
+    } else {
+      setOutputFile(new File(DEFAULT_FILE_NAME));
+    }
+  }
+
+  /**
+   * Gets the current settings of the listener.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+
+    return new String[] { "-O", getOutputFile().getPath() };
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputFileTipText() {
+    return "The file in which the results are stored; results that are "
+      + "already in the file are not computed again.";
+  }
+
+  /**
+   * Get the file in which the results are stored.
+   *
+   * @return the file
+   */
+  public File getOutputFile() {
+
+    return m_OutputFile;
+  }
+
+  /**
+   * Set the file in which the results are stored.
+   *
+   * @param newOutputFile the file
+   */
+  public void setOutputFile(File newOutputFile) {
+
+    m_OutputFile = newOutputFile;
+  }
+
+  /**
+   * Opens the file, reads the keys of the results it already contains (if
+   * any) and discards a partially written last result.
+   *
+   * @param rp the ResultProducer that will generate the results
+   * @throws Exception if the file can't be opened, or contains the results of
+   *           a result producer with different columns
+   */
+  @Override
+  public void preProcess(ResultProducer rp) throws Exception {
+
+    m_RP = rp;
+    Object[] header = new Object[] { rp.getKeyNames(),
+      typesOf(rp.getKeyTypes()), rp.getResultNames(),
+      typesOf(rp.getResultTypes()) };
+
+    m_Keys = new HashSet<List<Object>>();
+    long length = 0;
+    if (m_OutputFile.exists() && (m_OutputFile.length() > 0)) {
+      List<Object[]> keys = new ArrayList<Object[]>();
+      Object[] stored = new Object[4];
+      length = readFile(m_OutputFile, stored, keys, null);
+      if (length > 0) {
+        for (int i = 0; i < header.length; i++) {
+          if (!Arrays.equals((Object[]) header[i], (Object[]) stored[i])) {
+            throw new Exception("The results in '" + m_OutputFile
+              + "' have different columns than those of the result producer!");
+          }
+        }
+      }
+      for (Object[] key : keys) {
+        m_Keys.add(Arrays.asList(key));
+      }
+      if (length < m_OutputFile.length()) {
+        System.err.println("Discarding incomplete result at the end of '"
+          + m_OutputFile + "'");
+        RandomAccessFile file = new RandomAccessFile(m_OutputFile, "rw");
+        try {
+          file.setLength(length);
+        } finally {
+          file.close();
+        }
+      }
+    }
+
+    m_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+      m_OutputFile, length > 0)));
+    if (length == 0) {
+      m_Out.writeInt(MAGIC);
+      writeRecord(m_Out, header);
+      m_Out.flush();
+    }
+  }
+
+  /**
+   * Closes the file.
+   *
+   * @param rp the ResultProducer that generated the results
+   * @throws Exception if an error occurs
+   */
+  @Override
+  public void postProcess(ResultProducer rp) throws Exception {
+
+    if (m_Out != null) {
+      m_Out.close();
+      m_Out = null;
+    }
+    m_Keys = null;
+  }
+
+  /**
+   * Determines if there are any constraints (imposed by the destination) on the
+   * result columns to be produced by resultProducers. Null should be returned
+   * if there are NO constraints, otherwise a list of column names should be
+   * returned as an array of Strings.
+   *
+   * @param rp the ResultProducer to which the constraints will apply
+   * @return null, as there are no constraints
+   * @throws Exception if an error occurs.
+   */
+  @Override
+  public String[] determineColumnConstraints(ResultProducer rp)
+    throws Exception {
+    return null;
+  }
+
+  /**
+   * Appends a result to the file, unless the file already contains a result
+   * for the key.
+   *
+   * @param rp the ResultProducer that generated the result
+   * @param key The key for the results.
+   * @param result The actual results.
+   * @throws Exception if the result could not be written, or the key
+   *           contains values that can't be stored.
+   */
+  @Override
+  public void acceptResult(ResultProducer rp, Object[] key, Object[] result)
+    throws Exception {
+
+    if (m_RP != rp) {
+      throw new Error("Unrecognized ResultProducer sending results!!");
+    }
+    checkKey(key);
+
+    // null result could occur from a chain of doRunKeys calls
+    if ((result == null) || !m_Keys.add(Arrays.asList(key.clone()))) {
+      return;
+    }
+    writeRecord(m_Out, new Object[] { key, result });
+    m_Out.flush();
+  }
+
+  /**
+   * Determines whether the file already contains a result for the key.
+   *
+   * @param rp the ResultProducer wanting to generate the result
+   * @param key The key for which a result may be needed.
+   * @return true if the result should be calculated.
+   * @throws Exception if it could not be determined if the result is needed,
+   *           or the key contains values that can't be stored.
+   */
+  @Override
+  public boolean isResultRequired(ResultProducer rp, Object[] key)
+    throws Exception {
+
+    if (m_RP != rp) {
+      throw new Error("Unrecognized ResultProducer calling isResultRequired!");
+    }
+    checkKey(key);
+    return !m_Keys.contains(Arrays.asList(key));
+  }
+
+  /**
+   * Checks that the values of a key are strings or doubles (or missing). Other
+   * values would be read back as strings when the file is opened again, and
+   * the key would never match.
+   *
+   * @param key the key to check
+   * @throws Exception if a value of the key is of an unsupported type
+   */
+  protected static void checkKey(Object[] key) throws Exception {
+
+    for (int i = 0; i < key.length; i++) {
+      if ((key[i] != null) && !(key[i] instanceof String)
+        && !(key[i] instanceof Double)) {
+        throw new Exception("Key column " + (i + 1) + " contains a value of "
+          + "type " + key[i].getClass().getName()
+          + ", only strings and doubles can be stored!");
+      }
+    }
+  }
+
+  /**
+   * Returns the results stored in the file as a dataset, in the same format
+   * as the output of the InstancesResultListener.
+   *
+   * @return the results
+   * @throws Exception if the file can't be read
+   */
+  public Instances getResults() throws Exception {
+
+    if (m_Out != null) {
+      m_Out.flush();
+    }
+    return readResults(m_OutputFile);
+  }
+
+  /**
+   * Checks whether a file starts like a result file.
+   *
+   * @param file the file to check
+   * @return true if the file is a result file
+   */
+  public static boolean isResultFile(File file) {
+
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        return in.readInt() == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads the results stored in a result file as a dataset, with nominal
+   * attributes for string columns and numeric attributes for numeric columns.
+   * The names of the key columns are prefixed with "Key_".
+   *
+   * @param file the result file
+   * @return the results
+   * @throws Exception if the file can't be read
+   */
+  public static Instances readResults(File file) throws Exception {
+
+    Object[] header = new Object[4];
+    List<Object[]> keys = new ArrayList<Object[]>();
+    List<Object[]> results = new ArrayList<Object[]>();
+    if (readFile(file, header, keys, results) == 0) {
+      throw new Exception("'" + file + "' contains no results!");
+    }
+    String[] keyNames = (String[]) header[0];
+    Byte[] keyTypes = (Byte[]) header[1];
+    String[] resultNames = (String[]) header[2];
+    Byte[] resultTypes = (Byte[]) header[3];
+    int numKeys = keyNames.length;
+    int numColumns = numKeys + resultNames.length;
+
+    // collect the values of the string columns in the order of appearance
+    List<HashMap<String, Integer>> indices = new ArrayList<HashMap<String, Integer>>();
+    List<ArrayList<String>> values = new ArrayList<ArrayList<String>>();
+    boolean[] nominal = new boolean[numColumns];
+    for (int i = 0; i < numColumns; i++) {
+      Byte type = (i < numKeys) ? keyTypes[i] : resultTypes[i - numKeys];
+      nominal[i] = (type.byteValue() == TAG_STRING);
+      indices.add(nominal[i] ? new HashMap<String, Integer>() : null);
+      values.add(nominal[i] ? new ArrayList<String>() : null);
+    }
+    List<double[]> rows = new ArrayList<double[]>(keys.size());
+    for (int n = 0; n < keys.size(); n++) {
+      double[] row = new double[numColumns];
+      for (int i = 0; i < numColumns; i++) {
+        Object val = (i < numKeys) ? keys.get(n)[i] : results.get(n)[i
+          - numKeys];
+        if (val == null) {
+          row[i] = Utils.missingValue();
+        } else if (nominal[i]) {
+          String str = val.toString();
+          Integer index = indices.get(i).get(str);
+          if (index == null) {
+            index = new Integer(values.get(i).size());
+            indices.get(i).put(str, index);
+            values.get(i).add(str);
+          }
+          row[i] = index.doubleValue();
+        } else if (val instanceof Double) {
+          row[i] = ((Double) val).doubleValue();
+        } else {
+          row[i] = Utils.missingValue();
+        }
+      }
+      rows.add(row);
+    }
+
+    ArrayList<Attribute> attribInfo = new ArrayList<Attribute>();
+    for (int i = 0; i < numColumns; i++) {
+      String attribName = (i < numKeys) ? "Key_" + keyNames[i]
+        : resultNames[i - numKeys];
+      if (!nominal[i]) {
+        attribInfo.add(new Attribute(attribName));
+      } else if (values.get(i).size() > 0) {
+        attribInfo.add(new Attribute(attribName, values.get(i)));
+      } else {
+        attribInfo.add(new Attribute(attribName, (ArrayList<String>) null));
+      }
+    }
+    Instances result = new Instances("FileResultListener", attribInfo,
+      rows.size());
+    for (double[] row : rows) {
+      Instance inst = new DenseInstance(1.0, row);
+      result.add(inst);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the tags of the column types of a result producer.
+   *
+   * @param types the types (objects of the type of each column)
+   * @return the tags
+   * @throws Exception if a type is not supported
+   */
+  protected static Byte[] typesOf(Object[] types) throws Exception {
+
+    Byte[] result = new Byte[types.length];
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] instanceof String) {
+        result[i] = new Byte(TAG_STRING);
+      } else if (types[i] instanceof Double) {
+        result[i] = new Byte(TAG_DOUBLE);
+      } else {
+        throw new Exception("Unknown attribute type in column " + (i + 1));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads a result file. The first record is the header, with the names and
+   * types of the key and result columns, all further records are the results.
+   * Reading stops at the first record that is incomplete or corrupt.
+   *
+   * @param file the file to read
+   * @param header receives the key names, key types, result names and result
+   *          types
+   * @param keys receives the keys of the results
+   * @param results receives the results, may be null if only the keys are
+   *          needed
+   * @return the length of the valid part of the file, 0 if not even the
+   *         header is complete
+   * @throws Exception if the file can't be read, or is not a result file
+   */
+  protected static long readFile(File file, Object[] header,
+    List<Object[]> keys, List<Object[]> results) throws Exception {
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(file)));
+    try {
+      long remaining = file.length();
+      if ((remaining < 4) || (in.readInt() != MAGIC)) {
+        throw new Exception("'" + file + "' is not a result file!");
+      }
+      remaining -= 4;
+      long length = 0;
+      boolean first = true;
+      Object[] record;
+      while ((record = readRecord(in, remaining)) != null) {
+        remaining -= recordLength(record);
+        if (first) {
+          for (int i = 0; i < header.length; i++) {
+            header[i] = record[i];
+          }
+          // the column types are stored as tags
+          header[1] = toTags((Object[]) header[1]);
+          header[3] = toTags((Object[]) header[3]);
+          header[0] = toStrings((Object[]) header[0]);
+          header[2] = toStrings((Object[]) header[2]);
+          first = false;
+        } else {
+          keys.add((Object[]) record[0]);
+          if (results != null) {
+            results.add((Object[]) record[1]);
+          }
+        }
+        length = file.length() - remaining;
+      }
+      return length;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Converts the values of a header column to strings.
+   *
+   * @param values the values
+   * @return the strings
+   */
+  protected static String[] toStrings(Object[] values) {
+
+    String[] result = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = (String) values[i];
+    }
+    return result;
+  }
+
+  /**
+   * Converts the (numeric) type values of a header column to tags.
+   *
+   * @param values the values
+   * @return the tags
+   */
+  protected static Byte[] toTags(Object[] values) {
+
+    Byte[] result = new Byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = new Byte(((Double) values[i]).byteValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes a record occupies in the file, as recorded by
+   * readRecord().
+   *
+   * @param record the record
+   * @return the length of the record
+   */
+  protected static long recordLength(Object[] record) {
+    return ((Long) record[record.length - 1]).longValue();
+  }
+
+  /**
+   * Writes a record, i.e., a number of columns of values, framed by its
+   * length and checksum so that a partially written record can be detected.
+   *
+   * @param out the stream to write to
+   * @param columns the columns of values
+   * @throws Exception if a value can't be written
+   */
+  protected static void writeRecord(DataOutputStream out, Object[] columns)
+    throws Exception {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(columns.length);
+    for (Object column : columns) {
+      Object[] values = (Object[]) column;
+      data.writeInt(values.length);
+      for (Object value : values) {
+        if (value == null) {
+          data.writeByte(TAG_NULL);
+        } else if (value instanceof Double) {
+          data.writeByte(TAG_DOUBLE);
+          data.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Byte) {
+          data.writeByte(TAG_DOUBLE);
+          data.writeDouble(((Byte) value).doubleValue());
+        } else {
+          byte[] str = value.toString().getBytes("UTF-8");
+          data.writeByte(TAG_STRING);
+          data.writeInt(str.length);
+          data.write(str);
+        }
+      }
+    }
+    data.flush();
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+    out.writeLong(crc.getValue());
+  }
+
+  /**
+   * Reads a record written by writeRecord(). The last element of the returned
+   * array is the number of bytes the record occupied (as a Long).
+   *
+   * @param in the stream to read from
+   * @param remaining the number of bytes left in the file
+   * @return the columns of values, or null if there are no more (complete and
+   *         intact) records
+   * @throws IOException if the file can't be read
+   */
+  protected static Object[] readRecord(DataInputStream in, long remaining)
+    throws IOException {
+
+    try {
+      if (remaining < 4) {
+        return null;
+      }
+      int size = in.readInt();
+      if ((size < 4) || (size > remaining - 12)) {
+        return null;
+      }
+      byte[] bytes = new byte[size];
+      in.readFully(bytes);
+      long checksum = in.readLong();
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      if (crc.getValue() != checksum) {
+        return null;
+      }
+
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(
+        bytes));
+      int numColumns = data.readInt();
+      Object[] result = new Object[numColumns + 1];
+      for (int c = 0; c < numColumns; c++) {
+        Object[] values = new Object[data.readInt()];
+        for (int i = 0; i < values.length; i++) {
+          byte tag = data.readByte();
+          if (tag == TAG_DOUBLE) {
+            values[i] = new Double(data.readDouble());
+          } else if (tag == TAG_STRING) {
+            byte[] str = new byte[data.readInt()];
+            data.readFully(str);
+            values[i] = new String(str, "UTF-8");
+          } else if (tag != TAG_NULL) {
+            return null;
+          }
+        }
+        result[c] = values;
+      }
+      result[numColumns] = new Long(size + 12);
+      return result;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Outputs the results stored in a result file in ARFF format, e.g., for
+   * the Analyse panel of the Experimenter.
+   *
+   * @param args the options (-O &lt;file name&gt;)
+   */
+  public static void main(String[] args) {
+
+    try {
+      FileResultListener listener = new FileResultListener();
+      listener.setOptions(args);
+      System.out.println(listener.getResults());
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.err.println(e.getMessage());
+    }
+  }
+} // FileResultListener
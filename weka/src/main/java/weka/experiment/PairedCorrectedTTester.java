@@ -22,6 +22,7 @@
 package weka.experiment;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -289,14 +290,19 @@ public class PairedCorrectedTTester extends PairedTTester implements
           result += option.synopsis() + '\n' + option.description() + '\n';
         }
         throw new Exception("Usage:\n\n" + "-t <file>\n"
-          + "\tSet the dataset containing data to evaluate\n" + "-b <index>\n"
+          + "\tSet the dataset (ARFF or result file) containing data to "
+          + "evaluate\n" + "-b <index>\n"
           + "\tSet the resultset to base comparisons against (optional)\n"
           + "-c <index>\n" + "\tSet the column to perform a comparison on\n"
           + "-s\n" + "\tSummarize wins over all resultset pairs\n\n" + "-r\n"
           + "\tGenerate a resultset ranking\n\n" + result);
       }
-      Instances data = new Instances(new BufferedReader(new FileReader(
-        datasetName)));
+      Instances data;
+      if (FileResultListener.isResultFile(new File(datasetName))) {
+        data = FileResultListener.readResults(new File(datasetName));
+      } else {
+        data = new Instances(new BufferedReader(new FileReader(datasetName)));
+      }
       tt.setInstances(data);
       // tt.prepareData();
       int compareCol = Integer.parseInt(compareColStr) - 1;
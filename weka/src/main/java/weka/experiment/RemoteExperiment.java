@@ -298,6 +298,12 @@ public class RemoteExperiment extends Experiment {
    */
   protected boolean m_splitByDataSet = true;
 
+  /**
+   * The dispatcher that runs the experiment on TaskEngines, null to run it on
+   * RemoteEngines via RMI.
+   */
+  protected TaskDispatcher m_Dispatcher = null;
+
   /**
    * Returns true if sub experiments are to be created on the basis of data
    * set..
@@ -321,6 +327,30 @@ public class RemoteExperiment extends Experiment {
     m_splitByDataSet = sd;
   }
 
+  /**
+   * Returns the dispatcher that runs the experiment on TaskEngines.
+   * 
+   * @return the dispatcher, null if the experiment is run on RemoteEngines via
+   *         RMI
+   */
+  public TaskDispatcher getDispatcher() {
+    return m_Dispatcher;
+  }
+
+  /**
+   * Sets the dispatcher that runs the experiment on TaskEngines. The remote
+   * hosts are then expected to run a TaskEngine (host[:port]) instead of a
+   * RemoteEngine, and the dispatcher may start local engines as well. As the
+   * results are passed back to this experiment's result listener, any
+   * listener can be used.
+   * 
+   * @param value the dispatcher, null to run the experiment on RemoteEngines
+   *          via RMI
+   */
+  public void setDispatcher(TaskDispatcher value) {
+    m_Dispatcher = value;
+  }
+
   /**
    * Construct a new RemoteExperiment using an empty Experiment as base
    * Experiment
@@ -514,6 +544,17 @@ public class RemoteExperiment extends Experiment {
     m_CurrentInstances = null;
     m_Finished = false;
 
+    if (m_Dispatcher != null) {
+      if ((m_remoteHosts.size() == 0)
+        && (m_Dispatcher.getNumLocalEngines() <= 0)) {
+        throw new Exception("No hosts or local engines specified!");
+      }
+      // the iterations are handed out individually, the results come back
+      // to the base experiment
+      m_baseExperiment.initialize();
+      return;
+    }
+
     if (m_remoteHosts.size() == 0) {
       throw new Exception("No hosts specified!");
     }
@@ -569,7 +610,7 @@ public class RemoteExperiment extends Experiment {
    * @param finished true if the remote experiment has finished
    * @param message the message.
    */
-  private synchronized void notifyListeners(boolean status, boolean log,
+  protected synchronized void notifyListeners(boolean status, boolean log,
     boolean finished, String message) {
     if (m_listeners.size() > 0) {
       for (int i = 0; i < m_listeners.size(); i++) {
@@ -587,6 +628,9 @@ public class RemoteExperiment extends Experiment {
    */
   public void abortExperiment() {
     m_experimentAborted = true;
+    if (m_Dispatcher != null) {
+      m_Dispatcher.abort();
+    }
   }
 
   /**
@@ -873,6 +917,10 @@ public class RemoteExperiment extends Experiment {
   public String toString() {
     String result = m_baseExperiment.toString();
 
+    if (m_Dispatcher != null) {
+      result += "\nDispatcher: " + m_Dispatcher.getClass().getName() + " "
+        + Utils.joinOptions(m_Dispatcher.getOptions()) + "\n";
+    }
     result += "\nRemote Hosts:\n";
     for (int i = 0; i < m_remoteHosts.size(); i++) {
       result += ((String) m_remoteHosts.elementAt(i)) + '\n';
@@ -885,6 +933,18 @@ public class RemoteExperiment extends Experiment {
    */
   @Override
   public void runExperiment() {
+    if (m_Dispatcher != null) {
+      Thread dispatchThread = new Thread() {
+        @Override
+        public void run() {
+          m_Dispatcher.dispatch(RemoteExperiment.this);
+        }
+      };
+      dispatchThread.setPriority(Thread.MIN_PRIORITY);
+      dispatchThread.start();
+      return;
+    }
+
     int totalHosts = m_remoteHostsQueue.size();
     // Try to launch sub experiments on all available hosts
     for (int i = 0; i < totalHosts; i++) {
@@ -924,6 +984,7 @@ public class RemoteExperiment extends Experiment {
       String saveFile = Utils.getOption('s', args);
       boolean runExp = Utils.getFlag('r', args);
       ArrayList<String> remoteHosts = new ArrayList<String>();
+      String dispatcher = Utils.getOption("dispatcher", args);
       String runHost = " ";
       while (runHost.length() != 0) {
         runHost = Utils.getOption('h', args);
@@ -944,7 +1005,11 @@ public class RemoteExperiment extends Experiment {
             + "\tSave experiment to file after setting other options\n"
             + "\t(default don't save)\n" + "-h <remote host name>\n"
             + "\tHost to run experiment on (may be specified more than once\n"
-            + "\tfor multiple remote hosts)\n" + "-r \n"
+            + "\tfor multiple remote hosts)\n"
+            + "-dispatcher <class name and options>\n"
+            + "\tRun the experiment on TaskEngines with the given dispatcher,\n"
+            + "\te.g. \"weka.experiment.TaskDispatcher -local 2\"\n"
+            + "\t(default use RemoteEngines via RMI)\n" + "-r \n"
             + "\tRun experiment on (default don't run)\n"
             + "-xml <filename | xml-string>\n"
             + "\tget options from XML-Data instead from parameters\n" + "\n";
@@ -989,6 +1054,13 @@ public class RemoteExperiment extends Experiment {
       for (int i = 0; i < remoteHosts.size(); i++) {
         exp.addRemoteHost(remoteHosts.get(i));
       }
+      if (dispatcher.length() != 0) {
+        String[] dispatcherSpec = Utils.splitOptions(dispatcher);
+        String dispatcherName = dispatcherSpec[0];
+        dispatcherSpec[0] = "";
+        exp.setDispatcher((TaskDispatcher) Utils.forName(TaskDispatcher.class,
+          dispatcherName, dispatcherSpec));
+      }
       System.err.println("Experiment:\n" + exp.toString());
 
       if (saveFile.length() != 0) {
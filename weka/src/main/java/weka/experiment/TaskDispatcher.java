@@ -0,0 +1,848 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TaskDispatcher.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.experiment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Vector;
+
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+/**
+ * <!-- globalinfo-start --> Distributes the iterations of a RemoteExperiment
+ * over TaskEngine processes, using plain sockets instead of RMI. The engines
+ * pull work: whenever an execution slot of an engine is idle, the engine asks
+ * for more iterations, so fast engines automatically take on more work than
+ * slow ones. Small iterations are handed out in batches, but never more than
+ * an even share of the remaining iterations. Results are streamed back to the
+ * dispatcher while an iteration runs and passed on to the experiment's result
+ * listener once the iteration has completed, so any result listener can be
+ * used. The iterations of an engine that fails or disconnects are handed to
+ * the other engines. For testing on a single machine, a number of local engine
+ * processes can be started.
+ * <p/>
+ * <!-- globalinfo-end -->
+ *
+ * The engines only accept dispatchers that know their shared secret; local
+ * engines get a random secret of their own. The secret for the remote engines
+ * is taken from the environment variable WEKA_TASK_SECRET or, if that is not
+ * set, read from the console. It is not an option, so it doesn't show up in
+ * the process list, in saved experiments or in the experiment's description.
+ * <p/>
+ *
+ * <!-- options-start --> Valid options are:
+ * <p/>
+ *
+ * <pre>
+ * -local &lt;num&gt;
+ *  The number of engine processes to start on this machine.
+ *  (default 0)
+ * </pre>
+ *
+ * <pre>
+ * -batch &lt;num&gt;
+ *  The maximum number of iterations handed out at once.
+ *  (default 4)
+ * </pre>
+ *
+ * <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class TaskDispatcher implements Serializable, OptionHandler,
+  RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = 4905238816549530317L;
+
+  /** engine to dispatcher: an execution slot is idle */
+  protected static final int MSG_READY = 1;
+
+  /** engine to dispatcher: is the result for a key required? */
+  protected static final int MSG_REQUIRED = 2;
+
+  /** engine to dispatcher: what are the column constraints? */
+  protected static final int MSG_CONSTRAINTS = 3;
+
+  /** engine to dispatcher: a result */
+  protected static final int MSG_RESULT = 4;
+
+  /** engine to dispatcher: an iteration has completed */
+  protected static final int MSG_DONE = 5;
+
+  /** engine to dispatcher: an iteration has failed */
+  protected static final int MSG_FAILED = 6;
+
+  /** engine to dispatcher: all slots are finished, the engine disconnects */
+  protected static final int MSG_BYE = 7;
+
+  /** how long to wait for a local engine process to connect (in ms) */
+  protected static final int LOCAL_CONNECT_TIMEOUT = 60000;
+
+  /** the number of local engine processes to start */
+  protected int m_NumLocalEngines = 0;
+
+  /** the maximum number of iterations handed out at once */
+  protected int m_BatchSize = 4;
+
+  /** the secret shared with the remote engines (null to read it at run time) */
+  protected transient String m_Secret;
+
+  /** the experiment being run */
+  protected transient RemoteExperiment m_Experiment;
+
+  /** the iterations (run, dataset index, property index) */
+  protected transient int[][] m_Tasks;
+
+  /** the iterations waiting to be handed out */
+  protected transient LinkedList<Integer> m_Queue;
+
+  /** the number of iterations handed out and not yet completed */
+  protected transient int m_InFlight;
+
+  /** the number of completed iterations */
+  protected transient int m_Completed;
+
+  /** the number of failed iterations */
+  protected transient int m_Failed;
+
+  /** the number of engines that are connected */
+  protected transient int m_LiveEngines;
+
+  /** whether the experiment has been aborted */
+  protected transient boolean m_Aborted;
+
+  /**
+   * Returns a string describing this dispatcher
+   *
+   * @return a description suitable for displaying in the experimenter gui
+   */
+  public String globalInfo() {
+    return "Distributes the iterations of a RemoteExperiment over TaskEngine "
+      + "processes, using plain sockets instead of RMI. The engines pull "
+      + "work: whenever an execution slot of an engine is idle, the engine "
+      + "asks for more iterations, so fast engines automatically take on more "
+      + "work than slow ones. Small iterations are handed out in batches, but "
+      + "never more than an even share of the remaining iterations. Results "
+      + "are streamed back to the dispatcher while an iteration runs and "
+      + "passed on to the experiment's result listener once the iteration "
+      + "has completed, so any result listener can be used. The iterations of "
+      + "an engine that fails or disconnects are handed to the other engines. "
+      + "For testing on a single machine, a number of local engine processes "
+      + "can be started.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+
+    Vector<Option> newVector = new Vector<Option>(2);
+
+    newVector.addElement(new Option(
+      "\tThe number of engine processes to start on this machine.\n"
+        + "\t(default 0)", "local", 1, "-local <num>"));
+    newVector.addElement(new Option(
+      "\tThe maximum number of iterations handed out at once.\n"
+        + "\t(default 4)", "batch", 1, "-batch <num>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   * <p/>
+   *
+   * <!-- options-start --> Valid options are:
+   * <p/>
+   *
+   * <pre>
+   * -local &lt;num&gt;
+   *  The number of engine processes to start on this machine.
+   *  (default 0)
+   * </pre>
+   *
+   * <pre>
+   * -batch &lt;num&gt;
+   *  The maximum number of iterations handed out at once.
+   *  (default 4)
+   * </pre>
+   *
+   * <!-- options-end -->
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+
+    String tmpStr = Utils.getOption("local", options);
+    if (tmpStr.length() != 0) {
+      setNumLocalEngines(Integer.parseInt(tmpStr));
+    } else {
+      setNumLocalEngines(0);
+    }
+
+    tmpStr = Utils.getOption("batch", options);
+    if (tmpStr.length() != 0) {
+      setBatchSize(Integer.parseInt(tmpStr));
+    } else {
+      setBatchSize(4);
+    }
+  }
+
+  /**
+   * Gets the current settings of the dispatcher.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+
+    Vector<String> options = new Vector<String>();
+
+    options.add("-local");
+    options.add("" + getNumLocalEngines());
+    options.add("-batch");
+    options.add("" + getBatchSize());
+
+    return options.toArray(new String[options.size()]);
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numLocalEnginesTipText() {
+    return "The number of engine processes to start on this machine, in "
+      + "addition to the engines on the remote hosts.";
+  }
+
+  /**
+   * Gets the number of local engine processes to start.
+   *
+   * @return the number of processes
+   */
+  public int getNumLocalEngines() {
+    return m_NumLocalEngines;
+  }
+
+  /**
+   * Sets the number of local engine processes to start.
+   *
+   * @param value the number of processes
+   */
+  public void setNumLocalEngines(int value) {
+    m_NumLocalEngines = value;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The maximum number of iterations handed out to an engine at once.";
+  }
+
+  /**
+   * Gets the maximum number of iterations handed out at once.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Sets the maximum number of iterations handed out at once.
+   *
+   * @param value the batch size
+   */
+  public void setBatchSize(int value) {
+    m_BatchSize = value;
+  }
+
+  /**
+   * Sets the secret shared with the remote engines, e.g. when the dispatcher
+   * is embedded in another application. The secret is neither an option nor a
+   * bean property and is not serialized.
+   *
+   * @param value the secret, null or empty to read it from the environment
+   *          variable WEKA_TASK_SECRET or the console
+   */
+  public void setSecret(String value) {
+    m_Secret = value;
+  }
+
+  /**
+   * Stops handing out iterations. The iterations that are running are still
+   * completed.
+   */
+  public synchronized void abort() {
+    m_Aborted = true;
+    notifyAll();
+  }
+
+  /**
+   * Runs all iterations of the (initialized) base experiment of a remote
+   * experiment on the engines of the experiment's remote hosts (given as
+   * host[:port]) and on the local engines, and finishes the base experiment.
+   * Progress is reported to the listeners of the remote experiment. Returns
+   * when the experiment has finished.
+   *
+   * @param exp the remote experiment
+   */
+  public void dispatch(RemoteExperiment exp) {
+
+    List<Process> processes = new ArrayList<Process>();
+    List<Thread> threads = new ArrayList<Thread>();
+    Experiment base = exp.getBaseExperiment();
+    try {
+      m_Experiment = exp;
+      m_Aborted = false;
+      m_Completed = 0;
+      m_Failed = 0;
+      m_InFlight = 0;
+      m_LiveEngines = 0;
+      m_Tasks = enumerateTasks(base);
+      m_Queue = new LinkedList<Integer>();
+      for (int i = 0; i < m_Tasks.length; i++) {
+        m_Queue.add(new Integer(i));
+      }
+      byte[] experiment = serializeExperiment(base);
+
+      List<Socket> sockets = new ArrayList<Socket>();
+      String secret = null;
+      for (int i = 0; i < exp.getRemoteHosts().size(); i++) {
+        String host = (String) exp.getRemoteHosts().elementAt(i);
+        if (secret == null) {
+          secret = m_Secret;
+          if ((secret == null) || (secret.length() == 0)) {
+            secret = TaskEngine.readSecret("Secret shared with the engines: ");
+          }
+        }
+        try {
+          sockets.add(connect(host, secret));
+          exp.notifyListeners(false, true, false, "Connected to engine on "
+            + host);
+        } catch (IOException e) {
+          exp.notifyListeners(false, true, false, "Connection to " + host
+            + " failed: " + e.getMessage());
+        }
+      }
+      sockets.addAll(startLocalEngines(processes));
+      if (sockets.size() == 0) {
+        throw new Exception("No engines available!");
+      }
+
+      synchronized (this) {
+        m_LiveEngines = sockets.size();
+      }
+      for (Socket socket : sockets) {
+        Thread t = new Thread(new EngineConnection(socket, experiment, base));
+        t.start();
+        threads.add(t);
+      }
+
+      synchronized (this) {
+        while ((m_LiveEngines > 0)
+          && ((m_InFlight > 0) || (!m_Aborted && !m_Queue.isEmpty()))) {
+          wait();
+        }
+        if (!m_Queue.isEmpty() && !m_Aborted) {
+          exp.notifyListeners(false, true, false,
+            "All engines failed or disconnected, " + m_Queue.size()
+              + " iterations were not run.");
+        }
+        m_Aborted = true;
+        notifyAll();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+
+      exp.notifyListeners(false, true, false, "Postprocessing...");
+      base.postProcess();
+      exp.notifyListeners(false, true, false, m_Completed
+        + " iterations completed successfully. " + m_Failed
+        + " failures during running.");
+    } catch (Exception e) {
+      e.printStackTrace();
+      exp.notifyListeners(false, true, false, "Experiment failed: "
+        + e.getMessage());
+    } finally {
+      for (Process p : processes) {
+        p.destroy();
+      }
+      exp.notifyListeners(false, true, true, "Experiment finished.");
+    }
+  }
+
+  /**
+   * Lists the iterations of an experiment, in the order in which the
+   * experiment would run them.
+   *
+   * @param exp the experiment
+   * @return the run, dataset index and property index of each iteration
+   */
+  protected int[][] enumerateTasks(Experiment exp) {
+
+    int numRuns = exp.getRunUpper() - exp.getRunLower() + 1;
+    int numDatasets = exp.getDatasets().size();
+    int numProperties = 1;
+    if (exp.getUsePropertyIterator()) {
+      numProperties = Array.getLength(exp.getPropertyArray());
+    }
+
+    int[][] result = new int[numRuns * numDatasets * numProperties][];
+    int n = 0;
+    if (exp.m_AdvanceDataSetFirst) {
+      for (int p = 0; p < numProperties; p++) {
+        for (int d = 0; d < numDatasets; d++) {
+          for (int r = 0; r < numRuns; r++) {
+            result[n++] = new int[] { exp.getRunLower() + r, d, p };
+          }
+        }
+      }
+    } else {
+      for (int d = 0; d < numDatasets; d++) {
+        for (int p = 0; p < numProperties; p++) {
+          for (int r = 0; r < numRuns; r++) {
+            result[n++] = new int[] { exp.getRunLower() + r, d, p };
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Serializes an experiment without its result listener, which stays with
+   * the dispatcher.
+   *
+   * @param exp the experiment
+   * @return the serialized experiment
+   * @throws Exception if serialization fails
+   */
+  protected byte[] serializeExperiment(Experiment exp) throws Exception {
+
+    ResultListener listener = exp.getResultListener();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    exp.setResultListener(null);
+    exp.getResultProducer().setResultListener(null);
+    try {
+      SerializationHelper.write(bytes, exp);
+    } finally {
+      exp.setResultListener(listener);
+      exp.getResultProducer().setResultListener(listener);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Connects to the engine on a host.
+   *
+   * @param host the host name, optionally followed by ":" and the port
+   * @param secret the secret shared with the engine
+   * @return the (authenticated) connection
+   * @throws IOException if the connection or the authentication fails
+   */
+  protected Socket connect(String host, String secret) throws IOException {
+
+    int port = TaskEngine.DEFAULT_PORT;
+    int colon = host.lastIndexOf(':');
+    if (colon != -1) {
+      port = Integer.parseInt(host.substring(colon + 1));
+      host = host.substring(0, colon);
+    }
+    Socket result = new Socket(host, port);
+    try {
+      TaskEngine.authenticate(result, secret, false);
+    } catch (IOException e) {
+      result.close();
+      throw e;
+    }
+    return result;
+  }
+
+  /**
+   * Starts the local engine processes, which connect back to the dispatcher.
+   * Their output is copied to the error stream of this process.
+   *
+   * @param processes receives the processes
+   * @return the connections to the engines
+   * @throws Exception if a process can't be started or doesn't connect
+   */
+  protected List<Socket> startLocalEngines(List<Process> processes)
+    throws Exception {
+
+    List<Socket> result = new ArrayList<Socket>();
+    if (m_NumLocalEngines <= 0) {
+      return result;
+    }
+
+    ServerSocket server = new ServerSocket(0, m_NumLocalEngines,
+      InetAddress.getByName(null));
+    String secret = TaskEngine.generateSecret();
+    try {
+      server.setSoTimeout(LOCAL_CONNECT_TIMEOUT);
+      String java = System.getProperty("java.home") + File.separator + "bin"
+        + File.separator + "java";
+      for (int i = 0; i < m_NumLocalEngines; i++) {
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+          System.getProperty("java.class.path"), TaskEngine.class.getName(),
+          "-connect", "localhost:" + server.getLocalPort(), "-slots", "1");
+        builder.environment().put(TaskEngine.SECRET_VARIABLE, secret);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        processes.add(process);
+        final String prefix = "[local engine " + (i + 1) + "] ";
+        Thread output = new Thread() {
+          @Override
+          public void run() {
+            try {
+              BufferedReader reader = new BufferedReader(new InputStreamReader(
+                process.getInputStream()));
+              String line;
+              while ((line = reader.readLine()) != null) {
+                System.err.println(prefix + line);
+              }
+            } catch (IOException e) {
+              // process has ended
+            }
+          }
+        };
+        output.setDaemon(true);
+        output.start();
+      }
+      for (int i = 0; i < m_NumLocalEngines; i++) {
+        Socket socket = server.accept();
+        try {
+          TaskEngine.authenticate(socket, secret, false);
+        } catch (IOException e) {
+          socket.close();
+          throw e;
+        }
+        result.add(socket);
+      }
+      m_Experiment.notifyListeners(false, true, false, "Started "
+        + m_NumLocalEngines + " local engines");
+    } finally {
+      server.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Hands out the next batch of iterations to an engine.
+   *
+   * @param engine the engine asking for work
+   * @return the iterations, empty if there is no more work, or null if there
+   *         are no iterations waiting but some are still running elsewhere
+   *         (these may have to be handed out again if their engine fails)
+   */
+  protected synchronized List<Integer> takeTasks(EngineConnection engine) {
+
+    List<Integer> result = new ArrayList<Integer>();
+    if (m_Aborted) {
+      return result;
+    }
+    if (m_Queue.isEmpty()) {
+      return (m_InFlight > 0) ? null : result;
+    }
+    int n = Math.min(m_BatchSize, m_Queue.size() / Math.max(1, m_LiveEngines));
+    n = Math.min(Math.max(1, n), m_Queue.size());
+    for (int i = 0; i < n; i++) {
+      result.add(m_Queue.removeFirst());
+    }
+    engine.m_Assigned.addAll(result);
+    m_InFlight += n;
+    return result;
+  }
+
+  /**
+   * Records the completion of an iteration.
+   *
+   * @param engine the engine that ran the iteration
+   * @param task the iteration
+   * @param error the error message, null if the iteration succeeded
+   */
+  protected synchronized void taskFinished(EngineConnection engine,
+    Integer task, String error) {
+
+    if (!engine.m_Assigned.remove(task)) {
+      return;
+    }
+    m_InFlight--;
+    if (error == null) {
+      m_Completed++;
+    } else {
+      m_Failed++;
+      m_Experiment.notifyListeners(false, true, false, describe(task)
+        + " failed on " + engine.m_Name + ": " + error);
+    }
+    m_Experiment.notifyListeners(true, false, false, (m_Completed + m_Failed)
+      + " of " + m_Tasks.length + " iterations finished");
+    notifyAll();
+  }
+
+  /**
+   * Records that an engine has disconnected; the iterations it did not
+   * complete are handed out again.
+   *
+   * @param engine the engine
+   * @param error the reason, null if the engine finished normally
+   */
+  protected synchronized void engineFinished(EngineConnection engine,
+    String error) {
+
+    if (error != null) {
+      m_Experiment.notifyListeners(false, true, false, "Lost connection to "
+        + engine.m_Name + ": " + error);
+    }
+    for (Integer task : engine.m_Assigned) {
+      m_Queue.addFirst(task);
+    }
+    m_InFlight -= engine.m_Assigned.size();
+    engine.m_Assigned.clear();
+    m_LiveEngines--;
+    notifyAll();
+  }
+
+  /**
+   * Describes an iteration for the log.
+   *
+   * @param task the iteration
+   * @return the description
+   */
+  protected String describe(Integer task) {
+
+    int[] t = m_Tasks[task.intValue()];
+    Experiment base = m_Experiment.getBaseExperiment();
+    String result = "Dataset="
+      + ((File) base.getDatasets().elementAt(t[1])).getName() + " Run=" + t[0];
+    if (base.getUsePropertyIterator()) {
+      result += " Property=" + (t[2] + 1);
+    }
+    return result;
+  }
+
+  /**
+   * Serves the requests of an engine. Results are buffered per iteration and
+   * passed on to the result listener when the iteration has completed, so the
+   * results of an iteration that is run again (after its engine failed) are
+   * never delivered twice.
+   */
+  protected class EngineConnection implements Runnable {
+
+    /** the connection */
+    protected Socket m_Socket;
+
+    /** the name of the engine (for the log) */
+    protected String m_Name;
+
+    /** the serialized experiment */
+    protected byte[] m_Experiment;
+
+    /** the experiment whose listener receives the results */
+    protected Experiment m_Base;
+
+    /** the iterations handed out to the engine and not yet completed */
+    protected HashSet<Integer> m_Assigned = new HashSet<Integer>();
+
+    /** the buffered results of the running iterations */
+    protected HashMap<Integer, BufferedResultListener> m_Results = new HashMap<Integer, BufferedResultListener>();
+
+    /**
+     * Initializes the connection.
+     *
+     * @param socket the connection to the engine
+     * @param experiment the serialized experiment
+     * @param base the experiment whose listener receives the results
+     */
+    public EngineConnection(Socket socket, byte[] experiment, Experiment base) {
+      m_Socket = socket;
+      m_Name = socket.getInetAddress().getHostName() + ":" + socket.getPort();
+      m_Experiment = experiment;
+      m_Base = base;
+    }
+
+    /**
+     * Returns the buffer for the results of an iteration.
+     *
+     * @param task the iteration
+     * @return the buffer
+     */
+    protected BufferedResultListener results(Integer task) {
+
+      BufferedResultListener result = m_Results.get(task);
+      if (result == null) {
+        result = new BufferedResultListener(m_Base.getResultListener(),
+          m_Base.getResultProducer());
+        m_Results.put(task, result);
+      }
+      return result;
+    }
+
+    /**
+     * Passes the results of an iteration on to the result listener.
+     *
+     * @param task the iteration
+     * @param error the error of the iteration, null if it succeeded
+     */
+    protected void finish(Integer task, String error) {
+
+      BufferedResultListener buffer = m_Results.remove(task);
+      if (buffer != null) {
+        try {
+          buffer.flush();
+        } catch (Exception e) {
+          if (error == null) {
+            error = e.toString();
+          }
+        }
+      }
+      taskFinished(this, task, error);
+    }
+
+    /**
+     * Serves the engine until it disconnects.
+     */
+    @Override
+    public void run() {
+
+      String error = null;
+      try {
+        ObjectOutputStream out = new ObjectOutputStream(
+          new BufferedOutputStream(m_Socket.getOutputStream()));
+        out.writeObject(m_Experiment);
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+          m_Socket.getInputStream()));
+
+        boolean connected = true;
+        while (connected) {
+          int msg = in.readInt();
+          switch (msg) {
+          case MSG_READY:
+            List<Integer> tasks = takeTasks(this);
+            if (tasks == null) {
+              out.writeInt(-1);
+              out.flush();
+              break;
+            }
+            out.writeInt(tasks.size());
+            for (Integer task : tasks) {
+              int[] t = m_Tasks[task.intValue()];
+              out.writeInt(task.intValue());
+              out.writeInt(t[0]);
+              out.writeInt(t[1]);
+              out.writeInt(t[2]);
+            }
+            out.flush();
+            break;
+          case MSG_REQUIRED:
+            Integer task = new Integer(in.readInt());
+            Object[] key = (Object[]) in.readObject();
+            out.writeBoolean(results(task).isResultRequired(null, key));
+            out.flush();
+            break;
+          case MSG_CONSTRAINTS:
+            task = new Integer(in.readInt());
+            out.writeObject(results(task).determineColumnConstraints(null));
+            out.reset();
+            out.flush();
+            break;
+          case MSG_RESULT:
+            task = new Integer(in.readInt());
+            key = (Object[]) in.readObject();
+            Object[] result = (Object[]) in.readObject();
+            results(task).acceptResult(null, key, result);
+            break;
+          case MSG_DONE:
+            finish(new Integer(in.readInt()), null);
+            break;
+          case MSG_FAILED:
+            task = new Integer(in.readInt());
+            finish(task, (String) in.readObject());
+            break;
+          case MSG_BYE:
+            connected = false;
+            break;
+          default:
+            throw new IOException("Unknown message: " + msg);
+          }
+        }
+      } catch (Exception e) {
+        error = e.toString();
+      } finally {
+        try {
+          m_Socket.close();
+        } catch (IOException e) {
+          // ignored
+        }
+        engineFinished(this, error);
+      }
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
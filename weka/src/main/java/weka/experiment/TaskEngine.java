@@ -0,0 +1,617 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TaskEngine.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.experiment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+/**
+ * A server that runs the iterations of experiments handed out by a
+ * TaskDispatcher. The engine either listens on a port for dispatchers to
+ * connect, or connects to a dispatcher itself (as the local engines started
+ * by the dispatcher do). Each execution slot of the engine runs on its own
+ * copy of the experiment and asks the dispatcher for more iterations when it
+ * is idle; the results are sent back as soon as they are produced.
+ * <p/>
+ *
+ * Usage:
+ * <p/>
+ *
+ * <pre>
+ * java weka.experiment.TaskEngine [-p &lt;port&gt; [-bind &lt;address&gt;] | -connect &lt;host:port&gt;]
+ *   [-slots &lt;num&gt;]
+ * </pre>
+ *
+ * The engine only listens on the loopback interface unless another address
+ * is given with -bind (e.g. 0.0.0.0 for all interfaces). Engine and
+ * dispatcher must share a secret, given in the environment variable
+ * WEKA_TASK_SECRET or, if that is not set, typed in at the console. It is not
+ * accepted as an option, as it would show up in the process list. Before
+ * anything is deserialized, both sides prove that they know the secret by
+ * answering a random challenge with its HMAC; the secret itself is never
+ * sent. The connection is not encrypted.
+ * <p/>
+ *
+ * The datasets of the experiments must be accessible under the same path as
+ * on the machine running the dispatcher.
+ *
+ * @version $Revision$
+ */
+public class TaskEngine implements RevisionHandler {
+
+  /** the default port engines listen on */
+  public static final int DEFAULT_PORT = 8766;
+
+  /** the environment variable holding the shared secret */
+  public static final String SECRET_VARIABLE = "WEKA_TASK_SECRET";
+
+  /** how long an idle slot waits before asking for work again (in ms) */
+  protected static final long POLL_INTERVAL = 500;
+
+  /** how long to wait for the other side during the handshake (in ms) */
+  protected static final int HANDSHAKE_TIMEOUT = 30000;
+
+  /** the length of the random challenges (in bytes) */
+  protected static final int CHALLENGE_LENGTH = 32;
+
+  /** the number of execution slots */
+  protected int m_NumSlots;
+
+  /** the secret shared with the dispatchers */
+  protected String m_Secret;
+
+  /**
+   * Initializes the engine.
+   *
+   * @param numSlots the number of iterations to run in parallel
+   * @param secret the secret shared with the dispatchers
+   */
+  public TaskEngine(int numSlots, String secret) {
+    m_NumSlots = Math.max(1, numSlots);
+    m_Secret = secret;
+  }
+
+  /**
+   * Returns the shared secret from the environment variable WEKA_TASK_SECRET.
+   *
+   * @return the secret, empty if the variable is not set
+   */
+  public static String getSecretFromEnvironment() {
+    String result = System.getenv(SECRET_VARIABLE);
+    return (result == null) ? "" : result;
+  }
+
+  /**
+   * Returns the shared secret from the environment variable WEKA_TASK_SECRET
+   * or, if that is not set, reads it from the console without echoing it.
+   *
+   * @param prompt the prompt to show on the console
+   * @return the secret, empty if the variable is not set and there is no
+   *         console
+   */
+  public static String readSecret(String prompt) {
+    String result = getSecretFromEnvironment();
+    if ((result.length() == 0) && (System.console() != null)) {
+      char[] chars = System.console().readPassword(prompt);
+      if (chars != null) {
+        result = new String(chars);
+        Arrays.fill(chars, ' ');
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Generates a random secret, e.g. for engines started by the dispatcher.
+   *
+   * @return the secret
+   */
+  public static String generateSecret() {
+    byte[] bytes = new byte[CHALLENGE_LENGTH];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Computes the answer of one side to a challenge.
+   *
+   * @param secret the shared secret
+   * @param engine true for the answer of the engine, false for the dispatcher
+   * @param challenge the challenge
+   * @return the answer
+   * @throws IOException if the HMAC can't be computed
+   */
+  protected static byte[] answer(String secret, boolean engine,
+    byte[] challenge) throws IOException {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), "HmacSHA256"));
+      // the role is included, so that a challenge can't be answered by
+      // sending it back to its sender
+      mac.update((byte) (engine ? 'E' : 'D'));
+      return mac.doFinal(challenge);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Can't compute HMAC: " + e);
+    }
+  }
+
+  /**
+   * Makes sure both sides of a new connection between engine and dispatcher
+   * know the shared secret, before any object is read from the connection.
+   * Each side sends a random challenge and answers the challenge of the other
+   * side with an HMAC of the challenge and its role, keyed with the secret.
+   *
+   * @param socket the connection
+   * @param secret the shared secret
+   * @param engine true if called by the engine, false by the dispatcher
+   * @throws IOException if there is no secret, the other side does not know
+   *           it, or the connection fails
+   */
+  public static void authenticate(Socket socket, String secret, boolean engine)
+    throws IOException {
+
+    if ((secret == null) || (secret.length() == 0)) {
+      throw new IOException("No shared secret set (environment variable "
+        + SECRET_VARIABLE + ")");
+    }
+
+    int timeout = socket.getSoTimeout();
+    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+
+    byte[] challenge = new byte[CHALLENGE_LENGTH];
+    new SecureRandom().nextBytes(challenge);
+    out.write(challenge);
+    out.flush();
+    byte[] received = new byte[CHALLENGE_LENGTH];
+    in.readFully(received);
+
+    out.write(answer(secret, engine, received));
+    out.flush();
+    byte[] expected = answer(secret, !engine, challenge);
+    byte[] response = new byte[expected.length];
+    in.readFully(response);
+    if (!MessageDigest.isEqual(expected, response)) {
+      socket.close();
+      throw new IOException("Authentication of "
+        + socket.getInetAddress().getHostAddress() + " failed");
+    }
+    socket.setSoTimeout(timeout);
+  }
+
+  /**
+   * Runs the iterations a dispatcher hands out until it has no more work, and
+   * closes the connection.
+   *
+   * @param socket the connection to the dispatcher
+   * @throws Exception if the connection fails
+   */
+  public void serve(Socket socket) throws Exception {
+
+    try {
+      authenticate(socket, m_Secret, true);
+      final DispatcherConnection connection = new DispatcherConnection(socket);
+      List<Thread> slots = new ArrayList<Thread>();
+      for (int i = 0; i < m_NumSlots; i++) {
+        final Experiment exp = (Experiment) SerializationHelper
+          .read(new ByteArrayInputStream(connection.m_Experiment));
+        // the transient state is not valid in a deserialized copy
+        exp.m_CurrentProperty = -1;
+        exp.m_CurrentInstances = null;
+        Thread t = new Thread() {
+          @Override
+          public void run() {
+            runSlot(connection, exp);
+          }
+        };
+        t.start();
+        slots.add(t);
+      }
+      for (Thread t : slots) {
+        t.join();
+      }
+      connection.sendBye();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Runs iterations on a copy of the experiment until the dispatcher has no
+   * more work or the connection fails.
+   *
+   * @param connection the connection to the dispatcher
+   * @param exp the copy of the experiment
+   */
+  protected void runSlot(DispatcherConnection connection, Experiment exp) {
+
+    try {
+      while (true) {
+        int[][] tasks = connection.requestTasks();
+        if (tasks == null) {
+          // nothing to do now, but iterations of a failing engine may
+          // still be handed out
+          Thread.sleep(POLL_INTERVAL);
+          continue;
+        }
+        if (tasks.length == 0) {
+          break;
+        }
+        for (int[] task : tasks) {
+          try {
+            exp.runIteration(task[1], task[2], task[3],
+              new EngineResultListener(connection, task[0]));
+            connection.sendDone(task[0]);
+          } catch (IOException e) {
+            throw e;
+          } catch (Exception e) {
+            e.printStackTrace();
+            connection.sendFailed(task[0], e.toString());
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Connection to dispatcher failed: " + e);
+    } catch (InterruptedException e) {
+      // stop
+    }
+  }
+
+  /**
+   * The connection to a dispatcher, shared by the execution slots. Every
+   * request is answered before the next one is sent.
+   */
+  protected static class DispatcherConnection {
+
+    /** the stream to the dispatcher */
+    protected ObjectOutputStream m_Out;
+
+    /** the stream from the dispatcher */
+    protected ObjectInputStream m_In;
+
+    /** the serialized experiment */
+    protected byte[] m_Experiment;
+
+    /**
+     * Sets up the streams and receives the experiment.
+     *
+     * @param socket the connection
+     * @throws Exception if the experiment can't be received
+     */
+    public DispatcherConnection(Socket socket) throws Exception {
+      m_Out = new ObjectOutputStream(new BufferedOutputStream(
+        socket.getOutputStream()));
+      m_Out.flush();
+      m_In = new ObjectInputStream(new BufferedInputStream(
+        socket.getInputStream()));
+      m_Experiment = (byte[]) m_In.readObject();
+    }
+
+    /**
+     * Asks for more iterations.
+     *
+     * @return the iterations (id, run, dataset index, property index), none
+     *         if there is no more work, null if there is no work right now
+     * @throws IOException if the connection fails
+     */
+    public synchronized int[][] requestTasks() throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_READY);
+      m_Out.flush();
+      int count = m_In.readInt();
+      if (count < 0) {
+        return null;
+      }
+      int[][] result = new int[count][4];
+      for (int[] task : result) {
+        for (int i = 0; i < task.length; i++) {
+          task[i] = m_In.readInt();
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Asks whether a result is required.
+     *
+     * @param task the id of the iteration
+     * @param key the key of the result
+     * @return true if the result should be generated
+     * @throws IOException if the connection fails
+     */
+    public synchronized boolean isResultRequired(int task, Object[] key)
+      throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_REQUIRED);
+      m_Out.writeInt(task);
+      m_Out.writeObject(key);
+      m_Out.reset();
+      m_Out.flush();
+      return m_In.readBoolean();
+    }
+
+    /**
+     * Asks for the column constraints of the result listener.
+     *
+     * @param task the id of the iteration
+     * @return the constraints
+     * @throws Exception if the connection fails
+     */
+    public synchronized String[] determineColumnConstraints(int task)
+      throws Exception {
+      m_Out.writeInt(TaskDispatcher.MSG_CONSTRAINTS);
+      m_Out.writeInt(task);
+      m_Out.flush();
+      return (String[]) m_In.readObject();
+    }
+
+    /**
+     * Sends a result.
+     *
+     * @param task the id of the iteration
+     * @param key the key of the result
+     * @param result the result
+     * @throws IOException if the connection fails
+     */
+    public synchronized void sendResult(int task, Object[] key,
+      Object[] result) throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_RESULT);
+      m_Out.writeInt(task);
+      m_Out.writeObject(key);
+      m_Out.writeObject(result);
+      m_Out.reset();
+      m_Out.flush();
+    }
+
+    /**
+     * Reports that an iteration has completed.
+     *
+     * @param task the id of the iteration
+     * @throws IOException if the connection fails
+     */
+    public synchronized void sendDone(int task) throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_DONE);
+      m_Out.writeInt(task);
+      m_Out.flush();
+    }
+
+    /**
+     * Reports that an iteration has failed.
+     *
+     * @param task the id of the iteration
+     * @param message the error message
+     * @throws IOException if the connection fails
+     */
+    public synchronized void sendFailed(int task, String message)
+      throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_FAILED);
+      m_Out.writeInt(task);
+      m_Out.writeObject(message);
+      m_Out.reset();
+      m_Out.flush();
+    }
+
+    /**
+     * Reports that the engine is done.
+     *
+     * @throws IOException if the connection fails
+     */
+    public synchronized void sendBye() throws IOException {
+      m_Out.writeInt(TaskDispatcher.MSG_BYE);
+      m_Out.flush();
+    }
+  }
+
+  /**
+   * Sends the results of an iteration to the dispatcher, and asks the
+   * dispatcher which results are required.
+   */
+  protected static class EngineResultListener implements ResultListener {
+
+    /** for serialization */
+    private static final long serialVersionUID = -3529419413815574396L;
+
+    /** the connection to the dispatcher */
+    protected transient DispatcherConnection m_Connection;
+
+    /** the id of the iteration */
+    protected int m_Task;
+
+    /**
+     * Initializes the listener.
+     *
+     * @param connection the connection to the dispatcher
+     * @param task the id of the iteration
+     */
+    public EngineResultListener(DispatcherConnection connection, int task) {
+      m_Connection = connection;
+      m_Task = task;
+    }
+
+    /**
+     * Asks the dispatcher for the column constraints.
+     *
+     * @param rp the ResultProducer to which the constraints will apply
+     * @return the constraints
+     * @throws Exception if the connection fails
+     */
+    @Override
+    public String[] determineColumnConstraints(ResultProducer rp)
+      throws Exception {
+      return m_Connection.determineColumnConstraints(m_Task);
+    }
+
+    /**
+     * Does nothing, the dispatcher prepares the actual listener.
+     *
+     * @param rp the ResultProducer that will generate the results
+     */
+    @Override
+    public void preProcess(ResultProducer rp) {
+    }
+
+    /**
+     * Does nothing, the dispatcher finishes the actual listener.
+     *
+     * @param rp the ResultProducer that generated the results
+     */
+    @Override
+    public void postProcess(ResultProducer rp) {
+    }
+
+    /**
+     * Sends a result to the dispatcher.
+     *
+     * @param rp the ResultProducer that generated the results
+     * @param key the key of the result
+     * @param result the result
+     * @throws Exception if the connection fails
+     */
+    @Override
+    public void acceptResult(ResultProducer rp, Object[] key, Object[] result)
+      throws Exception {
+      m_Connection.sendResult(m_Task, key, result);
+    }
+
+    /**
+     * Asks the dispatcher whether a result is required.
+     *
+     * @param rp the ResultProducer wanting to generate the results
+     * @param key the key of the result
+     * @return true if the result should be generated
+     * @throws Exception if the connection fails
+     */
+    @Override
+    public boolean isResultRequired(ResultProducer rp, Object[] key)
+      throws Exception {
+      return m_Connection.isResultRequired(m_Task, key);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Starts an engine.
+   *
+   * @param args the options: -p &lt;port&gt; to listen for dispatchers (default
+   *          8766) on the interface given with -bind &lt;address&gt; (default
+   *          loopback), or -connect &lt;host:port&gt; to connect to a
+   *          dispatcher; -slots &lt;num&gt; for the number of iterations to
+   *          run in parallel (default number of processors). The shared
+   *          secret is taken from the environment variable WEKA_TASK_SECRET
+   *          or read from the console.
+   */
+  public static void main(String[] args) {
+
+    try {
+      weka.core.WekaPackageManager.loadPackages(false, true, false);
+
+      String tmpStr = Utils.getOption("slots", args);
+      int slots = Runtime.getRuntime().availableProcessors();
+      if (tmpStr.length() != 0) {
+        slots = Integer.parseInt(tmpStr);
+      }
+      String secret = readSecret("Secret shared with the dispatchers: ");
+      if (secret.length() == 0) {
+        throw new Exception("No shared secret set (environment variable "
+          + SECRET_VARIABLE + ")");
+      }
+      final TaskEngine engine = new TaskEngine(slots, secret);
+
+      String connect = Utils.getOption("connect", args);
+      if (connect.length() != 0) {
+        int colon = connect.lastIndexOf(':');
+        engine.serve(new Socket(connect.substring(0, colon), Integer
+          .parseInt(connect.substring(colon + 1))));
+        return;
+      }
+
+      int port = DEFAULT_PORT;
+      tmpStr = Utils.getOption('p', args);
+      if (tmpStr.length() != 0) {
+        port = Integer.parseInt(tmpStr);
+      }
+      String bind = Utils.getOption("bind", args);
+      InetAddress address = (bind.length() == 0) ? InetAddress
+        .getByName(null) : InetAddress.getByName(bind);
+      ServerSocket server = new ServerSocket(port, 50, address);
+      System.err.println("TaskEngine listening on "
+        + address.getHostAddress() + ":" + port + " with " + engine.m_NumSlots
+        + " slots");
+      while (true) {
+        final Socket socket = server.accept();
+        System.err.println("Connection from "
+          + socket.getInetAddress().getHostAddress());
+        Thread t = new Thread() {
+          @Override
+          public void run() {
+            try {
+              engine.serve(socket);
+            } catch (Exception e) {
+              e.printStackTrace();
+            }
+          }
+        };
+        t.start();
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.err.println("Usage: -p <port> [-bind <address>] "
+        + "| -connect <host:port> [-slots <num>]");
+    }
+  }
+}
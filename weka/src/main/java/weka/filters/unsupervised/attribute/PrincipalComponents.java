@@ -22,6 +22,7 @@ package weka.filters.unsupervised.attribute;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Vector;
 
 import weka.core.Attribute;
@@ -35,8 +36,10 @@ import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.core.matrix.CovarianceAccumulator;
 import weka.core.matrix.EigenvalueDecomposition;
 import weka.core.matrix.Matrix;
+import weka.core.matrix.TruncatedEigenvalueDecomposition;
 import weka.filters.Filter;
 import weka.filters.UnsupervisedFilter;
 
@@ -46,6 +49,9 @@ import weka.filters.UnsupervisedFilter;
  * Dimensionality reduction is accomplished by choosing enough eigenvectors to
  * account for some percentage of the variance in the original data -- default
  * 0.95 (95%).<br/>
+ * For data with many attributes, only a given number of principal components
+ * can be computed with a randomized method, which avoids the full (cubic)
+ * eigenvalue decomposition.<br/>
  * Based on code of the attribute selection scheme 'PrincipalComponents' by Mark
  * Hall and Gabi Schmidberger.
  * <p/>
@@ -81,6 +87,18 @@ import weka.filters.UnsupervisedFilter;
  *  (-1 = include all, default: -1)
  * </pre>
  * 
+ * <pre>
+ * -num-components &lt;num&gt;
+ *  Number of principal components to compute with a
+ *  randomized method (default -1 = compute all exactly).
+ * </pre>
+ * 
+ * <pre>
+ * -S &lt;num&gt;
+ *  Random number seed for the randomized method.
+ *  (default: 1)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz) -- attribute selection code
@@ -169,6 +187,15 @@ public class PrincipalComponents extends Filter implements OptionHandler,
   /** maximum number of attributes in the transformed data (-1 for all). */
   protected int m_MaxAttributes = -1;
 
+  /**
+   * the number of principal components to compute with the randomized method
+   * (-1 = compute all exactly).
+   */
+  protected int m_NumComponents = -1;
+
+  /** the seed for the randomized method. */
+  protected int m_Seed = 1;
+
   /**
    * Returns a string describing this filter.
    * 
@@ -181,6 +208,9 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       + "Dimensionality reduction is accomplished by choosing enough eigenvectors "
       + "to account for some percentage of the variance in the original data -- "
       + "default 0.95 (95%).\n"
+      + "For data with many attributes, only a given number of principal "
+      + "components can be computed with a randomized method, which avoids "
+      + "the full (cubic) eigenvalue decomposition.\n"
       + "Based on code of the attribute selection scheme 'PrincipalComponents' "
       + "by Mark Hall and Gabi Schmidberger.";
   }
@@ -212,6 +242,15 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       "\tMaximum number of PC attributes to retain.\n"
         + "\t(-1 = include all, default: -1)", "M", 1, "-M <num>"));
 
+    result.addElement(new Option(
+      "\tNumber of principal components to compute with a\n"
+        + "\trandomized method (default -1 = compute all exactly).",
+      "num-components", 1, "-num-components <num>"));
+
+    result.addElement(new Option(
+      "\tRandom number seed for the randomized method.\n"
+        + "\t(default: 1)", "S", 1, "-S <num>"));
+
     return result.elements();
   }
 
@@ -249,6 +288,18 @@ public class PrincipalComponents extends Filter implements OptionHandler,
    *  (-1 = include all, default: -1)
    * </pre>
    * 
+   * <pre>
+   * -num-components &lt;num&gt;
+   *  Number of principal components to compute with a
+   *  randomized method (default -1 = compute all exactly).
+   * </pre>
+   * 
+   * <pre>
+   * -S &lt;num&gt;
+   *  Random number seed for the randomized method.
+   *  (default: 1)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -278,6 +329,20 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       setMaximumAttributes(-1);
     }
 
+    tmpStr = Utils.getOption("num-components", options);
+    if (tmpStr.length() != 0) {
+      setNumComponents(Integer.parseInt(tmpStr));
+    } else {
+      setNumComponents(-1);
+    }
+
+    tmpStr = Utils.getOption('S', options);
+    if (tmpStr.length() != 0) {
+      setSeed(Integer.parseInt(tmpStr));
+    } else {
+      setSeed(1);
+    }
+
     setCenterData(Utils.getFlag('C', options));
 
     Utils.checkForRemainingOptions(options);
@@ -302,6 +367,14 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     result.add("-M");
     result.add("" + getMaximumAttributes());
 
+    if (getNumComponents() > 0) {
+      result.add("-num-components");
+      result.add("" + getNumComponents());
+
+      result.add("-S");
+      result.add("" + getSeed());
+    }
+
     if (getCenterData()) {
       result.add("-C");
     }
@@ -428,6 +501,67 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     return m_MaxAttributes;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numComponentsTipText() {
+    return "The number of principal components to compute with a randomized "
+      + "method that avoids the full eigenvalue decomposition (-1 = compute "
+      + "all components exactly). The proportion of variance is still "
+      + "measured against the total variance of the data.";
+  }
+
+  /**
+   * Sets the number of principal components to compute with the randomized
+   * method.
+   * 
+   * @param value the number of components (-1 = compute all exactly)
+   */
+  public void setNumComponents(int value) {
+    m_NumComponents = value;
+  }
+
+  /**
+   * Gets the number of principal components to compute with the randomized
+   * method.
+   * 
+   * @return the number of components (-1 = compute all exactly)
+   */
+  public int getNumComponents() {
+    return m_NumComponents;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The random number seed for the randomized method.";
+  }
+
+  /**
+   * Sets the seed for the randomized method.
+   * 
+   * @param value the seed
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Gets the seed for the randomized method.
+   * 
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
   /**
    * Returns the capabilities of this evaluator.
    * 
@@ -479,13 +613,15 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     int[] coeff_inds;
     double coeff_value;
     int numAttsLowerBound;
+    int numComponents;
 
     if (m_Eigenvalues == null) {
       return inputFormat;
     }
 
+    numComponents = m_Eigenvalues.length;
     if (m_MaxAttributes > 0) {
-      numAttsLowerBound = m_NumAttribs - m_MaxAttributes;
+      numAttsLowerBound = numComponents - m_MaxAttributes;
     } else {
       numAttsLowerBound = 0;
     }
@@ -495,7 +631,7 @@ public class PrincipalComponents extends Filter implements OptionHandler,
 
     cumulative = 0.0;
     attributes = new ArrayList<Attribute>();
-    for (i = m_NumAttribs - 1; i >= numAttsLowerBound; i--) {
+    for (i = numComponents - 1; i >= numAttsLowerBound; i--) {
       attName = new StringBuffer();
       // build array of coefficients
       coeff_mags = new double[m_NumAttribs];
@@ -555,9 +691,17 @@ public class PrincipalComponents extends Filter implements OptionHandler,
   }
 
   protected void fillCovariance() throws Exception {
+    int i;
+    CovarianceAccumulator accumulator;
+
+    // one pass over the data for the covariance matrix
+    accumulator = new CovarianceAccumulator(m_NumAttribs);
+    for (i = 0; i < m_NumInstances; i++) {
+      accumulator.add(m_TrainInstances.instance(i).toDoubleArray());
+    }
 
     if (!m_center) {
-      fillCorrelation();
+      fillCorrelation(accumulator);
       return;
     }
 
@@ -566,61 +710,17 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     m_centerFilter.setInputFormat(m_TrainInstances);
     m_TrainInstances = Filter.useFilter(m_TrainInstances, m_centerFilter);
 
-    // now compute the covariance matrix
-    m_Correlation = new double[m_NumAttribs][m_NumAttribs];
-
-    for (int i = 0; i < m_NumAttribs; i++) {
-      for (int j = 0; j < m_NumAttribs; j++) {
-
-        double cov = 0;
-        for (int k = 0; k < m_NumInstances; k++) {
-
-          if (i == j) {
-            cov += (m_TrainInstances.instance(k).value(i) * m_TrainInstances
-              .instance(k).value(i));
-          } else {
-            cov += (m_TrainInstances.instance(k).value(i) * m_TrainInstances
-              .instance(k).value(j));
-          }
-        }
-
-        cov /= m_TrainInstances.numInstances() - 1;
-        m_Correlation[i][j] = cov;
-        m_Correlation[j][i] = cov;
-      }
-    }
+    m_Correlation = accumulator.getCovariance();
   }
 
   /**
    * Fill the correlation matrix.
+   * 
+   * @param accumulator the statistics of the data
    */
-  protected void fillCorrelation() throws Exception {
-    int i;
-    int j;
-    int k;
-    double[] att1;
-    double[] att2;
-    double corr;
-
-    m_Correlation = new double[m_NumAttribs][m_NumAttribs];
-    att1 = new double[m_NumInstances];
-    att2 = new double[m_NumInstances];
-
-    for (i = 0; i < m_NumAttribs; i++) {
-      for (j = 0; j < m_NumAttribs; j++) {
-        for (k = 0; k < m_NumInstances; k++) {
-          att1[k] = m_TrainInstances.instance(k).value(i);
-          att2[k] = m_TrainInstances.instance(k).value(j);
-        }
-        if (i == j) {
-          m_Correlation[i][j] = 1.0;
-        } else {
-          corr = Utils.correlation(att1, att2, m_NumInstances);
-          m_Correlation[i][j] = corr;
-          m_Correlation[j][i] = corr;
-        }
-      }
-    }
+  protected void fillCorrelation(CovarianceAccumulator accumulator)
+    throws Exception {
+    m_Correlation = accumulator.getCorrelation();
 
     // now standardize the input data
     m_standardizeFilter = new Standardize();
@@ -644,6 +744,7 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     int j;
     double tempval;
     int numAttsLowerBound;
+    int numComponents;
 
     newVals = new double[m_OutputNumAtts];
     tempInst = (Instance) instance.copy();
@@ -676,8 +777,9 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       newVals[m_OutputNumAtts - 1] = instance.value(instance.classIndex());
     }
 
+    numComponents = m_Eigenvalues.length;
     if (m_MaxAttributes > 0) {
-      numAttsLowerBound = m_NumAttribs - m_MaxAttributes;
+      numAttsLowerBound = numComponents - m_MaxAttributes;
     } else {
       numAttsLowerBound = 0;
     }
@@ -686,13 +788,13 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     }
 
     cumulative = 0;
-    for (i = m_NumAttribs - 1; i >= numAttsLowerBound; i--) {
+    for (i = numComponents - 1; i >= numAttsLowerBound; i--) {
       tempval = 0.0;
       for (j = 0; j < m_NumAttribs; j++) {
         tempval += m_Eigenvectors[j][m_SortedEigens[i]] * tempInst.value(j);
       }
 
-      newVals[m_NumAttribs - i - 1] = tempval;
+      newVals[numComponents - i - 1] = tempval;
       cumulative += m_Eigenvalues[m_SortedEigens[i]];
       if ((cumulative / m_SumOfEigenValues) >= m_CoverVariance) {
         break;
@@ -718,13 +820,8 @@ public class PrincipalComponents extends Filter implements OptionHandler,
    */
   protected void setup(Instances instances) throws Exception {
     int i;
-    int j;
     Vector<Integer> deleteCols;
     int[] todelete;
-    double[][] v;
-    Matrix corr;
-    EigenvalueDecomposition eig;
-    Matrix V;
 
     m_TrainInstances = new Instances(instances);
 
@@ -780,17 +877,18 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     fillCovariance();
 
     // get eigen vectors/values
-    corr = new Matrix(m_Correlation);
-    eig = corr.eig();
-    V = eig.getV();
-    v = new double[m_NumAttribs][m_NumAttribs];
-    for (i = 0; i < v.length; i++) {
-      for (j = 0; j < v[0].length; j++) {
-        v[i][j] = V.get(i, j);
-      }
+    if (m_NumComponents > 0 && m_NumComponents < m_NumAttribs) {
+      // only the leading components, with a randomized method; the
+      // proportions of variance still refer to the total variance
+      TruncatedEigenvalueDecomposition eig = new TruncatedEigenvalueDecomposition(
+        new Matrix(m_Correlation), m_NumComponents, new Random(m_Seed));
+      m_Eigenvectors = eig.getV().getArray();
+      m_Eigenvalues = eig.getRealEigenvalues().clone();
+    } else {
+      EigenvalueDecomposition eig = new Matrix(m_Correlation).eig();
+      m_Eigenvectors = eig.getV().getArrayCopy();
+      m_Eigenvalues = eig.getRealEigenvalues().clone();
     }
-    m_Eigenvectors = v.clone();
-    m_Eigenvalues = eig.getRealEigenvalues().clone();
 
     // any eigenvalues less than 0 are not worth anything --- change to 0
     for (i = 0; i < m_Eigenvalues.length; i++) {
@@ -799,7 +897,15 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       }
     }
     m_SortedEigens = Utils.sort(m_Eigenvalues);
-    m_SumOfEigenValues = Utils.sum(m_Eigenvalues);
+    if (m_Eigenvalues.length == m_NumAttribs) {
+      m_SumOfEigenValues = Utils.sum(m_Eigenvalues);
+    } else {
+      // the total variance is the trace of the matrix
+      m_SumOfEigenValues = 0;
+      for (i = 0; i < m_NumAttribs; i++) {
+        m_SumOfEigenValues += m_Correlation[i][i];
+      }
+    }
 
     m_TransformedFormat = determineOutputFormat(m_TrainInstances);
     setOutputFormat(m_TransformedFormat);
@@ -0,0 +1,576 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    BeanExecutor.java
+ *    Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.gui.beans;
+
+import java.beans.EventSetDescriptor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import weka.core.Instance;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.gui.Logger;
+
+/**
+ * Executes the beans of a flow on a fixed pool of threads. Every connection
+ * of the flow is rewired so that the source hands its events to a proxy
+ * listener, which puts them in a bounded queue belonging to the target bean
+ * and returns immediately. The queued events of a bean are processed by one
+ * thread at a time and in the order in which they arrived, so a bean sees the
+ * same sequence of events as in a sequential run, while different beans of a
+ * pipeline work concurrently.
+ * <p/>
+ *
+ * When a bean's queue is full, the source blocks until there is room again.
+ * This keeps a fast loader from flooding slow downstream steps with
+ * instances. A thread that has to wait for a queue whose bean is not being
+ * processed at the moment processes the queued events itself, so a flow
+ * cannot stall when all pool threads are waiting.
+ * <p/>
+ *
+ * Since sources usually reuse their event objects, instance and chart events
+ * are copied before they are queued. Incremental classifier events are
+ * delivered synchronously, after the events already queued for the bean, as
+ * they refer to a model that the source updates as soon as the listeners have
+ * returned. Listener methods that return a value are called synchronously as
+ * well.
+ * <p/>
+ *
+ * A synchronous call passes a failure of the listener on to the source. As
+ * the source has moved on by the time a queued event is delivered, failures
+ * of queued events are written to the log of the flow instead.
+ *
+ * @version $Revision$
+ */
+public class BeanExecutor implements RevisionHandler {
+
+  /** the default capacity of the queue of each bean */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  /** the pool running the beans */
+  protected ExecutorService m_Pool;
+
+  /** the capacity of the queue of each bean */
+  protected int m_QueueCapacity;
+
+  /** the queues of the target beans */
+  protected Map<Object, Mailbox> m_Mailboxes = new IdentityHashMap<Object, Mailbox>();
+
+  /** the number of queued events that haven't been processed yet */
+  protected int m_Pending = 0;
+
+  /** the log for failures of queued events, null for standard error */
+  protected Logger m_Log;
+
+  /**
+   * The queue of events for a single bean.
+   */
+  protected class Mailbox implements Runnable {
+
+    /** the queued events */
+    protected BlockingQueue<Runnable> m_Queue;
+
+    /** the thread currently processing the events, null if none */
+    protected Thread m_Runner = null;
+
+    /** whether the mailbox has been submitted to the pool */
+    protected boolean m_Scheduled = false;
+
+    /**
+     * Initializes the mailbox.
+     *
+     * @param capacity the capacity of the queue
+     */
+    public Mailbox(int capacity) {
+      m_Queue = new ArrayBlockingQueue<Runnable>(capacity);
+    }
+
+    /**
+     * Queues an event, blocking while the queue is full.
+     *
+     * @param task the delivery of the event
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void post(Runnable task) throws InterruptedException {
+      synchronized (BeanExecutor.this) {
+        m_Pending++;
+      }
+
+      // the bean sends an event to itself
+      if (m_Runner == Thread.currentThread()) {
+        execute(task);
+        return;
+      }
+
+      while (!m_Queue.offer(task, 10, TimeUnit.MILLISECONDS)) {
+        // nobody is processing the queue, help out
+        if (claim()) {
+          try {
+            drain();
+          } finally {
+            release();
+          }
+        }
+      }
+      schedule();
+    }
+
+    /**
+     * Submits the mailbox to the pool, unless it is already waiting there or
+     * being processed.
+     */
+    protected void schedule() {
+      synchronized (this) {
+        if (m_Scheduled || (m_Runner != null)) {
+          return;
+        }
+        m_Scheduled = true;
+      }
+      m_Pool.execute(this);
+    }
+
+    /**
+     * Makes the current thread the one processing the queue.
+     *
+     * @return false if another thread is processing the queue
+     */
+    protected synchronized boolean claim() {
+      if (m_Runner != null) {
+        return false;
+      }
+      m_Runner = Thread.currentThread();
+      return true;
+    }
+
+    /**
+     * Gives up processing the queue and reschedules the mailbox if events
+     * have arrived in the meantime.
+     */
+    protected void release() {
+      synchronized (this) {
+        m_Runner = null;
+        notifyAll();
+      }
+      if (!m_Queue.isEmpty()) {
+        schedule();
+      }
+    }
+
+    /**
+     * Processes the queued events and then calls a listener method directly,
+     * waiting while another thread is processing the queue.
+     *
+     * @param method the listener method
+     * @param target the listener
+     * @param args the arguments
+     * @return the result of the method
+     * @throws Exception if the method fails or if interrupted while waiting
+     */
+    public Object call(Method method, Object target, Object[] args)
+      throws Exception {
+      if (m_Runner == Thread.currentThread()) {
+        return method.invoke(target, args);
+      }
+      synchronized (this) {
+        while (!claim()) {
+          wait();
+        }
+      }
+      try {
+        drain();
+        return method.invoke(target, args);
+      } finally {
+        release();
+      }
+    }
+
+    /**
+     * Processes the queued events.
+     */
+    protected void drain() {
+      Runnable task;
+      while ((task = m_Queue.poll()) != null) {
+        execute(task);
+      }
+    }
+
+    /**
+     * Discards the queued events.
+     *
+     * @return the number of discarded events
+     */
+    public int clear() {
+      List<Runnable> discarded = new ArrayList<Runnable>();
+      m_Queue.drainTo(discarded);
+      return discarded.size();
+    }
+
+    /**
+     * Processes the queued events on a pool thread.
+     */
+    @Override
+    public void run() {
+      synchronized (this) {
+        m_Scheduled = false;
+      }
+      if (claim()) {
+        try {
+          drain();
+        } finally {
+          release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Delivers the events of one listener interface to the target's mailbox.
+   */
+  protected class AsyncListener implements InvocationHandler {
+
+    /** the actual listener */
+    protected Object m_Target;
+
+    /** the mailbox of the listener */
+    protected Mailbox m_Mailbox;
+
+    /**
+     * Initializes the handler.
+     *
+     * @param target the actual listener
+     * @param mailbox the mailbox of the listener
+     */
+    public AsyncListener(Object target, Mailbox mailbox) {
+      m_Target = target;
+      m_Mailbox = mailbox;
+    }
+
+    /**
+     * Queues the call of a listener method, or calls the method directly if
+     * it can't be deferred.
+     *
+     * @param proxy the proxy the method was called on
+     * @param method the method
+     * @param args the arguments
+     * @return the result of the method
+     * @throws Throwable if the method fails
+     */
+    @Override
+    public Object invoke(Object proxy, final Method method, Object[] args)
+      throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        if (method.getName().equals("equals")) {
+          return new Boolean(proxy == args[0]);
+        }
+        if (method.getName().equals("hashCode")) {
+          return new Integer(System.identityHashCode(proxy));
+        }
+        return method.invoke(m_Target, args);
+      }
+
+      if ((method.getReturnType() != Void.TYPE) || !isDeferrable(args)) {
+        try {
+          return m_Mailbox.call(method, m_Target, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+
+      final Object[] copy = new Object[args.length];
+      for (int i = 0; i < args.length; i++) {
+        copy[i] = copyEvent(args[i]);
+      }
+      m_Mailbox.post(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            method.invoke(m_Target, copy);
+          } catch (InvocationTargetException e) {
+            logFailure(m_Target, method, e.getCause());
+          } catch (Exception e) {
+            logFailure(m_Target, method, e);
+          }
+        }
+      });
+
+      return null;
+    }
+  }
+
+  /**
+   * Initializes the executor.
+   *
+   * @param numThreads the number of threads running the beans
+   * @param queueCapacity the capacity of the queue of each bean
+   */
+  public BeanExecutor(int numThreads, int queueCapacity) {
+    m_QueueCapacity = queueCapacity;
+    m_Pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "KnowledgeFlow step");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Initializes the executor with the default queue capacity.
+   *
+   * @param numThreads the number of threads running the beans
+   */
+  public BeanExecutor(int numThreads) {
+    this(numThreads, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Sets the log that failures of queued events are written to, usually the
+   * one of the beans.
+   *
+   * @param log the log, null for standard error
+   */
+  public void setLog(Logger log) {
+    m_Log = log;
+  }
+
+  /**
+   * Reports the failure of a queued event's delivery.
+   *
+   * @param target the listener
+   * @param method the listener method
+   * @param failure the exception thrown by the listener
+   */
+  protected void logFailure(Object target, Method method, Throwable failure) {
+    String name = (target instanceof BeanCommon) ? ((BeanCommon) target)
+      .getCustomName() : target.getClass().getName();
+    String msg = "[" + name + "] ERROR: " + method.getName() + " failed: "
+      + failure;
+    if (m_Log != null) {
+      m_Log.logMessage(msg);
+    } else {
+      System.err.println(msg);
+    }
+    failure.printStackTrace();
+  }
+
+  /**
+   * Returns whether the arguments of a listener call may be delivered later.
+   *
+   * @param args the arguments
+   * @return true if the call can be queued
+   */
+  protected boolean isDeferrable(Object[] args) {
+    if (args == null) {
+      return true;
+    }
+    for (Object arg : args) {
+      if (arg instanceof IncrementalClassifierEvent) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies an event that its source is likely to reuse. Other arguments are
+   * returned as they are.
+   *
+   * @param arg the argument of the listener call
+   * @return the copy
+   */
+  protected static Object copyEvent(Object arg) {
+    if (arg instanceof InstanceEvent) {
+      InstanceEvent e = (InstanceEvent) arg;
+      InstanceEvent result = new InstanceEvent(e.getSource());
+      if (e.getStructure() != null) {
+        result.setStructure(e.getStructure());
+      }
+      if (e.isBlock()) {
+        result.setInstanceBlock(new ArrayList<Instance>(e.getInstanceBlock()));
+      } else {
+        result.setInstance(e.getInstance());
+      }
+      result.setStatus(e.getStatus());
+      result.m_formatNotificationOnly = e.m_formatNotificationOnly;
+      return result;
+    }
+
+    if (arg instanceof ChartEvent) {
+      ChartEvent e = (ChartEvent) arg;
+      ChartEvent result = new ChartEvent(e.getSource());
+      result.setLegendText(e.getLegendText());
+      result.setMin(e.getMin());
+      result.setMax(e.getMax());
+      if (e.getDataPoint() != null) {
+        result.setDataPoint(e.getDataPoint().clone());
+      }
+      result.setReset(e.getReset());
+      return result;
+    }
+
+    return arg;
+  }
+
+  /**
+   * Returns the mailbox of a bean, creating it if necessary.
+   *
+   * @param target the bean
+   * @return the mailbox
+   */
+  protected synchronized Mailbox getMailbox(Object target) {
+    Mailbox result = m_Mailboxes.get(target);
+    if (result == null) {
+      result = new Mailbox(m_QueueCapacity);
+      m_Mailboxes.put(target, result);
+    }
+    return result;
+  }
+
+  /**
+   * Rewires a connection, so that the target receives the events of the
+   * source through its queue.
+   *
+   * @param connection the connection
+   * @throws Exception if the listener can't be replaced
+   */
+  public void connect(BeanConnection connection) throws Exception {
+    EventSetDescriptor esd = connection.getSourceEventSetDescriptor();
+    if (esd == null) {
+      return;
+    }
+    Object source = connection.getSource().getBean();
+    Object target = connection.getTarget().getBean();
+    Class<?> type = esd.getListenerType();
+
+    // the proxy also implements the target's extensions of the listener
+    // interface, e.g., InstanceBlockListener
+    List<Class<?>> types = new ArrayList<Class<?>>();
+    types.add(type);
+    for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+      for (Class<?> intf : c.getInterfaces()) {
+        if ((intf != type) && type.isAssignableFrom(intf)
+          && !types.contains(intf)) {
+          types.add(intf);
+        }
+      }
+    }
+
+    Object proxy = Proxy.newProxyInstance(type.getClassLoader(),
+      types.toArray(new Class<?>[types.size()]), new AsyncListener(target,
+        getMailbox(target)));
+    esd.getRemoveListenerMethod().invoke(source, new Object[] { target });
+    esd.getAddListenerMethod().invoke(source, new Object[] { proxy });
+  }
+
+  /**
+   * Rewires all connections of a flow.
+   *
+   * @param connections the connections
+   * @throws Exception if a listener can't be replaced
+   */
+  public void connect(Vector<BeanConnection> connections) throws Exception {
+    for (BeanConnection connection : connections) {
+      connect(connection);
+    }
+  }
+
+  /**
+   * Delivers a queued event and updates the number of pending events.
+   *
+   * @param task the delivery of the event
+   */
+  protected void execute(Runnable task) {
+    try {
+      task.run();
+    } finally {
+      synchronized (this) {
+        m_Pending--;
+        if (m_Pending == 0) {
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether all queued events have been processed.
+   *
+   * @return true if there is nothing left to do
+   */
+  public synchronized boolean isIdle() {
+    return m_Pending == 0;
+  }
+
+  /**
+   * Waits until all queued events have been processed.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void waitUntilIdle() throws InterruptedException {
+    while (m_Pending > 0) {
+      wait();
+    }
+  }
+
+  /**
+   * Discards all queued events, e.g., when the flow gets stopped.
+   */
+  public synchronized void clear() {
+    for (Mailbox mailbox : m_Mailboxes.values()) {
+      m_Pending -= mailbox.clear();
+    }
+    if (m_Pending == 0) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Stops the threads running the beans.
+   */
+  public void shutdown() {
+    m_Pool.shutdownNow();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -40,7 +40,7 @@ import weka.core.Instances;
 public class ClassAssigner extends JPanel implements Visible,
   DataSourceListener, TrainingSetListener, TestSetListener, DataSource,
   TrainingSetProducer, TestSetProducer, BeanCommon, EventConstraints,
-  Serializable, InstanceListener, StructureProducer {
+  Serializable, InstanceBlockListener, StructureProducer {
 
   /** for serialization */
   private static final long serialVersionUID = 4011131665025817924L;
@@ -374,7 +374,7 @@ public class ClassAssigner extends JPanel implements Visible,
         // System.err.println("Notifying instance listeners "
         // +"(ClassAssigner)");
 
-        l.elementAt(i).acceptInstance(tse);
+        tse.deliverTo(l.elementAt(i));
       }
     }
   }
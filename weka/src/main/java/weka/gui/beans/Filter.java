@@ -24,9 +24,11 @@ package weka.gui.beans;
 import java.awt.BorderLayout;
 import java.beans.EventSetDescriptor;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.EventObject;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.JPanel;
@@ -50,7 +52,7 @@ import weka.gui.Logger;
 public class Filter extends JPanel implements BeanCommon, Visible, WekaWrapper,
   Serializable, UserRequestAcceptor, TrainingSetListener, TestSetListener,
   TrainingSetProducer, TestSetProducer, DataSource, DataSourceListener,
-  InstanceListener, EventConstraints, ConfigurationProducer {
+  InstanceBlockListener, EventConstraints, ConfigurationProducer {
 
   /** for serialization */
   private static final long serialVersionUID = 8249759470189439321L;
@@ -240,6 +242,113 @@ public class Filter extends JPanel implements BeanCommon, Visible, WekaWrapper,
 
   private boolean m_structurePassedOn = false;
 
+  /**
+   * Passes an instance through the filter. Passes on the output structure
+   * first, if that hasn't happened yet.
+   * 
+   * @param instance the instance to filter
+   * @return the filtered instance, null if the filter doesn't output an
+   *         instance at this point
+   * @throws Exception if the instance can't be filtered
+   */
+  protected Instance filterInstance(Instance instance) throws Exception {
+    if (!m_Filter.input(instance)) {
+      // quietly return. Filter might be able to output some instances
+      // once the batch is finished.
+      return null;
+    }
+
+    // collect output instance.
+    Instance filteredInstance = m_Filter.output();
+    if (filteredInstance == null) {
+      return null;
+    }
+    m_instanceCount++;
+
+    if (!m_structurePassedOn) {
+      // pass on the new structure first
+      m_ie.setStructure(new Instances(filteredInstance.dataset(), 0));
+      notifyInstanceListeners(m_ie);
+      m_structurePassedOn = true;
+    }
+
+    filteredInstance.setDataset(m_ie.getStructure());
+
+    if (filteredInstance.dataset().checkForStringAttributes()) {
+      for (int i = 0; i < filteredInstance.dataset().numAttributes(); i++) {
+        if (filteredInstance.dataset().attribute(i).isString()
+          && !filteredInstance.isMissing(i)) {
+          String val = filteredInstance.stringValue(i);
+
+          filteredInstance.dataset().attribute(i).setStringValue(val);
+          filteredInstance.setValue(i, 0);
+        }
+      }
+    }
+
+    if (m_log != null && (m_instanceCount % 10000 == 0)) {
+      m_log.statusMessage(statusMessagePrefix() + "Received "
+        + m_instanceCount + " instances.");
+    }
+
+    return filteredInstance;
+  }
+
+  /**
+   * Passes a block of instances through the filter and passes on the filtered
+   * instances as a block. If the block ends the stream, its last instance is
+   * processed like a single BATCH_FINISHED event, so that instances the filter
+   * holds back until the end of the batch get passed on as well. Filtered
+   * instances with string attributes are passed on one at a time, as their
+   * string values are kept in the header.
+   * 
+   * @param e the event carrying the block
+   */
+  protected void acceptInstanceBlock(InstanceEvent e) {
+    List<Instance> block = e.getInstanceBlock();
+    int last = block.size();
+    if (e.getStatus() == InstanceEvent.BATCH_FINISHED) {
+      last--;
+    }
+
+    List<Instance> filtered = new ArrayList<Instance>(Math.max(last, 0));
+    try {
+      for (int i = 0; i < last; i++) {
+        Instance filteredInstance = filterInstance(block.get(i));
+        if (filteredInstance == null) {
+          continue;
+        }
+        if (filteredInstance.dataset().checkForStringAttributes()) {
+          m_ie.setInstance(filteredInstance);
+          m_ie.setStatus(InstanceEvent.INSTANCE_AVAILABLE);
+          notifyInstanceListeners(m_ie);
+        } else {
+          filtered.add(filteredInstance);
+        }
+      }
+    } catch (Exception ex) {
+      stop(); // stop all processing
+      if (m_log != null) {
+        m_log.logMessage("[Filter] " + statusMessagePrefix() + ex.toString());
+        m_log.statusMessage(statusMessagePrefix()
+          + "ERROR (See log for details).");
+      }
+      ex.printStackTrace();
+      return;
+    }
+
+    if (filtered.size() > 0) {
+      m_ie.setInstanceBlock(filtered);
+      m_ie.setStatus(InstanceEvent.INSTANCE_AVAILABLE);
+      notifyInstanceListeners(m_ie);
+    }
+
+    if (e.getStatus() == InstanceEvent.BATCH_FINISHED) {
+      acceptInstance(new InstanceEvent(e.getSource(), last >= 0 ? block
+        .get(last) : null, InstanceEvent.BATCH_FINISHED));
+    }
+  }
+
   /**
    * Accept an instance for processing by StreamableFilters only
    * 
@@ -271,6 +380,10 @@ public class Filter extends JPanel implements BeanCommon, Visible, WekaWrapper,
       }
       return;
     }
+    if (e.isBlock()) {
+      acceptInstanceBlock(e);
+      return;
+    }
     if (e.getStatus() == InstanceEvent.FORMAT_AVAILABLE) {
       try {
         m_instanceCount = 0;
@@ -428,53 +541,13 @@ public class Filter extends JPanel implements BeanCommon, Visible, WekaWrapper,
     } else {
       // pass instance through the filter
       try {
-        if (!m_Filter.input(e.getInstance())) {
-          // System.err.println("Filter - inputing instance into filter...");
-          /*
-           * if (m_log != null) {
-           * m_log.logMessage("ERROR : filter not ready to output instance"); }
-           */
-
-          // quietly return. Filter might be able to output some instances
-          // once the batch is finished.
-          return;
-        }
-
-        // collect output instance.
-        Instance filteredInstance = m_Filter.output();
+        Instance filteredInstance = filterInstance(e.getInstance());
         if (filteredInstance == null) {
           return;
         }
-        m_instanceCount++;
-
-        if (!m_structurePassedOn) {
-          // pass on the new structure first
-          m_ie.setStructure(new Instances(filteredInstance.dataset(), 0));
-          notifyInstanceListeners(m_ie);
-          m_structurePassedOn = true;
-        }
-
-        filteredInstance.setDataset(m_ie.getStructure());
-
-        if (filteredInstance.dataset().checkForStringAttributes()) {
-          for (int i = 0; i < filteredInstance.dataset().numAttributes(); i++) {
-            if (filteredInstance.dataset().attribute(i).isString()
-              && !filteredInstance.isMissing(i)) {
-              String val = filteredInstance.stringValue(i);
-
-              filteredInstance.dataset().attribute(i).setStringValue(val);
-              filteredInstance.setValue(i, 0);
-            }
-          }
-        }
 
         m_ie.setInstance(filteredInstance);
         m_ie.setStatus(e.getStatus());
-
-        if (m_log != null && (m_instanceCount % 10000 == 0)) {
-          m_log.statusMessage(statusMessagePrefix() + "Received "
-            + m_instanceCount + " instances.");
-        }
         notifyInstanceListeners(m_ie);
       } catch (Exception ex) {
         stop(); // stop all processing
@@ -856,7 +929,7 @@ public class Filter extends JPanel implements BeanCommon, Visible, WekaWrapper,
       for (int i = 0; i < l.size(); i++) {
         // System.err.println("Notifying instance listeners "
         // +"(Filter)");
-        l.elementAt(i).acceptInstance(tse);
+        tse.deliverTo(l.elementAt(i));
       }
     }
   }
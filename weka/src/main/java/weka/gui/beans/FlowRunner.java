@@ -61,6 +61,24 @@ public class FlowRunner implements RevisionHandler {
   /** run each Startable bean sequentially? (default in parallel) */
   protected boolean m_startSequentially = false;
 
+  /** The connections between the beans */
+  protected Vector<BeanConnection> m_connections;
+
+  /**
+   * The number of threads executing the beans (0 = each bean runs in the
+   * thread of the component sending it events)
+   */
+  protected int m_numExecutionThreads = 0;
+
+  /**
+   * The number of instances Loaders pass on per event when streaming (0 =
+   * use the Loaders' own settings)
+   */
+  protected int m_instanceBlockSize = 0;
+
+  /** Executes the beans if m_numExecutionThreads > 0 */
+  protected transient BeanExecutor m_executor;
+
   public static class SimpleLogger implements weka.gui.Logger {
     SimpleDateFormat m_DateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
@@ -150,6 +168,9 @@ public class FlowRunner implements RevisionHandler {
   }
 
   public synchronized void stopAllFlows() {
+    if (m_executor != null) {
+      m_executor.clear();
+    }
     for (int i = 0; i < m_beans.size(); i++) {
       BeanInstance temp = (BeanInstance) m_beans.elementAt(i);
       if (temp.getBean() instanceof BeanCommon) {
@@ -172,6 +193,9 @@ public class FlowRunner implements RevisionHandler {
       // now poll beans to see if there are any that are still busy
       // (i.e. any multi-threaded ones that queue data instead of blocking)
       while (true) {
+        if (m_executor != null) {
+          m_executor.waitUntilIdle();
+        }
         boolean busy = false;
         for (int i = 0; i < m_beans.size(); i++) {
           BeanInstance temp = (BeanInstance) m_beans.elementAt(i);
@@ -182,6 +206,9 @@ public class FlowRunner implements RevisionHandler {
             }
           }
         }
+        if (!busy && (m_executor != null) && !m_executor.isIdle()) {
+          busy = true;
+        }
         if (busy) {
           Thread.sleep(3000);
         } else {
@@ -234,8 +261,7 @@ public class FlowRunner implements RevisionHandler {
     InputStream is = new FileInputStream(fileName);
     ObjectInputStream ois = new ObjectInputStream(is);
     m_beans = (Vector<Object>) ois.readObject();
-
-    // don't need the graphical connections
+    m_connections = (Vector<BeanConnection>) ois.readObject();
     ois.close();
 
     if (m_env != null) {
@@ -263,6 +289,8 @@ public class FlowRunner implements RevisionHandler {
     XMLBeans xml = new XMLBeans(null, null, 0);
     Vector<?> v = (Vector<?>) xml.read(new File(fileName));
     m_beans = (Vector<Object>) v.get(XMLBeans.INDEX_BEANINSTANCES);
+    m_connections = (Vector<BeanConnection>) v
+      .get(XMLBeans.INDEX_BEANCONNECTIONS);
 
     if (m_env != null) {
       String parentDir = (new File(fileName)).getParent();
@@ -293,6 +321,25 @@ public class FlowRunner implements RevisionHandler {
     m_beans = beans;
   }
 
+  /**
+   * Get the connections between the beans of the flow(s)
+   * 
+   * @return the connections
+   */
+  public Vector<BeanConnection> getConnections() {
+    return m_connections;
+  }
+
+  /**
+   * Set the connections between the beans of the flow(s) to run. These are
+   * only needed when executing the beans with multiple threads.
+   * 
+   * @param connections the connections
+   */
+  public void setConnections(Vector<BeanConnection> connections) {
+    m_connections = connections;
+  }
+
   /**
    * Set the environment variables to use. NOTE: this needs to be called BEFORE
    * a load method is invoked to ensure that the
@@ -334,6 +381,61 @@ public class FlowRunner implements RevisionHandler {
     return m_startSequentially;
   }
 
+  /**
+   * Set the number of threads executing the beans. With 0 (the default), a
+   * bean processes an event in the thread of the component that sent it, so
+   * a flow runs in one thread per start point. Otherwise each bean gets a
+   * bounded queue for its incoming events and the beans are run concurrently
+   * by the given number of threads, with a full queue holding up the sender.
+   * The beans' connections must be available in this case.
+   * 
+   * @param numThreads the number of threads
+   */
+  public void setNumExecutionThreads(int numThreads) {
+    m_numExecutionThreads = numThreads;
+  }
+
+  /**
+   * Get the number of threads executing the beans.
+   * 
+   * @return the number of threads (0 = beans are run by the sender's thread)
+   */
+  public int getNumExecutionThreads() {
+    return m_numExecutionThreads;
+  }
+
+  /**
+   * Set the number of instances the Loaders of the flow(s) pass on per
+   * instance event when streaming. Components that can't process blocks of
+   * instances still receive one instance at a time.
+   * 
+   * @param size the block size (0 = use the Loaders' own settings)
+   */
+  public void setInstanceBlockSize(int size) {
+    m_instanceBlockSize = size;
+  }
+
+  /**
+   * Get the number of instances the Loaders of the flow(s) pass on per
+   * instance event when streaming.
+   * 
+   * @return the block size (0 = use the Loaders' own settings)
+   */
+  public int getInstanceBlockSize() {
+    return m_instanceBlockSize;
+  }
+
+  /**
+   * Shuts down the threads executing the beans, if any. Call this once the
+   * flow(s) have finished.
+   */
+  public void shutdown() {
+    if (m_executor != null) {
+      m_executor.shutdown();
+      m_executor = null;
+    }
+  }
+
   /**
    * Launch all loaded KnowledgeFlow
    * 
@@ -356,6 +458,24 @@ public class FlowRunner implements RevisionHandler {
       if (tempB.getBean() instanceof EnvironmentHandler) {
         ((EnvironmentHandler) tempB.getBean()).setEnvironment(m_env);
       }
+
+      if (m_instanceBlockSize > 0 && tempB.getBean() instanceof Loader) {
+        ((Loader) tempB.getBean()).setInstanceBlockSize(m_instanceBlockSize);
+      }
+    }
+
+    if ((m_numExecutionThreads > 0) && (m_executor == null)) {
+      if (m_connections == null) {
+        throw new Exception("Connections between beans are needed for "
+          + "multi-threaded execution.");
+      }
+      m_executor = new BeanExecutor(m_numExecutionThreads);
+      m_executor.setLog(m_log);
+      m_executor.connect(m_connections);
+      if (m_log != null) {
+        m_log.logMessage("[FlowRunner] executing components with "
+          + m_numExecutionThreads + " threads...");
+      }
     }
 
     int numFlows = 1;
@@ -503,17 +623,28 @@ public class FlowRunner implements RevisionHandler {
     weka.core.logging.Logger.log(weka.core.logging.Logger.Level.INFO,
       "Logging started");
     if (args.length < 1) {
-      System.err.println("Usage:\n\nFlowRunner <serialized kf file> [-s]\n\n"
+      System.err.println("Usage:\n\nFlowRunner <serialized kf file> [-s] "
+        + "[-threads <num>] [-block <num>]\n\n"
         + "\tUse -s to launch start points sequentially (default launches "
-        + "in parallel).");
+        + "in parallel).\n"
+        + "\tUse -threads to execute the components with the given number "
+        + "of threads\n\t(default 0: each flow runs in a single thread).\n"
+        + "\tUse -block to have loaders stream blocks of the given number of "
+        + "instances\n\t(default: the loaders' own settings).");
     } else {
       try {
         FlowRunner fr = new FlowRunner();
         FlowRunner.SimpleLogger sl = new FlowRunner.SimpleLogger();
         String fileName = args[0];
 
-        if (args.length == 2 && args[1].equals("-s")) {
-          fr.setStartSequentially(true);
+        for (int i = 1; i < args.length; i++) {
+          if (args[i].equals("-s")) {
+            fr.setStartSequentially(true);
+          } else if (args[i].equals("-threads") && (i + 1 < args.length)) {
+            fr.setNumExecutionThreads(Integer.parseInt(args[++i]));
+          } else if (args[i].equals("-block") && (i + 1 < args.length)) {
+            fr.setInstanceBlockSize(Integer.parseInt(args[++i]));
+          }
         }
 
         // start with the system-wide vars
@@ -525,6 +656,7 @@ public class FlowRunner implements RevisionHandler {
         fr.load(fileName);
         fr.run();
         fr.waitUntilFinished();
+        fr.shutdown();
         System.out.println("Finished all flows.");
         System.exit(1);
       } catch (Exception ex) {
@@ -22,12 +22,15 @@
 package weka.gui.beans;
 
 import java.util.EventObject;
+import java.util.List;
 
 import weka.core.Instance;
 import weka.core.Instances;
 
 /**
- * Event that encapsulates a single instance or header information only
+ * Event that encapsulates a single instance, a block of instances or header
+ * information only. Blocks are only sent to InstanceBlockListeners, see
+ * deliverTo(InstanceListener).
  * 
  * @author <a href="mailto:mhall@cs.waikato.ac.nz">Mark Hall</a>
  * @version $Revision: 9205 $
@@ -46,6 +49,9 @@ public class InstanceEvent extends EventObject {
   private Instance m_instance;
   private int m_status;
 
+  /** the instances, if this event carries a block of instances */
+  private List<Instance> m_block;
+
   /**
    * for FORMAT_AVAILABLE, if this is true then it indicates that this is not
    * the actual start of stream processing, but rather that a file/source has
@@ -100,6 +106,62 @@ public class InstanceEvent extends EventObject {
    */
   public void setInstance(Instance i) {
     m_instance = i;
+    m_block = null;
+  }
+
+  /**
+   * Get the block of instances
+   * 
+   * @return the instances, null if this event doesn't carry a block
+   */
+  public List<Instance> getInstanceBlock() {
+    return m_block;
+  }
+
+  /**
+   * Set a block of instances
+   * 
+   * @param block the instances
+   */
+  public void setInstanceBlock(List<Instance> block) {
+    m_block = block;
+    m_instance = null;
+  }
+
+  /**
+   * Returns whether this event carries a block of instances rather than a
+   * single instance
+   * 
+   * @return true if this is a block of instances
+   */
+  public boolean isBlock() {
+    return m_block != null;
+  }
+
+  /**
+   * Passes this event on to a listener. If this event carries a block of
+   * instances and the listener is not an InstanceBlockListener, the instances
+   * are passed on one by one instead, the last one with the status of this
+   * event.
+   * 
+   * @param listener the listener
+   */
+  public void deliverTo(InstanceListener listener) {
+    if ((m_block == null) || (listener instanceof InstanceBlockListener)) {
+      listener.acceptInstance(this);
+      return;
+    }
+
+    InstanceEvent single = new InstanceEvent(getSource());
+    if ((m_block.size() == 0) && (m_status == BATCH_FINISHED)) {
+      single.setStatus(m_status);
+      listener.acceptInstance(single);
+    }
+    for (int i = 0; i < m_block.size(); i++) {
+      single.setInstance(m_block.get(i));
+      single.setStatus(i == m_block.size() - 1 ? m_status : INSTANCE_AVAILABLE);
+      listener.acceptInstance(single);
+    }
   }
 
   /**
@@ -132,6 +194,7 @@ public class InstanceEvent extends EventObject {
   public void setStructure(Instances structure) {
     m_structure = structure;
     m_instance = null;
+    m_block = null;
     m_status = FORMAT_AVAILABLE;
   }
 
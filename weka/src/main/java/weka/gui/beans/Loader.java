@@ -30,6 +30,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.JButton;
@@ -104,6 +106,12 @@ public class Loader extends AbstractDataSource implements Startable,
   /** Flag indicating that a database has already been configured */
   private boolean m_dbSet = false;
 
+  /**
+   * Number of instances to pass on per instance event when streaming (values
+   * < 2 send one event per instance)
+   */
+  private int m_instanceBlockSize = 1;
+
   /**
    * Logging
    */
@@ -213,6 +221,29 @@ public class Loader extends AbstractDataSource implements Startable,
             e.printStackTrace();
           }
 
+          // send blocks of instances, unless the loader only keeps the
+          // values of the current instance's string attributes
+          while ((nextInstance != null) && (m_instanceBlockSize > 1)
+            && !stringAttsPresent) {
+            if (m_stopped) {
+              break;
+            }
+            m_throughput.updateStart();
+            m_flowThroughput.updateStart();
+            List<Instance> block = new ArrayList<Instance>(m_instanceBlockSize);
+            while ((nextInstance != null)
+              && (block.size() < m_instanceBlockSize)) {
+              block.add(nextInstance);
+              nextInstance = m_Loader.getNextInstance(structure);
+            }
+            m_ie.setInstanceBlock(block);
+            m_ie.setStatus(nextInstance == null ? InstanceEvent.BATCH_FINISHED
+              : InstanceEvent.INSTANCE_AVAILABLE);
+            m_throughput.updateEnd(m_log, block.size());
+            notifyInstanceLoaded(m_ie);
+            m_flowThroughput.updateEnd(m_log, block.size());
+          }
+
           while (nextInstance != null) {
             if (m_stopped) {
               break;
@@ -527,6 +558,26 @@ public class Loader extends AbstractDataSource implements Startable,
     return getLoader();
   }
 
+  /**
+   * Set the number of instances to pass on per instance event when streaming.
+   * Listeners that can't process blocks of instances still receive one
+   * instance at a time.
+   * 
+   * @param size the block size (values < 2 send one event per instance)
+   */
+  public void setInstanceBlockSize(int size) {
+    m_instanceBlockSize = size;
+  }
+
+  /**
+   * Get the number of instances to pass on per instance event when streaming.
+   * 
+   * @return the block size
+   */
+  public int getInstanceBlockSize() {
+    return m_instanceBlockSize;
+  }
+
   /**
    * Notify all listeners that the structure of a data set is available.
    * 
@@ -576,7 +627,7 @@ public class Loader extends AbstractDataSource implements Startable,
 
     if (l.size() > 0) {
       for (int i = 0; i < l.size(); i++) {
-        l.elementAt(i).acceptInstance(e);
+        e.deliverTo(l.elementAt(i));
       }
       m_dataSet = null;
     }
@@ -126,8 +126,21 @@ public class StreamThroughput implements Serializable {
    * @param log the log to write status updates to
    */
   public void updateEnd(Logger log) {
-    m_instanceCount++;
-    m_sampleCount++;
+    updateEnd(log, 1);
+  }
+
+  /**
+   * Register a throughput measurement end point for a block of instances.
+   * Collects counts and statistics. Will update the status area for the KF
+   * step in question if the sample period has elapsed.
+   * 
+   * @param log the log to write status updates to
+   * @param numInstances the number of instances processed since the start
+   *          point
+   */
+  public void updateEnd(Logger log, int numInstances) {
+    m_instanceCount += numInstances;
+    m_sampleCount += numInstances;
     double end = System.currentTimeMillis();
     double temp = end - m_updateStart;
     m_cumulativeTime += temp;
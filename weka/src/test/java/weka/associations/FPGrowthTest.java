@@ -19,8 +19,22 @@
 
 package weka.associations;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
 import weka.associations.AbstractAssociatorTest;
 import weka.associations.Associator;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -44,6 +58,184 @@ public class FPGrowthTest
     return new FPGrowth();
   }
 
+  /**
+   * Returns a data set of binary attributes.
+   * 
+   * @return the data
+   * @throws Exception if the data can't be generated
+   */
+  protected Instances getBinaryData() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(10);
+    test.setNumNominalValues(2);
+    test.setNumNumeric(0);
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(2);
+    test.setNumInstances(200);
+    test.setSeed(42);
+    Instances result = test.generate();
+    result.setClassIndex(-1);
+    return result;
+  }
+
+  /**
+   * Returns an FPGrowth that finds all the rules for a low support and
+   * confidence.
+   * 
+   * @return the configured FPGrowth
+   */
+  protected FPGrowth getAllRulesAssociator() {
+    FPGrowth result = new FPGrowth();
+    result.setFindAllRulesForSupportLevel(true);
+    result.setLowerBoundMinSupport(0.1);
+    result.setMinMetric(0.4);
+    return result;
+  }
+
+  /**
+   * Returns the rules found by an associator as sorted strings.
+   * 
+   * @param associator the associator to get the rules from
+   * @return the rules
+   */
+  protected List<String> getRules(FPGrowth associator) {
+    List<String> result = new ArrayList<String>();
+    for (AssociationRule rule : associator.getAssociationRules().getRules()) {
+      result.add(rule.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  /**
+   * Tests that mining with several execution slots finds the same rules as
+   * mining serially.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = getBinaryData();
+
+    FPGrowth serial = getAllRulesAssociator();
+    serial.buildAssociations(data);
+    List<String> expected = getRules(serial);
+    assertTrue("No rules found", expected.size() > 0);
+
+    for (int slots = 2; slots <= 4; slots++) {
+      FPGrowth parallel = getAllRulesAssociator();
+      parallel.setNumExecutionSlots(slots);
+      parallel.buildAssociations(data);
+      assertEquals("Rules differ with " + slots + " slots", expected,
+        getRules(parallel));
+    }
+  }
+
+  /**
+   * Tests that streaming the rules to a file writes the rules that are found
+   * in memory.
+   */
+  public void testRuleOutputFile() throws Exception {
+    Instances data = getBinaryData();
+
+    FPGrowth inMemory = getAllRulesAssociator();
+    inMemory.buildAssociations(data);
+    List<String> expected = getRules(inMemory);
+
+    File file = File.createTempFile("FPGrowthTest", ".txt");
+    try {
+      FPGrowth streaming = getAllRulesAssociator();
+      streaming.setNumExecutionSlots(2);
+      streaming.setRuleOutputFile(file);
+      streaming.buildAssociations(data);
+      assertEquals("Rules kept in memory", 0, streaming
+        .getAssociationRules().getNumRules());
+
+      List<String> written = new ArrayList<String>();
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          written.add(line);
+        }
+      } finally {
+        reader.close();
+      }
+      Collections.sort(written);
+      assertEquals(expected, written);
+      assertTrue(streaming.toString().startsWith(
+        "FPGrowth wrote " + expected.size() + " rules"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns the paths of a dot graph of an FP-tree, from the root to each
+   * node, as strings of node labels.
+   * 
+   * @param graph the graph in dot format
+   * @return the paths
+   */
+  protected TreeSet<String> getPaths(String graph) {
+    Map<String, String> labels = new HashMap<String, String>();
+    Map<String, String> parents = new HashMap<String, String>();
+    for (String line : graph.split("\n")) {
+      if (line.contains(" [label=\"")) {
+        String label = line.substring(line.indexOf('"') + 1,
+          line.lastIndexOf('"'));
+        labels.put(line.substring(0, line.indexOf(' ')),
+          label.replace("\\n", ""));
+      } else if (line.contains("->")) {
+        String[] ends = line.split("->");
+        parents.put(ends[1], ends[0]);
+      }
+    }
+
+    TreeSet<String> result = new TreeSet<String>();
+    for (String node : labels.keySet()) {
+      if (node.equals("N0")) {
+        continue;
+      }
+      String path = labels.get(node);
+      for (String p = parents.get(node); !p.equals("N0"); p = parents.get(p)) {
+        path = labels.get(p) + " / " + path;
+      }
+      result.add(path);
+    }
+    return result;
+  }
+
+  /**
+   * Tests that the deprecated graph method for trees of linked nodes draws
+   * the same tree as the one for array based trees.
+   */
+  @SuppressWarnings("deprecation")
+  public void testGraph() throws Exception {
+    ArrayList<String> values = new ArrayList<String>();
+    values.add("f");
+    values.add("t");
+    BinaryItem a = new BinaryItem(new Attribute("a", values), 1);
+    BinaryItem b = new BinaryItem(new Attribute("b", values), 1);
+    BinaryItem c = new BinaryItem(new Attribute("c", values), 1);
+    BinaryItem[] items = new BinaryItem[] { a, b, c };
+    int[][] transactions = { { 0, 1 }, { 0, 1 }, { 0, 2 }, { 1 } };
+
+    FPGrowth.FPTreeRoot linked = new FPGrowth.FPTreeRoot();
+    FPGrowth.FPTree tree = new FPGrowth.FPTree(new int[] { 0, 1, 2 });
+    for (int[] transaction : transactions) {
+      ArrayList<BinaryItem> itemSet = new ArrayList<BinaryItem>();
+      for (int item : transaction) {
+        itemSet.add(items[item]);
+      }
+      linked.addItemSet(itemSet, 1);
+      tree.addTransaction(transaction, transaction.length, 1);
+    }
+
+    TreeSet<String> expected = new TreeSet<String>(Arrays.asList("a=t (3)",
+      "a=t (3) / b=t (2)", "a=t (3) / c=t (1)", "b=t (1)"));
+    FPGrowth fpGrowth = new FPGrowth();
+    assertEquals(expected, getPaths(fpGrowth.graph(tree, items)));
+    assertEquals(expected, getPaths(fpGrowth.graph(linked)));
+  }
+
   public static Test suite() {
     return new TestSuite(FPGrowthTest.class);
   }
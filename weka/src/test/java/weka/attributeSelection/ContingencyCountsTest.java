@@ -0,0 +1,241 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.attributeSelection;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.TestInstances;
+import weka.core.Utils;
+
+/**
+ * Tests ContingencyCounts against contingency tables that are filled one
+ * instance and attribute at a time. Run from the command line with:
+ * <p/>
+ * java weka.attributeSelection.ContingencyCountsTest
+ *
+ * @version $Revision$
+ */
+public class ContingencyCountsTest extends TestCase {
+
+  /** the test data */
+  protected Instances m_Data;
+
+  /**
+   * Constructs the <code>ContingencyCountsTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public ContingencyCountsTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method. Generates nominal data with
+   * missing values (also in the class) and random weights.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    TestInstances test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(9);
+    test.setNumNominalValues(4);
+    test.setNumNumeric(0);
+    test.setNumClasses(3);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+    m_Data = test.generate();
+
+    Random random = new Random(1);
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      Instance inst = m_Data.instance(i);
+      for (int j = 0; j < m_Data.numAttributes(); j++) {
+        if (random.nextInt(10) == 0) {
+          inst.setMissing(j);
+        }
+      }
+      inst.setWeight(random.nextInt(3) + 1);
+    }
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Data = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Fills the contingency table of an attribute the straightforward way.
+   *
+   * @param data the data
+   * @param attribute the attribute
+   * @return the table
+   */
+  protected double[][] reference(Instances data, int attribute) {
+    int numValues = data.attribute(attribute).numValues();
+    double[][] result = new double[numValues + 1][data.numClasses() + 1];
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      int row = inst.isMissing(attribute) ? result.length - 1 : (int) inst
+        .value(attribute);
+      int column = inst.classIsMissing() ? data.numClasses() : (int) inst
+        .classValue();
+      result[row][column] += inst.weight();
+    }
+    return result;
+  }
+
+  /**
+   * Checks the counts for all attributes against the reference tables.
+   *
+   * @param msg the message to output
+   * @param counts the counts to check
+   */
+  protected void assertCounts(String msg, ContingencyCounts counts) {
+    for (int k = 0; k < m_Data.numAttributes(); k++) {
+      if (k == m_Data.classIndex()) {
+        continue;
+      }
+      double[][] expected = reference(m_Data, k);
+      double[][] actual = counts.getCounts(k);
+      assertEquals(msg + ": rows", expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        for (int j = 0; j < expected[i].length; j++) {
+          assertEquals(msg + ": attribute " + k + " (" + i + "," + j + ")",
+            expected[i][j], actual[i][j], 1e-12);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests counting one instance at a time.
+   */
+  public void testIncremental() {
+    ContingencyCounts counts = new ContingencyCounts(m_Data, true);
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      counts.add(m_Data.instance(i));
+    }
+    assertCounts("incremental", counts);
+  }
+
+  /**
+   * Tests counting blocks of attributes in parallel.
+   *
+   * @throws Exception if counting fails
+   */
+  public void testParallel() throws Exception {
+    ContingencyCounts counts = new ContingencyCounts(m_Data, true);
+    counts.add(m_Data, 4);
+    assertCounts("parallel", counts);
+  }
+
+  /**
+   * Tests counting sparse instances.
+   *
+   * @throws Exception if counting fails
+   */
+  public void testSparse() throws Exception {
+    Instances sparse = new Instances(m_Data, m_Data.numInstances());
+    for (int i = 0; i < m_Data.numInstances(); i++) {
+      sparse.add(new SparseInstance(m_Data.instance(i)));
+    }
+
+    ContingencyCounts counts = new ContingencyCounts(sparse, true);
+    counts.add(sparse, 1);
+    assertCounts("sparse", counts);
+
+    counts = new ContingencyCounts(sparse, true);
+    counts.add(sparse, 3);
+    assertCounts("sparse, parallel", counts);
+  }
+
+  /**
+   * Tests aggregating the counts of separate chunks of the data.
+   *
+   * @throws Exception if aggregation fails
+   */
+  public void testAggregate() throws Exception {
+    int half = m_Data.numInstances() / 2;
+    ContingencyCounts first = new ContingencyCounts(m_Data, true);
+    first.add(new Instances(m_Data, 0, half), 1);
+    ContingencyCounts second = new ContingencyCounts(m_Data, true);
+    second.add(new Instances(m_Data, half, m_Data.numInstances() - half), 2);
+
+    first.aggregate(second);
+    first.finalizeAggregation();
+    assertCounts("aggregated", first);
+  }
+
+  /**
+   * Tests counting without weights.
+   *
+   * @throws Exception if counting fails
+   */
+  public void testUnweighted() throws Exception {
+    ContingencyCounts counts = new ContingencyCounts(m_Data, false);
+    counts.add(m_Data, 1);
+
+    assertEquals("class counts", m_Data.numInstances(),
+      Utils.sum(counts.getClassCounts()), 0.0);
+    for (int k = 0; k < m_Data.numAttributes(); k++) {
+      if (k != m_Data.classIndex()) {
+        double sum = 0;
+        for (double[] row : counts.getCounts(k)) {
+          sum += Utils.sum(row);
+        }
+        assertEquals("table of attribute " + k, m_Data.numInstances(), sum,
+          0.0);
+      }
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ContingencyCountsTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -21,6 +21,10 @@ package weka.attributeSelection;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 /**
  * Tests BestFirst. Run from the command line with:<p/>
@@ -46,6 +50,108 @@ public class ReliefFAttributeEvalTest
     return new ReliefFAttributeEval();
   }
 
+  /**
+   * Generates data with numeric attributes.
+   * 
+   * @param classType the type of the class
+   * @param missing whether to add missing values
+   * @return the data
+   * @throws Exception if the data can't be generated
+   */
+  protected Instances getData(int classType, boolean missing) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(60);
+    test.setNumNominal(0);
+    test.setNumNumeric(5);
+    test.setClassType(classType);
+    test.setNumClasses(3);
+    Instances result = test.generate();
+    if (missing) {
+      for (int i = 0; i < result.numInstances(); i += 7) {
+        result.instance(i).setMissing(i % (result.numAttributes() - 1));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the attribute weights.
+   * 
+   * @param data the data
+   * @param options the options of the evaluator
+   * @return the weights
+   * @throws Exception if the evaluator fails
+   */
+  protected double[] getWeights(Instances data, String options)
+    throws Exception {
+    ReliefFAttributeEval eval = new ReliefFAttributeEval();
+    eval.setOptions(Utils.splitOptions(options));
+    eval.buildEvaluator(data);
+    double[] result = new double[data.numAttributes()];
+    for (int i = 0; i < result.length; i++) {
+      if (i != data.classIndex()) {
+        result[i] = eval.evaluateAttribute(i);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Checks that two sets of weights are equal (up to rounding).
+   * 
+   * @param msg the message for failures
+   * @param expected the expected weights
+   * @param actual the actual weights
+   */
+  protected void assertWeights(String msg, double[] expected, double[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(msg + ", attribute " + i, expected[i], actual[i], 1e-10);
+    }
+  }
+
+  /**
+   * Tests that processing the sample in parallel gives the same weights, with
+   * neighbour searches shared by the workers (KDTree, LinearNNSearch) and ones
+   * built for each worker.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    int[] classTypes = { Attribute.NOMINAL, Attribute.NUMERIC };
+    String[] options = { "", "-M 25", "-A 2", "-use-nns",
+      "-use-nns -nns weka.core.neighboursearch.BallTree",
+      "-use-nns -nns \"weka.core.neighboursearch.LinearNNSearch -P\"" };
+    boolean[] missing = { true, false };
+    for (int classType : classTypes) {
+      for (boolean m : missing) {
+        Instances data = getData(classType, m);
+        for (String option : options) {
+          assertWeights(option, getWeights(data, option),
+            getWeights(data, option + " -num-slots 3"));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests finding the nearest hits and misses with a neighbour search.
+   */
+  public void testNearestNeighbourSearch() throws Exception {
+    // the KDTree can't deal with missing values, the linear search is used
+    // instead
+    Instances data = getData(Attribute.NOMINAL, true);
+    getWeights(data, "-use-nns");
+
+    // without missing values and ties, ranking by Manhattan distance is the
+    // same as scanning
+    String nns = " -use-nns -nns \"weka.core.neighboursearch.LinearNNSearch "
+      + "-A \\\"weka.core.ManhattanDistance -R first-last\\\"\"";
+    int[] classTypes = { Attribute.NOMINAL, Attribute.NUMERIC };
+    for (int classType : classTypes) {
+      data = getData(classType, false);
+      assertWeights("scan", getWeights(data, "-K 5"),
+        getWeights(data, "-K 5" + nns));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(ReliefFAttributeEvalTest.class);
   }
@@ -0,0 +1,50 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import weka.classifiers.AbstractClassifierTest;
+import weka.classifiers.Classifier;
+
+/**
+ * Tests LinearRegressionUpdateable. Run from the command line with:<p>
+ * java weka.classifiers.functions.LinearRegressionUpdateableTest
+ *
+ * @version $Revision$
+ */
+public class LinearRegressionUpdateableTest extends AbstractClassifierTest {
+
+  public LinearRegressionUpdateableTest(String name) { super(name);  }
+
+  /** Creates a default LinearRegressionUpdateable */
+  public Classifier getClassifier() {
+    return new LinearRegressionUpdateable();
+  }
+
+  public static Test suite() {
+    return new TestSuite(LinearRegressionUpdateableTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+
+}
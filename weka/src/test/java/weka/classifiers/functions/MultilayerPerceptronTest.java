@@ -21,6 +21,8 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +44,42 @@ public class MultilayerPerceptronTest extends AbstractClassifierTest {
     return new MultilayerPerceptron();
   }
 
+  /**
+   * Tests that the matrix based engine gives the same model with one and
+   * with several execution slots, and that the number of slots is at least 1.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    test.setNumInstances(200);
+    Instances data = test.generate();
+
+    MultilayerPerceptron serial = new MultilayerPerceptron();
+    serial.setMiniBatchSize(20);
+    serial.setTrainingTime(50);
+    serial.buildClassifier(data);
+
+    int[] slots = { 0, 3 };
+    for (int s : slots) {
+      MultilayerPerceptron parallel = new MultilayerPerceptron();
+      parallel.setMiniBatchSize(20);
+      parallel.setTrainingTime(50);
+      parallel.setNumExecutionSlots(s);
+      assertEquals(Math.max(1, s), parallel.getNumExecutionSlots());
+      parallel.buildClassifier(data);
+
+      for (int i = 0; i < data.numInstances(); i++) {
+        double[] expected = serial.distributionForInstance(data.instance(i));
+        double[] actual = parallel.distributionForInstance(data.instance(i));
+        for (int j = 0; j < expected.length; j++) {
+          assertEquals("slots " + s + ", instance " + i, expected[j],
+            actual[j], 1e-8);
+        }
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(MultilayerPerceptronTest.class);
   }
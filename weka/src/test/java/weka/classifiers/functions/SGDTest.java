@@ -19,8 +19,16 @@
 
 package weka.classifiers.functions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -46,6 +54,163 @@ public class SGDTest extends AbstractClassifierTest {
     return p;
   }
 
+  /**
+   * Generates linearly separable data with five numeric attributes and a
+   * binary class.
+   * 
+   * @param numInstances the number of instances
+   * @param seed the seed for the random number generator
+   * @return the data
+   */
+  protected Instances getLinearData(int numInstances, long seed) {
+    return getLinearData(numInstances, seed, false);
+  }
+
+  /**
+   * Generates linearly separable data with five numeric attributes and a
+   * binary class.
+   * 
+   * @param numInstances the number of instances
+   * @param seed the seed for the random number generator
+   * @param sparse whether to generate sparse instances, with most of the
+   *          attribute values zero
+   * @return the data
+   */
+  protected Instances getLinearData(int numInstances, long seed,
+    boolean sparse) {
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < 5; j++) {
+      atts.add(new Attribute("x" + j));
+    }
+    ArrayList<String> values = new ArrayList<String>();
+    values.add("neg");
+    values.add("pos");
+    atts.add(new Attribute("class", values));
+    Instances result = new Instances("linear", atts, numInstances);
+    result.setClassIndex(5);
+
+    Random random = new Random(seed);
+    double[] w = { 1, -2, 0.5, 3, -1 };
+    for (int i = 0; i < numInstances; i++) {
+      double[] vals = new double[6];
+      double sum = 0.3;
+      for (int j = 0; j < 5; j++) {
+        if (!sparse || (random.nextDouble() < 0.4)) {
+          vals[j] = random.nextGaussian();
+        }
+        sum += w[j] * vals[j];
+      }
+      vals[5] = (sum > 0) ? 1 : 0;
+      if (sparse) {
+        result.add(new SparseInstance(1.0, vals));
+      } else {
+        result.add(new DenseInstance(1.0, vals));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Tests batch training with several execution slots against serial
+   * training. The shards of each epoch are trained independently and their
+   * weights averaged, so the model differs slightly from the serial one, but
+   * it has to make (almost) the same predictions, and it must not depend on
+   * the timing of the threads.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = getLinearData(400, 1);
+    SGD serial = new SGD();
+    serial.buildClassifier(data);
+    int serialCorrect = 0;
+    for (int i = 0; i < data.numInstances(); i++) {
+      if (serial.classifyInstance(data.instance(i)) == data.instance(i)
+        .classValue()) {
+        serialCorrect++;
+      }
+    }
+
+    for (int slots = 2; slots <= 4; slots++) {
+      SGD parallel = new SGD();
+      parallel.setNumExecutionSlots(slots);
+      parallel.buildClassifier(data);
+      SGD again = new SGD();
+      again.setNumExecutionSlots(slots);
+      again.buildClassifier(data);
+      assertTrue("Weights differ between runs with " + slots + " slots",
+        Arrays.equals(parallel.m_weights, again.m_weights));
+
+      int agree = 0;
+      int correct = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+        double pred = parallel.classifyInstance(data.instance(i));
+        if (pred == serial.classifyInstance(data.instance(i))) {
+          agree++;
+        }
+        if (pred == data.instance(i).classValue()) {
+          correct++;
+        }
+      }
+      assertTrue("Only " + agree + " predictions agree with " + slots
+        + " slots", agree >= 0.95 * data.numInstances());
+      assertTrue("Only " + correct + " correct predictions with " + slots
+        + " slots (serial: " + serialCorrect + ")",
+        correct >= serialCorrect - 0.03 * data.numInstances());
+    }
+
+    // too few instances to share out: trained serially
+    Instances small = getLinearData(7, 2);
+    SGD serialSmall = new SGD();
+    serialSmall.buildClassifier(small);
+    SGD parallelSmall = new SGD();
+    parallelSmall.setNumExecutionSlots(4);
+    parallelSmall.buildClassifier(small);
+    assertTrue("Weights differ for a small dataset",
+      Arrays.equals(serialSmall.m_weights, parallelSmall.m_weights));
+  }
+
+  /**
+   * Tests batch training on sparse instances with several execution slots.
+   * Sparse instances are trained with a scaled weight vector, which must give
+   * the same weights as training on the same data stored densely, serially as
+   * well as in parallel. The predictions of the parallel models have to
+   * (almost) agree with the serial one's.
+   */
+  public void testNumExecutionSlotsSparse() throws Exception {
+    Instances sparse = getLinearData(400, 1, true);
+    Instances dense = new Instances(sparse, sparse.numInstances());
+    for (int i = 0; i < sparse.numInstances(); i++) {
+      dense.add(new DenseInstance(sparse.instance(i)));
+    }
+
+    SGD serial = null;
+    for (int slots = 1; slots <= 4; slots++) {
+      SGD sparseModel = new SGD();
+      sparseModel.setNumExecutionSlots(slots);
+      sparseModel.buildClassifier(sparse);
+      SGD denseModel = new SGD();
+      denseModel.setNumExecutionSlots(slots);
+      denseModel.buildClassifier(dense);
+      for (int j = 0; j < denseModel.m_weights.length; j++) {
+        assertEquals("Weight " + j + " with " + slots + " slots",
+          denseModel.m_weights[j], sparseModel.m_weights[j], 1e-8);
+      }
+
+      if (slots == 1) {
+        serial = sparseModel;
+        continue;
+      }
+      int agree = 0;
+      for (int i = 0; i < sparse.numInstances(); i++) {
+        if (sparseModel.classifyInstance(sparse.instance(i)) == serial
+          .classifyInstance(sparse.instance(i))) {
+          agree++;
+        }
+      }
+      assertTrue("Only " + agree + " predictions agree with " + slots
+        + " slots", agree >= 0.9 * sparse.numInstances());
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(SGDTest.class);
   }
@@ -21,6 +21,8 @@ package weka.classifiers.rules;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +43,29 @@ public class JRipTest extends AbstractClassifierTest {
     return new JRip();
   }
 
+  /**
+   * Tests that evaluating the candidate antecedents concurrently gives the
+   * same rules, also with the number of slots set to the number of cores (0).
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(3000);
+    test.setNumNominal(2);
+    test.setNumNumeric(8);
+    test.setNumClasses(3);
+    Instances data = test.generate();
+
+    JRip serial = new JRip();
+    serial.buildClassifier(data);
+    int[] slots = { 3, 0 };
+    for (int s : slots) {
+      JRip parallel = new JRip();
+      parallel.setNumExecutionSlots(s);
+      parallel.buildClassifier(data);
+      assertEquals("slots " + s, serial.toString(), parallel.toString());
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(JRipTest.class);
   }
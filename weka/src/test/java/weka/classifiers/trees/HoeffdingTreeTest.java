@@ -21,6 +21,9 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +44,45 @@ public class HoeffdingTreeTest extends AbstractClassifierTest {
     return new HoeffdingTree();
   }
 
+  /**
+   * Tests that evaluating the split candidates in parallel grows the same
+   * tree, also when updates continue after the threads were stopped.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(2000);
+    test.setNumNominal(3);
+    test.setNumNumeric(4);
+    test.setNumClasses(2);
+    test.setSeed(3);
+    Instances data = test.generate();
+    // a class that depends on the attributes, so that the tree splits
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      inst.setClassValue(((int) inst.value(0) + (inst.value(3) > 0 ? 1 : 0))
+        % 2);
+    }
+    Instances first = new Instances(data, 0, 1000);
+
+    HoeffdingTree serial = new HoeffdingTree();
+    serial.setGracePeriod(50);
+    serial.buildClassifier(first);
+    HoeffdingTree parallel = new HoeffdingTree();
+    parallel.setGracePeriod(50);
+    parallel.setNumExecutionSlots(3);
+    parallel.buildClassifier(first);
+    assertTrue("split", serial.m_decisionNodeCount > 0);
+    assertEquals("built", serial.toString(), parallel.toString());
+
+    parallel.cleanup();
+    for (int i = 1000; i < data.numInstances(); i++) {
+      serial.updateClassifier(data.instance(i));
+      parallel.updateClassifier(data.instance(i));
+    }
+    assertEquals("updated", serial.toString(), parallel.toString());
+    parallel.cleanup();
+  }
+
   public static Test suite() {
     return new TestSuite(HoeffdingTreeTest.class);
   }
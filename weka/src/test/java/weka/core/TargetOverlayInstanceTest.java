@@ -0,0 +1,147 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests TargetOverlayInstance. Run from the command line with:
+ * <p/>
+ * java weka.core.TargetOverlayInstanceTest
+ *
+ * @version $Revision$
+ */
+public class TargetOverlayInstanceTest extends TestCase {
+
+  /** the data to work on */
+  protected Instances m_Data;
+
+  /**
+   * Constructs the <code>TargetOverlayInstanceTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public TargetOverlayInstanceTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Sets up a dataset with three numeric attributes, the last one being the
+   * class.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("a"));
+    atts.add(new Attribute("b"));
+    atts.add(new Attribute("class"));
+    m_Data = new Instances("test", atts, 2);
+    m_Data.setClassIndex(2);
+    m_Data.add(new DenseInstance(1.0, new double[] { 1, 2, 3 }));
+    m_Data.add(new DenseInstance(2.0, new double[] { 4, 5, 6 }));
+  }
+
+  /**
+   * Tests that relabeling and reweighting the overlay does not change the
+   * original data or other copies.
+   */
+  public void testRelabel() {
+    Instances overlay = TargetOverlayInstance.overlay(m_Data);
+    Instances copy = new Instances(overlay);
+
+    copy.instance(0).setClassValue(10);
+    copy.instance(0).setWeight(0.5);
+
+    assertEquals(10.0, copy.instance(0).classValue());
+    assertEquals(0.5, copy.instance(0).weight());
+    assertEquals(3.0, overlay.instance(0).classValue());
+    assertEquals(1.0, overlay.instance(0).weight());
+    assertEquals(3.0, m_Data.instance(0).classValue());
+    assertEquals(2.0, copy.instance(0).value(1));
+    assertEquals(10.0, copy.instance(0).toDoubleArray()[2]);
+    assertEquals(10.0, new DenseInstance(copy.instance(0)).value(2));
+  }
+
+  /**
+   * Tests that setting other attributes does not change the original data.
+   */
+  public void testSetValue() {
+    Instances overlay = TargetOverlayInstance.overlay(m_Data);
+
+    overlay.instance(1).setClassValue(7);
+    overlay.instance(1).setValue(0, 8);
+
+    assertEquals(8.0, overlay.instance(1).value(0));
+    assertEquals(7.0, overlay.instance(1).classValue());
+    assertEquals(4.0, m_Data.instance(1).value(0));
+    assertEquals(6.0, m_Data.instance(1).classValue());
+  }
+
+  /**
+   * Tests deleting and inserting attributes.
+   */
+  public void testDeleteInsertAttribute() {
+    Instances overlay = TargetOverlayInstance.overlay(m_Data);
+    overlay.instance(0).setClassValue(9);
+
+    overlay.setClassIndex(-1);
+    overlay.deleteAttributeAt(0);
+    overlay.setClassIndex(1);
+    assertEquals(9.0, overlay.instance(0).classValue());
+    assertEquals(2.0, overlay.instance(0).value(0));
+
+    overlay.setClassIndex(-1);
+    overlay.insertAttributeAt(new Attribute("c"), 0);
+    overlay.setClassIndex(2);
+    assertEquals(9.0, overlay.instance(0).classValue());
+    assertTrue(overlay.instance(0).isMissing(0));
+
+    overlay.setClassIndex(-1);
+    overlay.deleteAttributeAt(2);
+    assertEquals(2, overlay.instance(0).numAttributes());
+    assertEquals(2.0, overlay.instance(0).value(1));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(TargetOverlayInstanceTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests TaskRunner. Run from the command line with:
+ * <p/>
+ * java weka.core.TaskRunnerTest
+ *
+ * @version $Revision$
+ */
+public class TaskRunnerTest extends TestCase {
+
+  /**
+   * Constructs the <code>TaskRunnerTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public TaskRunnerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Sums the numbers from lo (inclusive) to hi (exclusive) by recursively
+   * splitting the range into two tasks.
+   *
+   * @param runner the task runner
+   * @param lo the first number
+   * @param hi one past the last number
+   * @return the sum
+   * @throws Exception if a task fails
+   */
+  protected long sum(final TaskRunner runner, final int lo, final int hi)
+    throws Exception {
+    if (hi - lo <= 4) {
+      long sum = 0;
+      for (int i = lo; i < hi; i++) {
+        sum += i;
+      }
+      return sum;
+    }
+    final int mid = (lo + hi) / 2;
+    final long[] sums = new long[2];
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    tasks.add(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        sums[0] = sum(runner, lo, mid);
+        return null;
+      }
+    });
+    tasks.add(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        sums[1] = sum(runner, mid, hi);
+        return null;
+      }
+    });
+    runner.invokeAll(tasks);
+    return sums[0] + sums[1];
+  }
+
+  /**
+   * Tests nested groups of tasks, which must not deadlock however few
+   * threads there are.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testNestedTasks() throws Exception {
+    for (int slots = 1; slots <= 4; slots++) {
+      TaskRunner runner = new TaskRunner(slots);
+      try {
+        assertEquals("slots: " + slots, 1000L * 999 / 2, sum(runner, 0, 1000));
+      } finally {
+        runner.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Tests that the exception of the first failing task is thrown, after all
+   * tasks have finished.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testFailure() throws Exception {
+    TaskRunner runner = new TaskRunner(3);
+    final boolean[] done = new boolean[3];
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int i = 0; i < done.length; i++) {
+      final int index = i;
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          done[index] = true;
+          if (index > 0) {
+            throw new Exception("task " + index);
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      runner.invokeAll(tasks);
+      fail("Exception expected");
+    } catch (Exception ex) {
+      assertEquals("task 1", ex.getMessage());
+    } finally {
+      runner.shutdown();
+    }
+    for (int i = 0; i < done.length; i++) {
+      assertTrue("task " + i + " run", done[i]);
+    }
+  }
+
+  /**
+   * Tests that tasks still run on the calling thread after shutdown.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testShutdown() throws Exception {
+    TaskRunner runner = new TaskRunner(2);
+    runner.shutdown();
+    assertEquals(1000L * 999 / 2, sum(runner, 0, 1000));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(TaskRunnerTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
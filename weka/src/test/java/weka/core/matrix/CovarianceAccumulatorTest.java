@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests CovarianceAccumulator against the two-pass covariance, and
+ * TruncatedEigenvalueDecomposition against the full decomposition. Run from
+ * the command line with:
+ * <p/>
+ * java weka.core.matrix.CovarianceAccumulatorTest
+ *
+ * @version $Revision$
+ */
+public class CovarianceAccumulatorTest extends TestCase {
+
+  /** the number of variables */
+  protected static final int NUM_VARIABLES = 40;
+
+  /** the number of observations */
+  protected static final int NUM_OBSERVATIONS = 1000;
+
+  /** the observations */
+  protected double[][] m_Data;
+
+  /** the number of threads before the test */
+  protected int m_NumThreads;
+
+  /**
+   * Constructs the <code>CovarianceAccumulatorTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public CovarianceAccumulatorTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method. Generates correlated data with
+   * a large offset, and a few dominant directions.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_NumThreads = Parallel.getNumThreads();
+    Parallel.setNumThreads(4);
+
+    Random random = new Random(1);
+    double[][] loadings = new double[3][NUM_VARIABLES];
+    for (double[] loading : loadings) {
+      for (int j = 0; j < NUM_VARIABLES; j++) {
+        loading[j] = random.nextGaussian();
+      }
+    }
+    m_Data = new double[NUM_OBSERVATIONS][NUM_VARIABLES];
+    for (int i = 0; i < NUM_OBSERVATIONS; i++) {
+      for (int f = 0; f < loadings.length; f++) {
+        double factor = random.nextGaussian() * (10 - 3 * f);
+        for (int j = 0; j < NUM_VARIABLES; j++) {
+          m_Data[i][j] += factor * loadings[f][j];
+        }
+      }
+      for (int j = 0; j < NUM_VARIABLES; j++) {
+        m_Data[i][j] += 1000 + 0.1 * random.nextGaussian();
+      }
+    }
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    Parallel.setNumThreads(m_NumThreads);
+    m_Data = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Computes the covariance matrix with the textbook two-pass method.
+   *
+   * @param from the first observation
+   * @param to one past the last observation
+   * @return the covariance matrix
+   */
+  protected double[][] reference(int from, int to) {
+    double[] means = new double[NUM_VARIABLES];
+    for (int i = from; i < to; i++) {
+      for (int j = 0; j < NUM_VARIABLES; j++) {
+        means[j] += m_Data[i][j] / (to - from);
+      }
+    }
+    double[][] result = new double[NUM_VARIABLES][NUM_VARIABLES];
+    for (int i = from; i < to; i++) {
+      for (int j = 0; j < NUM_VARIABLES; j++) {
+        for (int k = 0; k < NUM_VARIABLES; k++) {
+          result[j][k] += (m_Data[i][j] - means[j]) * (m_Data[i][k] - means[k])
+            / (to - from - 1);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Checks two matrices for equality.
+   *
+   * @param msg the message to output
+   * @param expected the expected matrix
+   * @param actual the actual matrix
+   * @param tolerance the relative tolerance
+   */
+  protected void assertMatrix(String msg, double[][] expected,
+    double[][] actual, double tolerance) {
+    for (int j = 0; j < expected.length; j++) {
+      for (int k = 0; k < expected[j].length; k++) {
+        assertEquals(msg + " (" + j + "," + k + ")", expected[j][k],
+          actual[j][k], tolerance * (1 + Math.abs(expected[j][k])));
+      }
+    }
+  }
+
+  /**
+   * Tests adding the observations one at a time, with different block sizes.
+   */
+  public void testCovariance() {
+    double[][] expected = reference(0, NUM_OBSERVATIONS);
+    for (int blockSize : new int[] { 1, 7, 256, 5000 }) {
+      CovarianceAccumulator accumulator = new CovarianceAccumulator(
+        NUM_VARIABLES, blockSize);
+      for (double[] x : m_Data) {
+        accumulator.add(x);
+      }
+      assertEquals(NUM_OBSERVATIONS, accumulator.numObservations());
+      assertMatrix("block size " + blockSize, expected,
+        accumulator.getCovariance(), 1e-9);
+    }
+  }
+
+  /**
+   * Tests the correlation matrix.
+   */
+  public void testCorrelation() {
+    CovarianceAccumulator accumulator = new CovarianceAccumulator(
+      NUM_VARIABLES);
+    for (double[] x : m_Data) {
+      accumulator.add(x);
+    }
+    double[][] covariance = reference(0, NUM_OBSERVATIONS);
+    double[][] expected = new double[NUM_VARIABLES][NUM_VARIABLES];
+    for (int j = 0; j < NUM_VARIABLES; j++) {
+      for (int k = 0; k < NUM_VARIABLES; k++) {
+        expected[j][k] = covariance[j][k]
+          / Math.sqrt(covariance[j][j] * covariance[k][k]);
+      }
+    }
+    assertMatrix("correlation", expected, accumulator.getCorrelation(), 1e-9);
+  }
+
+  /**
+   * Tests aggregating the statistics of separate chunks of the data.
+   *
+   * @throws Exception if aggregation fails
+   */
+  public void testAggregate() throws Exception {
+    CovarianceAccumulator first = new CovarianceAccumulator(NUM_VARIABLES, 64);
+    CovarianceAccumulator second = new CovarianceAccumulator(NUM_VARIABLES,
+      100);
+    CovarianceAccumulator empty = new CovarianceAccumulator(NUM_VARIABLES);
+    for (int i = 0; i < NUM_OBSERVATIONS; i++) {
+      (i < 300 ? first : second).add(m_Data[i]);
+    }
+    first.aggregate(second);
+    first.aggregate(empty);
+    first.finalizeAggregation();
+
+    assertEquals(NUM_OBSERVATIONS, first.numObservations());
+    assertMatrix("aggregated", reference(0, NUM_OBSERVATIONS),
+      first.getCovariance(), 1e-9);
+  }
+
+  /**
+   * Tests the leading eigenvalues and eigenvectors of the randomized method.
+   */
+  public void testTruncatedEigenvalueDecomposition() {
+    CovarianceAccumulator accumulator = new CovarianceAccumulator(
+      NUM_VARIABLES);
+    for (double[] x : m_Data) {
+      accumulator.add(x);
+    }
+    Matrix covariance = new Matrix(accumulator.getCovariance());
+
+    EigenvalueDecomposition exact = covariance.eig();
+    TruncatedEigenvalueDecomposition truncated = new TruncatedEigenvalueDecomposition(
+      covariance, 3, new Random(1));
+    double[] expected = exact.getRealEigenvalues();
+    double[] actual = truncated.getRealEigenvalues();
+    assertEquals(3, actual.length);
+    for (int i = 0; i < actual.length; i++) {
+      int e = NUM_VARIABLES - actual.length + i;
+      assertEquals("eigenvalue " + i, expected[e], actual[i],
+        1e-6 * expected[e]);
+
+      // the eigenvectors agree up to their sign
+      double dot = 0;
+      for (int j = 0; j < NUM_VARIABLES; j++) {
+        dot += exact.getV().get(j, e) * truncated.getV().get(j, i);
+      }
+      assertEquals("eigenvector " + i, 1.0, Math.abs(dot), 1e-6);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(CovarianceAccumulatorTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
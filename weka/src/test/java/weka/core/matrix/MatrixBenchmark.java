@@ -0,0 +1,339 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.Random;
+
+/**
+ * Times the matrix multiplication and the decompositions against the plain
+ * JAMA loops (which are kept here as reference implementations) and checks
+ * that both give identical results. Run from the command line with:
+ * <p/>
+ * java weka.core.matrix.MatrixBenchmark [size [threads [repeats]]]
+ *
+ * @version $Revision$
+ */
+public class MatrixBenchmark {
+
+  /**
+   * Generates a random matrix.
+   *
+   * @param rows the number of rows
+   * @param cols the number of columns
+   * @param random the random number generator to use
+   * @return the matrix
+   */
+  public static Matrix random(int rows, int cols, Random random) {
+    Matrix result = new Matrix(rows, cols);
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        result.set(i, j, random.nextGaussian());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Generates a random symmetric, positive definite matrix.
+   *
+   * @param size the number of rows/columns
+   * @param random the random number generator to use
+   * @return the matrix
+   */
+  public static Matrix randomSPD(int size, Random random) {
+    Matrix a = random(size, size, random);
+    Matrix result = referenceTimes(a.transpose(), a);
+    for (int i = 0; i < size; i++) {
+      result.set(i, i, result.get(i, i) + size);
+    }
+    return result;
+  }
+
+  /**
+   * The original JAMA matrix multiplication.
+   *
+   * @param a the left operand
+   * @param b the right operand
+   * @return a * b
+   */
+  public static Matrix referenceTimes(Matrix a, Matrix b) {
+    int m = a.getRowDimension();
+    int n = a.getColumnDimension();
+    double[][] A = a.getArray();
+    Matrix X = new Matrix(m, b.getColumnDimension());
+    double[][] C = X.getArray();
+    double[] Bcolj = new double[n];
+    for (int j = 0; j < b.getColumnDimension(); j++) {
+      for (int k = 0; k < n; k++) {
+        Bcolj[k] = b.get(k, j);
+      }
+      for (int i = 0; i < m; i++) {
+        double[] Arowi = A[i];
+        double s = 0;
+        for (int k = 0; k < n; k++) {
+          s += Arowi[k] * Bcolj[k];
+        }
+        C[i][j] = s;
+      }
+    }
+    return X;
+  }
+
+  /**
+   * The original JAMA Cholesky decomposition.
+   *
+   * @param a the symmetric, positive definite matrix
+   * @return the lower triangular factor
+   */
+  public static Matrix referenceCholesky(Matrix a) {
+    double[][] A = a.getArray();
+    int n = a.getRowDimension();
+    double[][] L = new double[n][n];
+    for (int j = 0; j < n; j++) {
+      double[] Lrowj = L[j];
+      double d = 0.0;
+      for (int k = 0; k < j; k++) {
+        double[] Lrowk = L[k];
+        double s = 0.0;
+        for (int i = 0; i < k; i++) {
+          s += Lrowk[i] * Lrowj[i];
+        }
+        Lrowj[k] = s = (A[j][k] - s) / L[k][k];
+        d = d + s * s;
+      }
+      d = A[j][j] - d;
+      L[j][j] = Math.sqrt(Math.max(d, 0.0));
+    }
+    return new Matrix(L);
+  }
+
+  /**
+   * The original JAMA LU decomposition (without pivot information).
+   *
+   * @param a the matrix
+   * @return the combined L and U factors
+   */
+  public static Matrix referenceLU(Matrix a) {
+    double[][] LU = a.getArrayCopy();
+    int m = a.getRowDimension();
+    int n = a.getColumnDimension();
+    double[] LUcolj = new double[m];
+    for (int j = 0; j < n; j++) {
+      for (int i = 0; i < m; i++) {
+        LUcolj[i] = LU[i][j];
+      }
+      for (int i = 0; i < m; i++) {
+        double[] LUrowi = LU[i];
+        int kmax = Math.min(i, j);
+        double s = 0.0;
+        for (int k = 0; k < kmax; k++) {
+          s += LUrowi[k] * LUcolj[k];
+        }
+        LUrowi[j] = LUcolj[i] -= s;
+      }
+      int p = j;
+      for (int i = j + 1; i < m; i++) {
+        if (Math.abs(LUcolj[i]) > Math.abs(LUcolj[p])) {
+          p = i;
+        }
+      }
+      if (p != j) {
+        for (int k = 0; k < n; k++) {
+          double t = LU[p][k];
+          LU[p][k] = LU[j][k];
+          LU[j][k] = t;
+        }
+      }
+      if (j < m & LU[j][j] != 0.0) {
+        for (int i = j + 1; i < m; i++) {
+          LU[i][j] /= LU[j][j];
+        }
+      }
+    }
+    return new Matrix(LU);
+  }
+
+  /**
+   * The original JAMA QR decomposition.
+   *
+   * @param a the matrix
+   * @return the Householder vectors (lower part) and R (strictly upper part)
+   */
+  public static Matrix referenceQR(Matrix a) {
+    double[][] QR = a.getArrayCopy();
+    int m = a.getRowDimension();
+    int n = a.getColumnDimension();
+    for (int k = 0; k < n; k++) {
+      double nrm = 0;
+      for (int i = k; i < m; i++) {
+        nrm = Maths.hypot(nrm, QR[i][k]);
+      }
+      if (nrm != 0.0) {
+        if (QR[k][k] < 0) {
+          nrm = -nrm;
+        }
+        for (int i = k; i < m; i++) {
+          QR[i][k] /= nrm;
+        }
+        QR[k][k] += 1.0;
+        for (int j = k + 1; j < n; j++) {
+          double s = 0.0;
+          for (int i = k; i < m; i++) {
+            s += QR[i][k] * QR[i][j];
+          }
+          s = -s / QR[k][k];
+          for (int i = k; i < m; i++) {
+            QR[i][j] += s * QR[i][k];
+          }
+        }
+      }
+    }
+    return new Matrix(QR);
+  }
+
+  /**
+   * Returns the largest absolute difference between two matrices.
+   *
+   * @param a the first matrix
+   * @param b the second matrix
+   * @return the largest difference
+   */
+  public static double maxDiff(Matrix a, Matrix b) {
+    double result = 0;
+    for (int i = 0; i < a.getRowDimension(); i++) {
+      for (int j = 0; j < a.getColumnDimension(); j++) {
+        result = Math.max(result, Math.abs(a.get(i, j) - b.get(i, j)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Prints the time of one run of the new and the reference code.
+   *
+   * @param name the name of the operation
+   * @param repeats the number of repetitions
+   * @param optimized the new code
+   * @param reference the reference code
+   */
+  protected static void time(String name, int repeats, Runnable optimized,
+    Runnable reference) {
+
+    // warm up
+    optimized.run();
+    reference.run();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < repeats; i++) {
+      reference.run();
+    }
+    double ref = (System.nanoTime() - start) / 1e6 / repeats;
+    start = System.nanoTime();
+    for (int i = 0; i < repeats; i++) {
+      optimized.run();
+    }
+    double opt = (System.nanoTime() - start) / 1e6 / repeats;
+
+    System.out.println(String.format("%-16s reference %10.1f ms   new %10.1f ms"
+      + "   speed-up %5.2f", name, ref, opt, ref / opt));
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args optional size of the matrices, number of threads and number
+   *          of repetitions
+   */
+  public static void main(String[] args) {
+    int size = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+    int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime
+      .getRuntime().availableProcessors();
+    int repeats = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+    Parallel.setNumThreads(threads);
+    System.out.println("size " + size + ", threads " + threads);
+
+    Random random = new Random(1);
+    final Matrix a = random(size, size, random);
+    final Matrix b = random(size, size, random);
+    final Matrix spd = randomSPD(size, random);
+
+    System.out.println("differences: times "
+      + maxDiff(a.times(b), referenceTimes(a, b)) + ", transposeTimes "
+      + maxDiff(a.transposeTimes(b), referenceTimes(a.transpose(), b))
+      + ", cholesky " + maxDiff(spd.chol().getL(), referenceCholesky(spd)));
+
+    time("times", repeats, new Runnable() {
+      @Override
+      public void run() {
+        a.times(b);
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        referenceTimes(a, b);
+      }
+    });
+    time("transposeTimes", repeats, new Runnable() {
+      @Override
+      public void run() {
+        a.transposeTimes(b);
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        referenceTimes(a.transpose(), b);
+      }
+    });
+    time("cholesky", repeats, new Runnable() {
+      @Override
+      public void run() {
+        spd.chol();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        referenceCholesky(spd);
+      }
+    });
+    time("lu", repeats, new Runnable() {
+      @Override
+      public void run() {
+        a.lu();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        referenceLU(a);
+      }
+    });
+    time("qr", repeats, new Runnable() {
+      @Override
+      public void run() {
+        a.qr();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        referenceQR(a);
+      }
+    });
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that the blocked and multi-threaded matrix routines give exactly the
+ * same results as the original JAMA loops. Run from the command line with:
+ * <p/>
+ * java weka.core.matrix.MatrixTest
+ *
+ * @version $Revision$
+ */
+public class MatrixTest extends TestCase {
+
+  /** the size of the matrices, large enough to be processed in parallel */
+  protected static final int SIZE = 600;
+
+  /** for generating the matrices */
+  protected Random m_Random;
+
+  /** the number of threads before the test */
+  protected int m_NumThreads;
+
+  /**
+   * Constructs the <code>MatrixTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public MatrixTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Random = new Random(1);
+    m_NumThreads = Parallel.getNumThreads();
+    Parallel.setNumThreads(4);
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    Parallel.setNumThreads(m_NumThreads);
+    m_Random = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Checks that the two matrices are identical.
+   *
+   * @param msg the message to output
+   * @param expected the expected matrix
+   * @param actual the actual matrix
+   */
+  protected void assertIdentical(String msg, Matrix expected, Matrix actual) {
+    assertEquals(msg + ": rows", expected.getRowDimension(),
+      actual.getRowDimension());
+    assertEquals(msg + ": columns", expected.getColumnDimension(),
+      actual.getColumnDimension());
+    for (int i = 0; i < expected.getRowDimension(); i++) {
+      for (int j = 0; j < expected.getColumnDimension(); j++) {
+        assertEquals(msg + ": (" + i + "," + j + ")", expected.get(i, j),
+          actual.get(i, j), 0.0);
+      }
+    }
+  }
+
+  /**
+   * Tests the matrix products.
+   */
+  public void testProducts() {
+    Matrix a = MatrixBenchmark.random(SIZE, SIZE / 3, m_Random);
+    Matrix b = MatrixBenchmark.random(SIZE / 3, SIZE + 7, m_Random);
+    Matrix c = MatrixBenchmark.random(SIZE, 5, m_Random);
+    Matrix d = MatrixBenchmark.random(SIZE + 7, SIZE / 3, m_Random);
+
+    assertIdentical("times", MatrixBenchmark.referenceTimes(a, b), a.times(b));
+    assertIdentical("transposeTimes",
+      MatrixBenchmark.referenceTimes(a.transpose(), c), a.transposeTimes(c));
+    assertIdentical("timesTranspose",
+      MatrixBenchmark.referenceTimes(a, d.transpose()), a.timesTranspose(d));
+  }
+
+  /**
+   * Tests the Cholesky decomposition.
+   */
+  public void testCholesky() {
+    Matrix a = MatrixBenchmark.randomSPD(SIZE, m_Random);
+    CholeskyDecomposition chol = a.chol();
+
+    assertTrue("positive definite", chol.isSPD());
+    assertIdentical("L", MatrixBenchmark.referenceCholesky(a), chol.getL());
+  }
+
+  /**
+   * Tests the LU decomposition.
+   */
+  public void testLU() {
+    Matrix a = MatrixBenchmark.random(SIZE, SIZE, m_Random);
+    Matrix expected = MatrixBenchmark.referenceLU(a);
+    LUDecomposition lu = a.lu();
+    Matrix l = lu.getL();
+    Matrix u = lu.getU();
+
+    for (int i = 0; i < SIZE; i++) {
+      for (int j = 0; j < SIZE; j++) {
+        double actual = (i > j) ? l.get(i, j) : u.get(i, j);
+        assertEquals("LU: (" + i + "," + j + ")", expected.get(i, j), actual,
+          0.0);
+      }
+    }
+  }
+
+  /**
+   * Tests the QR decomposition.
+   */
+  public void testQR() {
+    Matrix a = MatrixBenchmark.random(SIZE, SIZE / 2, m_Random);
+    Matrix expected = MatrixBenchmark.referenceQR(a);
+    QRDecomposition qr = a.qr();
+    Matrix h = qr.getH();
+    Matrix r = qr.getR();
+
+    for (int i = 0; i < a.getRowDimension(); i++) {
+      for (int j = 0; j < a.getColumnDimension(); j++) {
+        double actual = (i >= j) ? h.get(i, j) : r.get(i, j);
+        assertEquals("QR: (" + i + "," + j + ")", expected.get(i, j), actual,
+          0.0);
+      }
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  /**
+   * Tests that the number of threads can be changed while products are being
+   * computed on another thread.
+   */
+  public void testSetNumThreadsWhileRunning() throws Exception {
+    final Matrix a = MatrixBenchmark.random(SIZE / 2, SIZE / 2, m_Random);
+    final Matrix b = MatrixBenchmark.random(SIZE / 2, SIZE / 2, m_Random);
+    final Matrix expected = MatrixBenchmark.referenceTimes(a, b);
+    final Matrix[] results = new Matrix[20];
+    final Throwable[] failure = new Throwable[1];
+
+    Thread worker = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < results.length; i++) {
+            results[i] = a.times(b);
+          }
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    worker.start();
+    for (int i = 0; worker.isAlive(); i++) {
+      Parallel.setNumThreads(2 + i % 3);
+      Thread.sleep(1);
+    }
+    worker.join();
+
+    if (failure[0] != null) {
+      throw new Exception("Product failed", failure[0]);
+    }
+    for (int i = 0; i < results.length; i++) {
+      assertIdentical("times " + i, expected, results[i]);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(MatrixTest.class);
+  }
+
+  /**
+   * Runs the test from command-line.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.experiment;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+/**
+ * Tests FileResultListener. Run from the command line with:
+ * <p/>
+ * java weka.experiment.FileResultListenerTest
+ *
+ * @version $Revision$
+ */
+public class FileResultListenerTest extends TestCase {
+
+  /**
+   * A result producer that generates one result per run and counts the results
+   * it had to compute.
+   */
+  protected static class CountingResultProducer implements ResultProducer {
+
+    /** for serialization */
+    private static final long serialVersionUID = 6020851423432817447L;
+
+    /** the listener receiving the results */
+    protected ResultListener m_Listener;
+
+    /** the key value that stands for the dataset */
+    protected Object m_Dataset = "data";
+
+    /** the number of results computed */
+    protected int m_Computed;
+
+    @Override
+    public void setInstances(Instances instances) {
+    }
+
+    @Override
+    public void setResultListener(ResultListener listener) {
+      m_Listener = listener;
+    }
+
+    @Override
+    public void setAdditionalMeasures(String[] additionalMeasures) {
+    }
+
+    @Override
+    public void preProcess() throws Exception {
+      m_Listener.preProcess(this);
+    }
+
+    @Override
+    public void postProcess() throws Exception {
+      m_Listener.postProcess(this);
+    }
+
+    @Override
+    public void doRun(int run) throws Exception {
+      Object[] key = new Object[] { m_Dataset, "" + run };
+      if (m_Listener.isResultRequired(this, key)) {
+        m_Computed++;
+        m_Listener.acceptResult(this, key, new Object[] {
+          new Double(run * 1.5), "result " + run });
+      }
+    }
+
+    @Override
+    public void doRunKeys(int run) throws Exception {
+      m_Listener.acceptResult(this, new Object[] { m_Dataset, "" + run }, null);
+    }
+
+    @Override
+    public String[] getKeyNames() {
+      return new String[] { "Dataset", "Run" };
+    }
+
+    @Override
+    public Object[] getKeyTypes() {
+      return new Object[] { "", "" };
+    }
+
+    @Override
+    public String[] getResultNames() {
+      return new String[] { "Value", "Name" };
+    }
+
+    @Override
+    public Object[] getResultTypes() {
+      return new Object[] { new Double(0), "" };
+    }
+
+    @Override
+    public String getCompatibilityState() {
+      return "";
+    }
+  }
+
+  /** the result file */
+  protected File m_File;
+
+  /**
+   * Constructs the <code>FileResultListenerTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public FileResultListenerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates an empty result file.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_File = File.createTempFile("FileResultListenerTest", ".results");
+  }
+
+  /**
+   * Deletes the result file.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_File.delete();
+    m_File = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Runs a number of runs, storing the results in the result file.
+   *
+   * @param first the first run
+   * @param last the last run
+   * @return the number of results that had to be computed
+   * @throws Exception if an error occurs
+   */
+  protected int run(int first, int last) throws Exception {
+
+    FileResultListener listener = new FileResultListener();
+    listener.setOutputFile(m_File);
+    CountingResultProducer rp = new CountingResultProducer();
+    rp.setResultListener(listener);
+    rp.preProcess();
+    for (int i = first; i <= last; i++) {
+      rp.doRun(i);
+    }
+    rp.postProcess();
+
+    return rp.m_Computed;
+  }
+
+  /**
+   * Checks that the result file contains the results of the runs from 1 up to
+   * a given run, in order.
+   *
+   * @param last the last run
+   * @throws Exception if an error occurs
+   */
+  protected void checkResults(int last) throws Exception {
+
+    assertTrue("result file", FileResultListener.isResultFile(m_File));
+    Instances results = FileResultListener.readResults(m_File);
+    assertEquals("attributes", 4, results.numAttributes());
+    assertEquals("key name", "Key_Run", results.attribute(1).name());
+    assertEquals("results", last, results.numInstances());
+    for (int i = 0; i < last; i++) {
+      assertEquals("run", "" + (i + 1), results.instance(i).stringValue(1));
+      assertEquals("value", (i + 1) * 1.5, results.instance(i).value(2), 0);
+      assertEquals("name", "result " + (i + 1), results.instance(i)
+        .stringValue(3));
+    }
+  }
+
+  /**
+   * Writes some results, then opens the file again and continues, which must
+   * only compute the results that are missing.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testResume() throws Exception {
+
+    assertEquals("first session", 3, run(1, 3));
+    checkResults(3);
+
+    assertEquals("second session", 2, run(1, 5));
+    checkResults(5);
+
+    assertEquals("third session", 0, run(1, 5));
+    checkResults(5);
+  }
+
+  /**
+   * Cuts off the end of the last result, as a crash while writing it would.
+   * The incomplete result must be discarded and computed again.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testTruncatedResult() throws Exception {
+
+    assertEquals("first session", 3, run(1, 3));
+    RandomAccessFile file = new RandomAccessFile(m_File, "rw");
+    file.setLength(file.length() - 5);
+    file.close();
+
+    checkResults(2);
+    assertEquals("second session", 2, run(1, 4));
+    checkResults(4);
+  }
+
+  /**
+   * Keys with values other than strings and doubles can't be read back, so
+   * they must be rejected rather than written.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testRejectedKey() throws Exception {
+
+    FileResultListener listener = new FileResultListener();
+    listener.setOutputFile(m_File);
+    CountingResultProducer rp = new CountingResultProducer();
+    rp.m_Dataset = new Integer(1);
+    rp.setResultListener(listener);
+    rp.preProcess();
+    try {
+      rp.doRun(1);
+      fail("Key with an Integer value was accepted");
+    } catch (Exception e) {
+      // expected
+    }
+    try {
+      listener.acceptResult(rp, new Object[] { new Integer(1), "1" },
+        new Object[] { new Double(1), "result 1" });
+      fail("Result with an Integer key value was written");
+    } catch (Exception e) {
+      // expected
+    }
+    rp.postProcess();
+
+    assertEquals("computed", 0, rp.m_Computed);
+    assertEquals("results", 0, FileResultListener.readResults(m_File)
+      .numInstances());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(FileResultListenerTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2014 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.experiment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
+
+/**
+ * Tests TaskDispatcher. Runs a small experiment on local engine processes and
+ * compares the results with a serial run. Run from the command line with:
+ * <p/>
+ * java weka.experiment.TaskDispatcherTest
+ *
+ * @version $Revision$
+ */
+public class TaskDispatcherTest extends TestCase {
+
+  /**
+   * Collects the results of an experiment in memory.
+   */
+  protected static class CollectingResultListener implements ResultListener {
+
+    /** for serialization */
+    private static final long serialVersionUID = -2393418283657318711L;
+
+    /** the names of the result columns */
+    protected String[] m_ResultNames;
+
+    /** the results, key values followed by the result values */
+    protected List<Object[]> m_Results = new ArrayList<Object[]>();
+
+    @Override
+    public String[] determineColumnConstraints(ResultProducer rp)
+      throws Exception {
+      return null;
+    }
+
+    @Override
+    public void preProcess(ResultProducer rp) throws Exception {
+      m_ResultNames = rp.getResultNames();
+      m_Results.clear();
+    }
+
+    @Override
+    public void postProcess(ResultProducer rp) throws Exception {
+    }
+
+    @Override
+    public synchronized void acceptResult(ResultProducer rp, Object[] key,
+      Object[] result) throws Exception {
+      Object[] row = new Object[key.length + result.length];
+      System.arraycopy(key, 0, row, 0, key.length);
+      System.arraycopy(result, 0, row, key.length, result.length);
+      m_Results.add(row);
+    }
+
+    @Override
+    public boolean isResultRequired(ResultProducer rp, Object[] key)
+      throws Exception {
+      return true;
+    }
+
+    /**
+     * Returns the results that don't depend on timing, sorted by their keys.
+     *
+     * @param numKeys the number of key columns
+     * @return the results
+     */
+    public synchronized List<String> getResults(final int numKeys) {
+
+      List<Object[]> rows = new ArrayList<Object[]>(m_Results);
+      Collections.sort(rows, new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] o1, Object[] o2) {
+          for (int i = 0; i < numKeys; i++) {
+            int c = ("" + o1[i]).compareTo("" + o2[i]);
+            if (c != 0) {
+              return c;
+            }
+          }
+          return 0;
+        }
+      });
+
+      List<String> result = new ArrayList<String>();
+      for (Object[] row : rows) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+          if (i >= numKeys) {
+            String name = m_ResultNames[i - numKeys].toLowerCase();
+            if ((name.indexOf("time") != -1) || (name.indexOf("cpu") != -1)) {
+              continue;
+            }
+          }
+          line.append(row[i]).append(',');
+        }
+        result.add(line.toString());
+      }
+      return result;
+    }
+  }
+
+  /** the dataset of the experiment */
+  protected File m_Data;
+
+  /**
+   * Constructs the <code>TaskDispatcherTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public TaskDispatcherTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Writes the dataset of the experiment to a temporary file, which the local
+   * engines can read as well.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    TestInstances test = new TestInstances();
+    test.setNumInstances(120);
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    test.setNumClasses(3);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+    test.setSeed(42);
+    Instances data = test.generate();
+
+    m_Data = File.createTempFile("TaskDispatcherTest", ".arff");
+    FileWriter writer = new FileWriter(m_Data);
+    writer.write(data.toString());
+    writer.close();
+  }
+
+  /**
+   * Deletes the dataset.
+   *
+   * @throws Exception if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Data.delete();
+    m_Data = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns an experiment with a number of random splits of the dataset.
+   *
+   * @param listener the listener receiving the results
+   * @return the experiment
+   * @throws Exception if the experiment can't be set up
+   */
+  protected Experiment getExperiment(ResultListener listener)
+    throws Exception {
+
+    Experiment result = new Experiment();
+    result.setOptions(Utils.splitOptions("-L 1 -U 6 -T "
+      + Utils.quote(m_Data.getAbsolutePath())
+      + " -D weka.experiment.InstancesResultListener"
+      + " -P weka.experiment.RandomSplitResultProducer -- "
+      + "-W weka.experiment.ClassifierSplitEvaluator -- "
+      + "-W weka.classifiers.trees.J48"));
+    result.setResultListener(listener);
+    return result;
+  }
+
+  /**
+   * Runs the experiment on two local engine processes and compares the results
+   * with the ones of a serial run.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testLocalEngines() throws Exception {
+
+    CollectingResultListener serial = new CollectingResultListener();
+    Experiment exp = getExperiment(serial);
+    exp.initialize();
+    exp.runExperiment();
+    exp.postProcess();
+    int numKeys = exp.getResultProducer().getKeyNames().length;
+    List<String> expected = serial.getResults(numKeys);
+    assertEquals("serial results", 6, expected.size());
+
+    CollectingResultListener dispatched = new CollectingResultListener();
+    RemoteExperiment remote = new RemoteExperiment(getExperiment(dispatched));
+    TaskDispatcher dispatcher = new TaskDispatcher();
+    dispatcher.setOptions(new String[] { "-local", "2", "-batch", "1" });
+    remote.setDispatcher(dispatcher);
+    remote.initialize();
+    dispatcher.dispatch(remote);
+
+    List<String> actual = dispatched.getResults(numKeys);
+    assertEquals("number of results", expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals("result " + i, expected.get(i), actual.get(i));
+    }
+  }
+
+  /**
+   * The secret must not be part of the options, the description or the
+   * serialized experiment.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testSecretNotInOptions() throws Exception {
+
+    TaskDispatcher dispatcher = new TaskDispatcher();
+    dispatcher.setSecret("s3cr3t-value");
+    String options = Utils.joinOptions(dispatcher.getOptions());
+    assertEquals("options", -1, options.indexOf("s3cr3t-value"));
+
+    RemoteExperiment remote = new RemoteExperiment(
+      getExperiment(new CollectingResultListener()));
+    remote.setDispatcher(dispatcher);
+    assertEquals("description", -1, remote.toString().indexOf("s3cr3t-value"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(remote);
+    out.close();
+    assertEquals("serialized", -1,
+      new String(bytes.toByteArray(), "ISO-8859-1").indexOf("s3cr3t-value"));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return test suite
+   */
+  public static Test suite() {
+    return new TestSuite(TaskDispatcherTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}